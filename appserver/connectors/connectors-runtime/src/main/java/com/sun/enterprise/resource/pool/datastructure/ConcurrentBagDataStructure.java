@@ -0,0 +1,300 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.resource.pool.datastructure;
+
+import com.sun.appserv.connectors.internal.api.PoolingException;
+import com.sun.enterprise.resource.ResourceHandle;
+import com.sun.enterprise.resource.allocator.ResourceAllocator;
+import com.sun.enterprise.resource.pool.ResourceHandler;
+import com.sun.logging.LogDomains;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lock-free datastructure for pools with many concurrent threads.
+ * <p>
+ * Each resource has an entry whose state is changed with compare-and-set, so taking and returning a resource never
+ * blocks. A thread first tries the resources it returned most recently, which are likely to be free and not contended
+ * by other threads. Otherwise it scans all resources starting at an offset derived from its thread id, which spreads
+ * threads over the resources instead of all of them competing for the first free one.
+ * <p>
+ * Adding and removing resources copies the array of all resources. This is fine as it is rare compared to taking and
+ * returning resources.
+ * <p>
+ * The datastructure parameters and the resource selection strategy are not supported, they are logged as ignored when
+ * given.
+ */
+public class ConcurrentBagDataStructure implements DataStructure {
+
+    private static final int FREE = 0;
+    private static final int IN_USE = 1;
+    private static final int REMOVED = -1;
+
+    /**
+     * Maximum number of recently returned resources remembered per thread
+     */
+    private static final int THREAD_LOCAL_SIZE = 8;
+
+    protected final static Logger _logger =
+            LogDomains.getLogger(ConcurrentBagDataStructure.class, LogDomains.RSR_LOGGER);
+
+    private final ResourceHandler handler;
+    private volatile int maxSize;
+
+    private static final Entry[] NO_ENTRIES = new Entry[0];
+
+    /**
+     * All resources, replaced by a copy when resources are added or removed
+     */
+    private volatile Entry[] shared = NO_ENTRIES;
+    private final Object sharedLock = new Object();
+    private final Map<ResourceHandle, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger free = new AtomicInteger();
+    private final ThreadLocal<List<WeakReference<Entry>>> recentlyReturned =
+            ThreadLocal.withInitial(() -> new ArrayList<>(THREAD_LOCAL_SIZE));
+
+    public ConcurrentBagDataStructure(String parameters, int maxSize, ResourceHandler handler, String strategyClass) {
+        this.maxSize = maxSize;
+        this.handler = handler;
+        if (parameters != null || strategyClass != null) {
+            _logger.log(Level.INFO, "pool.datastructure.concurrentbagds.ignored", new Object[]{parameters, strategyClass});
+        }
+        if (_logger.isLoggable(Level.FINEST)) {
+            _logger.log(Level.FINEST, "pool.datastructure.concurrentbagds.init");
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int addResource(ResourceAllocator allocator, int count) throws PoolingException {
+        int numResAdded = 0;
+        for (int i = 0; i < count; i++) {
+            if (size.incrementAndGet() > maxSize) {
+                size.decrementAndGet();
+                break;
+            }
+            ResourceHandle handle;
+            try {
+                handle = handler.createResource(allocator);
+            } catch (Exception e) {
+                size.decrementAndGet();
+                PoolingException pe = new PoolingException(e.getMessage());
+                pe.initCause(e);
+                throw pe;
+            }
+            Entry entry = new Entry(handle);
+            entries.put(handle, entry);
+            free.incrementAndGet();
+            synchronized (sharedLock) {
+                Entry[] all = Arrays.copyOf(shared, shared.length + 1);
+                all[all.length - 1] = entry;
+                shared = all;
+            }
+            numResAdded++;
+        }
+        return numResAdded;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResourceHandle getResource() {
+        List<WeakReference<Entry>> recent = recentlyReturned.get();
+        for (int i = recent.size() - 1; i >= 0; i--) {
+            Entry entry = recent.remove(i).get();
+            if (entry != null && entry.take()) {
+                return entry.handle;
+            }
+        }
+        Entry[] all = shared;
+        int n = all.length;
+        if (n == 0) {
+            return null;
+        }
+        int offset = (int) (Thread.currentThread().getId() % n);
+        for (int i = 0; i < n; i++) {
+            Entry entry = all[(offset + i) % n];
+            if (entry.take()) {
+                return entry.handle;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeResource(ResourceHandle resource) {
+        Entry entry = entries.remove(resource);
+        if (entry != null) {
+            entry.remove();
+            synchronized (sharedLock) {
+                Entry[] all = shared;
+                for (int i = 0; i < all.length; i++) {
+                    if (all[i] == entry) {
+                        Entry[] remaining = Arrays.copyOf(all, all.length - 1);
+                        System.arraycopy(all, i + 1, remaining, i, all.length - i - 1);
+                        shared = remaining;
+                        break;
+                    }
+                }
+            }
+            size.decrementAndGet();
+            handler.deleteResource(resource);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void returnResource(ResourceHandle resource) {
+        Entry entry = entries.get(resource);
+        if (entry != null && entry.giveBack()) {
+            List<WeakReference<Entry>> recent = recentlyReturned.get();
+            if (recent.size() == THREAD_LOCAL_SIZE) {
+                recent.remove(0);
+            }
+            recent.add(entry.reference);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getFreeListSize() {
+        return Math.max(0, free.get());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void removeAll() {
+        Iterator<ResourceHandle> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            removeResource(it.next());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getResourcesSize() {
+        return shared.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ArrayList<ResourceHandle> getAllResources() {
+        Entry[] entries = shared;
+        ArrayList<ResourceHandle> all = new ArrayList<>(entries.length);
+        for (Entry entry : entries) {
+            all.add(entry.handle);
+        }
+        return all;
+    }
+
+    /**
+     * The state of a resource in this datastructure.
+     */
+    private final class Entry {
+
+        final ResourceHandle handle;
+        final WeakReference<Entry> reference;
+        private final AtomicInteger state = new AtomicInteger(FREE);
+
+        Entry(ResourceHandle handle) {
+            this.handle = handle;
+            this.reference = new WeakReference<>(this);
+        }
+
+        boolean take() {
+            if (state.get() == FREE && state.compareAndSet(FREE, IN_USE)) {
+                free.decrementAndGet();
+                handle.setBusy(true);
+                return true;
+            }
+            return false;
+        }
+
+        boolean giveBack() {
+            handle.setBusy(false);
+            if (state.compareAndSet(IN_USE, FREE)) {
+                free.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        void remove() {
+            if (state.getAndSet(REMOVED) == FREE) {
+                free.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.enterprise.resource.pool.datastructure;
+
+import com.sun.appserv.connectors.internal.api.PoolingException;
+import com.sun.enterprise.resource.ResourceHandle;
+import com.sun.enterprise.resource.allocator.ResourceAllocator;
+import com.sun.enterprise.resource.pool.ResourceHandler;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests taking, returning, adding and removing resources of the {@link ConcurrentBagDataStructure}, also with many
+ * threads sharing the pool.
+ */
+public class ConcurrentBagDataStructureTest {
+
+    private static final int MAX_SIZE = 4;
+
+    private CountingResourceHandler handler;
+    private ConcurrentBagDataStructure ds;
+
+    @Before
+    public void setUp() {
+        handler = new CountingResourceHandler();
+        ds = new ConcurrentBagDataStructure(null, MAX_SIZE, handler, null);
+    }
+
+    @Test
+    public void addResourceStopsAtMaxSize() throws PoolingException {
+        assertEquals(3, ds.addResource(null, 3));
+        assertEquals(1, ds.addResource(null, 3));
+        assertEquals(0, ds.addResource(null, 1));
+        assertEquals(MAX_SIZE, handler.created.get());
+        assertEquals(MAX_SIZE, ds.getResourcesSize());
+        assertEquals(MAX_SIZE, ds.getFreeListSize());
+        assertEquals(MAX_SIZE, ds.getAllResources().size());
+    }
+
+    @Test
+    public void addResourceUpToIncreasedMaxSize() throws PoolingException {
+        ds.addResource(null, MAX_SIZE);
+        ds.setMaxSize(MAX_SIZE + 2);
+        assertEquals(2, ds.addResource(null, 5));
+        assertEquals(MAX_SIZE + 2, ds.getResourcesSize());
+    }
+
+    @Test
+    public void getResourceTakesFreeResourcesUntilNoneIsLeft() throws PoolingException {
+        ds.addResource(null, MAX_SIZE);
+        Set<ResourceHandle> taken = new HashSet<>();
+        for (int i = 0; i < MAX_SIZE; i++) {
+            ResourceHandle handle = ds.getResource();
+            assertNotNull(handle);
+            assertTrue(handle.isBusy());
+            assertTrue(taken.add(handle));
+            assertEquals(MAX_SIZE - i - 1, ds.getFreeListSize());
+        }
+        assertNull(ds.getResource());
+        assertEquals(MAX_SIZE, ds.getResourcesSize());
+    }
+
+    @Test
+    public void getResourceOfEmptyPoolIsNull() {
+        assertNull(ds.getResource());
+        assertEquals(0, ds.getFreeListSize());
+    }
+
+    @Test
+    public void returnResourceMakesItFreeAgain() throws PoolingException {
+        ds.addResource(null, 1);
+        ResourceHandle handle = ds.getResource();
+        assertEquals(0, ds.getFreeListSize());
+
+        ds.returnResource(handle);
+
+        assertFalse(handle.isBusy());
+        assertEquals(1, ds.getFreeListSize());
+        assertSame(handle, ds.getResource());
+    }
+
+    @Test
+    public void returnResourceTwiceCountsItOnce() throws PoolingException {
+        ds.addResource(null, 2);
+        ResourceHandle handle = ds.getResource();
+        ds.returnResource(handle);
+        ds.returnResource(handle);
+        assertEquals(2, ds.getFreeListSize());
+    }
+
+    @Test
+    public void recentlyReturnedResourceIsTakenAgainByTheSameThread() throws PoolingException {
+        ds.addResource(null, MAX_SIZE);
+        List<ResourceHandle> taken = new ArrayList<>();
+        for (int i = 0; i < MAX_SIZE; i++) {
+            taken.add(ds.getResource());
+        }
+        for (ResourceHandle handle : taken) {
+            ds.returnResource(handle);
+        }
+        assertSame(taken.get(MAX_SIZE - 1), ds.getResource());
+    }
+
+    @Test
+    public void removeResourceDeletesIt() throws PoolingException {
+        ds.addResource(null, MAX_SIZE);
+        ResourceHandle inUse = ds.getResource();
+        ResourceHandle free = ds.getResource();
+        ds.returnResource(free);
+
+        ds.removeResource(inUse);
+        ds.removeResource(free);
+        ds.removeResource(free);
+
+        assertEquals(2, handler.deleted.get());
+        assertEquals(MAX_SIZE - 2, ds.getResourcesSize());
+        assertEquals(MAX_SIZE - 2, ds.getFreeListSize());
+        assertFalse(ds.getAllResources().contains(inUse));
+        assertFalse(ds.getAllResources().contains(free));
+        // removed resources leave room for new ones
+        assertEquals(2, ds.addResource(null, MAX_SIZE));
+    }
+
+    @Test
+    public void removedResourceIsNotHandedOut() throws PoolingException {
+        ds.addResource(null, 2);
+        ResourceHandle removed = ds.getResource();
+        ds.returnResource(removed);
+        ds.removeResource(removed);
+
+        ResourceHandle handle = ds.getResource();
+        assertNotNull(handle);
+        assertFalse(handle == removed);
+        assertNull(ds.getResource());
+    }
+
+    @Test
+    public void removeAllDeletesAllResources() throws PoolingException {
+        ds.addResource(null, MAX_SIZE);
+        ds.getResource();
+
+        ds.removeAll();
+
+        assertEquals(MAX_SIZE, handler.deleted.get());
+        assertEquals(0, ds.getResourcesSize());
+        assertEquals(0, ds.getFreeListSize());
+        assertNull(ds.getResource());
+    }
+
+    @Test
+    public void concurrentTakeAndReturnNeverHandsOutResourceTwice() throws Exception {
+        int threads = 16;
+        int iterations = 20000;
+        ds.setMaxSize(8);
+        ds.addResource(null, 8);
+        Set<ResourceHandle> inUse = ConcurrentHashMap.newKeySet();
+        AtomicInteger handedOutTwice = new AtomicInteger();
+        AtomicInteger taken = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < iterations; i++) {
+                    ResourceHandle handle = ds.getResource();
+                    if (handle == null) {
+                        Thread.yield();
+                        continue;
+                    }
+                    taken.incrementAndGet();
+                    if (!inUse.add(handle)) {
+                        handedOutTwice.incrementAndGet();
+                    }
+                    inUse.remove(handle);
+                    ds.returnResource(handle);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertEquals(0, handedOutTwice.get());
+        assertTrue(taken.get() > 0);
+        assertEquals(8, ds.getFreeListSize());
+        assertEquals(8, ds.getResourcesSize());
+    }
+
+    private static final class CountingResourceHandler implements ResourceHandler {
+
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger deleted = new AtomicInteger();
+
+        @Override
+        public void deleteResource(ResourceHandle resourceHandle) {
+            deleted.incrementAndGet();
+        }
+
+        @Override
+        public ResourceHandle createResource(ResourceAllocator allocator) {
+            created.incrementAndGet();
+            return new ResourceHandle(new Object(), null, null, null);
+        }
+
+        @Override
+        public void createResourceAndAddToPool() {
+            // not used
+        }
+
+        @Override
+        public Set getInvalidConnections(Set connections) {
+            return connections;
+        }
+
+        @Override
+        public void invalidConnectionDetected(ResourceHandle h) {
+            // not used
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.enterprise.resource.pool.datastructure;
+
+import com.sun.appserv.connectors.internal.api.PoolingException;
+import com.sun.enterprise.resource.ResourceHandle;
+import com.sun.enterprise.resource.allocator.ResourceAllocator;
+import com.sun.enterprise.resource.pool.ResourceHandler;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the acquire/release throughput of the pool {@link DataStructure}s when many request threads share a single
+ * pool that has fewer resources than threads, as for a busy JDBC pool.
+ *
+ * Not run as part of the build. Run the {@link #main(String[])} method from the IDE or with the test classpath; use
+ * {@code -t} to change the number of threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(64)
+@Fork(1)
+public class DataStructureBenchmark {
+
+    @Param({ "com.sun.enterprise.resource.pool.datastructure.RWLockDataStructure",
+        "com.sun.enterprise.resource.pool.datastructure.ListDataStructure",
+        "com.sun.enterprise.resource.pool.datastructure.ConcurrentBagDataStructure" })
+    private String dataStructure;
+
+    @Param({ "32" })
+    private int poolSize;
+
+    private DataStructure ds;
+
+    @Setup
+    public void setup() throws PoolingException {
+        ds = DataStructureFactory.getDataStructure(dataStructure, null, poolSize, new NoopResourceHandler(), null);
+        ds.addResource(null, poolSize);
+    }
+
+    @Benchmark
+    public void acquireRelease(Blackhole bh) {
+        ResourceHandle handle = ds.getResource();
+        if (handle != null) {
+            bh.consume(handle.getId());
+            ds.returnResource(handle);
+        } else {
+            // the pool would wait for a resource to be freed
+            Thread.yield();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(DataStructureBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static final class NoopResourceHandler implements ResourceHandler {
+
+        @Override
+        public void deleteResource(ResourceHandle resourceHandle) {
+            // nothing to destroy
+        }
+
+        @Override
+        public ResourceHandle createResource(ResourceAllocator allocator) {
+            return new ResourceHandle(new Object(), null, null, null);
+        }
+
+        @Override
+        public void createResourceAndAddToPool() {
+            // not used
+        }
+
+        @Override
+        public Set getInvalidConnections(Set connections) {
+            return connections;
+        }
+
+        @Override
+        public void invalidConnectionDetected(ResourceHandle h) {
+            // not used
+        }
+    }
+}
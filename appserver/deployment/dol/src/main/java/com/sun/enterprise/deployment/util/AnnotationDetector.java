@@ -37,6 +37,7 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
+// Portions Copyright [2020] [Payara Foundation and/or its affiliates]
 
 package com.sun.enterprise.deployment.util;
 
@@ -45,6 +46,7 @@ import com.sun.enterprise.deployment.annotation.introspection.ClassFile;
 import com.sun.enterprise.deployment.annotation.introspection.ConstantPoolInfo;
 import com.sun.enterprise.deployment.util.DOLUtils;
 import org.glassfish.api.deployment.archive.ReadableArchive;
+import org.glassfish.deployment.common.AnnotationScanIndex;
 import org.glassfish.hk2.classmodel.reflect.*;
 
 import java.io.IOException;
@@ -130,6 +132,12 @@ public class AnnotationDetector {
 
     public boolean hasAnnotationInArchive(ReadableArchive archive) throws IOException {
 
+        // use the stored annotation index when the classes did not change
+        AnnotationScanIndex index = AnnotationScanIndex.of(archive);
+        if (index != null) {
+            return index.hasAnnotation(scanner::isAnnotation);
+        }
+
         Enumeration<String> entries = archive.entries();
         while (entries.hasMoreElements()) {
             String entryName = entries.nextElement();
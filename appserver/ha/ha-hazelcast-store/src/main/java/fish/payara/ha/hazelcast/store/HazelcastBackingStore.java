@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2016-2018 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) 2016-2020 Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -45,6 +45,7 @@ import java.io.Serializable;
 import org.glassfish.ha.store.api.BackingStore;
 import org.glassfish.ha.store.api.BackingStoreException;
 import org.glassfish.ha.store.api.BackingStoreFactory;
+import org.glassfish.web.ha.session.management.CompositeMetadata;
 
 /**
  *
@@ -79,7 +80,11 @@ public class HazelcastBackingStore<K extends Serializable, V extends Serializabl
     @Override
     public String save(K k, V v, boolean bln) throws BackingStoreException {
         init();
-        imap.set(k, v);
+        if (v instanceof CompositeMetadata && ((CompositeMetadata) v).isDelta()) {
+            imap.executeOnKey(k, new CompositeMetadataMergeProcessor((CompositeMetadata) v));
+        } else {
+            imap.set(k, v);
+        }
         
         return instanceName;
     }
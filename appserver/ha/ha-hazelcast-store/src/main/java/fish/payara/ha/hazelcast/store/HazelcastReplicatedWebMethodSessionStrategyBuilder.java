@@ -2,7 +2,7 @@
 
  DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
 
- Copyright (c) 2016 Payara Foundation. All rights reserved.
+ Copyright (c) 2016-2020 Payara Foundation. All rights reserved.
 
  The contents of this file are subject to the terms of the Common Development
  and Distribution License("CDDL") (collectively, the "License").  You
@@ -29,4 +29,11 @@ import org.jvnet.hk2.annotations.Service;
 @PerLookup
 public class HazelcastReplicatedWebMethodSessionStrategyBuilder extends ReplicatedWebMethodSessionStrategyBuilder {
 
+    /**
+     * {@link HazelcastBackingStore} merges deltas with a {@link CompositeMetadataMergeProcessor}.
+     */
+    @Override
+    protected boolean isAttributeDeltaReplicationSupported() {
+        return true;
+    }
 }
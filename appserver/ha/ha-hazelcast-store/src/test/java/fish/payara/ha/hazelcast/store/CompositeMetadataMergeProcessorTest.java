@@ -0,0 +1,99 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.ha.hazelcast.store;
+
+import java.io.Serializable;
+import java.util.AbstractMap.SimpleEntry;
+import java.util.Collections;
+import java.util.Map;
+
+import org.glassfish.web.ha.session.management.CompositeMetadata;
+import org.glassfish.web.ha.session.management.SessionAttributeMetadata;
+import org.glassfish.web.ha.session.management.SessionAttributeMetadata.Operation;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class CompositeMetadataMergeProcessorTest {
+
+    private static final byte[] STATE = { 1, 2, 3 };
+
+    @Test
+    public void deltaIsStoredWhenThereIsNoValue() {
+        CompositeMetadata delta = delta(1, null, "a", Operation.ADD);
+        Map.Entry<Serializable, CompositeMetadata> entry = new SimpleEntry<>("id", null);
+        new CompositeMetadataMergeProcessor(delta).process(entry);
+        assertSame(delta, entry.getValue());
+    }
+
+    @Test
+    public void deltaIsMergedIntoStoredValue() {
+        CompositeMetadata stored = delta(1, STATE, "a", Operation.ADD);
+        Map.Entry<Serializable, CompositeMetadata> entry = new SimpleEntry<>("id", stored);
+        new CompositeMetadataMergeProcessor(delta(2, null, "b", Operation.ADD)).process(entry);
+        new CompositeMetadataMergeProcessor(delta(3, null, "a", Operation.DELETE)).process(entry);
+
+        CompositeMetadata merged = entry.getValue();
+        assertSame(stored, merged);
+        assertEquals(3, merged.getVersion());
+        assertArrayEquals(STATE, merged.getState());
+        assertEquals(2, merged.getEntries().size());
+        for (SessionAttributeMetadata attribute : merged.getEntries()) {
+            assertEquals(attribute.getAttributeName().equals("a") ? Operation.DELETE : Operation.ADD,
+                    attribute.getOperation());
+        }
+    }
+
+    @Test
+    public void deltaWithStateReplacesStoredValue() {
+        Map.Entry<Serializable, CompositeMetadata> entry = new SimpleEntry<>("id", delta(1, STATE, "a", Operation.ADD));
+        CompositeMetadata delta = delta(2, new byte[] { 4 }, "b", Operation.ADD);
+        new CompositeMetadataMergeProcessor(delta).process(entry);
+        assertSame(delta, entry.getValue());
+    }
+
+    private static CompositeMetadata delta(long version, byte[] state, String attribute, Operation operation) {
+        byte[] value = operation == Operation.DELETE ? null : new byte[] { (byte) version };
+        return CompositeMetadata.createDelta(version, version * 100, 1800,
+                Collections.singletonList(new SessionAttributeMetadata(attribute, operation, value)), state, null);
+    }
+}
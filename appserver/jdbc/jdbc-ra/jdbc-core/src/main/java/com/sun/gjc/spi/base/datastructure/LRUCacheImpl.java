@@ -37,7 +37,7 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-// Portions Copyright [2019] Payara Foundation and/or affiliates
+// Portions Copyright [2019-2020] Payara Foundation and/or affiliates
 
 package com.sun.gjc.spi.base.datastructure;
 
@@ -165,9 +165,11 @@ public class LRUCacheImpl implements Cache {
             try{
                 //TODO Move to a more generic Contract and invoke close()
                 //PreparedStatementWrapper could implement the contract instead
-                PreparedStatementWrapper ps = (PreparedStatementWrapper)entry.entryObj;
-                ps.setCached(false);
-                ps.close();
+                if (entry.entryObj instanceof PreparedStatementWrapper) {
+                    PreparedStatementWrapper ps = (PreparedStatementWrapper)entry.entryObj;
+                    ps.setCached(false);
+                    ps.close();
+                }
             }catch(SQLException e){
                 //ignore
             }
@@ -0,0 +1,526 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.gjc.spi.base.datastructure;
+
+import com.sun.gjc.monitoring.StatementCacheProbeProvider;
+import com.sun.gjc.spi.base.CacheObjectKey;
+import com.sun.gjc.spi.base.PreparedStatementWrapper;
+import com.sun.logging.LogDomains;
+import org.glassfish.resourcebase.resources.api.PoolInfo;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Statement cache using a Window TinyLFU admission and eviction policy.
+ * <p>
+ * New statements enter a small LRU window (1% of the cache). Statements leaving the window compete with the least
+ * recently used statement of the main area for admission, the one used less frequently according to a
+ * {@link FrequencySketch} is evicted. This way a burst of one-off SQL cannot push out the few statements used all
+ * the time. The main area is a segmented LRU: statements used again while in the probation segment (20%) are moved to
+ * the protected segment (80%).
+ * <p>
+ * Lookups do not block. Statements are found in a concurrent map and the policy is only updated for a hit if the
+ * policy lock is free. Skipping such an update under contention only makes the policy slightly less accurate. Adding
+ * and removing statements takes the lock.
+ */
+public class TinyLFUCacheImpl implements Cache {
+
+    protected static final Logger _logger = LogDomains.getLogger(TinyLFUCacheImpl.class, LogDomains.RSR_LOGGER);
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    private final Map<CacheObjectKey, Node> cache = new ConcurrentHashMap<>();
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final Segment window = new Segment();
+    private final Segment probation = new Segment();
+    private final Segment protectedSegment = new Segment();
+    private final int maxSize;
+    private final int maxWindowSize;
+    private final int maxProtectedSize;
+    private final PoolInfo poolInfo;
+    private StatementCacheProbeProvider probeProvider = null;
+
+    public TinyLFUCacheImpl(PoolInfo poolInfo, int maxSize) {
+        this.poolInfo = poolInfo;
+        this.maxSize = maxSize;
+        this.maxWindowSize = Math.max(1, maxSize / 100);
+        this.maxProtectedSize = (int) ((maxSize - maxWindowSize) * 0.8d);
+        this.sketch = new FrequencySketch(maxSize);
+        try {
+            probeProvider = new StatementCacheProbeProvider();
+        } catch (Exception ex) {
+            _logger.log(Level.FINE, "Statement cache probes not available", ex);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Object checkAndUpdateCache(CacheObjectKey key) {
+        Node node = cache.get(key);
+        if (node == null) {
+            if (_logger.isLoggable(Level.FINEST)) {
+                _logger.finest("Cache Miss");
+            }
+            if (policyLock.tryLock()) {
+                try {
+                    sketch.increment(key);
+                } finally {
+                    policyLock.unlock();
+                }
+            }
+            if (probeProvider != null) {
+                probeProvider.statementCacheMissEvent(poolInfo.getName(), poolInfo.getApplicationName(), poolInfo.getModuleName());
+            }
+            return null;
+        }
+        if (_logger.isLoggable(Level.FINEST)) {
+            _logger.finest("Cache Hit");
+        }
+        if (policyLock.tryLock()) {
+            try {
+                sketch.increment(key);
+                onHit(node);
+            } finally {
+                policyLock.unlock();
+            }
+        }
+        if (probeProvider != null) {
+            probeProvider.statementCacheHitEvent(poolInfo.getName(), poolInfo.getApplicationName(), poolInfo.getModuleName());
+        }
+        return node.value;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void addToCache(CacheObjectKey key, Object entry, boolean force) {
+        List<Node> evicted = new ArrayList<>(2);
+        policyLock.lock();
+        try {
+            Node existing = cache.get(key);
+            if (existing != null) {
+                if (!force) {
+                    return;
+                }
+                remove(existing);
+            }
+            Node node = new Node(key, entry);
+            cache.put(key, node);
+            window.addLast(node);
+            node.segment = WINDOW;
+            evict(evicted);
+        } finally {
+            policyLock.unlock();
+        }
+        close(evicted);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clearCache() {
+        if (_logger.isLoggable(Level.FINE)) {
+            _logger.fine("clearing objects in cache");
+        }
+        policyLock.lock();
+        try {
+            cache.clear();
+            window.clear();
+            probation.clear();
+            protectedSegment.clear();
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void purge() {
+        Node victim;
+        policyLock.lock();
+        try {
+            victim = probation.first();
+            if (victim == null) {
+                victim = window.first();
+            }
+            if (victim == null) {
+                victim = protectedSegment.first();
+            }
+            if (victim != null) {
+                remove(victim);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+        if (victim != null) {
+            closeStatement(victim.value);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void flushCache() {
+        List<Node> all;
+        policyLock.lock();
+        try {
+            all = new ArrayList<>(cache.values());
+            for (Node node : all) {
+                remove(node);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+        close(all);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getSize() {
+        return cache.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isSynchronized() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void purge(Object entry) {
+        Node purged = null;
+        policyLock.lock();
+        try {
+            for (Node node : cache.values()) {
+                if (node.value.equals(entry)) {
+                    if (_logger.isLoggable(Level.FINEST)) {
+                        _logger.log(Level.FINEST, "Purging an entry from cache");
+                    }
+                    remove(node);
+                    purged = node;
+                    break;
+                }
+            }
+        } finally {
+            policyLock.unlock();
+        }
+        if (purged != null) {
+            closeStatement(purged.value);
+        }
+    }
+
+    private void onHit(Node node) {
+        if (node.prev == null && node.next == null && !isFirst(node)) {
+            return; // removed concurrently
+        }
+        switch (node.segment) {
+            case WINDOW:
+                window.moveToLast(node);
+                break;
+            case PROBATION:
+                probation.remove(node);
+                protectedSegment.addLast(node);
+                node.segment = PROTECTED;
+                while (protectedSegment.size > maxProtectedSize) {
+                    Node demoted = protectedSegment.removeFirst();
+                    probation.addLast(demoted);
+                    demoted.segment = PROBATION;
+                }
+                break;
+            default:
+                protectedSegment.moveToLast(node);
+                break;
+        }
+    }
+
+    private boolean isFirst(Node node) {
+        return window.head == node || probation.head == node || protectedSegment.head == node;
+    }
+
+    /**
+     * Moves candidates that left the window into the main area and evicts while over the maximum size.
+     */
+    private void evict(List<Node> evicted) {
+        while (window.size > maxWindowSize) {
+            Node candidate = window.removeFirst();
+            probation.addLast(candidate);
+            candidate.segment = PROBATION;
+            if (cache.size() > maxSize) {
+                Node victim = probation.first();
+                if (victim == candidate) {
+                    // The candidate is alone in probation, it competes with the protected segment
+                    victim = protectedSegment.first();
+                }
+                Node loser = victim != null && sketch.frequency(candidate.key) > sketch.frequency(victim.key)
+                        ? victim
+                        : candidate;
+                remove(loser);
+                evicted.add(loser);
+            }
+        }
+        while (cache.size() > maxSize) {
+            Node victim = probation.first();
+            if (victim == null) {
+                victim = protectedSegment.first();
+            }
+            if (victim == null) {
+                victim = window.first();
+            }
+            remove(victim);
+            evicted.add(victim);
+        }
+    }
+
+    private void remove(Node node) {
+        cache.remove(node.key, node);
+        segmentOf(node).remove(node);
+    }
+
+    private Segment segmentOf(Node node) {
+        switch (node.segment) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protectedSegment;
+        }
+    }
+
+    private void close(List<Node> evicted) {
+        for (Node node : evicted) {
+            closeStatement(node.value);
+            if (probeProvider != null) {
+                probeProvider.statementCacheEvictionEvent(poolInfo.getName(), poolInfo.getApplicationName(), poolInfo.getModuleName());
+            }
+        }
+    }
+
+    private static void closeStatement(Object entry) {
+        if (entry instanceof PreparedStatementWrapper) {
+            try {
+                PreparedStatementWrapper ps = (PreparedStatementWrapper) entry;
+                ps.setCached(false);
+                ps.close();
+            } catch (SQLException e) {
+                //ignore
+            }
+        }
+    }
+
+    /**
+     * A cached statement.
+     */
+    private static final class Node {
+
+        final CacheObjectKey key;
+        final Object value;
+        int segment;
+        Node prev;
+        Node next;
+
+        Node(CacheObjectKey key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * A doubly linked list of {@link Node}s in LRU order, least recently used first.
+     */
+    private static final class Segment {
+
+        Node head;
+        Node tail;
+        int size;
+
+        Node first() {
+            return head;
+        }
+
+        void addLast(Node node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+            size++;
+        }
+
+        Node removeFirst() {
+            Node first = head;
+            if (first != null) {
+                remove(first);
+            }
+            return first;
+        }
+
+        void remove(Node node) {
+            if (node.prev == null) {
+                if (head != node) {
+                    return; // not in this segment
+                }
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+            size--;
+        }
+
+        void moveToLast(Node node) {
+            if (tail != node) {
+                remove(node);
+                addLast(node);
+            }
+        }
+
+        void clear() {
+            head = null;
+            tail = null;
+            size = 0;
+        }
+    }
+
+    /**
+     * A count-min sketch with 4 bit counters estimating how often a key was used recently. All counters are halved
+     * once the number of increments reaches 10 times the cache size so the estimates are biased towards recent use.
+     */
+    static final class FrequencySketch {
+
+        private static final int[] SEEDS = { 0x97cb3127, 0xb5e2a4d3, 0x5ee7cd1b, 0xc1a3f3d9 };
+        private static final int MAX_COUNT = 15;
+
+        private final byte[][] counters = new byte[SEEDS.length][];
+        private final int mask;
+        private final int samplePeriod;
+        private int increments;
+
+        FrequencySketch(int maxSize) {
+            int width = Integer.highestOneBit(Math.max(16, maxSize - 1) << 1);
+            for (int i = 0; i < SEEDS.length; i++) {
+                counters[i] = new byte[width];
+            }
+            this.mask = width - 1;
+            this.samplePeriod = 10 * Math.max(16, maxSize);
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = indexOf(hash, i);
+                if (counters[i][index] < MAX_COUNT) {
+                    counters[i][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++increments >= samplePeriod) {
+                reset();
+            }
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++) {
+                frequency = Math.min(frequency, counters[i][indexOf(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = hash * SEEDS[row];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private void reset() {
+            for (byte[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = (byte) (row[i] >>> 1);
+                }
+            }
+            increments /= 2;
+        }
+
+        private static int spread(int hash) {
+            int h = hash * 0x9e3779b9;
+            return h ^ (h >>> 15);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package com.sun.gjc.spi.base.datastructure;
+
+import com.sun.gjc.spi.base.CacheObjectKey;
+import org.glassfish.resourcebase.resources.api.PoolInfo;
+
+import java.sql.ResultSet;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.resource.ResourceException;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Replays a skewed SQL workload against the statement {@link Cache}s created by {@link CacheFactory}. Most lookups go
+ * to a few hot statements (Zipf distributed) while a share of the lookups are one-off ad-hoc statements that are never
+ * used again. Besides the throughput the {@code hits} and {@code misses} counters show how well each cache keeps the
+ * hot statements.
+ *
+ * Not run as part of the build. Run the {@link #main(String[])} method from the IDE or with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class StatementCacheBenchmark {
+
+    private static final int TRACE_LENGTH = 1 << 18;
+
+    /**
+     * Empty for the default (LRU) cache
+     */
+    @Param({ "", "TINYLFU" })
+    private String cacheType;
+
+    @Param({ "50" })
+    private int cacheSize;
+
+    @Param({ "500" })
+    private int statements;
+
+    @Param({ "0.3" })
+    private double adHocRatio;
+
+    private Cache cache;
+    private CacheObjectKey[] trace;
+
+    @Setup
+    public void setup() throws ResourceException {
+        cache = CacheFactory.getDataStructure(new PoolInfo("benchmark"), cacheType, cacheSize);
+        double[] cumulative = new double[statements];
+        double sum = 0d;
+        for (int i = 0; i < statements; i++) {
+            sum += 1d / (i + 1);
+            cumulative[i] = sum;
+        }
+        Random random = new Random(42);
+        trace = new CacheObjectKey[TRACE_LENGTH];
+        for (int i = 0; i < TRACE_LENGTH; i++) {
+            String sql;
+            if (random.nextDouble() < adHocRatio) {
+                sql = "SELECT * FROM REPORT WHERE ID = " + i;
+            } else {
+                int rank = binarySearch(cumulative, random.nextDouble() * sum);
+                sql = "SELECT * FROM ENTITY" + rank + " WHERE ID = ?";
+            }
+            trace[i] = new CacheObjectKey(sql, CacheObjectKey.PREPARED_STATEMENT, ResultSet.TYPE_FORWARD_ONLY,
+                    ResultSet.CONCUR_READ_ONLY);
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Lookups {
+
+        public long hits;
+        public long misses;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            hits = 0;
+            misses = 0;
+            next = (int) (Thread.currentThread().getId() * 7919) & (TRACE_LENGTH - 1);
+        }
+    }
+
+    @Benchmark
+    public Object prepareStatement(Lookups lookups) {
+        CacheObjectKey key = trace[lookups.next++ & (TRACE_LENGTH - 1)];
+        Object statement = cache.checkAndUpdateCache(key);
+        if (statement != null) {
+            lookups.hits++;
+            return statement;
+        }
+        lookups.misses++;
+        statement = new Object();
+        cache.addToCache(key, statement, false);
+        return statement;
+    }
+
+    private static int binarySearch(double[] cumulative, double value) {
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (cumulative[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StatementCacheBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.gjc.spi.base.datastructure;
+
+import com.sun.gjc.spi.base.CacheObjectKey;
+import com.sun.gjc.spi.base.PreparedStatementWrapper;
+import org.glassfish.resourcebase.resources.api.PoolInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class TinyLFUCacheImplTest {
+
+    private TinyLFUCacheImpl cache;
+
+    @Before
+    public void createCache() {
+        cache = new TinyLFUCacheImpl(new PoolInfo("test"), 10);
+    }
+
+    @Test
+    public void cachedStatementsAreFound() {
+        PreparedStatementWrapper statement = statement();
+        assertNull(cache.checkAndUpdateCache(key(1)));
+        cache.addToCache(key(1), statement, false);
+
+        assertSame(statement, cache.checkAndUpdateCache(key(1)));
+        assertNull(cache.checkAndUpdateCache(key(2)));
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void onlyForcedAddsReplaceACachedStatement() {
+        PreparedStatementWrapper first = statement();
+        PreparedStatementWrapper second = statement();
+        cache.addToCache(key(1), first, false);
+
+        cache.addToCache(key(1), second, false);
+        assertSame(first, cache.checkAndUpdateCache(key(1)));
+
+        cache.addToCache(key(1), second, true);
+        assertSame(second, cache.checkAndUpdateCache(key(1)));
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        for (int i = 0; i < 100; i++) {
+            cache.checkAndUpdateCache(key(i));
+            cache.addToCache(key(i), statement(), false);
+            assertTrue(cache.getSize() <= 10);
+        }
+        assertEquals(10, cache.getSize());
+    }
+
+    @Test
+    public void cacheOfOneStatementKeepsTheLastAdded() throws SQLException {
+        cache = new TinyLFUCacheImpl(new PoolInfo("test"), 1);
+        PreparedStatementWrapper first = statement();
+        PreparedStatementWrapper second = statement();
+        cache.addToCache(key(1), first, false);
+        cache.addToCache(key(2), second, false);
+
+        assertEquals(1, cache.getSize());
+        assertNull(cache.checkAndUpdateCache(key(1)));
+        assertSame(second, cache.checkAndUpdateCache(key(2)));
+        assertClosed(first);
+    }
+
+    @Test
+    public void frequentlyUsedStatementsSurviveOneOffStatements() {
+        cache = new TinyLFUCacheImpl(new PoolInfo("test"), 100);
+        PreparedStatementWrapper[] hot = new PreparedStatementWrapper[5];
+        for (int i = 0; i < hot.length; i++) {
+            hot[i] = statement();
+            cache.checkAndUpdateCache(key(i));
+            cache.addToCache(key(i), hot[i], false);
+        }
+        for (int i = 0; i < 1000; i++) {
+            if (i % 50 == 0) {
+                for (int j = 0; j < hot.length; j++) {
+                    assertSame(hot[j], cache.checkAndUpdateCache(key(j)));
+                }
+            }
+            CacheObjectKey oneOff = key(1000 + i);
+            cache.checkAndUpdateCache(oneOff);
+            cache.addToCache(oneOff, statement(), false);
+        }
+        for (int j = 0; j < hot.length; j++) {
+            assertSame(hot[j], cache.checkAndUpdateCache(key(j)));
+        }
+        assertEquals(100, cache.getSize());
+    }
+
+    @Test
+    public void evictedStatementsAreClosed() throws SQLException {
+        PreparedStatementWrapper[] statements = new PreparedStatementWrapper[11];
+        for (int i = 0; i < statements.length; i++) {
+            statements[i] = statement();
+            cache.addToCache(key(i), statements[i], false);
+        }
+
+        int closed = 0;
+        for (int i = 0; i < statements.length; i++) {
+            if (cache.checkAndUpdateCache(key(i)) == null) {
+                assertClosed(statements[i]);
+                closed++;
+            } else {
+                assertNotClosed(statements[i]);
+            }
+        }
+        assertEquals(1, closed);
+    }
+
+    @Test
+    public void purgedStatementsAreClosed() throws SQLException {
+        PreparedStatementWrapper first = statement();
+        PreparedStatementWrapper second = statement();
+        cache.addToCache(key(1), first, false);
+        cache.addToCache(key(2), second, false);
+
+        cache.purge(first);
+        assertNull(cache.checkAndUpdateCache(key(1)));
+        assertClosed(first);
+
+        cache.purge();
+        assertEquals(0, cache.getSize());
+        assertClosed(second);
+    }
+
+    @Test
+    public void flushClosesAllStatements() throws SQLException {
+        PreparedStatementWrapper first = statement();
+        PreparedStatementWrapper second = statement();
+        cache.addToCache(key(1), first, false);
+        cache.addToCache(key(2), second, false);
+
+        cache.flushCache();
+
+        assertEquals(0, cache.getSize());
+        assertClosed(first);
+        assertClosed(second);
+    }
+
+    @Test
+    public void clearDoesNotCloseStatements() throws SQLException {
+        PreparedStatementWrapper statement = statement();
+        cache.addToCache(key(1), statement, false);
+
+        cache.clearCache();
+
+        assertEquals(0, cache.getSize());
+        assertNull(cache.checkAndUpdateCache(key(1)));
+        assertNotClosed(statement);
+    }
+
+    @Test
+    public void factoryCreatesTinyLFUCache() throws Exception {
+        Cache created = CacheFactory.getDataStructure(new PoolInfo("test"), "TINYLFU", 20);
+        assertTrue(created instanceof TinyLFUCacheImpl);
+        assertEquals(20, ((TinyLFUCacheImpl) created).getMaxSize());
+    }
+
+    private static CacheObjectKey key(int id) {
+        return new CacheObjectKey("SELECT * FROM ENTITY WHERE ID = " + id, CacheObjectKey.PREPARED_STATEMENT,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+    }
+
+    private static PreparedStatementWrapper statement() {
+        return mock(PreparedStatementWrapper.class);
+    }
+
+    private static void assertClosed(PreparedStatementWrapper statement) throws SQLException {
+        verify(statement).setCached(false);
+        verify(statement).close();
+    }
+
+    private static void assertNotClosed(PreparedStatementWrapper statement) throws SQLException {
+        verify(statement, never()).close();
+    }
+}
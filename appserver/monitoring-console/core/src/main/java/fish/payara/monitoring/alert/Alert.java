@@ -44,6 +44,7 @@ import static java.time.LocalDateTime.ofInstant;
 import static java.time.ZoneId.systemDefault;
 
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
@@ -151,7 +152,7 @@ public final class Alert implements Iterable<Alert.Frame> {
                 assertMatchesWachtedSeries(cause);
                 acknowledged = false;
             }
-            frames.add(new Frame(to, cause, captured));
+            frames.add(new Frame(to, cause.snapshot(), snapshots(captured)));
             CHANGE_COUNT.incrementAndGet();
             level = to;
         }
@@ -264,6 +265,14 @@ public final class Alert implements Iterable<Alert.Frame> {
         }
     }
 
+    private static List<SeriesDataset> snapshots(List<SeriesDataset> datasets) {
+        List<SeriesDataset> snapshots = new ArrayList<>(datasets.size());
+        for (SeriesDataset set : datasets) {
+            snapshots.add(set.snapshot());
+        }
+        return snapshots;
+    }
+
     private void assertMatchesWachtedSeries(SeriesDataset cause) {
         if (!initiator.watched.series.matches(cause.getSeries())) {
             throw new IllegalArgumentException("Cause did not match with watched series: " + cause.getSeries());
@@ -88,7 +88,15 @@ public final class Circumstance {
         return level == Level.WHITE;
     }
 
+    public boolean isSuppressible() {
+        return !suppress.isNone();
+    }
+
     public boolean starts(SeriesDataset data, SeriesLookup lookup) {
+        return starts(data, lookup, null);
+    }
+
+    boolean starts(SeriesDataset data, SeriesLookup lookup, Condition.Window startWindow) {
         if (isUnspecified()) {
             return false;
         }
@@ -99,11 +107,15 @@ public final class Circumstance {
                 }
             }
         }
-        return start.isSatisfied(data);
+        return start.isSatisfied(data, startWindow);
     }
 
     public boolean stops(SeriesDataset data) {
-        return stop.isNone() ? !start.isSatisfied(data) : stop.isSatisfied(data);
+        return stops(data, null, null);
+    }
+
+    boolean stops(SeriesDataset data, Condition.Window startWindow, Condition.Window stopWindow) {
+        return stop.isNone() ? !start.isSatisfied(data, startWindow) : stop.isSatisfied(data, stopWindow);
     }
 
     @Override
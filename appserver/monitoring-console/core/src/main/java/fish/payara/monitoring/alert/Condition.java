@@ -52,6 +52,10 @@ import fish.payara.monitoring.model.SeriesDataset;
  * a past number of milliseconds. Such checks either check each included value of the dataset against the threshold
  * (ALL) or compare their average against the threshold in a single check for any number of included values.
  * 
+ * Checks that need to look at more than the last value can use a {@link Window} that is kept per {@link SeriesDataset}
+ * to evaluate the condition incrementally from the points that were added since the last check instead of scanning all
+ * points of the dataset each time.
+ * 
  * @author Jan Berntitt
  */
 public final class Condition {
@@ -117,10 +121,33 @@ public final class Condition {
         return forLast instanceof Integer;
     }
 
+    /**
+     * @return a new {@link Window} to use with {@link #isSatisfied(SeriesDataset, Window)} for a single
+     *         {@link SeriesDataset}, or null if this condition does not benefit from incremental evaluation
+     */
+    Window window() {
+        return isNone() || !isForLastPresent() ? null : new Window(this);
+    }
+
     public boolean isSatisfied(SeriesDataset data) {
+        return isSatisfied(data, null);
+    }
+
+    /**
+     * Same as {@link #isSatisfied(SeriesDataset)} but using the given {@link Window} to avoid scanning the points of
+     * the dataset where possible.
+     * 
+     * @param data   the dataset to check
+     * @param window the window of this condition used for the given dataset in previous checks, or null
+     * @return true if this condition is satisfied by the given dataset, else false
+     */
+    boolean isSatisfied(SeriesDataset data, Window window) {
         if (isNone()) {
             return true;
         }
+        if (window != null) {
+            window.update(data);
+        }
         if (data.getObservedValues() == 0) {
             return false;
         }
@@ -129,23 +156,32 @@ public final class Condition {
             return false;
         }
         if (isForLastMillis()) {
-            return isSatisfiedForLastMillis(data);
+            return isSatisfiedForLastMillis(data, window);
         }
         if (isForLastTimes()) {
-            return isSatisfiedForLastTimes(data);
+            return isSatisfiedForLastTimes(data, window);
         }
         return true;
     }
 
-    private boolean isSatisfiedForLastMillis(SeriesDataset data) {
+    private boolean isSatisfiedForLastMillis(SeriesDataset data, Window window) {
         long forLastMillis = forLast.longValue();
+        boolean incremental = window != null && !onAverage;
         if (forLastMillis <= 0) {
-            return isSatisfiedForLastTimes(data.points(), -1);
+            return incremental
+                    ? window.runLength >= data.size()
+                    : isSatisfiedForLastTimes(data.points(), -1);
         }
         if (data.isStable()) {
             return data.getStableSince() <= data.lastTime() - forLastMillis ;
         }
         long startTime = data.lastTime() - forLastMillis;
+        if (incremental) {
+            if (data.firstTime() > startTime && forLastMillis < 30000L) {
+                return false; // not enough data
+            }
+            return window.isRunningSince(startTime) || window.runLength >= data.size();
+        }
         long[] points = data.points();
         if (points[0] > startTime && forLastMillis < 30000L) {
             return false; // not enough data
@@ -157,18 +193,35 @@ public final class Condition {
         return isSatisfiedForLastTimes(points, index <= 0 ? points.length / 2 : (points.length - index) / 2);
     }
 
-    private boolean isSatisfiedForLastTimes(SeriesDataset data) {
+    private boolean isSatisfiedForLastTimes(SeriesDataset data, Window window) {
         int forLastTimes = forLast.intValue();
         if (data.isStable()) {
             return data.getStableCount() >= forLastTimes;
         }
+        if (window != null) {
+            int n = lastTimesCount(data.size(), forLastTimes);
+            if (n <= 0) {
+                return false;
+            }
+            return onAverage ? compare(window.sumOfLast(n) / n) : window.runLength >= n;
+        }
         return isSatisfiedForLastTimes(data.points(), forLastTimes);
     }
 
-    private boolean isSatisfiedForLastTimes(long[] points, int forLastTimes) {
-        int maxPoints = points.length / 2;
+    /**
+     * @return the number of points to include in a check of the last times or zero if there are not enough points yet
+     */
+    private static int lastTimesCount(int maxPoints, int forLastTimes) {
         int n = forLastTimes <= 0 ? maxPoints : Math.min(maxPoints, forLastTimes);
         if (forLastTimes > 0 && n < forLastTimes && n < 30) {
+            return 0; // not enough data yet
+        }
+        return n;
+    }
+
+    private boolean isSatisfiedForLastTimes(long[] points, int forLastTimes) {
+        int n = lastTimesCount(points.length / 2, forLastTimes);
+        if (n == 0 && forLastTimes > 0) {
             return false; // not enough data yet
         }
         int index = points.length - 1; // last value index
@@ -234,4 +287,138 @@ public final class Condition {
         return str.toString();
     }
 
+    /**
+     * The incrementally maintained state of a {@link Condition} for a single {@link SeriesDataset}.
+     * 
+     * A {@link Window} follows the {@link SeriesDataset#points()} of the dataset. As long as the dataset only had points
+     * added at its end since the last update, only the new points are read and added to the window. Otherwise the
+     * window is rebuilt from all points. For each point the window tracks the length and start of the current run of
+     * values that satisfy the {@link Condition#comparison} and, when the condition is checked on average for a number
+     * of last times, a running sum of the most recent values.
+     * 
+     * Instances are not thread-safe and meant to be used by the single thread checking the {@link Watch} they belong to.
+     */
+    static final class Window {
+
+        private final Condition condition;
+        private long seenTime = -1L;
+        private long seenValue;
+        private int seenObservedValues;
+        int runLength;
+        private long runStartTime;
+        private long[] values;
+        private int valuesCount;
+        private int valuesOffset;
+        private long valuesSum;
+
+        Window(Condition condition) {
+            this.condition = condition;
+        }
+
+        void update(SeriesDataset data) {
+            int size = data.size();
+            if (size == 0) {
+                reset(data);
+                return;
+            }
+            long lastTime = data.lastTime();
+            long lastValue = data.lastValue();
+            int observedValues = data.getObservedValues();
+            if (seenTime >= 0 && lastTime == seenTime && lastValue == seenValue) {
+                seenObservedValues = observedValues;
+                return; // nothing new
+            }
+            int added = observedValues - seenObservedValues;
+            if (seenTime < 0 || lastTime < seenTime || added <= 0 || added >= size) {
+                rebuild(data);
+                return;
+            }
+            long[] tail = data.lastPoints(added + 1);
+            if (tail.length < 4 || tail[0] != seenTime || tail[1] != seenValue) {
+                rebuild(data);
+                return;
+            }
+            for (int i = 2; i < tail.length; i += 2) {
+                add(tail[i], tail[i + 1]);
+            }
+            seenObservedValues = observedValues;
+        }
+
+        private void rebuild(SeriesDataset data) {
+            reset(data);
+            long[] points = data.points();
+            for (int i = 0; i < points.length; i += 2) {
+                add(points[i], points[i + 1]);
+            }
+        }
+
+        private void reset(SeriesDataset data) {
+            seenTime = -1L;
+            seenValue = 0L;
+            seenObservedValues = data.getObservedValues();
+            runLength = 0;
+            runStartTime = 0L;
+            valuesCount = 0;
+            valuesOffset = 0;
+            valuesSum = 0L;
+            if (condition.onAverage && condition.isForLastTimes()) {
+                int forLastTimes = condition.forLast.intValue();
+                int capacity = Math.max(1, forLastTimes <= 0
+                        ? data.capacity()
+                        : Math.min(forLastTimes, data.capacity()));
+                if (values == null || values.length != capacity) {
+                    values = new long[capacity];
+                }
+            }
+        }
+
+        private void add(long time, long value) {
+            if (condition.compare(value)) {
+                if (runLength == 0) {
+                    runStartTime = time;
+                }
+                if (runLength < Integer.MAX_VALUE) {
+                    runLength++;
+                }
+            } else {
+                runLength = 0;
+            }
+            if (values != null) {
+                int index = (valuesOffset + valuesCount) % values.length;
+                if (valuesCount < values.length) {
+                    valuesCount++;
+                } else {
+                    valuesSum -= values[index];
+                    valuesOffset = (valuesOffset + 1) % values.length;
+                }
+                values[index] = value;
+                valuesSum += value;
+            }
+            seenTime = time;
+            seenValue = value;
+        }
+
+        /**
+         * @return true if all points since the given time satisfied the comparison and the current run started at or
+         *         before the given time
+         */
+        boolean isRunningSince(long time) {
+            return runLength > 0 && runStartTime <= time;
+        }
+
+        /**
+         * @param n number of most recent values to sum, must not be larger than the number of points in the dataset
+         * @return the sum of the most recent n values
+         */
+        long sumOfLast(int n) {
+            if (n >= valuesCount) {
+                return valuesSum;
+            }
+            long sum = 0L;
+            for (int i = valuesCount - n; i < valuesCount; i++) {
+                sum += values[(valuesOffset + i) % values.length];
+            }
+            return sum;
+        }
+    }
 }
@@ -66,6 +66,11 @@ import fish.payara.monitoring.model.SeriesDataset;
  * When the {@link Alert.Level} reaches {@link Level#AMBER} or {@link Level#RED} an {@link Alert} is created which ends
  * first when the same {@link SeriesDataset} reaches {@link Level#GREEN} or {@link Level#WHITE} again.
  * 
+ * A {@link Watch} is checked incrementally. A {@link SeriesDataset} that did not change since it was last checked is
+ * not checked again unless the {@link Watch} uses suppression which depends on other datasets. {@link Condition}s that
+ * look at more than the last point use a {@link Condition.Window} per {@link State} so that only the points added since
+ * the last check need to be looked at.
+ * 
  * @see Alert
  * 
  * @author Jan Bernitt
@@ -82,9 +87,40 @@ public final class Watch implements WatchBuilder, Iterable<Watch.State> {
         final SeriesDataset watchingSince;
         volatile Level level = Level.WHITE;
         volatile Alert ongoing;
-
-        State(SeriesDataset watched) {
+        final Condition.Window redStart;
+        final Condition.Window redStop;
+        final Condition.Window amberStart;
+        final Condition.Window amberStop;
+        final Condition.Window greenStart;
+        final Condition.Window greenStop;
+        private long checkedTime = -1L;
+        private long checkedValue;
+        private int checkedObservedValues;
+
+        State(SeriesDataset watched, Watch watch) {
             this.watchingSince = watched;
+            this.redStart = watch.red.start.window();
+            this.redStop = watch.red.stop.window();
+            this.amberStart = watch.amber.start.window();
+            this.amberStop = watch.amber.stop.window();
+            this.greenStart = watch.green.start.window();
+            this.greenStop = watch.green.stop.window();
+        }
+
+        /**
+         * @return true if the given data has changed since this method was called last, else false
+         */
+        boolean changedSinceLastCheck(SeriesDataset data) {
+            long time = data.lastTime();
+            long value = data.lastValue();
+            int observedValues = data.getObservedValues();
+            if (time == checkedTime && value == checkedValue && observedValues == checkedObservedValues) {
+                return false;
+            }
+            checkedTime = time;
+            checkedValue = value;
+            checkedObservedValues = observedValues;
+            return true;
         }
 
         @Override
@@ -116,6 +152,7 @@ public final class Watch implements WatchBuilder, Iterable<Watch.State> {
     public final Circumstance amber;
     public final Circumstance green;
     private final Metric[] captured;
+    private final boolean suppressible;
     private final Map<String, State> statesByInstanceSeries = new ConcurrentHashMap<>();
     private final AtomicBoolean stopped = new AtomicBoolean(false);
 
@@ -130,6 +167,7 @@ public final class Watch implements WatchBuilder, Iterable<Watch.State> {
         this.amber = amber;
         this.green = green;
         this.captured = captured;
+        this.suppressible = red.isSuppressible() || amber.isSuppressible() || green.isSuppressible();
     }
 
     @Override
@@ -138,7 +176,7 @@ public final class Watch implements WatchBuilder, Iterable<Watch.State> {
     }
 
     public State state(SeriesDataset data) {
-        return statesByInstanceSeries.computeIfAbsent(key(data), key -> new State(data));
+        return statesByInstanceSeries.computeIfAbsent(key(data), key -> new State(data, this));
     }
 
     public void stop() {
@@ -173,8 +211,24 @@ public final class Watch implements WatchBuilder, Iterable<Watch.State> {
         return data.getSeries().toString() + '#' + data.getInstance();
     }
 
-    private Alert check(SeriesLookup lookup, SeriesDataset data) {
+    /**
+     * Checks a single {@link SeriesDataset} matching the {@link #watched} {@link Metric}.
+     * 
+     * This is used by callers that already selected the matching datasets, for example to share the selection between
+     * {@link Watch}es watching the same {@link Series}.
+     * 
+     * @param lookup used to resolve data needed by suppression and captured {@link Metric}s
+     * @param data   the dataset to check, must match the {@link #watched} {@link Metric}
+     * @return the newly raised {@link Alert} or null if no new alert was raised
+     */
+    public Alert check(SeriesLookup lookup, SeriesDataset data) {
+        if (isStopped()) {
+            return null;
+        }
         State state = state(data);
+        if (!state.changedSinceLastCheck(data) && !suppressible) {
+            return null; // same data gives same result
+        }
         switch (state.level) {
         default:
         case WHITE: return checkWhite(lookup, data, state);
@@ -185,13 +239,13 @@ public final class Watch implements WatchBuilder, Iterable<Watch.State> {
     }
 
     private Alert checkWhite(SeriesLookup lookup, SeriesDataset data, State state) {
-        if (red.starts(data, lookup)) {
+        if (red.starts(data, lookup, state.redStart)) {
             return transitionTo(RED, lookup, data, state);
         }
-        if (amber.starts(data, lookup)) {
+        if (amber.starts(data, lookup, state.amberStart)) {
             return transitionTo(AMBER, lookup, data, state);
         }
-        if (green.starts(data, lookup)) {
+        if (green.starts(data, lookup, state.greenStart)) {
             return transitionTo(GREEN, lookup, data, state);
         }
         return null;
@@ -199,15 +253,15 @@ public final class Watch implements WatchBuilder, Iterable<Watch.State> {
 
     private Alert checkGreen(SeriesLookup lookup, SeriesDataset data, State state) {
         // green => red?
-        if (red.starts(data, lookup)) {
+        if (red.starts(data, lookup, state.redStart)) {
             return transitionTo(RED, lookup, data, state);
         }
         // green => amber?
-        if (amber.starts(data, lookup)) {
+        if (amber.starts(data, lookup, state.amberStart)) {
             return transitionTo(AMBER, lookup, data, state);
         }
         // continue green?
-        if (!green.stops(data) || green.starts(data, lookup)) {
+        if (!green.stops(data, state.greenStart, state.greenStop) || green.starts(data, lookup, state.greenStart)) {
             return null;
         }
         return transitionTo(WHITE, lookup, data, state);
@@ -215,15 +269,15 @@ public final class Watch implements WatchBuilder, Iterable<Watch.State> {
 
     private Alert checkAmber(SeriesLookup lookup, SeriesDataset data, State state) {
         // amber => red?
-        if (red.starts(data, lookup)) {
+        if (red.starts(data, lookup, state.redStart)) {
             return transitionTo(RED, lookup, data, state);
         }
         // continue amber?
-        if (!amber.stops(data) || amber.starts(data, lookup)) {
+        if (!amber.stops(data, state.amberStart, state.amberStop) || amber.starts(data, lookup, state.amberStart)) {
             return null; // continue
         }
         // amber => green?
-        if (green.starts(data, lookup)) {
+        if (green.starts(data, lookup, state.greenStart)) {
             return transitionTo(GREEN, lookup, data, state);
         }
         return transitionTo(WHITE, lookup, data, state);
@@ -231,15 +285,15 @@ public final class Watch implements WatchBuilder, Iterable<Watch.State> {
 
     private Alert checkRed(SeriesLookup lookup, SeriesDataset data, State state) {
         // continue red?
-        if (!red.stops(data) || red.starts(data, lookup)) {
+        if (!red.stops(data, state.redStart, state.redStop) || red.starts(data, lookup, state.redStart)) {
             return null; // continue
         }
         // red => amber?
-        if (amber.starts(data, lookup)) {
+        if (amber.starts(data, lookup, state.amberStart)) {
             return transitionTo(AMBER, lookup, data, state);
         }
         // red => green?
-        if (green.starts(data, lookup)) {
+        if (green.starts(data, lookup, state.greenStart)) {
             return transitionTo(GREEN, lookup, data, state);
         }
         return transitionTo(WHITE, lookup, data, state);
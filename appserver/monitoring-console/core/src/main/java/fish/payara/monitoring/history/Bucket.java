@@ -0,0 +1,95 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.history;
+
+/**
+ * A mutable accumulator for the min, max, sum and count of all values observed within the bucket of a
+ * {@link Resolution} starting at {@link #start}.
+ *
+ * Instances are not thread-safe and must be guarded by the owner.
+ */
+final class Bucket {
+
+    long start = -1L;
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    long sum;
+    int count;
+    /**
+     * The time of the most recent point added. This is used to not add the same point twice.
+     */
+    long lastTime = -1L;
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    void add(long start, long time, long value) {
+        if (this.start < 0L) {
+            this.start = start;
+        }
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sum += value;
+        count++;
+        lastTime = time;
+    }
+
+    void merge(long start, long min, long max, long sum, int count) {
+        if (count == 0) {
+            return;
+        }
+        if (this.start < 0L) {
+            this.start = start;
+        }
+        this.min = Math.min(this.min, min);
+        this.max = Math.max(this.max, max);
+        this.sum += sum;
+        this.count += count;
+    }
+
+    void reset() {
+        start = -1L;
+        min = Long.MAX_VALUE;
+        max = Long.MIN_VALUE;
+        sum = 0L;
+        count = 0;
+    }
+}
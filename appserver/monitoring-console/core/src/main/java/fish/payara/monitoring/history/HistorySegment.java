@@ -0,0 +1,369 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.history;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link HistorySegment} is an append-only file of fixed size bucket records for a single {@link Resolution}.
+ *
+ * Records are appended in order of their bucket start time so that a range query can use a binary search to find the
+ * first relevant record. The record count in the header is written last and acts as the commit marker for the record.
+ *
+ * The file is read and written with positional {@link FileChannel} I/O instead of being memory-mapped so that sealed
+ * segments can be truncated and deleted on all platforms without waiting for a mapping to be garbage collected.
+ *
+ * <h3>Layout</h3>
+ * <pre>
+ * header : magic(int) version(short) resolution(short) count(int) reserved(int) firstStart(long) lastStart(long)
+ * record : start(long) seriesId(int) count(int) min(long) max(long) sum(long)
+ * </pre>
+ */
+final class HistorySegment implements Comparable<HistorySegment> {
+
+    static final String FILE_EXTENSION = ".mchs";
+    static final int HEADER_BYTES = 32;
+    static final int RECORD_BYTES = 40;
+    private static final int MAGIC = 0x4D434853;
+    private static final short VERSION = 1;
+
+    /**
+     * Number of records read at once by {@link #select(long, long, RecordConsumer)}
+     */
+    private static final int READ_BATCH_RECORDS = 256;
+
+    @FunctionalInterface
+    interface RecordConsumer {
+
+        void accept(int seriesId, long start, long min, long max, long sum, int count);
+    }
+
+    final Resolution resolution;
+    final long firstStart;
+    private final Path file;
+    private final int capacity;
+    /**
+     * Used by the single writer only
+     */
+    private final ByteBuffer writeBuffer = ByteBuffer.allocate(RECORD_BYTES);
+    private volatile FileChannel channel;
+    private volatile int count;
+    private volatile long lastStart;
+    private volatile boolean sealed;
+    private volatile boolean deleted;
+
+    private HistorySegment(Path file, Resolution resolution, long firstStart, int capacity, FileChannel channel,
+            int count, long lastStart, boolean sealed) {
+        this.file = file;
+        this.resolution = resolution;
+        this.firstStart = firstStart;
+        this.capacity = capacity;
+        this.channel = channel;
+        this.count = count;
+        this.lastStart = lastStart;
+        this.sealed = sealed;
+    }
+
+    static String fileName(Resolution resolution, long firstStart, int sequence) {
+        return resolution.filePrefix() + "-" + firstStart + (sequence == 0 ? "" : "-" + sequence) + FILE_EXTENSION;
+    }
+
+    /**
+     * Creates a new segment file.
+     *
+     * @param sequence used to make the file name unique in case another segment file with same start exists
+     */
+    static HistorySegment create(Path dir, Resolution resolution, long firstStart, int capacity, int sequence)
+            throws IOException {
+        Path file = dir.resolve(fileName(resolution, firstStart, sequence));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(0, MAGIC);
+            header.putShort(4, VERSION);
+            header.putShort(6, (short) resolution.ordinal());
+            header.putInt(8, 0);
+            header.putLong(16, firstStart);
+            header.putLong(24, firstStart);
+            writeFully(channel, header, 0);
+            return new HistorySegment(file, resolution, firstStart, capacity, channel, 0, firstStart, false);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Opens an existing segment file read-only. Segments of a previous run are never appended to again.
+     *
+     * @return the opened segment or null if the file is not a valid segment
+     */
+    static HistorySegment open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        HistorySegment segment = null;
+        try {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != MAGIC || header.getShort(4) != VERSION) {
+                return null;
+            }
+            int ordinal = header.getShort(6);
+            Resolution[] resolutions = Resolution.values();
+            if (ordinal < 0 || ordinal >= resolutions.length) {
+                return null;
+            }
+            int capacity = (int) ((size - HEADER_BYTES) / RECORD_BYTES);
+            int count = Math.min(header.getInt(8), capacity);
+            segment = new HistorySegment(file, resolutions[ordinal], header.getLong(16), capacity, channel, count,
+                    header.getLong(24), true);
+            return segment;
+        } finally {
+            if (segment == null) {
+                channel.close();
+            }
+        }
+    }
+
+    boolean isFull() {
+        return count >= capacity;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    int size() {
+        return count;
+    }
+
+    long lastStart() {
+        return lastStart;
+    }
+
+    /**
+     * @return the time (exclusive) up to which this segment can contain data
+     */
+    long endTime() {
+        return lastStart + resolution.millis;
+    }
+
+    long sizeOnDisk() {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return HEADER_BYTES + (long) capacity * RECORD_BYTES;
+        }
+    }
+
+    /**
+     * Appends a record. Only called by the single writer while the segment is not sealed.
+     *
+     * @return true if appended, false if the segment is full or sealed
+     */
+    boolean append(int seriesId, long start, long min, long max, long sum, int count) throws IOException {
+        int index = this.count;
+        if (sealed || index >= capacity || start < lastStart) {
+            return false;
+        }
+        FileChannel ch = channel();
+        ByteBuffer buf = writeBuffer;
+        buf.clear();
+        buf.putLong(start).putInt(seriesId).putInt(count).putLong(min).putLong(max).putLong(sum);
+        buf.flip();
+        writeFully(ch, buf, HEADER_BYTES + (long) index * RECORD_BYTES);
+        buf.clear();
+        buf.putLong(0, start);
+        buf.limit(8);
+        writeFully(ch, buf, 24);
+        buf.clear();
+        buf.putInt(0, index + 1);
+        buf.limit(4);
+        writeFully(ch, buf, 8);
+        this.lastStart = start;
+        this.count = index + 1;
+        return true;
+    }
+
+    /**
+     * Seals the segment so that no more records are appended. The unused tail of the file is cut off.
+     */
+    void seal() throws IOException {
+        if (sealed) {
+            return;
+        }
+        sealed = true;
+        FileChannel ch = channel();
+        ch.force(false);
+        // the tail is unused so reading is not affected, only the records are still accessed
+        ch.truncate(HEADER_BYTES + (long) count * RECORD_BYTES);
+    }
+
+    /**
+     * Visits all records with a start time within the given range.
+     *
+     * @param from start of time range (inclusive)
+     * @param to   end of time range (exclusive)
+     */
+    void select(long from, long to, RecordConsumer consumer) {
+        int n = count; // read count first, records below count are committed
+        if (n == 0 || to <= firstStart || from > lastStart) {
+            return;
+        }
+        try {
+            FileChannel ch = channel();
+            int index = firstIndexAtOrAfter(ch, n, from);
+            ByteBuffer buf = ByteBuffer.allocate(Math.min(n - index, READ_BATCH_RECORDS) * RECORD_BYTES);
+            while (index < n) {
+                int batch = Math.min(n - index, READ_BATCH_RECORDS);
+                buf.clear();
+                buf.limit(batch * RECORD_BYTES);
+                readFully(ch, buf, HEADER_BYTES + (long) index * RECORD_BYTES);
+                for (int pos = 0; pos < batch * RECORD_BYTES; pos += RECORD_BYTES) {
+                    long start = buf.getLong(pos);
+                    if (start >= to) {
+                        return;
+                    }
+                    consumer.accept(buf.getInt(pos + 8), start, buf.getLong(pos + 16), buf.getLong(pos + 24),
+                            buf.getLong(pos + 32), buf.getInt(pos + 12));
+                }
+                index += batch;
+            }
+        } catch (ClosedChannelException ex) {
+            // deleted concurrently or the reading thread was interrupted, nothing (more) to read
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Failed to read monitoring history segment " + file, ex);
+        }
+    }
+
+    private static int firstIndexAtOrAfter(FileChannel ch, int n, long time) throws IOException {
+        ByteBuffer start = ByteBuffer.allocate(8);
+        int low = 0;
+        int high = n;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            start.clear();
+            readFully(ch, start, HEADER_BYTES + (long) mid * RECORD_BYTES);
+            if (start.getLong(0) < time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * A channel interrupted while reading is closed, in that case it is opened again unless the segment is deleted.
+     */
+    private FileChannel channel() throws IOException {
+        FileChannel ch = channel;
+        if (ch.isOpen()) {
+            return ch;
+        }
+        synchronized (this) {
+            ch = channel;
+            if (!ch.isOpen()) {
+                if (deleted) {
+                    throw new ClosedChannelException();
+                }
+                ch = sealed
+                        ? FileChannel.open(file, StandardOpenOption.READ)
+                        : FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel = ch;
+            }
+            return ch;
+        }
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        long pos = position;
+        while (buf.hasRemaining()) {
+            int read = ch.read(buf, pos);
+            if (read < 0) {
+                throw new IOException("Unexpected end of monitoring history segment");
+            }
+            pos += read;
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, long position) throws IOException {
+        long pos = position;
+        while (buf.hasRemaining()) {
+            pos += ch.write(buf, pos);
+        }
+    }
+
+    /**
+     * Closes the file. It is opened again should the segment be used afterwards.
+     */
+    synchronized void close() throws IOException {
+        channel.close();
+    }
+
+    synchronized void delete() throws IOException {
+        sealed = true;
+        deleted = true;
+        count = 0;
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Override
+    public int compareTo(HistorySegment other) {
+        return Long.compare(firstStart, other.firstStart);
+    }
+
+    @Override
+    public String toString() {
+        return file.getFileName() + "[" + count + "/" + capacity + "]";
+    }
+}
@@ -0,0 +1,484 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.history;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fish.payara.monitoring.model.Series;
+import fish.payara.monitoring.model.SeriesDataset;
+import fish.payara.monitoring.model.SeriesHistory;
+
+/**
+ * A persistent second tier for monitoring data that rolls up the per-second points of the in-memory
+ * {@link SeriesDataset}s into per-minute and per-hour min/max/sum/count buckets stored in append-only
+ * {@link HistorySegment} files.
+ *
+ * <h3>Threading</h3>
+ *
+ * All mutating methods ({@link #add(SeriesDataset)}, {@link #flush(long)} and {@link #close()}) must be called by a
+ * single writer thread, usually the one doing the data collection. Queries via
+ * {@link #selectHistory(Series, long, long, Resolution, Iterable)} can be made concurrently by any thread. The writer
+ * replaces the list of segments of a {@link Resolution} as a whole so that queries never see a merged segment together
+ * with the segments it was merged from.
+ *
+ * <h3>Disk Usage</h3>
+ *
+ * Segments older than the retention of their {@link Resolution} are removed. Should the total size of all segments
+ * exceed the configured maximum the oldest minute segments are removed first as their data is still available in
+ * hour resolution. Small segments (e.g. left by restarts) are merged into one.
+ */
+public final class PersistentHistoryStore implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(PersistentHistoryStore.class.getName());
+
+    private static final int SEGMENT_CAPACITY = 200_000;
+
+    /**
+     * The minute and hour {@link Bucket}s currently filled for a series.
+     */
+    private static final class OpenBuckets {
+
+        final int seriesId;
+        final Bucket minute = new Bucket();
+        final Bucket hour = new Bucket();
+
+        OpenBuckets(int seriesId) {
+            this.seriesId = seriesId;
+        }
+
+        Bucket get(Resolution resolution) {
+            return resolution == Resolution.MINUTE ? minute : hour;
+        }
+    }
+
+    private final Path dir;
+    private final long maxBytesOnDisk;
+    private final SeriesDictionary dictionary;
+    private final Map<Resolution, AtomicReference<List<HistorySegment>>> segments = new EnumMap<>(Resolution.class);
+    private final Map<Resolution, Long> flushedUntil = new EnumMap<>(Resolution.class);
+    private final Map<Series, Map<String, OpenBuckets>> open = new HashMap<>();
+    private final Map<Resolution, Long> nextFlush = new EnumMap<>(Resolution.class);
+
+    public PersistentHistoryStore(Path dir, long maxBytesOnDisk) throws IOException {
+        this.dir = dir;
+        this.maxBytesOnDisk = maxBytesOnDisk;
+        Files.createDirectories(dir);
+        this.dictionary = new SeriesDictionary(dir);
+        for (Resolution r : Resolution.values()) {
+            segments.put(r, new AtomicReference<>(emptyList()));
+            flushedUntil.put(r, -1L);
+            nextFlush.put(r, Long.MAX_VALUE);
+        }
+        loadSegments();
+        recoverOpenHour();
+    }
+
+    private void loadSegments() throws IOException {
+        Map<Resolution, List<HistorySegment>> loaded = new EnumMap<>(Resolution.class);
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + HistorySegment.FILE_EXTENSION)) {
+            for (Path file : files) {
+                try {
+                    HistorySegment segment = HistorySegment.open(file);
+                    if (segment != null) {
+                        loaded.computeIfAbsent(segment.resolution, key -> new ArrayList<>()).add(segment);
+                    }
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Failed to open monitoring history segment " + file, ex);
+                }
+            }
+        }
+        for (Map.Entry<Resolution, List<HistorySegment>> e : loaded.entrySet()) {
+            List<HistorySegment> list = e.getValue();
+            Collections.sort(list);
+            replaceSegments(e.getKey(), list);
+            for (HistorySegment s : list) {
+                if (s.size() > 0) {
+                    flushedUntil.put(e.getKey(), Math.max(flushedUntil.get(e.getKey()), s.endTime()));
+                }
+            }
+        }
+    }
+
+    /**
+     * The hour bucket for the ongoing hour is only written at the end of the hour. To not loose this data when
+     * restarting the minute buckets of the ongoing hour are merged back into the open hour buckets.
+     */
+    private void recoverOpenHour() {
+        long minuteEnd = flushedUntil.get(Resolution.MINUTE);
+        if (minuteEnd < 0) {
+            return;
+        }
+        long hourStart = Math.max(Resolution.HOUR.bucketStart(minuteEnd - 1), flushedUntil.get(Resolution.HOUR));
+        for (HistorySegment segment : segments(Resolution.MINUTE)) {
+            segment.select(hourStart, Long.MAX_VALUE, (seriesId, start, min, max, sum, count) -> {
+                SeriesDictionary.Entry e = dictionary.entry(seriesId);
+                if (e != null) {
+                    openBuckets(e.instance, e.series, e.id).hour.merge(Resolution.HOUR.bucketStart(start), min, max,
+                            sum, count);
+                }
+            });
+        }
+        nextFlush.put(Resolution.HOUR, Resolution.HOUR.bucketStart(hourStart) + Resolution.HOUR.millis);
+    }
+
+    private List<HistorySegment> segments(Resolution resolution) {
+        return segments.get(resolution).get();
+    }
+
+    private void replaceSegments(Resolution resolution, List<HistorySegment> list) {
+        segments.get(resolution).set(unmodifiableList(list));
+    }
+
+    private OpenBuckets openBuckets(String instance, Series series, int id) {
+        return open.computeIfAbsent(series, key -> new HashMap<>()).computeIfAbsent(instance,
+                key -> new OpenBuckets(id));
+    }
+
+    /**
+     * Adds the most recent point of the given {@link SeriesDataset} unless it already has been added before.
+     */
+    public void add(SeriesDataset dataset) {
+        if (dataset.size() == 0) {
+            return;
+        }
+        add(dataset.getInstance(), dataset.getSeries(), dataset.lastTime(), dataset.lastValue());
+    }
+
+    public void add(String instance, Series series, long time, long value) {
+        long minuteStart = Resolution.MINUTE.bucketStart(time);
+        if (minuteStart < flushedUntil.get(Resolution.MINUTE)) {
+            return; // too late
+        }
+        Map<String, OpenBuckets> byInstance = open.get(series);
+        OpenBuckets buckets = byInstance == null ? null : byInstance.get(instance);
+        if (buckets == null) {
+            try {
+                buckets = openBuckets(instance, series, dictionary.idOf(instance, series));
+            } catch (IOException ex) {
+                LOGGER.log(Level.FINE, "Failed to assign history ID for " + series, ex);
+                return;
+            }
+        }
+        Bucket minute = buckets.minute;
+        if (time <= minute.lastTime) {
+            return; // already added
+        }
+        if (!minute.isEmpty() && minute.start != minuteStart) {
+            roll(buckets, Resolution.MINUTE);
+        }
+        minute.add(minuteStart, time, value);
+        if (nextFlush.get(Resolution.MINUTE) == Long.MAX_VALUE) {
+            nextFlush.put(Resolution.MINUTE, minuteStart + Resolution.MINUTE.millis);
+        }
+    }
+
+    /**
+     * Writes all buckets that are complete at the given time to their segments.
+     *
+     * @param now current time in milliseconds
+     */
+    public void flush(long now) {
+        boolean hourFlushed = false;
+        for (Resolution r : Resolution.values()) {
+            if (now >= nextFlush.get(r)) {
+                long end = r.bucketStart(now);
+                for (Map<String, OpenBuckets> byInstance : open.values()) {
+                    for (OpenBuckets buckets : byInstance.values()) {
+                        Bucket b = buckets.get(r);
+                        if (!b.isEmpty() && b.start < end) {
+                            roll(buckets, r);
+                        }
+                    }
+                }
+                flushedUntil.put(r, Math.max(flushedUntil.get(r), end));
+                nextFlush.put(r, end + r.millis);
+                hourFlushed |= r == Resolution.HOUR;
+            }
+        }
+        if (hourFlushed) {
+            compact(now);
+        }
+    }
+
+    private void roll(OpenBuckets buckets, Resolution resolution) {
+        Bucket b = buckets.get(resolution);
+        if (resolution == Resolution.MINUTE) {
+            long hourStart = Resolution.HOUR.bucketStart(b.start);
+            Bucket hour = buckets.hour;
+            if (!hour.isEmpty() && hour.start != hourStart) {
+                roll(buckets, Resolution.HOUR);
+            }
+            hour.merge(hourStart, b.min, b.max, b.sum, b.count);
+            if (nextFlush.get(Resolution.HOUR) == Long.MAX_VALUE) {
+                nextFlush.put(Resolution.HOUR, hourStart + Resolution.HOUR.millis);
+            }
+        }
+        append(resolution, buckets.seriesId, b);
+        b.reset();
+    }
+
+    private void append(Resolution resolution, int seriesId, Bucket b) {
+        List<HistorySegment> list = segments(resolution);
+        HistorySegment active = list.isEmpty() ? null : list.get(list.size() - 1);
+        try {
+            if (active == null || active.isSealed() || !active.append(seriesId, b.start, b.min, b.max, b.sum, b.count)) {
+                if (active != null && b.start < active.lastStart()) {
+                    return; // out of order, would break binary search
+                }
+                if (active != null) {
+                    seal(active);
+                }
+                active = createSegment(resolution, b.start, SEGMENT_CAPACITY);
+                List<HistorySegment> extended = new ArrayList<>(list);
+                extended.add(active);
+                replaceSegments(resolution, extended);
+                active.append(seriesId, b.start, b.min, b.max, b.sum, b.count);
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Failed to write monitoring history", ex);
+        }
+    }
+
+    /**
+     * Seals the segment which forces its records to disk, therefore the IDs used by the records are forced first.
+     */
+    private void seal(HistorySegment segment) throws IOException {
+        dictionary.force();
+        segment.seal();
+    }
+
+    private HistorySegment createSegment(Resolution resolution, long firstStart, int capacity) throws IOException {
+        int sequence = 0;
+        while (true) {
+            try {
+                return HistorySegment.create(dir, resolution, firstStart, capacity, sequence);
+            } catch (FileAlreadyExistsException ex) {
+                sequence++;
+            }
+        }
+    }
+
+    /**
+     * Removes expired segments, merges small sealed segments and enforces the maximum disk usage.
+     */
+    void compact(long now) {
+        try {
+            for (Resolution r : Resolution.values()) {
+                for (HistorySegment s : segments(r)) {
+                    if (s.isSealed() && s.endTime() < now - r.defaultRetention) {
+                        remove(r, s);
+                    }
+                }
+                mergeSmallSegments(r);
+            }
+            long total = totalBytesOnDisk();
+            for (Resolution r : Resolution.values()) {
+                List<HistorySegment> list = segments(r);
+                while (total > maxBytesOnDisk && !list.isEmpty() && list.get(0).isSealed()) {
+                    HistorySegment oldest = list.get(0);
+                    total -= oldest.sizeOnDisk();
+                    remove(r, oldest);
+                    list = segments(r);
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.FINE, "Failed to compact monitoring history", ex);
+        }
+    }
+
+    private void mergeSmallSegments(Resolution resolution) throws IOException {
+        int smallSize = SEGMENT_CAPACITY / 4;
+        List<HistorySegment> list = new ArrayList<>(segments(resolution));
+        for (int i = 0; i + 1 < list.size(); i++) {
+            HistorySegment a = list.get(i);
+            HistorySegment b = list.get(i + 1);
+            if (a.isSealed() && b.isSealed() && a.size() < smallSize && b.size() < smallSize) {
+                HistorySegment merged = createSegment(resolution, a.firstStart, a.size() + b.size());
+                HistorySegment.RecordConsumer copy = (seriesId, start, min, max, sum, count) -> {
+                    try {
+                        merged.append(seriesId, start, min, max, sum, count);
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                };
+                try {
+                    a.select(Long.MIN_VALUE, Long.MAX_VALUE, copy);
+                    b.select(Long.MIN_VALUE, Long.MAX_VALUE, copy);
+                } catch (UncheckedIOException ex) {
+                    merged.delete();
+                    throw ex.getCause();
+                }
+                seal(merged);
+                list.set(i, merged);
+                list.remove(i + 1);
+                // queries see either the merged segment or the two segments it replaces
+                replaceSegments(resolution, new ArrayList<>(list));
+                a.delete();
+                b.delete();
+                i--; // see if merged can be merged with the next one
+            }
+        }
+    }
+
+    private void remove(Resolution resolution, HistorySegment segment) throws IOException {
+        List<HistorySegment> list = new ArrayList<>(segments(resolution));
+        list.remove(segment);
+        replaceSegments(resolution, list);
+        segment.delete();
+    }
+
+    public long totalBytesOnDisk() {
+        long total = 0L;
+        for (Resolution r : Resolution.values()) {
+            for (HistorySegment s : segments(r)) {
+                total += s.sizeOnDisk();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Selects the persisted history for the given {@link Series} (which can be a pattern) for the given instances.
+     * Only the buckets within the range are read from the segment files.
+     *
+     * @param series     the series or pattern to select
+     * @param from       start of time range (inclusive)
+     * @param to         end of time range (exclusive)
+     * @param resolution the resolution to use, null to pick a fitting one for the range
+     * @param instances  the instances to include
+     * @return a {@link SeriesHistory} for each matching series and instance that has data in the range
+     */
+    public List<SeriesHistory> selectHistory(Series series, long from, long to, Resolution resolution,
+            Iterable<String> instances) {
+        List<SeriesDictionary.Entry> entries = dictionary.select(series, instances);
+        if (entries.isEmpty()) {
+            return emptyList();
+        }
+        Resolution r = resolution != null ? resolution : Resolution.forRange(from, to, 1440);
+        Map<Integer, long[]> dataById = new HashMap<>();
+        int[] sizeById = new int[entries.size()];
+        Map<Integer, Integer> indexById = new HashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            indexById.put(entries.get(i).id, i);
+        }
+        for (HistorySegment segment : segments(r)) {
+            segment.select(from, to, (seriesId, start, min, max, sum, count) -> {
+                Integer index = indexById.get(seriesId);
+                if (index != null) {
+                    int size = sizeById[index];
+                    long[] data = dataById.get(seriesId);
+                    if (data == null) {
+                        data = new long[SeriesHistory.FIELDS * 16];
+                        dataById.put(seriesId, data);
+                    } else if (size + SeriesHistory.FIELDS > data.length) {
+                        data = Arrays.copyOf(data, data.length * 2);
+                        dataById.put(seriesId, data);
+                    }
+                    data[size++] = start;
+                    data[size++] = min;
+                    data[size++] = max;
+                    data[size++] = sum;
+                    data[size++] = count;
+                    sizeById[index] = size;
+                }
+            });
+        }
+        List<SeriesHistory> res = new ArrayList<>(dataById.size());
+        for (int i = 0; i < entries.size(); i++) {
+            SeriesDictionary.Entry e = entries.get(i);
+            long[] data = dataById.get(e.id);
+            if (data != null) {
+                res.add(new SeriesHistory(e.series, e.instance, r.millis, Arrays.copyOf(data, sizeById[i])));
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Writes the open minute buckets, seals the active segments and closes all segment files.
+     *
+     * The open hour buckets are not written as the hour is not complete yet. The next start recovers them from the
+     * minute buckets of the ongoing hour.
+     */
+    @Override
+    public void close() throws IOException {
+        long minutesEnd = flushedUntil.get(Resolution.MINUTE);
+        for (Map<String, OpenBuckets> byInstance : open.values()) {
+            for (OpenBuckets buckets : byInstance.values()) {
+                Bucket minute = buckets.minute;
+                if (!minute.isEmpty()) {
+                    minutesEnd = Math.max(minutesEnd, minute.start + Resolution.MINUTE.millis);
+                    roll(buckets, Resolution.MINUTE);
+                }
+            }
+        }
+        // points of a minute already written are ignored, as after a restart
+        flushedUntil.put(Resolution.MINUTE, minutesEnd);
+        for (Resolution r : Resolution.values()) {
+            List<HistorySegment> list = segments(r);
+            if (!list.isEmpty()) {
+                seal(list.get(list.size() - 1));
+            }
+            for (HistorySegment segment : list) {
+                segment.close();
+            }
+        }
+        dictionary.close();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.history;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * The time resolutions (bucket lengths) kept by the {@link PersistentHistoryStore}.
+ */
+public enum Resolution {
+
+    MINUTE(MINUTES.toMillis(1), DAYS.toMillis(7)),
+    HOUR(HOURS.toMillis(1), DAYS.toMillis(365));
+
+    /**
+     * Length of a bucket in milliseconds
+     */
+    public final long millis;
+    /**
+     * Default time in milliseconds a bucket is kept before its segment is removed
+     */
+    public final long defaultRetention;
+
+    Resolution(long millis, long defaultRetention) {
+        this.millis = millis;
+        this.defaultRetention = defaultRetention;
+    }
+
+    /**
+     * @param time any point in time in milliseconds
+     * @return the start of the bucket the given time belongs to
+     */
+    public long bucketStart(long time) {
+        return time - (time % millis);
+    }
+
+    /**
+     * @return the finest {@link Resolution} that does not return more than the given number of buckets for the given
+     *         time range
+     */
+    public static Resolution forRange(long from, long to, int maxBuckets) {
+        for (Resolution r : values()) {
+            if ((to - from) / r.millis <= maxBuckets) {
+                return r;
+            }
+        }
+        return HOUR;
+    }
+
+    String filePrefix() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.history;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fish.payara.monitoring.model.Series;
+
+/**
+ * Assigns each combination of instance and {@link Series} a compact numeric ID used in {@link HistorySegment} records.
+ *
+ * The assignments are kept in an append-only file so IDs stay stable across restarts. A new assignment is written to
+ * the file before its ID is returned so that no record in a {@link HistorySegment} can refer to an ID that is not
+ * (yet) known in the file. Before segments are forced to disk the dictionary has to be {@link #force()}d.
+ */
+final class SeriesDictionary {
+
+    private static final Logger LOGGER = Logger.getLogger(SeriesDictionary.class.getName());
+
+    static final String FILE_NAME = "series.dict";
+
+    static final class Entry {
+
+        final int id;
+        final String instance;
+        final Series series;
+
+        Entry(int id, String instance, Series series) {
+            this.id = id;
+            this.instance = instance;
+            this.series = series;
+        }
+    }
+
+    private final Path file;
+    private final Map<String, Map<Series, Entry>> byInstance = new ConcurrentHashMap<>();
+    private volatile Entry[] byId = new Entry[64];
+    private int size;
+    private final FileChannel out;
+    private boolean forced = true;
+
+    SeriesDictionary(Path dir) throws IOException {
+        this.file = dir.resolve(FILE_NAME);
+        load();
+        this.out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int id = in.readInt();
+                String instance = in.readUTF();
+                String series = in.readUTF();
+                try {
+                    register(new Entry(id, instance, new Series(series)));
+                } catch (IllegalArgumentException ex) {
+                    LOGGER.log(Level.FINEST, "Failed to load history series: " + series, ex);
+                }
+            }
+        } catch (EOFException ex) {
+            // end of dictionary, a partially written last entry is ignored
+        }
+    }
+
+    private void register(Entry e) {
+        Entry[] ids = byId;
+        if (e.id >= ids.length) {
+            Entry[] grown = new Entry[Math.max(ids.length * 2, e.id + 1)];
+            System.arraycopy(ids, 0, grown, 0, ids.length);
+            ids = grown;
+        }
+        ids[e.id] = e;
+        byId = ids;
+        size = Math.max(size, e.id + 1);
+        byInstance.computeIfAbsent(e.instance, key -> new ConcurrentHashMap<>()).put(e.series, e);
+    }
+
+    /**
+     * @return the ID for the given instance and {@link Series}, a new ID is assigned if needed
+     */
+    int idOf(String instance, Series series) throws IOException {
+        Map<Series, Entry> entries = byInstance.get(instance);
+        Entry e = entries == null ? null : entries.get(series);
+        if (e != null) {
+            return e.id;
+        }
+        synchronized (this) {
+            entries = byInstance.get(instance);
+            e = entries == null ? null : entries.get(series);
+            if (e != null) {
+                return e.id;
+            }
+            e = new Entry(size, instance, series);
+            write(e);
+            register(e);
+            return e.id;
+        }
+    }
+
+    /**
+     * Writes the entry with a single write so that it is passed on to the file system before its ID is used. A crash
+     * while writing can at most leave a partial last entry which is ignored on {@link #load()}.
+     */
+    private void write(Entry e) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream entry = new DataOutputStream(bytes)) {
+            entry.writeInt(e.id);
+            entry.writeUTF(e.instance);
+            entry.writeUTF(e.series.toString());
+        }
+        ByteBuffer buf = ByteBuffer.wrap(bytes.toByteArray());
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+        forced = false;
+    }
+
+    Entry entry(int id) {
+        Entry[] ids = byId;
+        return id >= 0 && id < ids.length ? ids[id] : null;
+    }
+
+    /**
+     * @return all entries for the given {@link Series} (which might be a pattern) and the given instances
+     */
+    List<Entry> select(Series series, Iterable<String> instances) {
+        List<Entry> matches = new ArrayList<>();
+        for (String instance : instances) {
+            Map<Series, Entry> entries = byInstance.get(instance);
+            if (entries != null) {
+                if (series.isPattern()) {
+                    for (Entry e : entries.values()) {
+                        if (series.matches(e.series)) {
+                            matches.add(e);
+                        }
+                    }
+                } else {
+                    Entry e = entries.get(series);
+                    if (e != null) {
+                        matches.add(e);
+                    }
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Makes sure all entries written so far are stored on disk. Must be called before records that might use IDs of
+     * these entries are forced to disk.
+     */
+    synchronized void force() throws IOException {
+        if (!forced) {
+            out.force(false);
+            forced = true;
+        }
+    }
+
+    synchronized void close() throws IOException {
+        force();
+        out.close();
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package fish.payara.monitoring.model;
+
+import java.math.BigInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A mutable {@link SeriesDataset} keeping the points of a fixed window size in a ring buffer.
+ * 
+ * In contrast to the {@link EmptyDataset}, {@link ConstantDataset}, {@link PartialDataset} and {@link StableDataset}
+ * chain {@link #add(long, long)} does not create a new object but updates this instance in place and returns it.
+ * Adding a point therefore does not allocate any memory. This makes it the preferred implementation when many series
+ * are collected each second.
+ * 
+ * <h3>Thread Safety</h3>
+ * 
+ * Points must only be added by a single thread at a time (or in a way that establishes a happens-before relation
+ * between successive writers, like {@link java.util.concurrent.ConcurrentHashMap#compute}). Readers can access the
+ * dataset concurrently. Single values are always consistent. Methods returning multiple values, like
+ * {@link #points()} or {@link #snapshot()}, use a sequence lock: the writer increments {@link #version} before and
+ * after each update and readers retry until they did read the data without a concurrent update.
+ * 
+ * Since the instance changes over time {@link #snapshot()} should be used when the state at a particular point in time
+ * has to be kept.
+ */
+public final class RingBufferDataset extends SeriesDataset {
+
+    private final int capacity;
+    /**
+     * Ring buffer twice the {@link #capacity} for time and values alternating: [t1,v1,t2,v2,...]
+     */
+    private final AtomicLongArray data;
+
+    /**
+     * Odd while an update is in progress, even otherwise
+     */
+    private volatile long version;
+    /**
+     * Index (of the point, not the array) of the oldest point
+     */
+    private volatile int head;
+    private volatile int size;
+
+    private volatile long observedSince = -1L;
+    private volatile int observedValues;
+    private volatile int observedValueChanges;
+    private volatile long observedMin = Long.MAX_VALUE;
+    private volatile long observedMax = Long.MIN_VALUE;
+    /**
+     * The observed sum as 128 bit two's complement number so it can be updated without allocation
+     */
+    private volatile long observedSumHigh;
+    private volatile long observedSumLow;
+    private volatile int stableCount;
+    private volatile long stableSince = -1L;
+
+    public RingBufferDataset(String instance, Series series, int capacity) {
+        super(series, instance, -1L, 0);
+        this.capacity = capacity;
+        this.data = new AtomicLongArray(capacity * 2);
+    }
+
+    @Override
+    public SeriesDataset add(long time, long value) {
+        version++;
+        try {
+            int n = size;
+            observedValues++;
+            if (n == 0) {
+                observedSince = time;
+            }
+            observedMin = Math.min(observedMin, value);
+            observedMax = Math.max(observedMax, value);
+            addToSum(value);
+            if (n > 0 && time == lastTime()) {
+                // same second: values are summed up
+                int index = 2 * ((head + n - 1) % capacity) + 1;
+                data.set(index, data.get(index) + value);
+                observedValueChanges++;
+                stableCount = 1;
+                stableSince = time;
+                return this;
+            }
+            boolean stable = n > 0 && value == lastValue();
+            if (!stable) {
+                observedValueChanges++;
+                stableCount = 1;
+                stableSince = time;
+            } else {
+                stableCount++;
+            }
+            // data is written before head or size change so single value reads stay consistent
+            int h = head;
+            int index = 2 * ((h + n) % capacity);
+            data.set(index, time);
+            data.set(index + 1, value);
+            if (n < capacity) {
+                size = n + 1;
+            } else {
+                head = (h + 1) % capacity;
+            }
+            return this;
+        } finally {
+            version++;
+        }
+    }
+
+    private void addToSum(long value) {
+        long low = observedSumLow;
+        long sumLow = low + value;
+        long carry = Long.compareUnsigned(sumLow, low) < 0 ? 1L : 0L;
+        observedSumHigh += carry + (value >> 63); // sign extension of value to the high bits
+        observedSumLow = sumLow;
+    }
+
+    @Override
+    public SeriesDataset snapshot() {
+        while (true) {
+            long v = version;
+            if ((v & 1L) == 0L) {
+                long[] points = points(v);
+                if (points != null) {
+                    SnapshotDataset snapshot = new SnapshotDataset(this, points, observedValues, observedSince,
+                            observedValueChanges, observedMin, observedMax, getObservedSum(), stableCount,
+                            stableSince, isStable());
+                    if (version == v) {
+                        return snapshot;
+                    }
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public long[] points() {
+        while (true) {
+            long v = version;
+            if ((v & 1L) == 0L) {
+                long[] points = points(v);
+                if (points != null) {
+                    return points;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    @Override
+    public long[] lastPoints(int n) {
+        while (true) {
+            long v = version;
+            if ((v & 1L) == 0L) {
+                long[] points = points(v, n);
+                if (points != null) {
+                    return points;
+                }
+            }
+            Thread.yield();
+        }
+    }
+
+    private long[] points(long expectedVersion) {
+        return points(expectedVersion, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return the most recent points read or null if the read was concurrent to an update
+     */
+    private long[] points(long expectedVersion, int maxPoints) {
+        int h = head;
+        int size = this.size;
+        int n = Math.min(size, Math.max(0, maxPoints));
+        int skip = size - n;
+        long[] points = new long[n * 2];
+        for (int i = 0; i < n; i++) {
+            int index = 2 * ((h + skip + i) % capacity);
+            points[2 * i] = data.get(index);
+            points[2 * i + 1] = data.get(index + 1);
+        }
+        return version == expectedVersion ? points : null;
+    }
+
+    @Override
+    public int getObservedValues() {
+        return observedValues;
+    }
+
+    @Override
+    public long getObservedSince() {
+        return observedSince;
+    }
+
+    @Override
+    public int getObservedValueChanges() {
+        return observedValueChanges;
+    }
+
+    @Override
+    public long getObservedMin() {
+        return observedMin;
+    }
+
+    @Override
+    public long getObservedMax() {
+        return observedMax;
+    }
+
+    @Override
+    public BigInteger getObservedSum() {
+        long high;
+        long low;
+        long v;
+        do {
+            v = version;
+            high = observedSumHigh;
+            low = observedSumLow;
+        } while ((v & 1L) != 0L || version != v);
+        BigInteger unsignedLow = BigInteger.valueOf(low >>> 1).shiftLeft(1).or(BigInteger.valueOf(low & 1L));
+        return BigInteger.valueOf(high).shiftLeft(64).add(unsignedLow);
+    }
+
+    @Override
+    public long getStableSince() {
+        return stableSince;
+    }
+
+    @Override
+    public int getStableCount() {
+        return stableCount;
+    }
+
+    @Override
+    public boolean isOutdated() {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long lastValue() {
+        int n = size;
+        return n == 0 ? 0L : data.get(2 * ((head + n - 1) % capacity) + 1);
+    }
+
+    @Override
+    public long firstTime() {
+        return size == 0 ? -1L : data.get(2 * head);
+    }
+
+    @Override
+    public long lastTime() {
+        int n = size;
+        return n == 0 ? -1L : data.get(2 * ((head + n - 1) % capacity));
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public int estimatedBytesMemory() {
+        return 128 + (capacity * 16);
+    }
+
+    @Override
+    public boolean isStable() {
+        int n = size;
+        return n > 0 && stableCount >= n;
+    }
+}
@@ -42,6 +42,7 @@ package fish.payara.monitoring.model;
 
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.util.Arrays;
 
 /**
  * A {@link SeriesDataset} contains data observed so far for a particular {@link Series}.
@@ -83,7 +84,8 @@ public abstract class SeriesDataset implements Serializable {
     }
 
     public final BigInteger getObservedAvg() {
-        return observedValues == 0 ? BigInteger.ZERO : getObservedSum().divide(BigInteger.valueOf(observedValues));
+        int values = getObservedValues();
+        return values == 0 ? BigInteger.ZERO : getObservedSum().divide(BigInteger.valueOf(values));
     }
 
     /**
@@ -96,7 +98,7 @@ public abstract class SeriesDataset implements Serializable {
     /**
      * The number of times a value was observed since start of collection
      */
-    public final int getObservedValues() {
+    public int getObservedValues() {
         return observedValues;
     }
 
@@ -120,8 +122,31 @@ public abstract class SeriesDataset implements Serializable {
      */
     public abstract long[] points();
 
+    /**
+     * Same as {@link #points()} but only includes the given number of most recent points. Implementations that can
+     * read their recent points directly should override this to avoid copying all of their points.
+     *
+     * @param n maximum number of points to include
+     * @return the most recent points of this dataset as flat array with alternating time and value data. Contains less
+     *         than the given number of points if the dataset does not have as many points.
+     */
+    public long[] lastPoints(int n) {
+        long[] points = points();
+        return 2 * n >= points.length ? points : Arrays.copyOfRange(points, points.length - 2 * n, points.length);
+    }
+
     public abstract SeriesDataset add(long time, long value);
 
+    /**
+     * Immutable datasets return themselves. Mutable datasets like the {@link RingBufferDataset} return an immutable
+     * copy of their current state.
+     *
+     * @return a dataset that does not change any more, to be used when the state at this point in time should be kept
+     */
+    public SeriesDataset snapshot() {
+        return this;
+    }
+
     /**
      * @return The smallest value observed so far. If no value was observed {@link Long#MAX_VALUE}.
      */
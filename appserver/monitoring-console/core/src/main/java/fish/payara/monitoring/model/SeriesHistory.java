@@ -0,0 +1,136 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.model;
+
+/**
+ * A {@link SeriesHistory} is the result of a query against the persistent history tier. In contrast to a
+ * {@link SeriesDataset} the points are not individual observations but aggregates (buckets) of all observations made
+ * within the {@link #getResolution()} of each bucket.
+ *
+ * Like {@link SeriesDataset#points()} the data is kept in a single flat array with alternating fields:
+ * <pre>
+ * [start0, min0, max0, sum0, count0, start1, min1, max1, sum1, count1, ...]
+ * </pre>
+ */
+public final class SeriesHistory {
+
+    /**
+     * Number of fields (array elements) used per bucket
+     */
+    public static final int FIELDS = 5;
+
+    private final Series series;
+    private final String instance;
+    private final long resolution;
+    private final long[] buckets;
+
+    public SeriesHistory(Series series, String instance, long resolution, long[] buckets) {
+        this.series = series;
+        this.instance = instance;
+        this.resolution = resolution;
+        this.buckets = buckets;
+    }
+
+    public Series getSeries() {
+        return series;
+    }
+
+    public String getInstance() {
+        return instance;
+    }
+
+    /**
+     * @return the length of each bucket in milliseconds
+     */
+    public long getResolution() {
+        return resolution;
+    }
+
+    /**
+     * @return number of buckets in this history
+     */
+    public int size() {
+        return buckets.length / FIELDS;
+    }
+
+    public long start(int index) {
+        return buckets[index * FIELDS];
+    }
+
+    public long min(int index) {
+        return buckets[index * FIELDS + 1];
+    }
+
+    public long max(int index) {
+        return buckets[index * FIELDS + 2];
+    }
+
+    public long sum(int index) {
+        return buckets[index * FIELDS + 3];
+    }
+
+    public long count(int index) {
+        return buckets[index * FIELDS + 4];
+    }
+
+    public long avg(int index) {
+        long count = count(index);
+        return count == 0L ? 0L : sum(index) / count;
+    }
+
+    /**
+     * @return this history as flat array with alternating start, min, max, sum and count data.
+     */
+    public long[] buckets() {
+        return buckets.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        str.append(series).append('@').append(instance).append('/').append(resolution).append("ms[\n");
+        for (int i = 0; i < size(); i++) {
+            str.append('\t').append(start(i)).append('@').append(min(i)).append('|').append(avg(i)).append('|')
+                .append(max(i)).append(" (").append(count(i)).append(")\n");
+        }
+        str.append(']');
+        return str.toString();
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+
+package fish.payara.monitoring.model;
+
+import java.math.BigInteger;
+
+/**
+ * An immutable copy of the state of a mutable {@link SeriesDataset} at a point in time.
+ * 
+ * @see SeriesDataset#snapshot()
+ */
+public final class SnapshotDataset extends SeriesDataset {
+
+    private final long[] points;
+    private final int capacity;
+    private final int observedValues;
+    private final int observedValueChanges;
+    private final long observedMin;
+    private final long observedMax;
+    private final BigInteger observedSum;
+    private final int stableCount;
+    private final long stableSince;
+    private final boolean stable;
+
+    SnapshotDataset(SeriesDataset source, long[] points, int observedValues, long observedSince,
+            int observedValueChanges, long observedMin, long observedMax, BigInteger observedSum, int stableCount,
+            long stableSince, boolean stable) {
+        super(source.getSeries(), source.getInstance(), observedSince, observedValues);
+        this.points = points;
+        this.capacity = source.capacity();
+        this.observedValues = observedValues;
+        this.observedValueChanges = observedValueChanges;
+        this.observedMin = observedMin;
+        this.observedMax = observedMax;
+        this.observedSum = observedSum;
+        this.stableCount = stableCount;
+        this.stableSince = stableSince;
+        this.stable = stable;
+    }
+
+    @Override
+    public SeriesDataset add(long time, long value) {
+        throw new UnsupportedOperationException("Snapshots are read-only");
+    }
+
+    @Override
+    public long[] points() {
+        return points.clone();
+    }
+
+    @Override
+    public int getObservedValues() {
+        return observedValues;
+    }
+
+    @Override
+    public int getObservedValueChanges() {
+        return observedValueChanges;
+    }
+
+    @Override
+    public long getObservedMin() {
+        return observedMin;
+    }
+
+    @Override
+    public long getObservedMax() {
+        return observedMax;
+    }
+
+    @Override
+    public BigInteger getObservedSum() {
+        return observedSum;
+    }
+
+    @Override
+    public long getStableSince() {
+        return stableSince;
+    }
+
+    @Override
+    public int getStableCount() {
+        return stableCount;
+    }
+
+    @Override
+    public boolean isOutdated() {
+        return false;
+    }
+
+    @Override
+    public int size() {
+        return points.length / 2;
+    }
+
+    @Override
+    public long lastValue() {
+        return points.length == 0 ? 0L : points[points.length - 1];
+    }
+
+    @Override
+    public long firstTime() {
+        return points.length == 0 ? -1L : points[0];
+    }
+
+    @Override
+    public long lastTime() {
+        return points.length == 0 ? -1L : points[points.length - 2];
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public int estimatedBytesMemory() {
+        return 96 + (points.length * 8);
+    }
+
+    @Override
+    public boolean isStable() {
+        return stable;
+    }
+}
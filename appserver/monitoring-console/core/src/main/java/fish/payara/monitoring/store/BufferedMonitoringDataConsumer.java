@@ -0,0 +1,128 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.store;
+
+import java.util.Arrays;
+
+/**
+ * A {@link MonitoringDataConsumer} that buffers all accepted key-value pairs so they can later be replayed to another
+ * {@link MonitoringDataConsumer} by another thread.
+ *
+ * The characters of the keys are copied into a single growing array so that no {@link String}s are created. The
+ * buffer is meant to be reused by calling {@link #clear()} so that in steady state no memory is allocated.
+ */
+final class BufferedMonitoringDataConsumer implements MonitoringDataConsumer {
+
+    private char[] chars = new char[1024];
+    private int length;
+    private int[] ends = new int[64];
+    private long[] values = new long[64];
+    private int count;
+
+    @Override
+    public void accept(CharSequence series, long value) {
+        int n = series.length();
+        if (length + n > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + n));
+        }
+        for (int i = 0; i < n; i++) {
+            chars[length++] = series.charAt(i);
+        }
+        if (count == ends.length) {
+            ends = Arrays.copyOf(ends, count * 2);
+            values = Arrays.copyOf(values, count * 2);
+        }
+        ends[count] = length;
+        values[count++] = value;
+    }
+
+    int size() {
+        return count;
+    }
+
+    void clear() {
+        length = 0;
+        count = 0;
+    }
+
+    /**
+     * Passes all buffered key-value pairs in the order they were accepted to the given consumer.
+     */
+    void replayTo(MonitoringDataConsumer consumer) {
+        Key key = new Key();
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            key.start = start;
+            key.end = ends[i];
+            consumer.accept(key, values[i]);
+            start = key.end;
+        }
+    }
+
+    /**
+     * A view on a key in the buffer. Only valid during the {@link MonitoringDataConsumer#accept(CharSequence, long)}
+     * call it is passed to, like the {@link StringBuilder} used by the {@link ConsumingMonitoringDataCollector}.
+     */
+    private final class Key implements CharSequence {
+
+        int start;
+        int end;
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new String(chars, start + from, to - from);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, start, end - start);
+        }
+    }
+}
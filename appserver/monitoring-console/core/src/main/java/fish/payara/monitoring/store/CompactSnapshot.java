@@ -0,0 +1,193 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.store;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A {@link CompactSnapshot} is the binary form of the monitoring data an instance shares with the DAS each second.
+ *
+ * In contrast to the {@link InMemoryMonitoringDataRepository.SeriesDatasetsSnapshot} the series are not identified by
+ * their name but by a numeric ID. The names of IDs are only transmitted once in the snapshot that first uses the ID
+ * (or in a full snapshot). Values are only included when they changed since the previous snapshot and are encoded as
+ * zig-zag variable length delta to the previously sent value.
+ *
+ * <h3>Layout</h3>
+ * <pre>
+ * version(byte) epoch(long) sequence(varlong) time(long) full(byte)
+ * dictionary: count(varint) [id(varint) nameLength(varint) name(UTF-8)]*
+ * removed:    count(varint) [idDelta(varint)]*
+ * changed:    count(varint) [idDelta(varint) valueDelta(zig-zag varlong)]*
+ * </pre>
+ * IDs in removed and changed section are sorted ascending and given as delta to the previous ID in the section.
+ *
+ * @see CompactSnapshotEncoder
+ * @see CompactSnapshotDecoder
+ */
+final class CompactSnapshot implements Serializable {
+
+    static final byte VERSION = 1;
+
+    final byte[] data;
+
+    CompactSnapshot(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * A growable byte buffer with support for variable length encoding.
+     */
+    static final class Writer {
+
+        private byte[] buf;
+        private int pos;
+
+        Writer(int initialCapacity) {
+            this.buf = new byte[initialCapacity];
+        }
+
+        private void ensureCapacity(int bytes) {
+            if (pos + bytes > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + bytes));
+            }
+        }
+
+        void reset() {
+            pos = 0;
+        }
+
+        int position() {
+            return pos;
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buf[pos++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int i = 56; i >= 0; i -= 8) {
+                buf[pos++] = (byte) (value >>> i);
+            }
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0L) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+        }
+
+        void writeZigZag(long value) {
+            writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarLong(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    /**
+     * Reads the data written by a {@link Writer}.
+     */
+    static final class Reader {
+
+        private final byte[] buf;
+        private int pos;
+
+        Reader(byte[] buf) {
+            this.buf = buf;
+        }
+
+        byte readByte() {
+            return buf[pos++];
+        }
+
+        long readLong() {
+            long value = 0L;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (buf[pos++] & 0xFF);
+            }
+            return value;
+        }
+
+        long readVarLong() {
+            long value = 0L;
+            int shift = 0;
+            byte b;
+            do {
+                b = buf[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+
+        int readVarInt() {
+            return (int) readVarLong();
+        }
+
+        long readZigZag() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        String readString() {
+            int length = readVarInt();
+            String value = new String(buf, pos, length, UTF_8);
+            pos += length;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.store;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fish.payara.monitoring.model.Series;
+
+/**
+ * Decodes the {@link CompactSnapshot}s published by a single instance.
+ *
+ * The decoder mirrors the dictionary and the values of the {@link CompactSnapshotEncoder} of that instance. Names are
+ * only parsed to {@link Series} when they are added to the dictionary. Series not included in a snapshot are assumed
+ * to have the same value as in the previous snapshot unless they are explicitly removed.
+ *
+ * If a snapshot was missed or the instance restarted (new epoch) the decoder cannot continue until it received a full
+ * snapshot which is indicated by {@link #decode(CompactSnapshot, PointConsumer)} returning false.
+ */
+final class CompactSnapshotDecoder {
+
+    private static final Logger LOGGER = Logger.getLogger(CompactSnapshotDecoder.class.getName());
+
+    @FunctionalInterface
+    interface PointConsumer {
+
+        void accept(Series series, long time, long value);
+    }
+
+    private long epoch;
+    private long nextSequence = -1L;
+    private Series[] series = new Series[128];
+    private long[] values = new long[128];
+    private boolean[] present = new boolean[128];
+    private int size;
+
+    /**
+     * @return true if the snapshot could be decoded, false if a full snapshot is needed to continue.
+     */
+    synchronized boolean decode(CompactSnapshot snapshot, PointConsumer consumer) {
+        CompactSnapshot.Reader in = new CompactSnapshot.Reader(snapshot.data);
+        if (in.readByte() != CompactSnapshot.VERSION) {
+            return false;
+        }
+        long snapshotEpoch = in.readLong();
+        long sequence = in.readVarLong();
+        long time = in.readLong();
+        boolean full = in.readByte() != 0;
+        if (!full && (snapshotEpoch != epoch || sequence != nextSequence)) {
+            nextSequence = -1L; // out of sync until next full snapshot
+            return false;
+        }
+        epoch = snapshotEpoch;
+        nextSequence = sequence + 1;
+        if (full) {
+            Arrays.fill(present, false);
+        }
+        int names = in.readVarInt();
+        for (int i = 0; i < names; i++) {
+            int id = in.readVarInt();
+            String name = in.readString();
+            ensureCapacity(id + 1);
+            try {
+                series[id] = new Series(name);
+            } catch (IllegalArgumentException ex) {
+                series[id] = null;
+                LOGGER.log(Level.FINEST, "Failed to add remote series: " + name, ex);
+            }
+            size = Math.max(size, id + 1);
+        }
+        int removed = in.readVarInt();
+        int id = 0;
+        for (int i = 0; i < removed; i++) {
+            id += in.readVarInt();
+            present[id] = false;
+        }
+        int changed = in.readVarInt();
+        id = 0;
+        for (int i = 0; i < changed; i++) {
+            id += in.readVarInt();
+            long delta = in.readZigZag();
+            values[id] = present[id] ? values[id] + delta : delta;
+            present[id] = true;
+        }
+        for (int i = 0; i < size; i++) {
+            if (present[i] && series[i] != null) {
+                consumer.accept(series[i], time, values[i]);
+            }
+        }
+        return true;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > series.length) {
+            int newCapacity = Math.max(capacity, series.length * 2);
+            series = Arrays.copyOf(series, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+            present = Arrays.copyOf(present, newCapacity);
+        }
+    }
+}
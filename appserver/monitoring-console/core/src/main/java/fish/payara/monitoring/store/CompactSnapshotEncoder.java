@@ -0,0 +1,252 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.store;
+
+import java.util.Arrays;
+
+/**
+ * Encodes the data collected on an instance into a {@link CompactSnapshot} each tick.
+ *
+ * The encoder keeps track of the IDs it assigned to series names and the values last sent for each ID. Known names are
+ * looked up by their characters so that no {@link String} is created for series that have been seen before.
+ *
+ * An encoder is used by a single collection thread. Only {@link #requestFullSync()} may be called by other threads.
+ */
+final class CompactSnapshotEncoder implements MonitoringDataConsumer {
+
+    private final long epoch;
+    private long sequence;
+    private long time;
+    private volatile boolean fullSyncRequested = true;
+
+    // dictionary: open addressing hash table of IDs, names by ID
+    private int[] table = new int[256];
+    private String[] names = new String[128];
+    private int size;
+    private int sentNames;
+
+    // per ID state
+    private long[] current = new long[128];
+    private long[] sent = new long[128];
+    private int[] collectedInTick = new int[128];
+    private int[] presentInTick = new int[128];
+    private int tick;
+
+    // IDs collected in the current and previous tick
+    private int[] collected = new int[128];
+    private int collectedCount;
+    private int[] previous = new int[128];
+    private int previousCount;
+
+    private final CompactSnapshot.Writer out = new CompactSnapshot.Writer(4096);
+
+    CompactSnapshotEncoder(long epoch) {
+        this.epoch = epoch;
+        Arrays.fill(table, -1);
+    }
+
+    /**
+     * Makes the next snapshot a full snapshot containing the complete dictionary and all values.
+     */
+    void requestFullSync() {
+        fullSyncRequested = true;
+    }
+
+    /**
+     * Starts collection of a new tick.
+     */
+    void begin(long time) {
+        this.time = time;
+        tick++;
+        int[] tmp = previous;
+        previous = collected;
+        previousCount = collectedCount;
+        collected = tmp;
+        collectedCount = 0;
+    }
+
+    @Override
+    public void accept(CharSequence series, long value) {
+        int id = idOf(series);
+        if (collectedInTick[id] == tick) {
+            current[id] += value; // same as adding a point twice in the same second
+            return;
+        }
+        collectedInTick[id] = tick;
+        current[id] = value;
+        if (collectedCount == collected.length) {
+            collected = Arrays.copyOf(collected, collectedCount * 2);
+        }
+        collected[collectedCount++] = id;
+    }
+
+    /**
+     * @return the snapshot of the tick started with {@link #begin(long)}
+     */
+    CompactSnapshot finish() {
+        boolean full = fullSyncRequested;
+        fullSyncRequested = false;
+        int lastTick = tick - 1;
+        Arrays.sort(collected, 0, collectedCount);
+        out.reset();
+        out.writeByte(CompactSnapshot.VERSION);
+        out.writeLong(epoch);
+        out.writeVarLong(sequence++);
+        out.writeLong(time);
+        out.writeByte(full ? 1 : 0);
+        // dictionary
+        int firstName = full ? 0 : sentNames;
+        out.writeVarLong(size - firstName);
+        for (int id = firstName; id < size; id++) {
+            out.writeVarLong(id);
+            out.writeString(names[id]);
+        }
+        sentNames = size;
+        // removed
+        int removedCount = 0;
+        if (!full) {
+            for (int i = 0; i < previousCount; i++) {
+                if (collectedInTick[previous[i]] != tick) {
+                    removedCount++;
+                }
+            }
+        }
+        out.writeVarLong(removedCount);
+        if (removedCount > 0) {
+            Arrays.sort(previous, 0, previousCount);
+            int lastId = 0;
+            for (int i = 0; i < previousCount; i++) {
+                int id = previous[i];
+                if (collectedInTick[id] != tick) {
+                    out.writeVarLong(id - lastId);
+                    lastId = id;
+                }
+            }
+        }
+        // changed
+        int changedCount = 0;
+        for (int i = 0; i < collectedCount; i++) {
+            if (isChanged(collected[i], full, lastTick)) {
+                changedCount++;
+            }
+        }
+        out.writeVarLong(changedCount);
+        int lastId = 0;
+        for (int i = 0; i < collectedCount; i++) {
+            int id = collected[i];
+            if (isChanged(id, full, lastTick)) {
+                boolean known = !full && presentInTick[id] == lastTick;
+                out.writeVarLong(id - lastId);
+                out.writeZigZag(current[id] - (known ? sent[id] : 0L));
+                sent[id] = current[id];
+                lastId = id;
+            }
+        }
+        for (int i = 0; i < collectedCount; i++) {
+            presentInTick[collected[i]] = tick;
+        }
+        return new CompactSnapshot(out.toByteArray());
+    }
+
+    private boolean isChanged(int id, boolean full, int lastTick) {
+        return full || presentInTick[id] != lastTick || current[id] != sent[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private int idOf(CharSequence series) {
+        int hash = hash(series);
+        int mask = table.length - 1;
+        int index = hash & mask;
+        while (true) {
+            int id = table[index];
+            if (id < 0) {
+                return add(series.toString(), index);
+            }
+            if (names[id].contentEquals(series)) {
+                return id;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private int add(String name, int index) {
+        int id = size++;
+        if (id == names.length) {
+            int capacity = id * 2;
+            names = Arrays.copyOf(names, capacity);
+            current = Arrays.copyOf(current, capacity);
+            sent = Arrays.copyOf(sent, capacity);
+            collectedInTick = Arrays.copyOf(collectedInTick, capacity);
+            presentInTick = Arrays.copyOf(presentInTick, capacity);
+        }
+        names[id] = name;
+        presentInTick[id] = -1;
+        table[index] = id;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        int[] newTable = new int[table.length * 2];
+        Arrays.fill(newTable, -1);
+        int mask = newTable.length - 1;
+        for (int id = 0; id < size; id++) {
+            int index = hash(names[id]) & mask;
+            while (newTable[index] >= 0) {
+                index = (index + 1) & mask;
+            }
+            newTable[index] = id;
+        }
+        table = newTable;
+    }
+
+    private static int hash(CharSequence chars) {
+        int h = 0;
+        for (int i = 0; i < chars.length(); i++) {
+            h = 31 * h + chars.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -79,8 +79,16 @@ import fish.payara.monitoring.alert.AlertService;
 import fish.payara.monitoring.alert.Watch;
 import fish.payara.monitoring.model.Metric;
 import fish.payara.monitoring.model.Series;
+import fish.payara.monitoring.model.SeriesDataset;
 import fish.payara.monitoring.model.Unit;
 
+/**
+ * Keeps {@link Watch}es indexed by the {@link Series} they watch and checks them every 2 seconds on the DAS.
+ * 
+ * Each check selects the matching {@link SeriesDataset}s once per watched {@link Series} and shares them between all
+ * {@link Watch}es of that {@link Series}. The {@link Watch}es themselves only evaluate datasets that received new points
+ * since their last check and maintain their window aggregates incrementally.
+ */
 @Service
 @RunLevel(StartupRunLevel.VAL)
 class InMemoryAlarmService extends AbstractMonitoringService implements AlertService, MonitoringDataSource {
@@ -276,8 +284,8 @@ class InMemoryAlarmService extends AbstractMonitoringService implements AlertSer
             LOGGER.log(FINE, "Fialed to collect watches", ex);
         }
         try {
-            checkWatches(simpleWatches.values());
-            checkWatches(patternWatches.values());
+            checkWatches(simpleWatches);
+            checkWatches(patternWatches);
             statistics.set(computeStatistics());
         } catch (Exception ex) {
             LOGGER.log(FINE, "Failed to check watches", ex);
@@ -358,14 +366,18 @@ class InMemoryAlarmService extends AbstractMonitoringService implements AlertSer
         return stats;
     }
 
-    private void checkWatches(Collection<? extends Map<?, Watch>> watches) {
-        for (Map<?, Watch> group : watches) {
-            for (Watch watch : group.values()) {
+    private void checkWatches(Map<Series, Map<String, Watch>> watches) {
+        for (Entry<Series, Map<String, Watch>> group : watches.entrySet()) {
+            List<SeriesDataset> matches = null;
+            for (Watch watch : group.getValue().values()) {
                 if (watch.isStopped()) {
                     removeWatch(watch);
                 } else {
+                    if (matches == null) {
+                        matches = monitoringData.selectSeries(group.getKey());
+                    }
                     try {
-                        checkWatch(watch);
+                        checkWatch(watch, matches);
                     } catch (Exception ex) {
                         LOGGER.log(java.util.logging.Level.FINE, "Failed to check watch : " + watch, ex);
                     }
@@ -374,17 +386,24 @@ class InMemoryAlarmService extends AbstractMonitoringService implements AlertSer
         }
     }
 
-    private void checkWatch(Watch watch) {
-        for (Alert newlyRaised : watch.check(monitoringData)) {
-            Deque<Alert> seriesAlerts = alerts.computeIfAbsent(newlyRaised.getSeries(),
-                    key -> new ConcurrentLinkedDeque<>());
-            seriesAlerts.add(newlyRaised);
-            if (seriesAlerts.size() > MAX_ALERTS_PER_SERIES) {
-                if (!removeFirst(seriesAlerts, alert -> alert.getLevel().isLessSevereThan(Level.AMBER))) {
-                    if (!removeFirst(seriesAlerts, Alert::isAcknowledged)) {
-                        if (!removeFirst(seriesAlerts, alert -> alert.getLevel() == Level.AMBER)) {
-                            seriesAlerts.removeFirst();
-                        }
+    private void checkWatch(Watch watch, List<SeriesDataset> matches) {
+        for (SeriesDataset data : matches) {
+            Alert newlyRaised = watch.check(monitoringData, data);
+            if (newlyRaised != null) {
+                addAlert(newlyRaised);
+            }
+        }
+    }
+
+    private void addAlert(Alert newlyRaised) {
+        Deque<Alert> seriesAlerts = alerts.computeIfAbsent(newlyRaised.getSeries(),
+                key -> new ConcurrentLinkedDeque<>());
+        seriesAlerts.add(newlyRaised);
+        if (seriesAlerts.size() > MAX_ALERTS_PER_SERIES) {
+            if (!removeFirst(seriesAlerts, alert -> alert.getLevel().isLessSevereThan(Level.AMBER))) {
+                if (!removeFirst(seriesAlerts, Alert::isAcknowledged)) {
+                    if (!removeFirst(seriesAlerts, alert -> alert.getLevel() == Level.AMBER)) {
+                        seriesAlerts.removeFirst();
                     }
                 }
             }
@@ -46,8 +46,9 @@ import static java.util.Arrays.copyOf;
 import static java.util.Collections.emptyList;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.Serializable;
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -60,6 +61,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.inject.Inject;
 
 import org.glassfish.api.StartupRunLevel;
@@ -68,15 +70,18 @@ import org.jvnet.hk2.annotations.Service;
 
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.core.ITopic;
+import com.hazelcast.core.Member;
 import com.hazelcast.core.Message;
 import com.hazelcast.core.MessageListener;
 
-import fish.payara.monitoring.collect.MonitoringData;
-import fish.payara.monitoring.collect.MonitoringDataCollector;
 import fish.payara.monitoring.collect.MonitoringDataSource;
+import fish.payara.monitoring.history.PersistentHistoryStore;
+import fish.payara.monitoring.history.Resolution;
 import fish.payara.monitoring.model.EmptyDataset;
+import fish.payara.monitoring.model.RingBufferDataset;
 import fish.payara.monitoring.model.Series;
 import fish.payara.monitoring.model.SeriesDataset;
+import fish.payara.monitoring.model.SeriesHistory;
 import fish.payara.nucleus.hazelcast.HazelcastCore;
 
 /**
@@ -92,6 +97,36 @@ import fish.payara.nucleus.hazelcast.HazelcastCore;
  * single method invocation. Making multiple calls to this stores methods does not guarantee a consistent dataset across
  * all series since the {@link #swapLocalBuffer()} can happen inbetween method calls.
  * 
+ * By default the datasets are {@link RingBufferDataset}s which are updated in place to avoid allocations for each
+ * collected point. Each dataset is consistent in itself but a request can observe some series already updated with the
+ * current second while others are not. Setting {@value #IMMUTABLE_DATASETS_PROPERTY} uses the immutable
+ * {@link EmptyDataset} chain instead which gives the full consistency described above.
+ * 
+ * <h3>Collection</h3>
+ * 
+ * The {@link MonitoringDataSource}s are collected concurrently by a {@link ParallelSourceCollector} using up to
+ * {@value #COLLECTOR_THREADS_PROPERTY} threads of the shared
+ * {@link fish.payara.nucleus.executorservice.PayaraExecutorService}. A source not done within
+ * {@value #COLLECTOR_BUDGET_PROPERTY} milliseconds is reported as late and its data for that second is dropped instead
+ * of delaying all other sources.
+ * 
+ * <h3>Data Exchange</h3>
+ * 
+ * Instances share their data with the DAS each second using {@link CompactSnapshot}s which identify series by ID and
+ * only contain values that changed. Should the DAS miss a snapshot it requests a full snapshot from the instance. The
+ * previous format sending all names and values each second can be used by setting {@value #LEGACY_EXCHANGE_PROPERTY}.
+ * It is also used as long as no DAS in the cluster announces that it accepts {@link CompactSnapshot}s by the
+ * {@value #COMPACT_EXCHANGE_ATTRIBUTE} member attribute, so that a DAS of an older version still receives the data of
+ * upgraded instances.
+ * 
+ * <h3>History</h3>
+ * 
+ * On the DAS the most recent points of all local and remote series are also passed on to a
+ * {@link PersistentHistoryStore} after each collection. It keeps per-minute and per-hour aggregates on disk which can
+ * be queried using {@link #selectHistory(Series, long, long, Resolution, String...)}. The history can be disabled
+ * using the {@value #HISTORY_ENABLED_PROPERTY} system property, its disk usage is limited by
+ * {@value #HISTORY_MAX_BYTES_PROPERTY}.
+ * 
  * @author Jan Bernitt
  */
 @Service
@@ -102,12 +137,37 @@ public class InMemoryMonitoringDataRepository extends AbstractMonitoringService
      * The topic name used to share data of instances with the DAS.
      */
     private static final String MONITORING_DATA_TOPIC_NAME = "payara-monitoring-data";
-    private final Set<String> sourcesFailingBefore = ConcurrentHashMap.newKeySet();
+    /**
+     * The topic name used to share data of instances with the DAS in the {@link CompactSnapshot} format.
+     */
+    private static final String MONITORING_COMPACT_DATA_TOPIC_NAME = "payara-monitoring-data-compact";
+    /**
+     * The topic name used by the DAS to request a full {@link CompactSnapshot} from an instance.
+     */
+    private static final String MONITORING_SYNC_TOPIC_NAME = "payara-monitoring-data-sync";
+    static final String LEGACY_EXCHANGE_PROPERTY = "fish.payara.monitoring.exchange.legacy";
+    /**
+     * The member attribute a DAS sets to announce that it accepts {@link CompactSnapshot}s.
+     */
+    static final String COMPACT_EXCHANGE_ATTRIBUTE = "payara-monitoring-compact-exchange";
+    static final String IMMUTABLE_DATASETS_PROPERTY = "fish.payara.monitoring.dataset.immutable";
+    private static final boolean IMMUTABLE_DATASETS = Boolean.getBoolean(IMMUTABLE_DATASETS_PROPERTY);
+    static final String HISTORY_ENABLED_PROPERTY = "fish.payara.monitoring.history.enabled";
+    static final String HISTORY_MAX_BYTES_PROPERTY = "fish.payara.monitoring.history.maxBytes";
+    private static final long DEFAULT_HISTORY_MAX_BYTES = 256L * 1024L * 1024L;
+    static final String COLLECTOR_THREADS_PROPERTY = "fish.payara.monitoring.collection.threads";
+    static final String COLLECTOR_BUDGET_PROPERTY = "fish.payara.monitoring.collection.budget";
     @Inject
     private HazelcastCore hazelcastCore;
 
     private String instanceName;
     private ITopic<SeriesDatasetsSnapshot> exchange;
+    private ITopic<CompactSnapshot> compactExchange;
+    private ITopic<String> syncRequests;
+    private boolean legacyExchange;
+    private boolean publishedCompact;
+    private final CompactSnapshotEncoder encoder = new CompactSnapshotEncoder(System.nanoTime());
+    private final Map<String, CompactSnapshotDecoder> decoders = new ConcurrentHashMap<>();
 
     private boolean isDas;
     private volatile Map<Series, SeriesDataset> secondsWrite = new ConcurrentHashMap<>();
@@ -117,25 +177,68 @@ public class InMemoryMonitoringDataRepository extends AbstractMonitoringService
     private final JobHandle dataCollectionJob = new JobHandle("monitoring data collection");
     private long collectedSecond;
     private int estimatedNumberOfSeries = 50;
+    private volatile PersistentHistoryStore history;
+    private ParallelSourceCollector sourceCollector;
 
     @PostConstruct
     public void init() {
         isDas = serverEnv.isDas();
+        sourceCollector = new ParallelSourceCollector(executor::submit,
+                Integer.getInteger(COLLECTOR_THREADS_PROPERTY, Math.min(4, Runtime.getRuntime().availableProcessors())),
+                Long.getLong(COLLECTOR_BUDGET_PROPERTY, 500L));
         if (hazelcastCore.isEnabled()) {
             HazelcastInstance hz = hazelcastCore.getInstance();
             instanceName = hz.getCluster().getLocalMember().getStringAttribute(HazelcastCore.INSTANCE_ATTRIBUTE);
             exchange = hz.getTopic(InMemoryMonitoringDataRepository.MONITORING_DATA_TOPIC_NAME);
+            compactExchange = hz.getTopic(MONITORING_COMPACT_DATA_TOPIC_NAME);
+            syncRequests = hz.getTopic(MONITORING_SYNC_TOPIC_NAME);
         } else {
             instanceName = "server";
         }
+        legacyExchange = Boolean.getBoolean(LEGACY_EXCHANGE_PROPERTY);
         instances.add(instanceName);
         if (isDas && exchange != null) {
             MessageListener<SeriesDatasetsSnapshot> subscriber = this::addRemoteDatasets;
             exchange.addMessageListener(subscriber);
+            MessageListener<CompactSnapshot> compactSubscriber = this::addRemoteCompactSnapshot;
+            compactExchange.addMessageListener(compactSubscriber);
+            hazelcastCore.getInstance().getCluster().getLocalMember().setBooleanAttribute(COMPACT_EXCHANGE_ATTRIBUTE, true);
+        }
+        if (!isDas && syncRequests != null) {
+            MessageListener<String> syncSubscriber = message -> {
+                if (instanceName.equals(message.getMessageObject())) {
+                    encoder.requestFullSync();
+                }
+            };
+            syncRequests.addMessageListener(syncSubscriber);
+        }
+        if (isDas && parseBoolean(System.getProperty(HISTORY_ENABLED_PROPERTY, "true"))) {
+            File historyDir = new File(serverEnv.getInstanceRoot(), "monitoring-console/history");
+            try {
+                history = new PersistentHistoryStore(historyDir.toPath(),
+                        Long.getLong(HISTORY_MAX_BYTES_PROPERTY, DEFAULT_HISTORY_MAX_BYTES));
+            } catch (IOException ex) {
+                LOGGER.log(Level.WARNING, "Failed to open monitoring history in " + historyDir, ex);
+            }
         }
         changedConfig(parseBoolean(serverConfig.getMonitoringService().getMonitoringEnabled()));
     }
 
+    @PreDestroy
+    public void destroy() {
+        dataCollectionJob.stop();
+        sourceCollector.shutdown();
+        PersistentHistoryStore store = history;
+        history = null;
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException ex) {
+                LOGGER.log(Level.FINE, "Failed to close monitoring history", ex);
+            }
+        }
+    }
+
     @Override
     void changedConfig(boolean enabled) {
         if (!enabled) {
@@ -170,9 +273,20 @@ public class InMemoryMonitoringDataRepository extends AbstractMonitoringService
         }
     }
 
+    public void addRemoteCompactSnapshot(Message<CompactSnapshot> message) {
+        String instance = message.getPublishingMember().getStringAttribute(HazelcastCore.INSTANCE_ATTRIBUTE);
+        instances.add(instance);
+        CompactSnapshotDecoder decoder = decoders.computeIfAbsent(instance, key -> new CompactSnapshotDecoder());
+        boolean decoded = decoder.decode(message.getMessageObject(), (series, time, value) ->
+            remoteInstanceDatasets.compute(series, (key, seriesByInstance) -> addRemotePoint(seriesByInstance, instance, key, time, value)));
+        if (!decoded && syncRequests != null) {
+            syncRequests.publish(instance);
+        }
+    }
+
     private static SeriesDataset[] addRemotePoint(SeriesDataset[] seriesByInstance, String instance, Series series, long time, long value) {
         if (seriesByInstance == null) {
-            return new SeriesDataset[] { new EmptyDataset(instance, series, 60).add(time, value) };
+            return new SeriesDataset[] { emptySet(instance, series).add(time, value) };
         }
         for (int i = 0; i < seriesByInstance.length; i++) {
             SeriesDataset instanceSet = seriesByInstance[i];
@@ -182,78 +296,95 @@ public class InMemoryMonitoringDataRepository extends AbstractMonitoringService
             }
         }
         seriesByInstance = Arrays.copyOf(seriesByInstance, seriesByInstance.length + 1);
-        seriesByInstance[seriesByInstance.length - 1] = new EmptyDataset(instance, series, 60).add(time, value);
+        seriesByInstance[seriesByInstance.length - 1] = emptySet(instance, series).add(time, value);
         return seriesByInstance;
     }
 
     private void collectSourcesToMemory() {
         tick();
-        collectAll(new ConsumingMonitoringDataCollector(this::addLocalPoint));
+        collectAll(this::addLocalPoint);
         swapLocalBuffer();
+        recordHistory();
+    }
+
+    /**
+     * Passes the most recent points of all series to the {@link PersistentHistoryStore}. This is done by the
+     * collection thread so the store is only ever written by a single thread.
+     */
+    private void recordHistory() {
+        PersistentHistoryStore store = history;
+        if (store == null) {
+            return;
+        }
+        try {
+            store.flush(collectedSecond);
+            for (SeriesDataset set : secondsRead.values()) {
+                store.add(set);
+            }
+            for (SeriesDataset[] sets : remoteInstanceDatasets.values()) {
+                for (SeriesDataset set : sets) {
+                    store.add(set);
+                }
+            }
+        } catch (RuntimeException ex) {
+            LOGGER.log(Level.FINE, "Failed to record monitoring history", ex);
+        }
     }
 
     private void collectSourcesToPublish() {
         if (exchange != null) {
             tick();
-            SeriesDatasetsSnapshot msg = new SeriesDatasetsSnapshot(collectedSecond, estimatedNumberOfSeries);
-            collectAll(new ConsumingMonitoringDataCollector(msg));
-            estimatedNumberOfSeries = msg.numberOfSeries;
-            exchange.publish(msg);
+            if (legacyExchange || !isCompactExchangeAccepted()) {
+                SeriesDatasetsSnapshot msg = new SeriesDatasetsSnapshot(collectedSecond, estimatedNumberOfSeries);
+                collectAll(msg);
+                estimatedNumberOfSeries = msg.numberOfSeries;
+                exchange.publish(msg);
+                publishedCompact = false;
+            } else {
+                if (!publishedCompact) {
+                    // the DAS did not receive compact snapshots from this instance before or missed some
+                    encoder.requestFullSync();
+                    publishedCompact = true;
+                }
+                encoder.begin(collectedSecond);
+                collectAll(encoder);
+                compactExchange.publish(encoder.finish());
+            }
         }
     }
 
-    private void collectAll(MonitoringDataCollector collector) {
+    /**
+     * @return true if a DAS in the cluster announced that it accepts {@link CompactSnapshot}s
+     */
+    private boolean isCompactExchangeAccepted() {
+        for (Member member : hazelcastCore.getInstance().getCluster().getMembers()) {
+            if (Boolean.TRUE.equals(member.getBooleanAttribute(COMPACT_EXCHANGE_ATTRIBUTE))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void collectAll(MonitoringDataConsumer consumer) {
         for (Entry<Series, SeriesDataset> e : secondsRead.entrySet()) {
             secondsWrite.put(e.getKey(), e.getValue());
         }
         List<MonitoringDataSource> sources = serviceLocator.getAllServices(MonitoringDataSource.class);
         long collectionStart = System.currentTimeMillis();
-        int collectedSources = 0;
-        int failedSources = 0;
-        final long second = collectedSecond / 1000;
-        MonitoringDataCollector monitoringCollector = collector.in("monitoring");
-        for (MonitoringDataSource source : sources) {
-            String sourceId = source.getClass().getSimpleName(); // for now this is the ID, we might want to replace that later
-            MonitoringData meta = getMetaAnnotation(source);
-            if (meta == null || second % meta.intervalSeconds() == 0) {
-                try {
-                    collectedSources++;
-                    long sourceStart = System.currentTimeMillis();
-                    source.collect(meta == null ? collector : collector.in(meta.ns()));
-                    sourcesFailingBefore.remove(sourceId);
-                    monitoringCollector.group(sourceId)
-                        .collect("CollectionDuration", System.currentTimeMillis() - sourceStart);
-                } catch (RuntimeException e) {
-                    if (!sourcesFailingBefore.contains(sourceId)) {
-                        // only long once unless being successful again
-                        LOGGER.log(Level.FINE, "Error collecting metrics", e);
-                    }
-                    failedSources++;
-                    sourcesFailingBefore.add(sourceId);
-                }
-            }
-        }
+        ParallelSourceCollector.Stats stats = sourceCollector.collect(sources, collectedSecond / 1000, consumer);
         long estimatedTotalBytesMemory = 0L;
         for (SeriesDataset set : secondsWrite.values()) {
             estimatedTotalBytesMemory += set.estimatedBytesMemory();
         }
         int seriesCount = secondsWrite.size();
-        monitoringCollector
+        new ConsumingMonitoringDataCollector(consumer).in("monitoring")
             .collect("CollectionDuration", System.currentTimeMillis() - collectionStart)
             .collectNonZero("SeriesCount", seriesCount)
             .collectNonZero("TotalBytesMemory", estimatedTotalBytesMemory)
             .collectNonZero("AverageBytesMemoryPerSeries", seriesCount == 0 ? 0L : estimatedTotalBytesMemory / seriesCount)
-            .collect("CollectedSourcesCount", collectedSources)
-            .collect("CollectedSourcesErrorCount", failedSources);
-    }
-
-    private static MonitoringData getMetaAnnotation(MonitoringDataSource source) {
-        try {
-            Method collect = source.getClass().getMethod("collect", MonitoringDataCollector.class);
-            return collect.getAnnotation(MonitoringData.class);
-        } catch (NoSuchMethodException | SecurityException e) {
-           return null; // assume no annotation
-        }
+            .collect("CollectedSourcesCount", stats.collectedSources)
+            .collect("CollectedSourcesErrorCount", stats.failedSources)
+            .collect("CollectedSourcesLateCount", stats.lateSources);
     }
 
     /**
@@ -283,7 +414,13 @@ public class InMemoryMonitoringDataRepository extends AbstractMonitoringService
     }
 
     private SeriesDataset emptySet(Series series) {
-        return new EmptyDataset(instanceName, series, 60);
+        return emptySet(instanceName, series);
+    }
+
+    private static SeriesDataset emptySet(String instance, Series series) {
+        return IMMUTABLE_DATASETS
+                ? new EmptyDataset(instance, series, 60)
+                : new RingBufferDataset(instance, series, 60);
     }
 
     @Override
@@ -340,6 +477,19 @@ public class InMemoryMonitoringDataRepository extends AbstractMonitoringService
         return matches;
     }
 
+    @Override
+    public List<SeriesHistory> selectHistory(Series series, long from, long to, Resolution resolution,
+            String... instances) {
+        PersistentHistoryStore store = history;
+        if (!isDas || store == null) {
+            return emptyList();
+        }
+        Set<String> instanceFilter = instances == null || instances.length == 0 
+                ? this.instances
+                : new HashSet<>(asList(instances));
+        return store.selectHistory(series, from, to, resolution, instanceFilter);
+    }
+
     @Override
     public Iterable<SeriesDataset> selectAllSeries() {
         return secondsRead.values();
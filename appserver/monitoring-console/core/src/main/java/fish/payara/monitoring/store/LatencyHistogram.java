@@ -0,0 +1,123 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.store;
+
+import java.util.Arrays;
+
+/**
+ * A fixed size histogram of durations in milliseconds with exponentially growing buckets.
+ *
+ * The histogram covers a sliding window of the most recent {@link #windowSize} to {@code 2 * windowSize} recorded
+ * durations so that percentiles follow changes in the latency over time.
+ *
+ * Instances are not thread-safe.
+ */
+final class LatencyHistogram {
+
+    /**
+     * Upper bounds (inclusive) of the buckets in milliseconds, the last bucket is unbounded
+     */
+    private static final long[] BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, Long.MAX_VALUE };
+
+    private final int windowSize;
+    private int[] current = new int[BOUNDS.length];
+    private int[] previous = new int[BOUNDS.length];
+    private int currentCount;
+    private int previousCount;
+    private long currentMax;
+    private long previousMax;
+
+    LatencyHistogram(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    void record(long millis) {
+        if (currentCount >= windowSize) {
+            int[] tmp = previous;
+            previous = current;
+            current = tmp;
+            Arrays.fill(current, 0);
+            previousCount = currentCount;
+            previousMax = currentMax;
+            currentCount = 0;
+            currentMax = 0L;
+        }
+        current[bucket(millis)]++;
+        currentCount++;
+        currentMax = Math.max(currentMax, millis);
+    }
+
+    private static int bucket(long millis) {
+        int i = 0;
+        while (millis > BOUNDS[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    int count() {
+        return currentCount + previousCount;
+    }
+
+    long max() {
+        return Math.max(currentMax, previousMax);
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the upper bound of the bucket containing the given percentile, capped at the maximum observed duration,
+     *         or zero if nothing was recorded.
+     */
+    long percentile(int percentile) {
+        int total = count();
+        if (total == 0) {
+            return 0L;
+        }
+        long rank = Math.max(1L, ((long) total * percentile + 99) / 100);
+        long seen = 0;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            seen += current[i] + previous[i];
+            if (seen >= rank) {
+                return Math.min(BOUNDS[i], max());
+            }
+        }
+        return max();
+    }
+}
@@ -40,12 +40,16 @@
 
 package fish.payara.monitoring.store;
 
+import java.util.List;
 import java.util.Set;
 
 import org.jvnet.hk2.annotations.Contract;
 
-import fish.payara.monitoring.model.SeriesLookup;
+import fish.payara.monitoring.history.Resolution;
+import fish.payara.monitoring.model.Series;
 import fish.payara.monitoring.model.SeriesDataset;
+import fish.payara.monitoring.model.SeriesHistory;
+import fish.payara.monitoring.model.SeriesLookup;
 
 @Contract
 public interface MonitoringDataRepository extends SeriesLookup {
@@ -53,4 +57,17 @@ public interface MonitoringDataRepository extends SeriesLookup {
     Iterable<SeriesDataset> selectAllSeries();
 
     Set<String> instances();
+
+    /**
+     * Lists the persisted history of all {@link Series} matching the given {@link Series} (or pattern) within the
+     * given time range. Only the buckets within the range are loaded.
+     *
+     * @param series     the series or pattern to select
+     * @param from       start of time range in milliseconds (inclusive)
+     * @param to         end of time range in milliseconds (exclusive)
+     * @param resolution the bucket {@link Resolution}, null to pick one fitting the time range
+     * @param instances  set if instances to include, an empty set includes all instances
+     * @return the {@link SeriesHistory} of each match that has data in the range, empty list if no history is kept
+     */
+    List<SeriesHistory> selectHistory(Series series, long from, long to, Resolution resolution, String... instances);
 }
@@ -0,0 +1,325 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.store;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fish.payara.monitoring.collect.MonitoringData;
+import fish.payara.monitoring.collect.MonitoringDataCollector;
+import fish.payara.monitoring.collect.MonitoringDataSource;
+
+/**
+ * Collects a list of {@link MonitoringDataSource}s concurrently using a shared {@link Executor}, usually the
+ * {@link fish.payara.nucleus.executorservice.PayaraExecutorService}. At most a given number of sources is collected
+ * concurrently so that the collection does not occupy all threads of the shared executor. Sources exceeding that number
+ * are started as soon as the collection of another source has finished.
+ *
+ * Each source collects into its own {@link BufferedMonitoringDataConsumer}. Once all sources are done or the time
+ * budget of a source has passed the buffers are replayed to the target {@link MonitoringDataConsumer} in the order of
+ * the sources. The target therefore does not need to be thread-safe and sees the data in a deterministic order.
+ *
+ * A source that did not finish within its budget is marked as late. Its data for that tick is dropped and it is not
+ * collected again before the late collection has finished so a slow source only delays itself but not the others.
+ * A source that failed with an exception still contributes the data it collected before the failure.
+ *
+ * The {@link MonitoringData} annotation of each source type is only looked up once. For each source the latency of the
+ * collection is tracked in a {@link LatencyHistogram} and reported as part of the <code>monitoring</code> name-space.
+ *
+ * If the number of threads is zero sources are collected one after another by the calling thread. Late sources are
+ * still detected and reported but cannot be prevented from delaying the tick.
+ */
+final class ParallelSourceCollector {
+
+    private static final Logger LOGGER = Logger.getLogger(ParallelSourceCollector.class.getName());
+
+    /**
+     * Cached meta information of a {@link MonitoringDataSource} type.
+     */
+    static final class SourceMeta {
+
+        final String id;
+        final String ns;
+        final int intervalSeconds;
+
+        SourceMeta(Class<?> type) {
+            this.id = type.getSimpleName(); // for now this is the ID, we might want to replace that later
+            MonitoringData meta = getMetaAnnotation(type);
+            this.ns = meta == null ? null : meta.ns();
+            this.intervalSeconds = meta == null ? 1 : Math.max(1, meta.intervalSeconds());
+        }
+
+        private static MonitoringData getMetaAnnotation(Class<?> type) {
+            try {
+                Method collect = type.getMethod("collect", MonitoringDataCollector.class);
+                return collect.getAnnotation(MonitoringData.class);
+            } catch (NoSuchMethodException | SecurityException e) {
+                return null; // assume no annotation
+            }
+        }
+    }
+
+    /**
+     * State kept for each source between ticks.
+     */
+    private static final class SourceState {
+
+        final SourceMeta meta;
+        final BufferedMonitoringDataConsumer buffer = new BufferedMonitoringDataConsumer();
+        final LatencyHistogram latency = new LatencyHistogram(60);
+        volatile boolean running;
+        volatile long duration;
+        volatile RuntimeException failure;
+        boolean failingBefore;
+        int lateCount;
+        /**
+         * The source to collect while the state waits for a free thread
+         */
+        MonitoringDataSource pendingSource;
+
+        SourceState(SourceMeta meta) {
+            this.meta = meta;
+        }
+
+        void collect(MonitoringDataSource source) {
+            long start = System.currentTimeMillis();
+            try {
+                buffer.clear();
+                failure = null;
+                MonitoringDataCollector collector = new ConsumingMonitoringDataCollector(buffer);
+                source.collect(meta.ns == null ? collector : collector.in(meta.ns));
+            } catch (RuntimeException ex) {
+                failure = ex;
+            } finally {
+                duration = System.currentTimeMillis() - start;
+                completed();
+            }
+        }
+
+        synchronized void completed() {
+            running = false;
+            notifyAll();
+        }
+
+        /**
+         * @return true if the collection completed before the deadline, else false
+         */
+        synchronized boolean awaitCompletion(long deadline) {
+            try {
+                while (running) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0L) {
+                        return false;
+                    }
+                    wait(remaining);
+                }
+                return true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return !running;
+            }
+        }
+    }
+
+    /**
+     * Result statistics of a {@link ParallelSourceCollector#collect(List, long, MonitoringDataConsumer)} run.
+     */
+    static final class Stats {
+
+        int collectedSources;
+        int failedSources;
+        int lateSources;
+    }
+
+    private final Executor executor;
+    private final Semaphore permits;
+    private final long budgetMillis;
+    private final Queue<SourceState> pending = new ConcurrentLinkedQueue<>();
+    private final Map<Class<?>, SourceMeta> metaByType = new ConcurrentHashMap<>();
+    private final Map<MonitoringDataSource, SourceState> stateBySource = new ConcurrentHashMap<>();
+    private volatile boolean shutdown;
+
+    /**
+     * @param executor     the shared executor running the collection of sources
+     * @param threads      maximum number of sources collected concurrently, zero to collect in the calling thread
+     * @param budgetMillis the time a source may take before it is considered late
+     */
+    ParallelSourceCollector(Executor executor, int threads, long budgetMillis) {
+        this.budgetMillis = budgetMillis;
+        this.executor = threads <= 0 ? null : executor;
+        this.permits = new Semaphore(Math.max(0, threads));
+    }
+
+    /**
+     * Collects all given sources that are due in the given second.
+     *
+     * @param sources the sources to collect
+     * @param second  the current second (used to check the {@link MonitoringData#intervalSeconds()})
+     * @param target  the consumer receiving the data of all sources that completed in time
+     * @return statistics about the collection
+     */
+    Stats collect(List<MonitoringDataSource> sources, long second, MonitoringDataConsumer target) {
+        Stats stats = new Stats();
+        long tickStart = System.currentTimeMillis();
+        List<SourceState> started = new ArrayList<>(sources.size());
+        for (MonitoringDataSource source : sources) {
+            SourceMeta meta = metaByType.computeIfAbsent(source.getClass(), SourceMeta::new);
+            if (second % meta.intervalSeconds == 0) {
+                SourceState state = stateBySource.computeIfAbsent(source, key -> new SourceState(meta));
+                if (state.running) {
+                    stats.lateSources++;
+                    state.lateCount++; // still busy with a previous tick
+                } else {
+                    start(source, state);
+                    started.add(state);
+                }
+            }
+        }
+        if (stateBySource.size() > sources.size()) {
+            stateBySource.keySet().retainAll(sources);
+        }
+        long deadline = tickStart + budgetMillis;
+        MonitoringDataCollector monitoring = new ConsumingMonitoringDataCollector(target).in("monitoring");
+        for (SourceState state : started) {
+            if (state.awaitCompletion(deadline)) {
+                stats.collectedSources++;
+                state.latency.record(state.duration);
+                if (state.failure != null) {
+                    stats.failedSources++;
+                    if (!state.failingBefore) {
+                        // only log once unless being successful again
+                        LOGGER.log(Level.FINE, "Error collecting metrics of " + state.meta.id
+                                + ", keeping the " + state.buffer.size() + " points collected before", state.failure);
+                    }
+                    state.failingBefore = true;
+                } else {
+                    state.failingBefore = false;
+                }
+                if (state.duration > budgetMillis) {
+                    stats.lateSources++;
+                    state.lateCount++; // can only happen when collecting in the calling thread
+                } else {
+                    state.buffer.replayTo(target);
+                }
+            } else {
+                stats.lateSources++;
+                state.lateCount++;
+                state.latency.record(System.currentTimeMillis() - tickStart);
+            }
+            monitoring.group(state.meta.id)
+                .collect("CollectionDuration", state.running ? System.currentTimeMillis() - tickStart : state.duration)
+                .collectNonZero("CollectionDurationP95", state.latency.percentile(95))
+                .collectNonZero("CollectionDurationP99", state.latency.percentile(99))
+                .collectNonZero("CollectionDurationMax", state.latency.max())
+                .collectNonZero("CollectionLateCount", state.lateCount);
+        }
+        return stats;
+    }
+
+    private void start(MonitoringDataSource source, SourceState state) {
+        state.running = true;
+        if (executor == null || shutdown) {
+            state.collect(source);
+            return;
+        }
+        state.pendingSource = source;
+        pending.add(state);
+        dispatch();
+    }
+
+    /**
+     * Hands pending collections to the executor as long as less than the maximum number of sources are collected.
+     */
+    private void dispatch() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            SourceState state = pending.poll();
+            if (state == null) {
+                permits.release();
+            } else if (shutdown) {
+                permits.release();
+                drop(state);
+            } else {
+                MonitoringDataSource source = state.pendingSource;
+                state.pendingSource = null;
+                try {
+                    executor.execute(() -> {
+                        try {
+                            state.collect(source);
+                        } finally {
+                            permits.release();
+                            dispatch();
+                        }
+                    });
+                } catch (RejectedExecutionException ex) {
+                    permits.release();
+                    state.collect(source);
+                }
+            }
+        }
+    }
+
+    private static void drop(SourceState state) {
+        state.pendingSource = null;
+        state.buffer.clear();
+        state.completed();
+    }
+
+    /**
+     * Stops handing collections to the executor. Collections not yet handed to it are dropped, later collections run in
+     * the thread calling {@link #collect(List, long, MonitoringDataConsumer)}.
+     */
+    void shutdown() {
+        shutdown = true;
+        SourceState state;
+        while ((state = pending.poll()) != null) {
+            drop(state);
+        }
+    }
+}
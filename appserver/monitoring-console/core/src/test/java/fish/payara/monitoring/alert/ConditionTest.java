@@ -44,10 +44,13 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.util.Random;
+
 import org.junit.Test;
 
 import fish.payara.monitoring.alert.Condition.Operator;
 import fish.payara.monitoring.model.EmptyDataset;
+import fish.payara.monitoring.model.RingBufferDataset;
 import fish.payara.monitoring.model.Series;
 import fish.payara.monitoring.model.SeriesDataset;
 
@@ -220,6 +223,42 @@ public class ConditionTest {
         assertTrue(avgOf3secGt5.isForLastPresent());
     }
 
+    @Test
+    public void incrementalEvaluationIsSameAsFullEvaluation() {
+        Condition[] conditions = {
+                new Condition(Operator.GT, 5).forLastTimes(3),
+                new Condition(Operator.GT, 5).forLastTimes(3).onAverage(),
+                new Condition(Operator.LE, 5).forLastTimes(40),
+                new Condition(Operator.LE, 5).forLastTimes(40).onAverage(),
+                new Condition(Operator.GE, 5).forLastTimes(0),
+                new Condition(Operator.GE, 5).forLastTimes(0).onAverage(),
+                new Condition(Operator.LT, 5).forLastMillis(3 * ONE_SECOND),
+                new Condition(Operator.LT, 5).forLastMillis(45 * ONE_SECOND),
+                new Condition(Operator.LT, 5).forLastMillis(0),
+                new Condition(Operator.GT, 5, 5 * ONE_SECOND, true),
+        };
+        Random rnd = new Random(42L);
+        for (Condition c : conditions) {
+            SeriesDataset immutable = new EmptyDataset("Instance", new Series("Metric"), 60);
+            SeriesDataset ringBuffer = new RingBufferDataset("Instance", new Series("Metric"), 60);
+            Condition.Window immutableWindow = c.window();
+            Condition.Window ringBufferWindow = c.window();
+            long time = 0L;
+            for (int i = 0; i < 500; i++) {
+                // runs of same values, occasional same second updates and gaps between checks
+                int points = 1 + rnd.nextInt(3);
+                for (int j = 0; j < points; j++) {
+                    time += rnd.nextInt(10) == 0 ? 0L : ONE_SECOND;
+                    long value = rnd.nextInt(4) == 0 ? rnd.nextInt(10) : immutable.lastValue();
+                    immutable = immutable.add(time, value);
+                    ringBuffer.add(time, value);
+                }
+                assertEquals(c + " at " + i, c.isSatisfied(immutable), c.isSatisfied(immutable, immutableWindow));
+                assertEquals(c + " at " + i, c.isSatisfied(ringBuffer), c.isSatisfied(ringBuffer, ringBufferWindow));
+            }
+        }
+    }
+
     private static void assertSatisfied(Condition c, long... points) {
         assertTrue(c.isSatisfied(createSet(ONE_SECOND, points)));
         assertBasicProperties(c);
@@ -0,0 +1,256 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.history;
+
+import static java.util.Collections.singleton;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fish.payara.monitoring.model.Series;
+import fish.payara.monitoring.model.SeriesHistory;
+
+/**
+ * Tests the roll-up of points into minute and hour buckets of the {@link PersistentHistoryStore} as well as reading
+ * the data back after a restart.
+ */
+public class PersistentHistoryStoreTest {
+
+    private static final String INSTANCE = "server";
+    private static final Series SERIES = new Series("test");
+    private static final long MINUTE = Resolution.MINUTE.millis;
+    private static final long HOUR = Resolution.HOUR.millis;
+    private static final long T0 = 1000 * HOUR;
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("history");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void pointsAreAggregatedPerMinute() throws IOException {
+        try (PersistentHistoryStore store = new PersistentHistoryStore(dir, Long.MAX_VALUE)) {
+            addSeconds(store, T0, 1, 2, 3, 6);
+            addSeconds(store, T0 + MINUTE, 10, 20);
+            store.flush(T0 + 2 * MINUTE);
+            List<SeriesHistory> history = store.selectHistory(SERIES, T0, T0 + HOUR, Resolution.MINUTE, singleton(INSTANCE));
+            assertEquals(1, history.size());
+            SeriesHistory minutes = history.get(0);
+            assertEquals(2, minutes.size());
+            assertBucket(minutes, 0, T0, 1, 6, 12, 4);
+            assertBucket(minutes, 1, T0 + MINUTE, 10, 20, 30, 2);
+            assertEquals(3L, minutes.avg(0));
+        }
+    }
+
+    @Test
+    public void minutesAreAggregatedPerHour() throws IOException {
+        try (PersistentHistoryStore store = new PersistentHistoryStore(dir, Long.MAX_VALUE)) {
+            addSeconds(store, T0, 5, 7);
+            addSeconds(store, T0 + 30 * MINUTE, 1);
+            addSeconds(store, T0 + HOUR, 100);
+            store.flush(T0 + 2 * HOUR);
+            List<SeriesHistory> history = store.selectHistory(SERIES, T0, T0 + 3 * HOUR, Resolution.HOUR, singleton(INSTANCE));
+            SeriesHistory hours = history.get(0);
+            assertEquals(2, hours.size());
+            assertBucket(hours, 0, T0, 1, 7, 13, 3);
+            assertBucket(hours, 1, T0 + HOUR, 100, 100, 100, 1);
+        }
+    }
+
+    @Test
+    public void queryOnlyReturnsBucketsInRange() throws IOException {
+        try (PersistentHistoryStore store = new PersistentHistoryStore(dir, Long.MAX_VALUE)) {
+            for (int i = 0; i < 10; i++) {
+                addSeconds(store, T0 + i * MINUTE, i);
+            }
+            store.flush(T0 + 10 * MINUTE);
+            SeriesHistory minutes = store.selectHistory(SERIES, T0 + 3 * MINUTE, T0 + 5 * MINUTE, Resolution.MINUTE,
+                    singleton(INSTANCE)).get(0);
+            assertEquals(2, minutes.size());
+            assertEquals(T0 + 3 * MINUTE, minutes.start(0));
+            assertEquals(T0 + 4 * MINUTE, minutes.start(1));
+        }
+    }
+
+    @Test
+    public void patternSelectsAllMatchingSeries() throws IOException {
+        try (PersistentHistoryStore store = new PersistentHistoryStore(dir, Long.MAX_VALUE)) {
+            store.add(INSTANCE, new Series("a:1 Count"), T0, 1);
+            store.add(INSTANCE, new Series("a:2 Count"), T0, 2);
+            store.add(INSTANCE, new Series("b:1 Count"), T0, 3);
+            store.flush(T0 + MINUTE);
+            assertEquals(2, store.selectHistory(new Series("a:* Count"), T0, T0 + MINUTE, Resolution.MINUTE,
+                    singleton(INSTANCE)).size());
+        }
+    }
+
+    @Test
+    public void historySurvivesRestart() throws IOException {
+        try (PersistentHistoryStore store = new PersistentHistoryStore(dir, Long.MAX_VALUE)) {
+            addSeconds(store, T0, 4, 8);
+            store.flush(T0 + MINUTE);
+        }
+        try (PersistentHistoryStore store = new PersistentHistoryStore(dir, Long.MAX_VALUE)) {
+            SeriesHistory minutes = store.selectHistory(SERIES, T0, T0 + HOUR, Resolution.MINUTE,
+                    singleton(INSTANCE)).get(0);
+            assertBucket(minutes, 0, T0, 4, 8, 12, 2);
+            // the ongoing hour is recovered from the minutes
+            addSeconds(store, T0 + MINUTE, 2);
+            store.flush(T0 + HOUR);
+            SeriesHistory hours = store.selectHistory(SERIES, T0, T0 + HOUR, Resolution.HOUR,
+                    singleton(INSTANCE)).get(0);
+            assertBucket(hours, 0, T0, 2, 8, 14, 3);
+        }
+    }
+
+    @Test
+    public void ongoingMinuteIsWrittenOnClose() throws IOException {
+        try (PersistentHistoryStore store = new PersistentHistoryStore(dir, Long.MAX_VALUE)) {
+            addSeconds(store, T0, 4, 8);
+            addSeconds(store, T0 + MINUTE, 3);
+            store.flush(T0 + MINUTE);
+        }
+        try (PersistentHistoryStore store = new PersistentHistoryStore(dir, Long.MAX_VALUE)) {
+            SeriesHistory minutes = store.selectHistory(SERIES, T0, T0 + HOUR, Resolution.MINUTE,
+                    singleton(INSTANCE)).get(0);
+            assertEquals(2, minutes.size());
+            assertBucket(minutes, 1, T0 + MINUTE, 3, 3, 3, 1);
+            store.flush(T0 + HOUR);
+            SeriesHistory hours = store.selectHistory(SERIES, T0, T0 + HOUR, Resolution.HOUR,
+                    singleton(INSTANCE)).get(0);
+            assertEquals(1, hours.size());
+            assertBucket(hours, 0, T0, 3, 8, 15, 3);
+        }
+    }
+
+    @Test
+    public void smallSegmentsAreMergedWithoutLosingOrDuplicatingBuckets() throws IOException {
+        try (PersistentHistoryStore store = new PersistentHistoryStore(dir, Long.MAX_VALUE)) {
+            for (int i = 0; i < 4; i++) {
+                addSeconds(store, T0 + i * MINUTE, i + 1);
+                store.flush(T0 + (i + 1) * MINUTE);
+                store.close(); // each minute ends up in its own sealed segment
+            }
+            assertEquals(4, segmentFiles(Resolution.MINUTE));
+            store.compact(T0 + HOUR);
+            assertEquals(1, segmentFiles(Resolution.MINUTE));
+            SeriesHistory minutes = store.selectHistory(SERIES, T0, T0 + HOUR, Resolution.MINUTE,
+                    singleton(INSTANCE)).get(0);
+            assertEquals(4, minutes.size());
+            for (int i = 0; i < 4; i++) {
+                assertBucket(minutes, i, T0 + i * MINUTE, i + 1, i + 1, i + 1, 1);
+            }
+        }
+    }
+
+    @Test
+    public void seriesIdsSurviveCrash() throws IOException {
+        PersistentHistoryStore crashed = new PersistentHistoryStore(dir, Long.MAX_VALUE);
+        try {
+            addSeconds(crashed, T0, 4, 8);
+            crashed.flush(T0 + MINUTE);
+            // not closed: the minute records are in the segment file, the series must be in the dictionary
+            try (PersistentHistoryStore store = new PersistentHistoryStore(dir, Long.MAX_VALUE)) {
+                store.add(INSTANCE, new Series("other"), T0 + MINUTE, 1);
+                List<SeriesHistory> history = store.selectHistory(SERIES, T0, T0 + HOUR, Resolution.MINUTE,
+                        singleton(INSTANCE));
+                assertEquals(1, history.size());
+                assertBucket(history.get(0), 0, T0, 4, 8, 12, 2);
+                assertTrue(store.selectHistory(new Series("other"), T0, T0 + HOUR, Resolution.MINUTE,
+                        singleton(INSTANCE)).isEmpty());
+            }
+        } finally {
+            crashed.close();
+        }
+    }
+
+    @Test
+    public void diskUsageIsBounded() throws IOException {
+        try (PersistentHistoryStore store = new PersistentHistoryStore(dir, 1024)) {
+            for (int h = 0; h < 3; h++) {
+                addSeconds(store, T0 + h * HOUR, h);
+                store.flush(T0 + (h + 1) * HOUR);
+                store.close(); // seal segments so they become candidates for removal
+            }
+            assertTrue(store.totalBytesOnDisk() <= 1024);
+        }
+    }
+
+    private long segmentFiles(Resolution resolution) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(resolution.filePrefix() + "-")).count();
+        }
+    }
+
+    private static void addSeconds(PersistentHistoryStore store, long start, long... values) {
+        for (int i = 0; i < values.length; i++) {
+            store.add(INSTANCE, SERIES, start + i * 1000L, values[i]);
+        }
+    }
+
+    private static void assertBucket(SeriesHistory history, int index, long start, long min, long max, long sum,
+            long count) {
+        assertEquals(start, history.start(index));
+        assertEquals(min, history.min(index));
+        assertEquals(max, history.max(index));
+        assertEquals(sum, history.sum(index));
+        assertEquals(count, history.count(index));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests the correctness of the {@link RingBufferDataset}, in particular that it behaves the same as the immutable
+ * {@link SeriesDataset} implementations with regards to the observed statistics.
+ */
+public class RingBufferDatasetTest {
+
+    private static final String INSTANCE = "server";
+    private static final Series SERIES = new Series("test");
+
+    @Test
+    public void emptyDefaults() {
+        SeriesDataset set = new RingBufferDataset(INSTANCE, SERIES, 3);
+        assertEquals(0, set.size());
+        assertEquals(Long.MAX_VALUE, set.getObservedMin());
+        assertEquals(Long.MIN_VALUE, set.getObservedMax());
+        assertEquals(BigInteger.ZERO, set.getObservedAvg());
+        assertEquals(0, set.getObservedValues());
+        assertEquals(0, set.getObservedValueChanges());
+        assertEquals(-1L, set.firstTime());
+        assertEquals(0L, set.lastValue());
+        assertArrayEquals(new long[0], set.points());
+    }
+
+    @Test
+    public void addReturnsSameInstance() {
+        SeriesDataset set = new RingBufferDataset(INSTANCE, SERIES, 3);
+        assertSame(set, set.add(1, 1));
+    }
+
+    @Test
+    public void fillAndSlideManyTimesOverCapacity() {
+        SeriesDataset set = new RingBufferDataset(INSTANCE, SERIES, 3);
+        for (int i = 0; i < 100; i++) {
+            set = set.add(i, i);
+        }
+        assertArrayEquals(new long[] { 97, 97, 98, 98, 99, 99 }, set.points());
+        assertEquals(97L, set.firstTime());
+        assertEquals(99L, set.lastTime());
+        assertEquals(99L, set.lastValue());
+        assertEquals(100, set.getObservedValues());
+        assertEquals(100, set.getObservedValueChanges());
+        assertEquals(BigInteger.valueOf(49), set.getObservedAvg());
+        assertEquals(99L, set.getObservedMax());
+        assertEquals(0L, set.getObservedMin());
+        assertEquals(BigInteger.valueOf(50), set.add(100, 100).getObservedAvg());
+        assertFalse(set.isOutdated());
+    }
+
+    @Test
+    public void stableValuesAreCounted() {
+        SeriesDataset set = new RingBufferDataset(INSTANCE, SERIES, 3);
+        set.add(1, 1);
+        set.add(2, 2);
+        assertFalse(set.isStable());
+        for (int t = 3; t < 10; t++) {
+            set.add(t, 3);
+        }
+        assertTrue(set.isStable());
+        assertEquals(3, set.getStableSince());
+        assertEquals(7, set.getStableCount());
+        assertEquals(3, set.getObservedValueChanges());
+        set.add(10, 4);
+        assertFalse(set.isStable());
+        assertEquals(10, set.getStableSince());
+        assertEquals(1, set.getStableCount());
+    }
+
+    @Test
+    public void addingWithSameTimeSumsValue() {
+        SeriesDataset set = new RingBufferDataset(INSTANCE, SERIES, 3);
+        set.add(1, 1);
+        set.add(2, 2);
+        set.add(2, 4);
+        assertEquals(2 + 4, set.lastValue());
+        assertEquals(2, set.size());
+        assertEquals(3, set.getObservedValues());
+        assertEquals(2, set.lastTime());
+    }
+
+    @Test
+    public void observedSumDoesNotOverflow() {
+        SeriesDataset set = new RingBufferDataset(INSTANCE, SERIES, 3);
+        set.add(1, Long.MAX_VALUE);
+        set.add(2, Long.MAX_VALUE);
+        set.add(3, -1L);
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE).shiftLeft(1).subtract(BigInteger.ONE), set.getObservedSum());
+        set.add(4, Long.MIN_VALUE);
+        set.add(5, Long.MIN_VALUE);
+        assertEquals(BigInteger.valueOf(-3), set.getObservedSum());
+    }
+
+    @Test
+    public void snapshotDoesNotChange() {
+        SeriesDataset set = new RingBufferDataset(INSTANCE, SERIES, 3);
+        set.add(1, 1);
+        set.add(2, 2);
+        SeriesDataset snapshot = set.snapshot();
+        set.add(3, 3);
+        set.add(4, 4);
+        assertArrayEquals(new long[] { 1, 1, 2, 2 }, snapshot.points());
+        assertEquals(2, snapshot.getObservedValues());
+        assertEquals(2L, snapshot.lastValue());
+        assertEquals(BigInteger.valueOf(3), snapshot.getObservedSum());
+        assertEquals(set, snapshot);
+    }
+
+    @Test
+    public void sameWindowAsImmutableDatasets() {
+        SeriesDataset ring = new RingBufferDataset(INSTANCE, SERIES, 5);
+        SeriesDataset chain = new EmptyDataset(INSTANCE, SERIES, 5);
+        long[] values = { 1, 1, 2, 3, 3, 3, 3, 3, 3, 3, 4, 5, 5, 6, 7, 8, 9, 9 };
+        for (int i = 0; i < values.length; i++) {
+            ring = ring.add(i, values[i]);
+            chain = chain.add(i, values[i]);
+            assertEquals(chain.lastValue(), ring.lastValue());
+            assertEquals(chain.lastTime(), ring.lastTime());
+            assertEquals(chain.getObservedValues(), ring.getObservedValues());
+            assertEquals(chain.getObservedValueChanges(), ring.getObservedValueChanges());
+            assertEquals(chain.getStableSince(), ring.getStableSince());
+            assertEquals(chain.getObservedMin(), ring.getObservedMin());
+            assertEquals(chain.getObservedMax(), ring.getObservedMax());
+        }
+        assertArrayEquals(chain.points(), ring.points());
+    }
+}
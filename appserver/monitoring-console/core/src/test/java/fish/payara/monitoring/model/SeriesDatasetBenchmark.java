@@ -0,0 +1,124 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.model;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the cost of collecting one point for each of many series (one collection tick) using the copy-on-add
+ * {@link EmptyDataset} chain with the in-place {@link RingBufferDataset}.
+ *
+ * Not run as part of the build. Run the {@link #main(String[])} method from the IDE or with the test classpath; add
+ * {@code -prof gc} (or {@code addProfiler(GCProfiler.class)}) to see the allocation rate per tick.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SeriesDatasetBenchmark {
+
+    @Param({ "1000", "10000" })
+    private int seriesCount;
+
+    @Param({ "changing", "constant" })
+    private String values;
+
+    private SeriesDataset[] immutable;
+    private SeriesDataset[] ringBuffer;
+    private long time;
+
+    @Setup
+    public void setup() {
+        immutable = new SeriesDataset[seriesCount];
+        ringBuffer = new SeriesDataset[seriesCount];
+        for (int i = 0; i < seriesCount; i++) {
+            Series series = new Series("ns:bench id:" + i + " Value");
+            immutable[i] = new EmptyDataset("server", series, 60);
+            ringBuffer[i] = new RingBufferDataset("server", series, 60);
+        }
+        // fill the windows so the steady state is measured
+        for (int t = 0; t < 120; t++) {
+            tick(immutable);
+            tick(ringBuffer);
+        }
+    }
+
+    private void tick(SeriesDataset[] datasets) {
+        time += 1000L;
+        boolean constant = "constant".equals(values);
+        for (int i = 0; i < datasets.length; i++) {
+            datasets[i] = datasets[i].add(time, constant ? i : time ^ i);
+        }
+    }
+
+    @Benchmark
+    public void immutableChain(Blackhole bh) {
+        tick(immutable);
+        bh.consume(immutable[0]);
+    }
+
+    @Benchmark
+    public void ringBuffer(Blackhole bh) {
+        tick(ringBuffer);
+        bh.consume(ringBuffer[0]);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SeriesDatasetBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import fish.payara.monitoring.model.Series;
+
+/**
+ * Tests the round trip of monitoring data through {@link CompactSnapshotEncoder} and {@link CompactSnapshotDecoder}.
+ */
+public class CompactSnapshotTest {
+
+    private final CompactSnapshotEncoder encoder = new CompactSnapshotEncoder(42L);
+    private final CompactSnapshotDecoder decoder = new CompactSnapshotDecoder();
+
+    @Test
+    public void firstSnapshotIsFull() {
+        Map<String, Long> points = roundTrip(1000L, "a", 1L, "b", -5L);
+        assertEquals(2, points.size());
+        assertEquals(1L, points.get("a").longValue());
+        assertEquals(-5L, points.get("b").longValue());
+    }
+
+    @Test
+    public void unchangedValuesAreCarriedForward() {
+        roundTrip(1000L, "a", 1L, "b", 2L);
+        encoder.begin(2000L);
+        encoder.accept("a", 1L);
+        encoder.accept("b", 3L);
+        CompactSnapshot snapshot = encoder.finish();
+        Map<String, Long> points = decode(snapshot);
+        assertEquals(1L, points.get("a").longValue());
+        assertEquals(3L, points.get("b").longValue());
+    }
+
+    @Test
+    public void unchangedSnapshotsAreSmall() {
+        StringBuilder name = new StringBuilder();
+        encoder.begin(1000L);
+        for (int i = 0; i < 100; i++) {
+            name.setLength(0);
+            name.append("tag:").append(i).append(" SomeRatherLongMetricName");
+            encoder.accept(name, i * 1000L);
+        }
+        int fullSize = encoder.finish().data.length;
+        encoder.begin(2000L);
+        for (int i = 0; i < 100; i++) {
+            name.setLength(0);
+            name.append("tag:").append(i).append(" SomeRatherLongMetricName");
+            encoder.accept(name, i * 1000L);
+        }
+        int deltaSize = encoder.finish().data.length;
+        assertEquals(100, encoder.size());
+        assertTrue(deltaSize < 32);
+        assertTrue(fullSize > 100 * 25);
+    }
+
+    @Test
+    public void valuesCollectedTwiceInSameTickAreSummed() {
+        encoder.begin(1000L);
+        encoder.accept("a", 1L);
+        encoder.accept("a", 2L);
+        assertEquals(3L, decode(encoder.finish()).get("a").longValue());
+    }
+
+    @Test
+    public void seriesNotCollectedAnymoreAreRemoved() {
+        roundTrip(1000L, "a", 1L, "b", 2L);
+        Map<String, Long> points = roundTrip(2000L, "b", 2L);
+        assertEquals(1, points.size());
+        assertFalse(points.containsKey("a"));
+        points = roundTrip(3000L, "a", 1L, "b", 2L);
+        assertEquals(1L, points.get("a").longValue());
+    }
+
+    @Test
+    public void missedSnapshotRequiresFullSync() {
+        roundTrip(1000L, "a", 1L);
+        encoder.begin(2000L);
+        encoder.accept("a", 5L);
+        encoder.finish(); // lost
+        encoder.begin(3000L);
+        encoder.accept("a", 6L);
+        assertFalse(decoder.decode(encoder.finish(), (series, time, value) -> { }));
+        encoder.requestFullSync();
+        assertEquals(7L, roundTrip(4000L, "a", 7L).get("a").longValue());
+    }
+
+    private Map<String, Long> roundTrip(long time, Object... namesAndValues) {
+        encoder.begin(time);
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            encoder.accept((String) namesAndValues[i], (Long) namesAndValues[i + 1]);
+        }
+        return decode(encoder.finish());
+    }
+
+    private Map<String, Long> decode(CompactSnapshot snapshot) {
+        Map<String, Long> points = new TreeMap<>();
+        assertTrue(decoder.decode(snapshot, (Series series, long time, long value) -> points.put(series.toString(), value)));
+        return points;
+    }
+}
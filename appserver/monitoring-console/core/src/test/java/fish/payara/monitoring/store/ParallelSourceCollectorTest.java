@@ -0,0 +1,235 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.monitoring.store;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import fish.payara.monitoring.collect.MonitoringData;
+import fish.payara.monitoring.collect.MonitoringDataCollector;
+import fish.payara.monitoring.collect.MonitoringDataSource;
+
+/**
+ * Tests the {@link ParallelSourceCollector} with regards to ordering of the collected data, interval handling and
+ * sources that exceed their time budget.
+ */
+public class ParallelSourceCollectorTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final ParallelSourceCollector collector = new ParallelSourceCollector(executor, 4, 200L);
+    private final CountDownLatch slowRelease = new CountDownLatch(1);
+
+    private static final class FastSource implements MonitoringDataSource {
+
+        private final String name;
+
+        FastSource(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void collect(MonitoringDataCollector collector) {
+            collector.collect(name, 1L).collect(name + "2", 2L);
+        }
+    }
+
+    private static final class AnnotatedSource implements MonitoringDataSource {
+
+        @Override
+        @MonitoringData(ns = "test", intervalSeconds = 2)
+        public void collect(MonitoringDataCollector collector) {
+            collector.collect("Annotated", 3L);
+        }
+    }
+
+    private static final class FailingSource implements MonitoringDataSource {
+
+        @Override
+        public void collect(MonitoringDataCollector collector) {
+            collector.collect("BeforeFailure", 5L);
+            throw new IllegalStateException("failing source");
+        }
+    }
+
+    private final class SlowSource implements MonitoringDataSource {
+
+        @Override
+        public void collect(MonitoringDataCollector collector) {
+            try {
+                slowRelease.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            collector.collect("Slow", 4L);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        slowRelease.countDown();
+        collector.shutdown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void dataIsCollectedInSourceOrder() {
+        List<String> keys = new ArrayList<>();
+        List<MonitoringDataSource> sources = asList(new FastSource("a"), new FastSource("b"), new FastSource("c"));
+        ParallelSourceCollector.Stats stats = collector.collect(sources, 0L, (key, value) -> {
+            if (!key.toString().startsWith("ns:monitoring")) {
+                keys.add(key.toString());
+            }
+        });
+        assertEquals(asList("a", "a2", "b", "b2", "c", "c2"), keys);
+        assertEquals(3, stats.collectedSources);
+        assertEquals(0, stats.lateSources);
+    }
+
+    @Test
+    public void annotationNamespaceAndIntervalIsUsed() {
+        List<String> keys = new ArrayList<>();
+        List<MonitoringDataSource> sources = asList(new AnnotatedSource());
+        collector.collect(sources, 1L, (key, value) -> keys.add(key.toString()));
+        assertTrue(keys.isEmpty());
+        collector.collect(sources, 2L, (key, value) -> keys.add(key.toString()));
+        assertTrue(keys.contains("ns:test Annotated"));
+    }
+
+    @Test
+    public void slowSourceIsMarkedLateWithoutBlockingOthers() {
+        List<String> keys = new ArrayList<>();
+        List<MonitoringDataSource> sources = asList(new SlowSource(), new FastSource("a"));
+        long start = System.currentTimeMillis();
+        ParallelSourceCollector.Stats stats = collector.collect(sources, 0L, (key, value) -> keys.add(key.toString()));
+        assertTrue(System.currentTimeMillis() - start < 2000L);
+        assertEquals(1, stats.lateSources);
+        assertEquals(1, stats.collectedSources);
+        assertTrue(keys.contains("a"));
+        assertFalse(keys.contains("Slow"));
+        assertTrue(keys.contains("ns:monitoring @:SlowSource CollectionLateCount"));
+        // still running from last tick
+        stats = collector.collect(sources, 1L, (key, value) -> { });
+        assertEquals(1, stats.lateSources);
+    }
+
+    @Test
+    public void failingSourceKeepsDataCollectedBeforeFailure() {
+        List<String> keys = new ArrayList<>();
+        List<MonitoringDataSource> sources = asList(new FailingSource(), new FastSource("a"));
+        ParallelSourceCollector.Stats stats = collector.collect(sources, 0L, (key, value) -> keys.add(key.toString()));
+        assertEquals(2, stats.collectedSources);
+        assertEquals(1, stats.failedSources);
+        assertEquals(0, stats.lateSources);
+        assertTrue(keys.contains("BeforeFailure"));
+        assertTrue(keys.contains("a"));
+    }
+
+    @Test
+    public void sourcesAboveThreadLimitWaitForFreeThread() {
+        ParallelSourceCollector single = new ParallelSourceCollector(executor, 1, 200L);
+        List<String> keys = new ArrayList<>();
+        List<MonitoringDataSource> sources = asList(new SlowSource(), new FastSource("a"));
+        ParallelSourceCollector.Stats stats = single.collect(sources, 0L, (key, value) -> keys.add(key.toString()));
+        assertEquals(2, stats.lateSources);
+        assertFalse(keys.contains("a"));
+        slowRelease.countDown();
+        // both are collected again once the slow source finished
+        long deadline = System.currentTimeMillis() + 5000L;
+        do {
+            keys.clear();
+            stats = single.collect(sources, 1L, (key, value) -> keys.add(key.toString()));
+        } while (stats.collectedSources < 2 && System.currentTimeMillis() < deadline);
+        assertEquals(2, stats.collectedSources);
+        assertTrue(keys.contains("Slow"));
+        assertTrue(keys.contains("a"));
+    }
+
+    @Test
+    public void sourcesDroppedOnShutdownAreNotConsideredRunning() {
+        ParallelSourceCollector single = new ParallelSourceCollector(executor, 1, 100L);
+        List<MonitoringDataSource> sources = asList(new SlowSource(), new FastSource("a"));
+        single.collect(sources, 0L, (key, value) -> { });
+        single.shutdown();
+
+        List<String> keys = new ArrayList<>();
+        ParallelSourceCollector.Stats stats = single.collect(asList(new FastSource("b"), sources.get(1)), 1L,
+                (key, value) -> keys.add(key.toString()));
+        assertEquals(2, stats.collectedSources);
+        assertEquals(0, stats.lateSources);
+        assertTrue(keys.contains("a"));
+        assertTrue(keys.contains("b"));
+    }
+
+    @Test
+    public void collectsInCallingThreadWithoutThreads() {
+        ParallelSourceCollector inline = new ParallelSourceCollector(executor, 0, 200L);
+        List<String> keys = new ArrayList<>();
+        ParallelSourceCollector.Stats stats = inline.collect(asList(new FastSource("a")), 0L,
+                (key, value) -> keys.add(key.toString()));
+        assertEquals(1, stats.collectedSources);
+        assertTrue(keys.contains("a"));
+    }
+
+    @Test
+    public void latencyHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram(100);
+        for (int i = 0; i < 90; i++) {
+            histogram.record(3L);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(150L);
+        }
+        assertEquals(5L, histogram.percentile(50));
+        assertEquals(150L, histogram.percentile(95));
+        assertEquals(150L, histogram.max());
+    }
+}
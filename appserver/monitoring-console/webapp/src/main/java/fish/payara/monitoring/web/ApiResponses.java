@@ -56,6 +56,7 @@ import fish.payara.monitoring.alert.AlertService.AlertStatistics;
 import fish.payara.monitoring.alert.Circumstance;
 import fish.payara.monitoring.alert.Condition;
 import fish.payara.monitoring.model.SeriesDataset;
+import fish.payara.monitoring.model.SeriesHistory;
 import fish.payara.monitoring.web.ApiRequests.SeriesQuery;
 import fish.payara.notification.requesttracing.RequestTrace;
 import fish.payara.nucleus.requesttracing.RequestTracingService;
@@ -218,6 +219,24 @@ public final class ApiResponses {
         }
     }
 
+    /**
+     * The persisted history of a series. The {@link #buckets} alternate start, min, max, sum and count fields.
+     */
+    public static final class HistoryData {
+
+        public final String series;
+        public final String instance;
+        public final long resolution;
+        public final long[] buckets;
+
+        public HistoryData(SeriesHistory history) {
+            this.series = history.getSeries().toString();
+            this.instance = history.getInstance();
+            this.resolution = history.getResolution();
+            this.buckets = history.buckets();
+        }
+    }
+
     public static final class RequestTraceResponse {
 
         public final UUID id;
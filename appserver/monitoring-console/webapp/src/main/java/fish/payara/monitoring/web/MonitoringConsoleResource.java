@@ -40,21 +40,25 @@
 package fish.payara.monitoring.web;
 
 import static java.util.Collections.emptyList;
+import static java.util.concurrent.TimeUnit.HOURS;
 import static java.util.stream.StreamSupport.stream;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.enterprise.context.RequestScoped;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
 
 import org.glassfish.internal.api.Globals;
@@ -62,12 +66,14 @@ import org.glassfish.internal.api.Globals;
 import fish.payara.monitoring.alert.Alert;
 import fish.payara.monitoring.alert.AlertService;
 import fish.payara.monitoring.alert.Watch;
+import fish.payara.monitoring.history.Resolution;
 import fish.payara.monitoring.model.Series;
 import fish.payara.monitoring.model.SeriesDataset;
 import fish.payara.monitoring.store.MonitoringDataRepository;
 import fish.payara.monitoring.web.ApiRequests.SeriesQuery;
 import fish.payara.monitoring.web.ApiRequests.SeriesRequest;
 import fish.payara.monitoring.web.ApiResponses.AlertsResponse;
+import fish.payara.monitoring.web.ApiResponses.HistoryData;
 import fish.payara.monitoring.web.ApiResponses.RequestTraceResponse;
 import fish.payara.monitoring.web.ApiResponses.SeriesResponse;
 import fish.payara.monitoring.web.ApiResponses.WatchesResponse;
@@ -141,6 +147,35 @@ public class MonitoringConsoleResource {
         return new SeriesResponse(request.queries, data, watches, alerts, alertService.getAlertStatistics());
     }
 
+    @GET
+    @Path("/series/history/{series}/")
+    public List<HistoryData> getSeriesHistory(@PathParam("series") String series, @QueryParam("from") Long from,
+            @QueryParam("to") Long to, @QueryParam("resolution") String resolution,
+            @QueryParam("instance") List<String> instances) {
+        Series key = seriesOrNull(series);
+        if (key == null) {
+            return emptyList();
+        }
+        long end = to == null ? System.currentTimeMillis() : to.longValue();
+        long start = from == null ? end - HOURS.toMillis(24) : from.longValue();
+        Resolution r = resolutionOrNull(resolution);
+        List<HistoryData> response = new ArrayList<>();
+        getDataStore().selectHistory(key, start, end, r, instances.toArray(new String[0]))
+            .forEach(history -> response.add(new HistoryData(history)));
+        return response;
+    }
+
+    private static Resolution resolutionOrNull(String resolution) {
+        if (resolution == null || resolution.isEmpty()) {
+            return null;
+        }
+        try {
+            return Resolution.valueOf(resolution.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("Unknown resolution: " + resolution);
+        }
+    }
+
     @GET
     @Path("/series/")
     public String[] getSeriesNames() {
@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2019 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) [2019-2020] Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -208,6 +208,21 @@ public interface FaultToleranceConfig {
         return annotation.successThreshold();
     }
 
+    /**
+     * A payara specific feature that allows to use a time based instead of the count based window of outcomes. This
+     * is not an attribute of {@link CircuitBreaker} and can only be set using configuration.
+     *
+     * @return the duration of the time based window in {@link #windowDurationUnit(CircuitBreaker)}, or 0 to use a
+     *         window of the last {@link CircuitBreaker#requestVolumeThreshold()} outcomes (default)
+     */
+    default long windowDuration(CircuitBreaker annotation) {
+        return 0L;
+    }
+
+    default ChronoUnit windowDurationUnit(CircuitBreaker annotation) {
+        return ChronoUnit.MILLIS;
+    }
+
 
     /*
      * @Bulkhead
@@ -221,6 +236,17 @@ public interface FaultToleranceConfig {
         return annotation.waitingTaskQueue();
     }
 
+    /**
+     * A payara specific feature that allows to adjust the number of concurrent executions to the observed execution
+     * durations. This is not an attribute of {@link Bulkhead} and can only be set using configuration.
+     *
+     * @return true to use {@link Bulkhead#value()} as the maximum of an adaptive limit, false to use it as a fixed
+     *         limit (default)
+     */
+    default boolean adaptive(Bulkhead annotation) {
+        return false;
+    }
+
 
     /*
      * @Timeout
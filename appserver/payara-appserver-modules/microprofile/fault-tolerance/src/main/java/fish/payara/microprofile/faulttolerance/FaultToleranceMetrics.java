@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2019 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) [2019-2020] Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -192,6 +192,10 @@ public interface FaultToleranceMetrics {
         linkGauge("ft.%s.bulkhead.concurrentExecutions", gauge);
     }
 
+    default void linkBulkheadConcurrencyLimit(LongSupplier gauge) {
+        linkGauge("ft.%s.bulkhead.concurrencyLimit", gauge);
+    }
+
     default void linkBulkheadWaitingQueuePopulation(LongSupplier gauge) {
         linkGauge("ft.%s.bulkhead.waitingQueue.population", gauge);
     }
@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2019 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) [2019-2020] Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -90,9 +90,9 @@ public interface FaultToleranceService {
      * State
      */
 
-    CircuitBreakerState getState(int requestVolumeThreshold, InvocationContext context);
+    CircuitBreakerState getState(int requestVolumeThreshold, long windowMillis, InvocationContext context);
 
-    BulkheadSemaphore getConcurrentExecutions(int maxConcurrentThreads, InvocationContext context);
+    BulkheadSemaphore getConcurrentExecutions(int maxConcurrentThreads, boolean adaptive, InvocationContext context);
 
     BulkheadSemaphore getWaitingQueuePopulation(int queueCapacity, InvocationContext context);
 
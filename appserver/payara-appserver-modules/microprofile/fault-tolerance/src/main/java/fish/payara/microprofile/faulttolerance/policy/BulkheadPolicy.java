@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2019 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) [2019-2020] Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -56,12 +56,21 @@ public final class BulkheadPolicy extends Policy {
 
     public final int value;
     public final int waitingTaskQueue;
+    /**
+     * When true, {@link #value} is the maximum of a concurrency limit that adapts to the execution durations.
+     */
+    public final boolean adaptive;
 
     public BulkheadPolicy(Method annotatedMethod, int value, int waitingTaskQueue) {
+        this(annotatedMethod, value, waitingTaskQueue, false);
+    }
+
+    public BulkheadPolicy(Method annotatedMethod, int value, int waitingTaskQueue, boolean adaptive) {
         checkAtLeast(1, annotatedMethod, Bulkhead.class, "value", value);
         checkAtLeast(0, annotatedMethod, Bulkhead.class, "waitingTaskQueue", waitingTaskQueue);
         this.value = value;
         this.waitingTaskQueue = waitingTaskQueue;
+        this.adaptive = adaptive;
     }
 
     public static BulkheadPolicy create(InvocationContext context, FaultToleranceConfig config) {
@@ -69,7 +78,8 @@ public final class BulkheadPolicy extends Policy {
             Bulkhead annotation = config.getAnnotation(Bulkhead.class);
             return new BulkheadPolicy(context.getMethod(),
                     config.value(annotation), 
-                    config.waitingTaskQueue(annotation));
+                    config.waitingTaskQueue(annotation),
+                    config.adaptive(annotation));
         }
         return null;
     }
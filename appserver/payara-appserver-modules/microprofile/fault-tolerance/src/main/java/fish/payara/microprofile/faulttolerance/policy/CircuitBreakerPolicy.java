@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2019 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) [2019-2020] Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -40,6 +40,7 @@
 package fish.payara.microprofile.faulttolerance.policy;
 
 import java.lang.reflect.Method;
+import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.logging.Logger;
 
@@ -64,20 +65,34 @@ public final class CircuitBreakerPolicy extends Policy {
     public final int requestVolumeThreshold;
     public final double failureRatio;
     public final int successThreshold;
+    /**
+     * Duration of the time based window of outcomes in milliseconds, or 0 when the window contains the last
+     * {@link #requestVolumeThreshold} outcomes.
+     */
+    public final long windowMillis;
 
     public CircuitBreakerPolicy(Method annotatedMethod, Class<? extends Throwable>[] failOn, long delay, ChronoUnit delayUnit,
             int requestVolumeThreshold, double failureRatio, int successThreshold) {
+        this(annotatedMethod, failOn, delay, delayUnit, requestVolumeThreshold, failureRatio, successThreshold, 0L,
+                ChronoUnit.MILLIS);
+    }
+
+    public CircuitBreakerPolicy(Method annotatedMethod, Class<? extends Throwable>[] failOn, long delay, ChronoUnit delayUnit,
+            int requestVolumeThreshold, double failureRatio, int successThreshold, long windowDuration,
+            ChronoUnit windowDurationUnit) {
         checkAtLeast(0, annotatedMethod, CircuitBreaker.class, "delay", delay);
         checkAtLeast(1, annotatedMethod, CircuitBreaker.class, "requestVolumeThreshold", requestVolumeThreshold);
         checkAtLeast(0d, annotatedMethod, CircuitBreaker.class, "failureRatio", failureRatio);
         checkAtMost(1.0d, annotatedMethod, CircuitBreaker.class, "failureRatio", failureRatio);
         checkAtLeast(1, annotatedMethod, CircuitBreaker.class, "successThreshold", successThreshold);
+        checkAtLeast(0, annotatedMethod, CircuitBreaker.class, "windowDuration", windowDuration);
         this.failOn = failOn;
         this.delay = delay;
         this.delayUnit = delayUnit;
         this.requestVolumeThreshold = requestVolumeThreshold;
         this.failureRatio = failureRatio;
         this.successThreshold = successThreshold;
+        this.windowMillis = Duration.of(windowDuration, windowDurationUnit).toMillis();
     }
 
     public static CircuitBreakerPolicy create(InvocationContext context, FaultToleranceConfig config) {
@@ -89,7 +104,9 @@ public final class CircuitBreakerPolicy extends Policy {
                     config.delayUnit(annotation),
                     config.requestVolumeThreshold(annotation),
                     config.failureRatio(annotation),
-                    config.successThreshold(annotation));
+                    config.successThreshold(annotation),
+                    config.windowDuration(annotation),
+                    config.windowDurationUnit(annotation));
         }
         return null;
     }
@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2019 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) [2019-2020] Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -416,7 +416,8 @@ public final class FaultTolerancePolicy implements Serializable {
             return processTimeoutStage(invocation, asyncAttempt);
         }
         logger.log(Level.FINER, "Proceeding invocation with circuitbreaker semantics");
-        CircuitBreakerState state = invocation.service.getState(circuitBreaker.requestVolumeThreshold, invocation.context);
+        CircuitBreakerState state = invocation.service.getState(circuitBreaker.requestVolumeThreshold,
+                circuitBreaker.windowMillis, invocation.context);
         if (isMetricsEnabled) {
             invocation.metrics.linkCircuitbreakerOpenTotal(state::nanosOpen);
             invocation.metrics.linkCircuitbreakerHalfOpenTotal(state::nanosHalfOpen);
@@ -540,11 +541,15 @@ public final class FaultTolerancePolicy implements Serializable {
         }
         logger.log(Level.FINER, "Proceeding invocation with bulkhead semantics");
         InvocationContext context = invocation.context;
-        BulkheadSemaphore concurrentExecutions = invocation.service.getConcurrentExecutions(bulkhead.value, context);
+        BulkheadSemaphore concurrentExecutions = invocation.service.getConcurrentExecutions(bulkhead.value,
+                bulkhead.adaptive, context);
         BulkheadSemaphore waitingQueuePopulation = !isAsynchronous() ? null
                 : invocation.service.getWaitingQueuePopulation(bulkhead.waitingTaskQueue, context);
         if (isMetricsEnabled) {
             invocation.metrics.linkBulkheadConcurrentExecutions(concurrentExecutions::acquiredPermits);
+            if (concurrentExecutions.isAdaptive()) {
+                invocation.metrics.linkBulkheadConcurrencyLimit(concurrentExecutions::getTotalPermits);
+            }
             if (waitingQueuePopulation != null) {
                 invocation.metrics.linkBulkheadWaitingQueuePopulation(waitingQueuePopulation::acquiredPermits);
             }
@@ -594,8 +599,9 @@ public final class FaultTolerancePolicy implements Serializable {
         try {
             return proceed(invocation);
         } finally {
-            invocation.metrics.addBulkheadExecutionDuration(System.nanoTime() - executionSince);
-            concurrentExecutions.release();
+            long executionDuration = System.nanoTime() - executionSince;
+            invocation.metrics.addBulkheadExecutionDuration(executionDuration);
+            concurrentExecutions.release(executionDuration);
         }
     }
 
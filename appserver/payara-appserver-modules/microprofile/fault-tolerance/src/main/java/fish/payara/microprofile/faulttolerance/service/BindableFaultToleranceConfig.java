@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2019 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) [2019-2020] Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -265,6 +265,16 @@ final class BindableFaultToleranceConfig implements FaultToleranceConfig {
         return intValue(CircuitBreaker.class, "successThreshold", annotation.successThreshold());
     }
 
+    @Override
+    public long windowDuration(CircuitBreaker annotation) {
+        return longValue(CircuitBreaker.class, "windowDuration", 0L);
+    }
+
+    @Override
+    public ChronoUnit windowDurationUnit(CircuitBreaker annotation) {
+        return chronoUnitValue(CircuitBreaker.class, "windowDurationUnit", ChronoUnit.MILLIS);
+    }
+
 
     /*
      * Bulkhead
@@ -280,6 +290,11 @@ final class BindableFaultToleranceConfig implements FaultToleranceConfig {
         return intValue(Bulkhead.class, "waitingTaskQueue", annotation.waitingTaskQueue());
     }
 
+    @Override
+    public boolean adaptive(Bulkhead annotation) {
+        return value(Bulkhead.class, "adaptive", Boolean.class, false);
+    }
+
 
     /*
      * Timeout
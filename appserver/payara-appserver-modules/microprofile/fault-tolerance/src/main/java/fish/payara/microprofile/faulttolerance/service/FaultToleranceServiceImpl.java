@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2017-2019 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) [2017-2020] Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -178,7 +178,8 @@ public class FaultToleranceServiceImpl implements EventListener, FaultToleranceS
     private static void collectBulkheadSemaphores(MonitoringDataCollector collector, BulkheadSemaphore semaphore) {
         collector
             .collect("availablePermits", semaphore.availablePermits())
-            .collect("acquiredPermits", semaphore.acquiredPermits());
+            .collect("acquiredPermits", semaphore.acquiredPermits())
+            .collect("totalPermits", semaphore.getTotalPermits());
     }
 
     private static void collectCircuitBreakerState(MonitoringDataCollector collector, CircuitBreakerState state) {
@@ -228,10 +229,10 @@ public class FaultToleranceServiceImpl implements EventListener, FaultToleranceS
     }
 
     private BulkheadSemaphore getBulkheadExecutionSemaphore(String applicationName, Object invocationTarget, 
-            Method annotatedMethod, int bulkheadValue) {
+            Method annotatedMethod, int bulkheadValue, boolean adaptive) {
         return getApplicationState(applicationName).getBulkheadExecutionSemaphores()
                 .computeIfAbsent(invocationTarget, key -> new ConcurrentHashMap<>())
-                .computeIfAbsent( getFullMethodSignature(annotatedMethod), key -> new BulkheadSemaphore(bulkheadValue));
+                .computeIfAbsent( getFullMethodSignature(annotatedMethod), key -> new BulkheadSemaphore(bulkheadValue, adaptive));
     }
 
     private BulkheadSemaphore getBulkheadExecutionQueueSemaphore(String applicationName, Object invocationTarget, 
@@ -242,10 +243,10 @@ public class FaultToleranceServiceImpl implements EventListener, FaultToleranceS
     }
 
     private CircuitBreakerState getCircuitBreakerState(String applicationName, Object invocationTarget, 
-            Method annotatedMethod, int requestVolumeThreshold) {
+            Method annotatedMethod, int requestVolumeThreshold, long windowMillis) {
         return getApplicationState(applicationName).getCircuitBreakerStates()
                 .computeIfAbsent(invocationTarget, key -> new ConcurrentHashMap<>())
-                .computeIfAbsent(getFullMethodSignature(annotatedMethod), key -> new CircuitBreakerState(requestVolumeThreshold));
+                .computeIfAbsent(getFullMethodSignature(annotatedMethod), key -> new CircuitBreakerState(requestVolumeThreshold, windowMillis));
     }
 
     /**
@@ -327,15 +328,16 @@ public class FaultToleranceServiceImpl implements EventListener, FaultToleranceS
      */
 
     @Override
-    public CircuitBreakerState getState(int requestVolumeThreshold, InvocationContext context) {
+    public CircuitBreakerState getState(int requestVolumeThreshold, long windowMillis, InvocationContext context) {
         return getCircuitBreakerState(getApplicationContext(context), context.getTarget(),
-                context.getMethod(), requestVolumeThreshold);
+                context.getMethod(), requestVolumeThreshold, windowMillis);
     }
 
     @Override
-    public BulkheadSemaphore getConcurrentExecutions(int maxConcurrentThreads, InvocationContext context) {
+    public BulkheadSemaphore getConcurrentExecutions(int maxConcurrentThreads, boolean adaptive,
+            InvocationContext context) {
         return getBulkheadExecutionSemaphore(getApplicationContext(context),
-                context.getTarget(), context.getMethod(), maxConcurrentThreads);
+                context.getTarget(), context.getMethod(), maxConcurrentThreads, adaptive);
     }
 
     @Override
@@ -0,0 +1,134 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.microprofile.faulttolerance.state;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Estimates the concurrency limit of a bulkhead from the observed execution durations using a gradient of the long
+ * term average duration and the duration of the most recent execution.
+ *
+ * As long as executions do not get slower than the long term average (with some tolerance) the limit grows by a queue
+ * allowance of about the square root of the current limit. When executions get slower the limit is reduced
+ * proportionally, at most halved per sample. The limit is smoothed and stays between 1 and the configured maximum.
+ *
+ * The long term average is drifting towards the current durations so that a permanent change in the durations
+ * eventually is considered normal.
+ *
+ * Reading the limit is a volatile read. Updates are sampled: a duration reported while another thread is updating the
+ * estimate is skipped instead of waiting for it, so the executions never block each other.
+ */
+public final class AdaptiveConcurrencyLimit {
+
+    private static final double TOLERANCE = 1.5d;
+    private static final double SMOOTHING = 0.2d;
+    private static final int LONG_TERM_WINDOW = 600;
+
+    private final int maxLimit;
+    private final ReentrantLock updateLock = new ReentrantLock();
+
+    /**
+     * The estimate, guarded by the updateLock
+     */
+    private double estimatedLimit;
+    private double longTermNanos;
+    private int samples;
+
+    private volatile int limit;
+
+    public AdaptiveConcurrencyLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+        this.estimatedLimit = maxLimit;
+        this.limit = maxLimit;
+    }
+
+    /**
+     * Updates the estimated limit with the duration of a completed execution, unless another thread is updating it
+     * at the same time.
+     *
+     * @param executionNanos duration of the completed execution
+     * @param inflight       number of executions in progress when the execution completed (including it)
+     * @return the new limit
+     */
+    public int update(long executionNanos, int inflight) {
+        if (executionNanos <= 0 || !updateLock.tryLock()) {
+            return limit;
+        }
+        try {
+            return updateEstimate(executionNanos, inflight);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+
+    private int updateEstimate(long executionNanos, int inflight) {
+        if (samples < LONG_TERM_WINDOW) {
+            samples++;
+        }
+        longTermNanos = longTermNanos == 0d
+                ? executionNanos
+                : longTermNanos + (executionNanos - longTermNanos) / samples;
+        if (longTermNanos / executionNanos > 2d) {
+            // durations improved considerably, drift towards them faster
+            longTermNanos *= 0.95d;
+        }
+        // do not grow the limit if it is not even used
+        if (inflight < estimatedLimit / 2) {
+            return limit;
+        }
+        double gradient = Math.max(0.5d, Math.min(1d, TOLERANCE * longTermNanos / executionNanos));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        newLimit = estimatedLimit * (1d - SMOOTHING) + newLimit * SMOOTHING;
+        estimatedLimit = Math.max(1d, Math.min(maxLimit, newLimit));
+        limit = (int) estimatedLimit;
+        return limit;
+    }
+
+    /**
+     * @return the current limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+}
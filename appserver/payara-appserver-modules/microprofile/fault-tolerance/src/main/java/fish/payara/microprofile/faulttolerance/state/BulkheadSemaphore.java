@@ -5,17 +5,59 @@ import java.util.concurrent.TimeUnit;
 
 public final class BulkheadSemaphore extends Semaphore {
 
-    final int totalPermits;
+    private final AdaptiveConcurrencyLimit limit;
+    volatile int totalPermits;
 
     public BulkheadSemaphore(int permits) {
+        this(permits, false);
+    }
+
+    /**
+     * @param permits the number of permits, or the maximum number of permits when adaptive
+     * @param adaptive true to adjust the number of permits to the execution durations reported by
+     *        {@link #release(long)}
+     */
+    public BulkheadSemaphore(int permits, boolean adaptive) {
         super(permits, true);
         this.totalPermits = permits;
+        this.limit = adaptive ? new AdaptiveConcurrencyLimit(permits) : null;
     }
 
     public int getTotalPermits() {
         return totalPermits;
     }
 
+    public boolean isAdaptive() {
+        return limit != null;
+    }
+
+    /**
+     * Releases a permit acquired for an execution that took the given duration. When the semaphore is adaptive the
+     * duration is used to adjust the total number of permits.
+     *
+     * @param executionNanos the duration of the execution the permit was acquired for
+     */
+    public void release(long executionNanos) {
+        if (limit != null) {
+            int permits = limit.update(executionNanos, acquiredPermits());
+            if (permits != totalPermits) {
+                resize(permits);
+            }
+        }
+        release();
+    }
+
+    private synchronized void resize(int permits) {
+        int delta = permits - totalPermits;
+        if (delta > 0) {
+            totalPermits = permits;
+            release(delta);
+        } else if (delta < 0) {
+            totalPermits = permits;
+            reducePermits(-delta);
+        }
+    }
+
     /**
      * Note that the number of acquired permits is only correct if {@link #acquire()} and {@link #release()} are used
      * consistent.
@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- *    Copyright (c) [2017-2018] Payara Foundation and/or its affiliates. All rights reserved.
+ *    Copyright (c) [2017-2020] Payara Foundation and/or its affiliates. All rights reserved.
  *
  *     The contents of this file are subject to the terms of either the GNU
  *     General Public License Version 2 only ("GPL") or the Common Development
@@ -41,14 +41,22 @@ package fish.payara.microprofile.faulttolerance.state;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Class that represents the state of a CircuitBreaker.
+ *
+ * The outcomes of the closed state are recorded in a lock-free sliding window. By default this is a ring buffer of the
+ * last {@code requestVolumeThreshold} outcomes. Alternatively the window can cover all outcomes within a duration in
+ * which case the {@code requestVolumeThreshold} is the minimum number of outcomes required within that duration.
+ *
  * @author Andrew Pielage
  * @author Jan Bernitt (2.0)
  */
@@ -60,7 +68,7 @@ public class CircuitBreakerState {
         OPEN, CLOSED, HALF_OPEN
     }
 
-    private final BlockingQueue<Boolean> closedResultsQueue;
+    private final ResultWindow closedResults;
 
     private final AtomicInteger halfOpenSuccessfulResultsCounter = new AtomicInteger(0);
 
@@ -68,7 +76,22 @@ public class CircuitBreakerState {
     private volatile StateTime currentStateTime;
 
     public CircuitBreakerState(int requestVolumeThreshold) {
-        this.closedResultsQueue = new LinkedBlockingQueue<>(requestVolumeThreshold);
+        this(requestVolumeThreshold, 0L);
+    }
+
+    /**
+     * @param requestVolumeThreshold number of outcomes considered, or minimum number of outcomes if a window duration
+     *                               is given
+     * @param windowMillis           duration of the time based window in milliseconds, 0 to use a count based window
+     */
+    public CircuitBreakerState(int requestVolumeThreshold, long windowMillis) {
+        this(requestVolumeThreshold, windowMillis, () -> TimeUnit.NANOSECONDS.toMillis(System.nanoTime()));
+    }
+
+    CircuitBreakerState(int requestVolumeThreshold, long windowMillis, LongSupplier clock) {
+        this.closedResults = windowMillis <= 0
+                ? new CountWindow(requestVolumeThreshold)
+                : new TimeWindow(windowMillis, clock);
         for(CircuitState state : CircuitState.values()) {
             this.allStateTimes.put(state, new StateTime(state));
         }
@@ -101,18 +124,14 @@ public class CircuitBreakerState {
      * @param success True for a success, false for a failure
      */
     public void recordClosedOutcome(boolean success) {
-        // If the queue is full, remove the oldest result and add
-        if (!this.closedResultsQueue.offer(success)) {
-            this.closedResultsQueue.poll();
-            this.closedResultsQueue.offer(success);
-        }
+        this.closedResults.record(success);
     }
 
     /**
-     * Clears the results queue.
+     * Clears the recorded results.
      */
     public void resetResults() {
-        this.closedResultsQueue.clear();
+        this.closedResults.reset();
     }
 
     /**
@@ -143,26 +162,7 @@ public class CircuitBreakerState {
      * @return True if the CircuitBreaker is over the failure threshold
      */
     public boolean isOverFailureThreshold(int requestVolumeThreshold, double failureRatio) {
-        boolean over = false;
-        int failures = 0;
-        int failureThreshold = (int) Math.round(requestVolumeThreshold * failureRatio);
-        // Only check if the queue is full
-        if (this.closedResultsQueue.remainingCapacity() == 0) {
-            for (Boolean success : this.closedResultsQueue) {
-                if (!success) {
-                    failures++;
-
-                    if (failures == failureThreshold) {
-                        over = true;
-                        break;
-                    }
-                }
-            }
-        } else {
-            logger.log(Level.FINE, "CircuitBreaker results queue isn't full yet.");
-        }
-
-        return over;
+        return this.closedResults.isOverFailureThreshold(requestVolumeThreshold, failureRatio);
     }
 
     /**
@@ -211,4 +211,133 @@ public class CircuitBreakerState {
         }
         return false;
     }
+
+    /**
+     * The sliding window of closed state outcomes.
+     */
+    private interface ResultWindow {
+
+        void record(boolean success);
+
+        boolean isOverFailureThreshold(int requestVolumeThreshold, double failureRatio);
+
+        void reset();
+
+        static boolean isOverFailureThreshold(int failures, int volume, double failureRatio) {
+            int failureThreshold = (int) Math.round(volume * failureRatio);
+            return failureThreshold > 0 && failures >= failureThreshold;
+        }
+    }
+
+    /**
+     * Ring buffer of the last n outcomes with a running count of the failures it contains.
+     *
+     * Slots are claimed by incrementing a sequence so concurrent recording never blocks. As the failure count is
+     * updated by the difference between the swapped out and the swapped in outcome it always matches the buffer.
+     */
+    private static final class CountWindow implements ResultWindow {
+
+        private final AtomicIntegerArray failed;
+        private final AtomicLong recorded = new AtomicLong();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        CountWindow(int size) {
+            this.failed = new AtomicIntegerArray(size);
+        }
+
+        @Override
+        public void record(boolean success) {
+            int slot = (int) (recorded.getAndIncrement() % failed.length());
+            int failure = success ? 0 : 1;
+            int replaced = failed.getAndSet(slot, failure);
+            if (failure != replaced) {
+                failures.addAndGet(failure - replaced);
+            }
+        }
+
+        @Override
+        public boolean isOverFailureThreshold(int requestVolumeThreshold, double failureRatio) {
+            // Only check if the buffer is full
+            if (recorded.get() < failed.length()) {
+                logger.log(Level.FINE, "CircuitBreaker results buffer isn't full yet.");
+                return false;
+            }
+            return ResultWindow.isOverFailureThreshold(failures.get(), requestVolumeThreshold, failureRatio);
+        }
+
+        @Override
+        public void reset() {
+            recorded.set(0);
+            for (int i = 0; i < failed.length(); i++) {
+                int replaced = failed.getAndSet(i, 0);
+                if (replaced != 0) {
+                    failures.addAndGet(-replaced);
+                }
+            }
+        }
+    }
+
+    /**
+     * Outcomes within the last window duration, counted in {@link #BUCKETS} buckets each covering a fraction of the
+     * window. A bucket is reused for a later time frame once it fell out of the window.
+     *
+     * Outcomes recorded concurrently while a bucket is recycled might get lost. This is an accepted inaccuracy in
+     * exchange for never blocking.
+     */
+    private static final class TimeWindow implements ResultWindow {
+
+        private static final int BUCKETS = 10;
+
+        private final long bucketMillis;
+        private final LongSupplier clock;
+        private final AtomicLongArray frames = new AtomicLongArray(BUCKETS);
+        private final AtomicIntegerArray calls = new AtomicIntegerArray(BUCKETS);
+        private final AtomicIntegerArray failures = new AtomicIntegerArray(BUCKETS);
+
+        TimeWindow(long windowMillis, LongSupplier clock) {
+            this.bucketMillis = Math.max(1L, windowMillis / BUCKETS);
+            this.clock = clock;
+            reset();
+        }
+
+        @Override
+        public void record(boolean success) {
+            long frame = clock.getAsLong() / bucketMillis;
+            int bucket = (int) (frame % BUCKETS);
+            long bucketFrame = frames.get(bucket);
+            if (bucketFrame < frame && frames.compareAndSet(bucket, bucketFrame, frame)) {
+                calls.set(bucket, 0);
+                failures.set(bucket, 0);
+            }
+            calls.incrementAndGet(bucket);
+            if (!success) {
+                failures.incrementAndGet(bucket);
+            }
+        }
+
+        @Override
+        public boolean isOverFailureThreshold(int requestVolumeThreshold, double failureRatio) {
+            long oldestFrame = clock.getAsLong() / bucketMillis - BUCKETS + 1;
+            int volume = 0;
+            int failed = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                if (frames.get(bucket) >= oldestFrame) {
+                    volume += calls.get(bucket);
+                    failed += failures.get(bucket);
+                }
+            }
+            if (volume < requestVolumeThreshold) {
+                logger.log(Level.FINE, "CircuitBreaker results window has not reached the request volume threshold yet.");
+                return false;
+            }
+            return ResultWindow.isOverFailureThreshold(failed, volume, failureRatio);
+        }
+
+        @Override
+        public void reset() {
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                frames.set(bucket, Long.MIN_VALUE);
+            }
+        }
+    }
 }
@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2019 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) [2019-2020] Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -77,9 +77,10 @@ public class BulkheadBasicTest {
 
     private final FaultToleranceService service = new FaultToleranceServiceStub() {
         @Override
-        public BulkheadSemaphore getConcurrentExecutions(int maxConcurrentThreads, InvocationContext context) {
+        public BulkheadSemaphore getConcurrentExecutions(int maxConcurrentThreads, boolean adaptive,
+                InvocationContext context) {
             return concurrentExecutions.updateAndGet(value -> 
-                value != null ? value : new BulkheadSemaphore(maxConcurrentThreads));
+                value != null ? value : new BulkheadSemaphore(maxConcurrentThreads, adaptive));
         }
 
         @Override
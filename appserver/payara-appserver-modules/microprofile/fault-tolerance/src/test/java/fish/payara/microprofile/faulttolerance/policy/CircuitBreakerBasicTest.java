@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2019 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) [2019-2020] Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -75,8 +75,8 @@ public class CircuitBreakerBasicTest {
     private final FaultToleranceService service = new FaultToleranceServiceStub() {
 
         @Override
-        public CircuitBreakerState getState(int requestVolumeThreshold, InvocationContext context) {
-            return state.updateAndGet(value -> value != null ? value : new CircuitBreakerState(requestVolumeThreshold));
+        public CircuitBreakerState getState(int requestVolumeThreshold, long windowMillis, InvocationContext context) {
+            return state.updateAndGet(value -> value != null ? value : new CircuitBreakerState(requestVolumeThreshold, windowMillis));
         }
 
         @Override
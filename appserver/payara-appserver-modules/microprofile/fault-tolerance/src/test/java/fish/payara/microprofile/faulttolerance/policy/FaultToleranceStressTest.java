@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2019 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) [2019-2020] Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -125,16 +125,17 @@ public class FaultToleranceStressTest implements FallbackHandler<Future<String>>
     final FaultToleranceService service = new FaultToleranceServiceStub() {
 
         @Override
-        public CircuitBreakerState getState(int requestVolumeThreshold, InvocationContext context) {
+        public CircuitBreakerState getState(int requestVolumeThreshold, long windowMillis, InvocationContext context) {
             circuitStateAccessCount.incrementAndGet();
-            return state.updateAndGet(value -> value != null ? value : new CircuitBreakerState(requestVolumeThreshold));
+            return state.updateAndGet(value -> value != null ? value : new CircuitBreakerState(requestVolumeThreshold, windowMillis));
         }
 
         @Override
-        public BulkheadSemaphore getConcurrentExecutions(int maxConcurrentThreads, InvocationContext context) {
+        public BulkheadSemaphore getConcurrentExecutions(int maxConcurrentThreads, boolean adaptive,
+                InvocationContext context) {
             concurrentExecutionsAccessCount.incrementAndGet();
             return concurrentExecutions.updateAndGet(value -> 
-                value != null ? value : new BulkheadSemaphore(maxConcurrentThreads));
+                value != null ? value : new BulkheadSemaphore(maxConcurrentThreads, adaptive));
         }
 
         @Override
@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2019 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) [2019-2020] Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -83,12 +83,13 @@ public class FaultToleranceServiceStub implements FaultToleranceService {
     }
 
     @Override
-    public CircuitBreakerState getState(int requestVolumeThreshold, InvocationContext context) {
+    public CircuitBreakerState getState(int requestVolumeThreshold, long windowMillis, InvocationContext context) {
         throw new UnsupportedOperationException("Override for test case");
     }
 
     @Override
-    public BulkheadSemaphore getConcurrentExecutions(int maxConcurrentThreads, InvocationContext context) {
+    public BulkheadSemaphore getConcurrentExecutions(int maxConcurrentThreads, boolean adaptive,
+            InvocationContext context) {
         throw new UnsupportedOperationException("Override for test case");
     }
 
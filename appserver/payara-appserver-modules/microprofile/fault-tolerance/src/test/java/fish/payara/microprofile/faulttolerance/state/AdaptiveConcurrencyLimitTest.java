@@ -0,0 +1,132 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.microprofile.faulttolerance.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long MILLIS = 1000_000L;
+
+    @Test
+    public void limitStartsAtMaximum() {
+        assertEquals(20, new AdaptiveConcurrencyLimit(20).getLimit());
+    }
+
+    @Test
+    public void limitShrinksWhenExecutionsGetSlowerAndRecovers() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20);
+        for (int i = 0; i < 100; i++) {
+            limit.update(10 * MILLIS, 20);
+        }
+        assertEquals("Limit should not exceed maximum", 20, limit.getLimit());
+        for (int i = 0; i < 20; i++) {
+            limit.update(100 * MILLIS, limit.getLimit());
+        }
+        int reduced = limit.getLimit();
+        assertTrue("Limit should have been reduced but was " + reduced, reduced < 15);
+        assertTrue(reduced >= 1);
+        for (int i = 0; i < 200; i++) {
+            limit.update(10 * MILLIS, limit.getLimit());
+        }
+        assertEquals("Limit should recover", 20, limit.getLimit());
+    }
+
+    @Test
+    public void limitDoesNotChangeWhenNotUsed() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20);
+        limit.update(10 * MILLIS, 1);
+        limit.update(100 * MILLIS, 1);
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    public void concurrentUpdatesKeepLimitInRange() throws InterruptedException {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20);
+        AtomicInteger outOfRange = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            long executionNanos = (t % 2 == 0 ? 10 : 100) * MILLIS;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    int current = limit.update(executionNanos, 20);
+                    if (current < 1 || current > 20) {
+                        outOfRange.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, outOfRange.get());
+        assertTrue(limit.getLimit() >= 1 && limit.getLimit() <= 20);
+    }
+
+    @Test
+    public void semaphorePermitsFollowLimit() {
+        BulkheadSemaphore semaphore = new BulkheadSemaphore(10, true);
+        executeAllPermits(semaphore, 100, 10 * MILLIS);
+        assertEquals(10, semaphore.getTotalPermits());
+        executeAllPermits(semaphore, 20, 100 * MILLIS);
+        int total = semaphore.getTotalPermits();
+        assertTrue("Permits should have been reduced but were " + total, total < 10);
+        assertEquals(total, semaphore.availablePermits());
+        assertEquals(0, semaphore.acquiredPermits());
+    }
+
+    private static void executeAllPermits(BulkheadSemaphore semaphore, int times, long executionNanos) {
+        for (int i = 0; i < times; i++) {
+            int acquired = 0;
+            while (semaphore.tryAcquireFair()) {
+                acquired++;
+            }
+            for (int j = 0; j < acquired; j++) {
+                semaphore.release(executionNanos);
+            }
+        }
+    }
+}
@@ -39,6 +39,8 @@
  */
 package fish.payara.microprofile.faulttolerance.state;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -74,4 +76,45 @@ public class CircuitBreakerStateTest {
         assertEquals("Unexpected nanos for unused state.", 0, state.updateAndGet(CircuitBreakerState.CircuitState.HALF_OPEN));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testCountWindowOnlyConsidersLastOutcomes() {
+        CircuitBreakerState state = new CircuitBreakerState(4);
+        state.recordClosedOutcome(false);
+        state.recordClosedOutcome(false);
+        state.recordClosedOutcome(true);
+        assertFalse("Window not full yet.", state.isOverFailureThreshold(4, 0.5));
+        state.recordClosedOutcome(true);
+        assertTrue(state.isOverFailureThreshold(4, 0.5));
+        state.recordClosedOutcome(true);
+        assertFalse("Oldest failure should have left the window.", state.isOverFailureThreshold(4, 0.5));
+        state.recordClosedOutcome(false);
+        state.recordClosedOutcome(false);
+        assertTrue(state.isOverFailureThreshold(4, 0.5));
+        state.resetResults();
+        assertFalse("Results should be cleared.", state.isOverFailureThreshold(4, 0.5));
+    }
+
+    @Test
+    public void testTimeWindowOnlyConsidersRecentOutcomes() {
+        AtomicLong clock = new AtomicLong(1000);
+        CircuitBreakerState state = new CircuitBreakerState(2, 100, clock::get);
+        state.recordClosedOutcome(false);
+        assertFalse("Request volume not reached yet.", state.isOverFailureThreshold(2, 0.5));
+        clock.addAndGet(50);
+        state.recordClosedOutcome(true);
+        assertTrue(state.isOverFailureThreshold(2, 0.5));
+        state.recordClosedOutcome(true);
+        state.recordClosedOutcome(true);
+        assertFalse(state.isOverFailureThreshold(2, 0.5));
+        clock.addAndGet(60);
+        state.recordClosedOutcome(false);
+        state.recordClosedOutcome(false);
+        assertFalse("First failure should have left the window.", state.isOverFailureThreshold(2, 0.5));
+        clock.addAndGet(200);
+        assertFalse("All outcomes should have left the window.", state.isOverFailureThreshold(2, 0.5));
+        state.recordClosedOutcome(false);
+        state.recordClosedOutcome(false);
+        assertTrue(state.isOverFailureThreshold(2, 0.5));
+    }
+
+}
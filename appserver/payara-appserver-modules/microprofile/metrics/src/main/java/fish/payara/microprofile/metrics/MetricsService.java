@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  * 
- *    Copyright (c) [2018-2019] Payara Foundation and/or its affiliates. All rights reserved.
+ *    Copyright (c) [2018-2020] Payara Foundation and/or its affiliates. All rights reserved.
  * 
  *     The contents of this file are subject to the terms of either the GNU
  *     General Public License Version 2 only ("GPL") or the Common Development
@@ -44,6 +44,8 @@ import fish.payara.microprofile.metrics.cdi.MetricsHelper;
 import fish.payara.microprofile.metrics.exception.NoSuchMetricException;
 import fish.payara.microprofile.metrics.exception.NoSuchRegistryException;
 import fish.payara.microprofile.metrics.impl.MetricRegistryImpl;
+import fish.payara.microprofile.metrics.impl.Reservoir;
+import fish.payara.microprofile.metrics.impl.ReservoirType;
 import fish.payara.microprofile.metrics.jmx.MBeanMetadata;
 import fish.payara.microprofile.metrics.jmx.MBeanMetadataConfig;
 import fish.payara.microprofile.metrics.jmx.MBeanMetadataHelper;
@@ -120,6 +122,8 @@ public class MetricsService implements EventListener, ConfigListener, Monitoring
 
     private Boolean metricsSecure;
 
+    private ReservoirType reservoirType;
+
     private List<MBeanMetadata> unresolvedBaseMetadataList;
 
     private List<MBeanMetadata> unresolvedVendorMetadataList;
@@ -305,6 +309,26 @@ public class MetricsService implements EventListener, ConfigListener, Monitoring
         metricsSecure = null;
     }
     
+    /**
+     * @return the type of {@link Reservoir} used for new histograms and timers
+     */
+    public ReservoirType getReservoirType() {
+        if (reservoirType == null) {
+            reservoirType = metricsServiceConfiguration == null
+                    ? ReservoirType.EXPONENTIALLY_DECAYING
+                    : ReservoirType.fromName(metricsServiceConfiguration.getReservoirType());
+        }
+        return reservoirType;
+    }
+
+    public void resetReservoirTypeProperty() {
+        reservoirType = null;
+    }
+
+    private Reservoir createReservoir() {
+        return getReservoirType().createReservoir();
+    }
+
     public boolean isSecurityEnabled() {
         return Boolean.parseBoolean(metricsServiceConfiguration.getSecurityEnabled());
     }
@@ -388,7 +412,7 @@ public class MetricsService implements EventListener, ConfigListener, Monitoring
     public MetricRegistry getOrAddRegistry(String registryName) {
         MetricRegistry registry = REGISTRIES.get(registryName.toLowerCase());
         if (registry == null) {
-            registry = new MetricRegistryImpl();
+            registry = new MetricRegistryImpl(this::createReservoir);
             final MetricRegistry raced = REGISTRIES.putIfAbsent(registryName.toLowerCase(), registry);
             if (raced != null) {
                 registry = raced;
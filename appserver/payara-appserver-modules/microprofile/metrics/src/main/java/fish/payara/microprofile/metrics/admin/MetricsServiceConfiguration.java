@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  * 
- *    Copyright (c) [2018-2019] Payara Foundation and/or its affiliates. All rights reserved.
+ *    Copyright (c) [2018-2020] Payara Foundation and/or its affiliates. All rights reserved.
  * 
  *     The contents of this file are subject to the terms of either the GNU
  *     General Public License Version 2 only ("GPL") or the Common Development
@@ -107,4 +107,12 @@ public interface MetricsServiceConfiguration extends ConfigBeanProxy, ConfigExte
     String getRoles();
     void setRoles(String value) throws PropertyVetoException;
 
+    /**
+     * @return a String value naming the {@link fish.payara.microprofile.metrics.impl.ReservoirType} used by histograms
+     * and timers, either {@code EXPONENTIALLY_DECAYING} or {@code LOG_LINEAR_HISTOGRAM}.
+     */
+    @Attribute(defaultValue = "EXPONENTIALLY_DECAYING", dataType = String.class)
+    String getReservoirType();
+    void setReservoirType(String value) throws PropertyVetoException;
+
 }
@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) [2018-2019] Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) [2018-2020] Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -108,6 +108,9 @@ public class SetMetricsConfigurationCommand extends SetSecureMicroprofileConfigu
     @Param(name = "virtualServers", optional = true)
     private String virtualServers;
 
+    @Param(name = "reservoirType", optional = true, acceptableValues = "EXPONENTIALLY_DECAYING,LOG_LINEAR_HISTOGRAM")
+    private String reservoirType;
+
     @Inject
     private Domain domain;
 
@@ -169,6 +172,12 @@ public class SetMetricsConfigurationCommand extends SetSecureMicroprofileConfigu
                 if (roles != null) {
                     configProxy.setRoles(roles);
                 }
+                if (reservoirType != null) {
+                    configProxy.setReservoirType(reservoirType);
+                    if(dynamic != null && dynamic || Boolean.valueOf(metricsConfiguration.getDynamic())) {
+                        metricsService.resetReservoirTypeProperty();
+                    }
+                }
 
                 actionReport.setActionExitCode(ActionReport.ExitCode.SUCCESS);
                 return configProxy;
@@ -0,0 +1,253 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.microprofile.metrics.impl;
+
+import static fish.payara.microprofile.metrics.impl.LogLinearHistogramReservoir.BUCKETS;
+import static fish.payara.microprofile.metrics.impl.LogLinearHistogramReservoir.highestValue;
+import static fish.payara.microprofile.metrics.impl.LogLinearHistogramReservoir.lowestValue;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import org.eclipse.microprofile.metrics.Snapshot;
+
+/**
+ * A {@link Snapshot} of a {@link LogLinearHistogramReservoir}.
+ *
+ * Values are known with the precision of the bucket they were counted in. Quantiles, minimum and maximum use the
+ * highest (maximum, quantiles) or lowest (minimum) value of the respective bucket, standard deviation uses the middle
+ * of each bucket. The mean is exact as long as no decay took place.
+ */
+public class HistogramSnapshot extends Snapshot {
+
+    private final long[] counts;
+    private final long sum;
+    private final long count;
+    private final int first;
+    private final int last;
+
+    HistogramSnapshot(long[] counts, long sum) {
+        this.counts = counts;
+        this.sum = sum;
+        long total = 0;
+        int firstIndex = -1;
+        int lastIndex = -1;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                total += counts[i];
+                if (firstIndex < 0) {
+                    firstIndex = i;
+                }
+                lastIndex = i;
+            }
+        }
+        this.count = total;
+        this.first = firstIndex;
+        this.last = lastIndex;
+    }
+
+    /**
+     * Merges this snapshot with another one, for example to combine the distribution of the same metric on different
+     * instances.
+     *
+     * @param other the snapshot to merge with
+     * @return a new snapshot with the counts of both snapshots
+     */
+    public HistogramSnapshot merge(HistogramSnapshot other) {
+        long[] merged = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            merged[i] = counts[i] + other.counts[i];
+        }
+        return new HistogramSnapshot(merged, sum + other.sum);
+    }
+
+    /**
+     * Returns the value at the given quantile.
+     *
+     * @param quantile a given quantile, in {@code [0..1]}
+     * @return the highest value of the bucket containing the given quantile
+     */
+    @Override
+    public double getValue(double quantile) {
+        if (quantile < 0.0 || quantile > 1.0 || Double.isNaN(quantile)) {
+            throw new IllegalArgumentException(quantile + " is not in [0..1]");
+        }
+        if (count == 0) {
+            return 0.0;
+        }
+        long rank = Math.max(1L, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = first; i <= last; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return highestValue(last);
+    }
+
+    /**
+     * Returns the number of values in the snapshot.
+     *
+     * @return the number of values
+     */
+    @Override
+    public int size() {
+        return (int) Math.min(Integer.MAX_VALUE, count);
+    }
+
+    /**
+     * Returns the distinct values in the snapshot, one for each bucket with counts being the lowest value of the bucket.
+     * The number of values counted in each bucket is returned by {@link #getCounts()}. Values are not repeated for
+     * each count as a busy histogram has millions of counts.
+     *
+     * @return the values in ascending order
+     */
+    @Override
+    public long[] getValues() {
+        long[] values = new long[buckets()];
+        int index = 0;
+        for (int i = first; i >= 0 && i <= last; i++) {
+            if (counts[i] > 0) {
+                values[index++] = lowestValue(i);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Returns the number of times each of the values returned by {@link #getValues()} was counted.
+     *
+     * @return the counts, in the order of the values
+     */
+    public long[] getCounts() {
+        long[] valueCounts = new long[buckets()];
+        int index = 0;
+        for (int i = first; i >= 0 && i <= last; i++) {
+            if (counts[i] > 0) {
+                valueCounts[index++] = counts[i];
+            }
+        }
+        return valueCounts;
+    }
+
+    private int buckets() {
+        int buckets = 0;
+        for (int i = first; i >= 0 && i <= last; i++) {
+            if (counts[i] > 0) {
+                buckets++;
+            }
+        }
+        return buckets;
+    }
+
+    /**
+     * Returns the highest value in the snapshot.
+     *
+     * @return the highest value of the highest bucket with counts
+     */
+    @Override
+    public long getMax() {
+        return count == 0 ? 0 : highestValue(last);
+    }
+
+    /**
+     * Returns the lowest value in the snapshot.
+     *
+     * @return the lowest value of the lowest bucket with counts
+     */
+    @Override
+    public long getMin() {
+        return count == 0 ? 0 : lowestValue(first);
+    }
+
+    /**
+     * Returns the arithmetic mean of the values in the snapshot.
+     *
+     * @return the arithmetic mean
+     */
+    @Override
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the standard deviation of the values in the snapshot.
+     *
+     * @return the standard deviation value
+     */
+    @Override
+    public double getStdDev() {
+        if (count <= 1) {
+            return 0;
+        }
+        final double mean = getMean();
+        double variance = 0;
+        for (int i = first; i <= last; i++) {
+            if (counts[i] > 0) {
+                final double diff = middleValue(i) - mean;
+                variance += counts[i] * diff * diff;
+            }
+        }
+        return Math.sqrt(variance / count);
+    }
+
+    private static double middleValue(int index) {
+        long lowest = lowestValue(index);
+        return lowest + (highestValue(index) - lowest) / 2d;
+    }
+
+    /**
+     * Writes the distinct values of the snapshot to the given stream, one line for each value with the value and the
+     * number of times it was counted separated by a tab.
+     *
+     * @param output an output stream
+     */
+    @Override
+    public void dump(OutputStream output) {
+        try (PrintWriter out = new PrintWriter(new OutputStreamWriter(output, UTF_8))) {
+            for (int i = first; i >= 0 && i <= last; i++) {
+                if (counts[i] > 0) {
+                    out.printf("%d\t%d%n", lowestValue(i), counts[i]);
+                }
+            }
+        }
+    }
+}
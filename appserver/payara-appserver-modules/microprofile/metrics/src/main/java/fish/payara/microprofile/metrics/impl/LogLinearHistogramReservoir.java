@@ -0,0 +1,199 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.microprofile.metrics.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.eclipse.microprofile.metrics.Snapshot;
+
+/**
+ * A {@link Reservoir} that counts values in log-linear buckets, similar to an HDR histogram.
+ *
+ * Each power of two range of values is divided into {@value #SUB_BUCKETS} linear sub-buckets, so that any recorded
+ * value is represented with a relative error below {@code 1/}{@value #SUB_BUCKETS}. Values below
+ * {@value #SUB_BUCKETS} are counted exactly. The memory used is fixed and independent of the number of updates.
+ *
+ * Updates do not allocate and do not lock. The counters are striped by thread so that concurrent updates from many
+ * threads rarely contend on the same counter. A {@link #getSnapshot()} sums up all stripes into a
+ * {@link HistogramSnapshot}. Snapshots of different reservoirs can be merged.
+ *
+ * To bias the distribution towards recent values, similar to the {@link ExponentiallyDecayingReservoir}, all counts
+ * are halved whenever the decay interval (by default one minute) has passed.
+ *
+ * Negative values are recorded as zero.
+ */
+public class LogLinearHistogramReservoir implements Reservoir {
+
+    static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private static final int MAX_STRIPES = 8;
+    private static final long DEFAULT_DECAY_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * Per stripe: bucket counts followed by the sum of values
+     */
+    private final AtomicLongArray[] stripes;
+    private final int stripeMask;
+    private final long decayInterval;
+    private final AtomicLong nextDecayTime;
+    private final Clock clock;
+
+    /**
+     * Creates a new {@link LogLinearHistogramReservoir} using a number of stripes based on the available processors
+     * that halves its counts every minute.
+     */
+    public LogLinearHistogramReservoir() {
+        this(defaultStripes(), DEFAULT_DECAY_INTERVAL, Clock.defaultClock());
+    }
+
+    /**
+     * Creates a new {@link LogLinearHistogramReservoir}.
+     *
+     * @param stripes the number of counter stripes, rounded up to the next power of two
+     * @param decayInterval the time in nanoseconds after which all counts are halved, zero or negative to never decay
+     * @param clock the clock used to track the decay
+     */
+    public LogLinearHistogramReservoir(int stripes, long decayInterval, Clock clock) {
+        int n = Integer.highestOneBit(Math.max(1, stripes) * 2 - 1);
+        this.stripes = new AtomicLongArray[n];
+        for (int i = 0; i < n; i++) {
+            this.stripes[i] = new AtomicLongArray(BUCKETS + 1);
+        }
+        this.stripeMask = n - 1;
+        this.decayInterval = decayInterval;
+        this.clock = clock;
+        this.nextDecayTime = new AtomicLong(decayInterval > 0 ? clock.getTick() + decayInterval : Long.MAX_VALUE);
+    }
+
+    private static int defaultStripes() {
+        return Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public int size() {
+        long count = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                count += stripe.get(i);
+            }
+        }
+        return (int) Math.min(Integer.MAX_VALUE, count);
+    }
+
+    @Override
+    public void update(long value) {
+        decayIfNeeded();
+        long v = Math.max(0L, value);
+        AtomicLongArray stripe = stripes[(int) Thread.currentThread().getId() & stripeMask];
+        stripe.incrementAndGet(bucketIndex(v));
+        stripe.addAndGet(BUCKETS, v);
+    }
+
+    @Override
+    public Snapshot getSnapshot() {
+        decayIfNeeded();
+        long[] counts = new long[BUCKETS];
+        long sum = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+            sum += stripe.get(BUCKETS);
+        }
+        return new HistogramSnapshot(counts, sum);
+    }
+
+    private void decayIfNeeded() {
+        long next = nextDecayTime.get();
+        if (next == Long.MAX_VALUE) {
+            return;
+        }
+        long now = clock.getTick();
+        if (now >= next && nextDecayTime.compareAndSet(next, now + decayInterval)) {
+            for (AtomicLongArray stripe : stripes) {
+                for (int i = 0; i <= BUCKETS; i++) {
+                    long count = stripe.get(i);
+                    if (count != 0) {
+                        // only subtract what was read so concurrent updates are not lost
+                        stripe.addAndGet(i, -(count - (count >> 1)));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param value a non-negative value
+     * @return the index of the bucket the value is counted in
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param index a bucket index
+     * @return the lowest value counted in the bucket with the given index
+     */
+    static long lowestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << shift;
+    }
+
+    /**
+     * @param index a bucket index
+     * @return the highest value counted in the bucket with the given index
+     */
+    static long highestValue(int index) {
+        return index == BUCKETS - 1 ? Long.MAX_VALUE : lowestValue(index + 1) - 1;
+    }
+}
@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  * 
- *    Copyright (c) [2018-2019] Payara Foundation and/or its affiliates. All rights reserved.
+ *    Copyright (c) [2018-2020] Payara Foundation and/or its affiliates. All rights reserved.
  * 
  *     The contents of this file are subject to the terms of either the GNU
  *     General Public License Version 2 only ("GPL") or the Common Development
@@ -50,6 +50,7 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
 import static java.util.stream.Collectors.toMap;
 import javax.enterprise.inject.Vetoed;
 import org.eclipse.microprofile.metrics.ConcurrentGauge;
@@ -80,10 +81,19 @@ public class MetricRegistryImpl extends MetricRegistry {
 
     private final ConcurrentMap<MetricID, Metric> metricMap;
     private final ConcurrentMap<String, Metadata> metadataMap;
+    private final Supplier<Reservoir> reservoirFactory;
 
     public MetricRegistryImpl() {
+        this(ExponentiallyDecayingReservoir::new);
+    }
+
+    /**
+     * @param reservoirFactory creates the {@link Reservoir} for each new {@link Histogram} and {@link Timer}
+     */
+    public MetricRegistryImpl(Supplier<Reservoir> reservoirFactory) {
         this.metricMap = new ConcurrentHashMap<>();
         this.metadataMap = new ConcurrentHashMap<>();
+        this.reservoirFactory = reservoirFactory;
     }
 
     @Override
@@ -402,10 +412,10 @@ public class MetricRegistryImpl extends MetricRegistry {
                 metric = new MeterImpl();
                 break;
             case HISTOGRAM:
-                metric = new HistogramImpl();
+                metric = new HistogramImpl(reservoirFactory.get());
                 break;
             case TIMER:
-                metric = new TimerImpl();
+                metric = new TimerImpl(reservoirFactory.get());
                 break;
             case INVALID:
             default:
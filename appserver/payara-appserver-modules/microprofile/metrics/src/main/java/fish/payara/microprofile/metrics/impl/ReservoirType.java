@@ -0,0 +1,84 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.microprofile.metrics.impl;
+
+import java.util.function.Supplier;
+
+/**
+ * The {@link Reservoir} implementations that can be selected for {@link HistogramImpl}s and {@link TimerImpl}s.
+ */
+public enum ReservoirType {
+
+    /**
+     * A sampling {@link ExponentiallyDecayingReservoir}
+     */
+    EXPONENTIALLY_DECAYING(ExponentiallyDecayingReservoir::new),
+
+    /**
+     * A lock-free {@link LogLinearHistogramReservoir}
+     */
+    LOG_LINEAR_HISTOGRAM(LogLinearHistogramReservoir::new);
+
+    private final Supplier<Reservoir> factory;
+
+    ReservoirType(Supplier<Reservoir> factory) {
+        this.factory = factory;
+    }
+
+    public Reservoir createReservoir() {
+        return factory.get();
+    }
+
+    /**
+     * @param name name of the type, case insensitive, dashes may be used instead of underscores
+     * @return the {@link ReservoirType} with the given name or {@link #EXPONENTIALLY_DECAYING} if no such type exists
+     */
+    public static ReservoirType fromName(String name) {
+        if (name != null) {
+            String normalised = name.trim().toUpperCase().replace('-', '_');
+            for (ReservoirType type : values()) {
+                if (type.name().equals(normalised)) {
+                    return type;
+                }
+            }
+        }
+        return EXPONENTIALLY_DECAYING;
+    }
+}
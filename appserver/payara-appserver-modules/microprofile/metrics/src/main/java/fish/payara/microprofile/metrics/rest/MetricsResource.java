@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  * 
- *    Copyright (c) [2018-2019] Payara Foundation and/or its affiliates. All rights reserved.
+ *    Copyright (c) [2018-2020] Payara Foundation and/or its affiliates. All rights reserved.
  * 
  *     The contents of this file are subject to the terms of either the GNU
  *     General Public License Version 2 only ("GPL") or the Common Development
@@ -50,8 +50,10 @@ import fish.payara.microprofile.metrics.writer.JsonMetricWriter;
 import fish.payara.microprofile.metrics.writer.MetricsWriter;
 import fish.payara.microprofile.metrics.writer.PrometheusWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.Writer;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import java.util.zip.GZIPOutputStream;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -63,6 +65,9 @@ import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
 import static javax.ws.rs.HttpMethod.GET;
 import static javax.ws.rs.HttpMethod.OPTIONS;
 import static javax.ws.rs.core.HttpHeaders.ACCEPT;
+import static javax.ws.rs.core.HttpHeaders.ACCEPT_ENCODING;
+import static javax.ws.rs.core.HttpHeaders.CONTENT_ENCODING;
+import static javax.ws.rs.core.HttpHeaders.VARY;
 import javax.ws.rs.core.MediaType;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
@@ -71,6 +76,12 @@ import org.glassfish.internal.api.Globals;
 public class MetricsResource extends HttpServlet {
     
     private static final String APPLICATION_WILDCARD = "application/*";
+
+    private static final String APPLICATION_OPENMETRICS = "application/openmetrics-text";
+
+    private static final String OPENMETRICS_CONTENT_TYPE = APPLICATION_OPENMETRICS + "; version=1.0.0";
+
+    private static final String GZIP = "gzip";
     
     /**
      * Processes requests for both HTTP <code>GET</code> and <code>OPTIONS</code>
@@ -123,6 +134,8 @@ public class MetricsResource extends HttpServlet {
             response.setContentType(APPLICATION_JSON);
         } else if (outputWriter instanceof JsonMetadataWriter) {
             response.setContentType(APPLICATION_JSON);
+        } else if (outputWriter instanceof PrometheusWriter && ((PrometheusWriter) outputWriter).isOpenMetrics()) {
+            response.setContentType(OPENMETRICS_CONTENT_TYPE);
         } else {
             response.setContentType(TEXT_PLAIN);
         }
@@ -132,7 +145,8 @@ public class MetricsResource extends HttpServlet {
     private MetricsWriter getOutputWriter(HttpServletRequest request, HttpServletResponse response) throws IOException {
         MetricsWriter outputWriter = null;
         String method = request.getMethod();
-        Writer writer = response.getWriter();
+        Writer writer = new ResponseWriter(response, acceptsGzip(request));
+        response.setHeader(VARY, ACCEPT + ", " + ACCEPT_ENCODING);
 
         String accept = request.getHeader(ACCEPT);
         if (accept == null) {
@@ -146,27 +160,22 @@ public class MetricsResource extends HttpServlet {
                 String[] acceptFormats = accept.split(",");
                 float qJsonValue = 0;
                 float qTextFormat = 0;
+                float qOpenMetrics = 0;
                 for (String format : acceptFormats) {
                     if (format.contains(TEXT_PLAIN) || format.contains(MediaType.WILDCARD) || format.contains("text/*")) {
-                        String[] splitTextFormat = format.split(";");
-                        if (splitTextFormat.length == 2) {
-                            qTextFormat = Float.parseFloat(splitTextFormat[1].substring(2));
-                        } else {
-                            qTextFormat = 1;
-                        }
+                        qTextFormat = qualityOf(format);
+                    } else if (format.contains(APPLICATION_OPENMETRICS)) {
+                        qOpenMetrics = qualityOf(format);
                     } else if (format.contains(APPLICATION_JSON) || format.contains(APPLICATION_WILDCARD)) {
-                        String[] splitJsonFormat = format.split(";");
-                        if (splitJsonFormat.length == 2) {
-                            qJsonValue = Float.parseFloat(splitJsonFormat[1].substring(2));
-                        } else {
-                            qJsonValue = 1;
-                        }
+                        qJsonValue = qualityOf(format);
                     } // else { no other formats supported by Payara, ignored }
                 }
 
-                //if neither JSON or plain text are supported
-                if (qJsonValue == 0 && qTextFormat == 0) {
+                //if neither JSON, OpenMetrics or plain text are supported
+                if (qJsonValue == 0 && qTextFormat == 0 && qOpenMetrics == 0) {
                     response.sendError(SC_NOT_ACCEPTABLE, String.format("[%s] not acceptable", accept));
+                } else if (qOpenMetrics > 0 && qOpenMetrics >= qTextFormat && qOpenMetrics >= qJsonValue) {
+                    outputWriter = new PrometheusWriter(writer, true);
                 } else if (qJsonValue > qTextFormat) {
                     outputWriter = new JsonMetricWriter(writer);
                 } else {
@@ -190,6 +199,87 @@ public class MetricsResource extends HttpServlet {
         return outputWriter;
     }
 
+    /**
+     * @param format a single media range of an {@code Accept} header, for example {@code text/plain;q=0.5}
+     * @return the value of the {@code q} parameter, 1 if there is none or it is malformed
+     */
+    private static float qualityOf(String format) {
+        String[] parameters = format.split(";");
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Float.parseFloat(parameter.substring(2).trim());
+                } catch (NumberFormatException ex) {
+                    return 1;
+                }
+            }
+        }
+        return 1;
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(ACCEPT_ENCODING);
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String name = coding.split(";")[0].trim();
+            if ((GZIP.equalsIgnoreCase(name) || "*".equals(name)) && qualityOf(coding) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A {@link Writer} to the response body which is only opened on first use so that errors can still be sent as long
+     * as nothing was written, compressing the body with gzip if the client accepts it.
+     */
+    private static final class ResponseWriter extends Writer {
+
+        private final HttpServletResponse response;
+        private final boolean gzip;
+        private Writer delegate;
+
+        ResponseWriter(HttpServletResponse response, boolean gzip) {
+            this.response = response;
+            this.gzip = gzip;
+        }
+
+        private Writer delegate() throws IOException {
+            if (delegate == null) {
+                if (gzip) {
+                    response.setHeader(CONTENT_ENCODING, GZIP);
+                    delegate = new OutputStreamWriter(new GZIPOutputStream(response.getOutputStream(), 8192), UTF_8);
+                } else {
+                    delegate = response.getWriter();
+                }
+            }
+            return delegate;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) throws IOException {
+            delegate().write(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) throws IOException {
+            delegate().write(str, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate().flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate().close();
+        }
+    }
+
     /**
      * Handles the HTTP <code>GET</code> method.
      *
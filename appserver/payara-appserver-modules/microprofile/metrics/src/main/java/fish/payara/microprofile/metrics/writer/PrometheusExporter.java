@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- *    Copyright (c) [2018-2019] Payara Foundation and/or its affiliates. All rights reserved.
+ *    Copyright (c) [2018-2020] Payara Foundation and/or its affiliates. All rights reserved.
  *
  *     The contents of this file are subject to the terms of either the GNU
  *     General Public License Version 2 only ("GPL") or the Common Development
@@ -50,6 +50,10 @@
 
 package fish.payara.microprofile.metrics.writer;
 
+import java.util.ArrayList;
+import static java.util.Collections.emptyList;
+import java.util.List;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.eclipse.microprofile.metrics.ConcurrentGauge;
@@ -64,7 +68,6 @@ import static org.eclipse.microprofile.metrics.MetricType.COUNTER;
 import static org.eclipse.microprofile.metrics.MetricType.CONCURRENT_GAUGE;
 import static org.eclipse.microprofile.metrics.MetricType.GAUGE;
 import org.eclipse.microprofile.metrics.MetricUnits;
-import org.eclipse.microprofile.metrics.Tag;
 import static org.eclipse.microprofile.metrics.MetricUnits.BITS;
 import static org.eclipse.microprofile.metrics.MetricUnits.BYTES;
 import static org.eclipse.microprofile.metrics.MetricUnits.DAYS;
@@ -86,6 +89,7 @@ import static org.eclipse.microprofile.metrics.MetricUnits.NONE;
 import static org.eclipse.microprofile.metrics.MetricUnits.PERCENT;
 import static org.eclipse.microprofile.metrics.MetricUnits.SECONDS;
 import org.eclipse.microprofile.metrics.Sampling;
+import org.eclipse.microprofile.metrics.Snapshot;
 import org.eclipse.microprofile.metrics.Timer;
 
 public class PrometheusExporter {
@@ -143,20 +147,50 @@ public class PrometheusExporter {
 
     private final StringBuilder builder;
     private final MetricID metricID;
+    private final List<String> cachedFragments;
+    private final boolean openMetrics;
+    private List<String> fragments;
+    private int fragmentIndex;
 
     public PrometheusExporter(StringBuilder builder, MetricID metricID){
+        this(builder, metricID, emptyList(), false);
+    }
+
+    /**
+     * Creates an exporter that reuses the static parts of the output that were rendered for the same metric before.
+     *
+     * All text of the exposition except the values is rendered into fragments. The sequence of fragments only depends
+     * on the name, metadata and tags of a metric. When the {@link #getFragments()} of a previous export of the same
+     * metric are passed the fragments are written instead of rendering them again.
+     *
+     * @param builder the output
+     * @param metricID the metric exported
+     * @param cachedFragments the fragments of a previous export of this metric, not modified
+     * @param openMetrics true to use the OpenMetrics text format, false to use the Prometheus text format
+     */
+    public PrometheusExporter(StringBuilder builder, MetricID metricID, List<String> cachedFragments, boolean openMetrics) {
         this.builder = builder;
         this.metricID = metricID;
+        this.cachedFragments = cachedFragments;
+        this.fragments = cachedFragments;
+        this.openMetrics = openMetrics;
+    }
+
+    /**
+     * @return the fragments used by the exports so far, same as the cached fragments unless new ones were rendered
+     */
+    public List<String> getFragments() {
+        return fragments;
     }
 
     public void exportCounter(Counter counter, String name, String description, String tags) {
-        writeTypeHelpValueLine(name, COUNTER.toString(), description, counter.getCount(), tags, TOTAL_SUFFIX);
+        writeTypeHelpValueLine(name, null, COUNTER.toString(), description, counter.getCount(), tags, TOTAL_SUFFIX);
     }
     
     void exportConcurrentGuage(ConcurrentGauge concurrentGauge, String name, String description, String tags) {
-         writeTypeHelpValueLine(name + CURRENT_SUFFIX, CONCURRENT_GAUGE.toString(), description, concurrentGauge.getCount(), tags);
-         writeTypeHelpValueLine(name + MIN_SUFFIX, CONCURRENT_GAUGE.toString(), description, concurrentGauge.getMin(), tags);
-         writeTypeHelpValueLine(name + MAX_SUFFIX, CONCURRENT_GAUGE.toString(), description, concurrentGauge.getMax(), tags);
+         writeTypeHelpValueLine(name, CURRENT_SUFFIX, CONCURRENT_GAUGE.toString(), description, concurrentGauge.getCount(), tags, null);
+         writeTypeHelpValueLine(name, MIN_SUFFIX, CONCURRENT_GAUGE.toString(), description, concurrentGauge.getMin(), tags, null);
+         writeTypeHelpValueLine(name, MAX_SUFFIX, CONCURRENT_GAUGE.toString(), description, concurrentGauge.getMax(), tags, null);
     }
 
     public void exportGauge(Gauge<?> gauge, String name, String description, String tags, String unit) {
@@ -177,7 +211,7 @@ public class PrometheusExporter {
         if (!Double.isNaN(conversionFactor)) {
             value = value.doubleValue() * conversionFactor;
         }
-        writeTypeHelpValueLine(name, GAUGE.toString(), description, value, tags, getAppendUnit(unit));
+        writeTypeHelpValueLine(name, null, GAUGE.toString(), description, value, tags, getAppendUnit(unit));
     }
 
     public void exportHistogram(Histogram histogram, String name, String description, String tags, String unit) {
@@ -195,31 +229,32 @@ public class PrometheusExporter {
     }
 
     private void exportCounting(Counting counting, String name, String description, String tags) {
-        writeTypeHelpValueLine(name + TOTAL_SUFFIX, COUNTER.toString(), description, counting.getCount(), tags);
+        writeTypeHelpValueLine(name, TOTAL_SUFFIX, COUNTER.toString(), description, counting.getCount(), tags, null);
     }
 
     private void exportMetered(Metered metered, String name, String description, String tags) {
-        writeTypeValueLine(name + RATE + MetricUnits.PER_SECOND, GAUGE.toString(), metered.getMeanRate(), tags);
-        writeTypeValueLine(name + ONE_MIN_RATE + MetricUnits.PER_SECOND, GAUGE.toString(), metered.getOneMinuteRate(), tags);
-        writeTypeValueLine(name + FIVE_MIN_RATE + MetricUnits.PER_SECOND, GAUGE.toString(), metered.getFiveMinuteRate(), tags);
-        writeTypeValueLine(name + FIFTEEN_MIN_RATE + MetricUnits.PER_SECOND, GAUGE.toString(), metered.getFifteenMinuteRate(), tags);
+        writeTypeValueLine(name, RATE + MetricUnits.PER_SECOND, GAUGE.toString(), metered.getMeanRate(), tags, null);
+        writeTypeValueLine(name, ONE_MIN_RATE + MetricUnits.PER_SECOND, GAUGE.toString(), metered.getOneMinuteRate(), tags, null);
+        writeTypeValueLine(name, FIVE_MIN_RATE + MetricUnits.PER_SECOND, GAUGE.toString(), metered.getFiveMinuteRate(), tags, null);
+        writeTypeValueLine(name, FIFTEEN_MIN_RATE + MetricUnits.PER_SECOND, GAUGE.toString(), metered.getFifteenMinuteRate(), tags, null);
     }
 
     private void exportSampling(Sampling sampling, String name,
             String description, String tags, Double conversionFactor,
             String appendUnit) {
 
-        double mean = sampling.getSnapshot().getMean();
-        double max = sampling.getSnapshot().getMax();
-        double min = sampling.getSnapshot().getMin();
-        double stdDev = sampling.getSnapshot().getStdDev();
-        double median = sampling.getSnapshot().getMedian();
+        Snapshot snapshot = sampling.getSnapshot();
+        double mean = snapshot.getMean();
+        double max = snapshot.getMax();
+        double min = snapshot.getMin();
+        double stdDev = snapshot.getStdDev();
+        double median = snapshot.getMedian();
 
-        double percentile75th = sampling.getSnapshot().get75thPercentile();
-        double percentile95th = sampling.getSnapshot().get95thPercentile();
-        double percentile98th = sampling.getSnapshot().get98thPercentile();
-        double percentile99th = sampling.getSnapshot().get99thPercentile();
-        double percentile999th = sampling.getSnapshot().get999thPercentile();
+        double percentile75th = snapshot.get75thPercentile();
+        double percentile95th = snapshot.get95thPercentile();
+        double percentile98th = snapshot.get98thPercentile();
+        double percentile99th = snapshot.get99thPercentile();
+        double percentile999th = snapshot.get999thPercentile();
 
         if (!Double.isNaN(conversionFactor)) {
             mean *= conversionFactor;
@@ -235,85 +270,128 @@ public class PrometheusExporter {
             percentile999th *= conversionFactor;
         }
 
-        writeTypeValueLine(name + MEAN_SUFFIX, GAUGE.toString(), mean, tags, appendUnit);
-        writeTypeValueLine(name + MAX_SUFFIX, GAUGE.toString(), max, tags, appendUnit);
-        writeTypeValueLine(name + MIN_SUFFIX, GAUGE.toString(), min, tags, appendUnit);
-        writeTypeValueLine(name + STDDEV_SUFFIX, GAUGE.toString(), stdDev, tags, appendUnit);
+        writeTypeValueLine(name, MEAN_SUFFIX, GAUGE.toString(), mean, tags, appendUnit);
+        writeTypeValueLine(name, MAX_SUFFIX, GAUGE.toString(), max, tags, appendUnit);
+        writeTypeValueLine(name, MIN_SUFFIX, GAUGE.toString(), min, tags, appendUnit);
+        writeTypeValueLine(name, STDDEV_SUFFIX, GAUGE.toString(), stdDev, tags, appendUnit);
 
-        writeTypeLine(name, SUMMARY, appendUnit);
-        writeHelpLine(name, description, appendUnit);
+        builder.append(fragment(out -> {
+            writeTypeLine(out, name, SUMMARY, appendUnit);
+            writeHelpLine(out, name, SUMMARY, description, appendUnit);
+        }));
         if (Counting.class.isInstance(sampling)) {
-            writeValueLine(name, ((Counting) sampling).getCount(), tags, appendUnit == null ? COUNT_SUFFIX : appendUnit + COUNT_SUFFIX);
+            writeValueLine(name, ((Counting) sampling).getCount(), tags, null, appendUnit == null ? COUNT_SUFFIX : appendUnit + COUNT_SUFFIX);
         }
 
-        writeValueLine(name, median, tags, new Tag(QUANTILE, "0.5"), appendUnit);
-        writeValueLine(name, percentile75th, tags, new Tag(QUANTILE, "0.75"), appendUnit);
-        writeValueLine(name, percentile95th, tags, new Tag(QUANTILE, "0.95"), appendUnit);
-        writeValueLine(name, percentile98th, tags, new Tag(QUANTILE, "0.98"), appendUnit);
-        writeValueLine(name, percentile99th, tags, new Tag(QUANTILE, "0.99"), appendUnit);
-        writeValueLine(name, percentile999th, tags, new Tag(QUANTILE, "0.999"), appendUnit);
+        writeValueLine(name, median, tags, "0.5", appendUnit);
+        writeValueLine(name, percentile75th, tags, "0.75", appendUnit);
+        writeValueLine(name, percentile95th, tags, "0.95", appendUnit);
+        writeValueLine(name, percentile98th, tags, "0.98", appendUnit);
+        writeValueLine(name, percentile99th, tags, "0.99", appendUnit);
+        writeValueLine(name, percentile999th, tags, "0.999", appendUnit);
     }
 
-    private void writeTypeHelpValueLine(String name, String type, String description, Number value, String tags) {
-        writeTypeHelpValueLine(name, type, description, value, tags, null);
+    private void writeTypeHelpValueLine(String name, String suffix, String type, String description, Number value, String tags, String appendUnit) {
+        builder.append(fragment(out -> {
+            String fullName = suffix == null ? name : name + suffix;
+            writeTypeLine(out, fullName, type, appendUnit);
+            writeHelpLine(out, fullName, type, description, appendUnit);
+            writeValueLinePrefix(out, fullName, tags, appendUnit);
+        }));
+        writeValue(value);
     }
 
-    private void writeTypeHelpValueLine(String name, String type, String description, Number value, String tags, String appendUnit) {
-        writeTypeLine(name, type, appendUnit);
-        writeHelpLine(name, description, appendUnit);
-        writeValueLine(name, value, tags, appendUnit);
+    private void writeTypeValueLine(String name, String suffix, String type, Number value, String tags, String appendUnit) {
+        builder.append(fragment(out -> {
+            String fullName = name + suffix;
+            writeTypeLine(out, fullName, type, appendUnit);
+            writeValueLinePrefix(out, fullName, tags, appendUnit);
+        }));
+        writeValue(value);
     }
 
-    private void writeTypeValueLine(String name, String type, Number value, String tags) {
-        writeTypeValueLine(name, type, value, tags, null);
+    private void writeValueLine(String name, Number value, String tags, String quantile, String appendUnit) {
+        builder.append(fragment(out -> {
+            String allTags = tags;
+            if (quantile != null) {
+                String qunatileKeyValue = QUANTILE + "=\"" + quantile + "\"";
+                allTags = tags == null || tags.isEmpty() ? qunatileKeyValue : tags + COMMA + qunatileKeyValue;
+            }
+            writeValueLinePrefix(out, name, allTags, appendUnit);
+        }));
+        writeValue(value);
     }
 
-    private void writeTypeValueLine(String name, String type, Number value, String tags, String appendUnit) {
-        writeTypeLine(name, type, appendUnit);
-        writeValueLine(name, value, tags, appendUnit);
+    /**
+     * @param renderer renders the next fragment in case it was not rendered before
+     * @return the next fragment of the exported metric
+     */
+    private String fragment(Consumer<StringBuilder> renderer) {
+        String fragment;
+        if (fragmentIndex < fragments.size()) {
+            fragment = fragments.get(fragmentIndex);
+        } else {
+            StringBuilder out = new StringBuilder();
+            renderer.accept(out);
+            fragment = out.toString();
+            if (fragments == cachedFragments) {
+                fragments = new ArrayList<>(cachedFragments);
+            }
+            fragments.add(fragment);
+        }
+        fragmentIndex++;
+        return fragment;
     }
 
-    private void writeValueLine(String name, Number value, String tags, Tag quantile, String appendUnit) {
-        String qunatileKeyValue = quantile.getTagName() + "=\"" + quantile.getTagValue() + "\"";
-        tags = tags == null || tags.isEmpty() ? qunatileKeyValue : tags + COMMA + qunatileKeyValue;
-        writeValueLine(name, value, tags, appendUnit);
+    private void writeValue(Number value) {
+        builder.append(value);
+        builder.append(LF);
     }
 
-    private void writeValueLine(String name, Number value, String tags, String appendUnit) {
-        builder.append(sanitizeMetricName(name));
+    private void writeValueLinePrefix(StringBuilder out, String name, String tags, String appendUnit) {
+        out.append(sanitizeMetricName(name));
         if (appendUnit != null) {
-            builder.append(appendUnit);
+            out.append(appendUnit);
         }
         if (tags != null && tags.length() > 0) {
-            builder.append(LEFT_BRACES).append(tags).append(RIGHT_BRACES);
+            out.append(LEFT_BRACES).append(tags).append(RIGHT_BRACES);
         }
-        builder.append(SPACE);
-        builder.append(value);
-        builder.append(LF);
+        out.append(SPACE);
     }
 
-    private void writeHelpLine(String name, String description, String appendUnit) {
+    private void writeHelpLine(StringBuilder out, String name, String type, String description, String appendUnit) {
         if (description != null && !description.isEmpty()) {
-            builder.append(HELP_TITLE);
-            builder.append(sanitizeMetricName(name));
-            if (appendUnit != null) {
-                builder.append(appendUnit);
-            }
-            builder.append(SPACE);
-            builder.append(description);
-            builder.append(LF);
+            out.append(HELP_TITLE);
+            writeFamilyName(out, name, type, appendUnit);
+            out.append(SPACE);
+            out.append(description);
+            out.append(LF);
         }
     }
 
-    private void writeTypeLine(String name, String type, String appendUnit) {
-        builder.append(TYPE_TITLE);
-        builder.append(sanitizeMetricName(name));
+    private void writeTypeLine(StringBuilder out, String name, String type, String appendUnit) {
+        out.append(TYPE_TITLE);
+        writeFamilyName(out, name, type, appendUnit);
+        out.append(SPACE);
+        if (openMetrics && CONCURRENT_GAUGE.toString().equals(type)) {
+            out.append(GAUGE.toString());
+        } else {
+            out.append(type);
+        }
+        out.append(LF);
+    }
+
+    private void writeFamilyName(StringBuilder out, String name, String type, String appendUnit) {
+        int start = out.length();
+        out.append(sanitizeMetricName(name));
         if (appendUnit != null) {
-            builder.append(appendUnit);
+            out.append(appendUnit);
+        }
+        if (openMetrics && COUNTER.toString().equals(type) && out.length() - start > TOTAL_SUFFIX.length()
+                && out.lastIndexOf(TOTAL_SUFFIX) == out.length() - TOTAL_SUFFIX.length()) {
+            // OpenMetrics counter families are named without the _total suffix of their sample
+            out.setLength(out.length() - TOTAL_SUFFIX.length());
         }
-        builder.append(SPACE);
-        builder.append(type);
-        builder.append(LF);
     }
 
     private String sanitizeMetricName(String name) {
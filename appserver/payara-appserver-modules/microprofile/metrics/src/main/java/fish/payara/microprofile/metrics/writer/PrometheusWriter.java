@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  * 
- *    Copyright (c) [2018-2019] Payara Foundation and/or its affiliates. All rights reserved.
+ *    Copyright (c) [2018-2020] Payara Foundation and/or its affiliates. All rights reserved.
  * 
  *     The contents of this file are subject to the terms of either the GNU
  *     General Public License Version 2 only ("GPL") or the Common Development
@@ -56,8 +56,14 @@ import fish.payara.microprofile.metrics.exception.NoSuchMetricException;
 import fish.payara.microprofile.metrics.exception.NoSuchRegistryException;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.ArrayList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.eclipse.microprofile.metrics.Counter;
@@ -74,126 +80,266 @@ import static org.eclipse.microprofile.metrics.MetricRegistry.Type.VENDOR;
 import org.eclipse.microprofile.metrics.Timer;
 import org.glassfish.internal.api.Globals;
 
+/**
+ * Writes metrics in the Prometheus or OpenMetrics text format.
+ *
+ * The output is streamed to the {@link Writer} metric by metric. Names, tags, {@code # TYPE} and {@code # HELP} lines
+ * of each metric are rendered once per format and reused by following requests until the {@link Metadata} of the
+ * metric changes.
+ * Metrics no longer present in a registry are dropped from the cache whenever the full registry is written.
+ */
 public class PrometheusWriter implements MetricsWriter {
 
+    private static final String EOF = "# EOF\n";
+
+    /**
+     * Cached Prometheus output per registry name (of the actual registry, not the scope) and metric
+     */
+    private static final Map<String, Map<MetricID, Family>> PROMETHEUS_FAMILIES = new ConcurrentHashMap<>();
+
+    /**
+     * Cached OpenMetrics output per registry name and metric, the formats name and type families differently
+     */
+    private static final Map<String, Map<MetricID, Family>> OPEN_METRICS_FAMILIES = new ConcurrentHashMap<>();
+
     private final Writer writer;
     
     private final MetricsService service;
+
+    private final boolean openMetrics;
+
+    private final Map<String, Map<MetricID, Family>> families;
+
+    private final StringBuilder buffer = new StringBuilder(1024);
+
+    private char[] chars = new char[1024];
     
     private static final Logger LOGGER = Logger.getLogger(PrometheusWriter.class.getName());
 
     public PrometheusWriter(Writer writer) {
+        this(writer, false);
+    }
+
+    /**
+     * @param writer the output
+     * @param openMetrics true to write the OpenMetrics text format, false to write the Prometheus text format
+     */
+    public PrometheusWriter(Writer writer, boolean openMetrics) {
+        this(writer, Globals.getDefaultBaseServiceLocator().getService(MetricsService.class), openMetrics);
+    }
+
+    PrometheusWriter(Writer writer, MetricsService service, boolean openMetrics) {
         this.writer = writer;
-        this.service = Globals.getDefaultBaseServiceLocator().getService(MetricsService.class);
+        this.service = service;
+        this.openMetrics = openMetrics;
+        this.families = openMetrics ? OPEN_METRICS_FAMILIES : PROMETHEUS_FAMILIES;
+    }
+
+    /**
+     * @return true, if the OpenMetrics text format is written, false if the Prometheus text format is written
+     */
+    public boolean isOpenMetrics() {
+        return openMetrics;
     }
 
     @Override
     public void write(String registryName, String metricName) throws NoSuchMetricException, NoSuchRegistryException, IOException {
-        StringBuilder builder = new StringBuilder();
+        List<RegistryMetrics> metrics = new ArrayList<>();
         if (APPLICATION.getName().equals(registryName)) {
             for (String appRegistryName : service.getApplicationRegistryNames()) {
                 try {
-                    writeMetrics(builder, appRegistryName, metricName);
+                    metrics.add(metricsOf(appRegistryName, metricName));
                 } catch (NoSuchMetricException e) {
                     //ignore
                 }
             }
-            if(builder.length() == 0){
+            if (metrics.isEmpty()) {
                 throw new NoSuchMetricException(metricName);
             }
         } else {
-            writeMetrics(builder, registryName, metricName);
+            metrics.add(metricsOf(registryName, metricName));
         }
-        serialize(builder);
+        serialize(metrics);
     }
 
     @Override
     public void write(String registryName) throws NoSuchRegistryException, IOException {
-        StringBuilder builder = new StringBuilder();
+        List<RegistryMetrics> metrics = new ArrayList<>();
         if (APPLICATION.getName().equals(registryName)) {
             for (String appRegistryName : service.getApplicationRegistryNames()) {
-                writeMetrics(builder, appRegistryName);
+                metrics.add(metricsOf(appRegistryName));
             }
         } else {
-            writeMetrics(builder, registryName);
+            metrics.add(metricsOf(registryName));
         }
-        serialize(builder);
+        serialize(metrics);
     }
 
     @Override
     public void write() throws IOException {
-        StringBuilder builder = new StringBuilder();
-        for (String registryName : service.getAllRegistryNames()) {
+        List<RegistryMetrics> metrics = new ArrayList<>();
+        Set<String> registryNames = service.getAllRegistryNames();
+        for (String registryName : registryNames) {
             try {
-                writeMetrics(builder, registryName);
+                metrics.add(metricsOf(registryName));
             } catch (NoSuchRegistryException e) { // Ignore
             }
         }
-        serialize(builder);
+        PROMETHEUS_FAMILIES.keySet().retainAll(registryNames);
+        OPEN_METRICS_FAMILIES.keySet().retainAll(registryNames);
+        serialize(metrics);
     }
 
-    private void writeMetrics(StringBuilder builder, String registryName) throws NoSuchRegistryException {
-        writeMetricMap(
-                builder,
+    private RegistryMetrics metricsOf(String registryName) throws NoSuchRegistryException {
+        return new RegistryMetrics(
                 registryName,
                 service.getMetricsAsMap(registryName),
-                service.getMetadataAsMap(registryName)
+                service.getMetadataAsMap(registryName),
+                true
         );
     }
 
-    private void writeMetrics(StringBuilder builder, String registryName, String metricName) throws NoSuchRegistryException, NoSuchMetricException {
-        writeMetricMap(
-                builder,
+    private RegistryMetrics metricsOf(String registryName, String metricName) throws NoSuchRegistryException, NoSuchMetricException {
+        return new RegistryMetrics(
                 registryName,
                 service.getMetricsAsMap(registryName, metricName),
-                service.getMetadataAsMap(registryName, metricName)
+                service.getMetadataAsMap(registryName, metricName),
+                false
         );
     }
 
-    private void writeMetricMap(StringBuilder builder, String registryName, Map<MetricID, Metric> metricMap, Map<String, Metadata> metricMetadataMap) {
-        for (Entry<MetricID, Metric> entry : metricMap.entrySet()) {
+    private void writeMetricMap(RegistryMetrics metrics) throws IOException {
+        Map<MetricID, Family> cached = families.computeIfAbsent(metrics.registryName, key -> new ConcurrentHashMap<>());
+        Map<MetricID, Family> used = metrics.complete ? new ConcurrentHashMap<>() : cached;
+        //Translation rules :
+        //Scope is always specified at the start of the metric name
+        //Scope and name are separated by underscore (_)
+        String scope = metrics.registryName;
+        if(!BASE.getName().equals(scope) 
+                && !VENDOR.getName().equals(scope)){
+            scope = APPLICATION.getName();
+        }
+        for (Entry<MetricID, Metric> entry : metrics.metricMap.entrySet()) {
             MetricID metricId = entry.getKey();
-            //Translation rules :
-            //Scope is always specified at the start of the metric name
-            //Scope and name are separated by underscore (_)
-            if(!BASE.getName().equals(registryName) 
-                    && !VENDOR.getName().equals(registryName)){
-                registryName = APPLICATION.getName();
-            }
-                
-            String name = registryName + "_" + metricId.getName();
             Metric metric = entry.getValue();
-            Metadata metricMetadata = metricMetadataMap.get(metricId.getName());
-
-            String description = metricMetadata.getDescription().orElse(EMPTY_STRING);
-            
-            String unit = metricMetadata.getUnit().orElse(EMPTY_STRING);
-
-            PrometheusExporter exporter = new PrometheusExporter(builder, metricId);
-
-            if (Counter.class.isInstance(metric)) {
-                exporter.exportCounter((Counter) metric, name, description, metricId.getTagsAsString()); 
-            } else if (ConcurrentGauge.class.isInstance(metric)) {
-                exporter.exportConcurrentGuage((ConcurrentGauge) metric, name, description, metricId.getTagsAsString());
-            } else if (Gauge.class.isInstance(metric)) {
-                exporter.exportGauge((Gauge) metric, name, description, metricId.getTagsAsString(), unit);
-            } else if (Histogram.class.isInstance(metric)) {
-                exporter.exportHistogram((Histogram) metric, name, description, metricId.getTagsAsString(), unit);
-            } else if (Meter.class.isInstance(metric)) {
-                exporter.exportMeter((Meter) metric, name, description, metricId.getTagsAsString());
-            } else if (Timer.class.isInstance(metric)) {
-                exporter.exportTimer((Timer) metric, name, description, metricId.getTagsAsString(), unit);
-            } else {
-                LOGGER.log(Level.WARNING, "Metric type {0} for {1} is invalid", new Object[]{metric.getClass(), metricId});
+            Metadata metricMetadata = metrics.metricMetadataMap.get(metricId.getName());
+            Family family = cached.get(metricId);
+            if (family == null || family.metadata != metricMetadata) {
+                family = new Family(scope, metricId, metricMetadata);
             }
+            PrometheusExporter exporter = new PrometheusExporter(buffer, metricId, family.fragments, openMetrics);
+            writeMetric(exporter, metricId, metric, family);
+            if (exporter.getFragments() != family.fragments) {
+                family = family.withFragments(exporter.getFragments());
+                cached.put(metricId, family);
+            }
+            used.put(metricId, family);
+            flushBuffer();
+        }
+        if (metrics.complete) {
+            families.put(metrics.registryName, used);
         }
     }
 
-    private void serialize(StringBuilder builder) throws IOException {
+    private static void writeMetric(PrometheusExporter exporter, MetricID metricId, Metric metric, Family family) {
+        String name = family.name;
+        String description = family.description;
+        String unit = family.unit;
+        String tags = family.tags;
+        if (Counter.class.isInstance(metric)) {
+            exporter.exportCounter((Counter) metric, name, description, tags); 
+        } else if (ConcurrentGauge.class.isInstance(metric)) {
+            exporter.exportConcurrentGuage((ConcurrentGauge) metric, name, description, tags);
+        } else if (Gauge.class.isInstance(metric)) {
+            exporter.exportGauge((Gauge) metric, name, description, tags, unit);
+        } else if (Histogram.class.isInstance(metric)) {
+            exporter.exportHistogram((Histogram) metric, name, description, tags, unit);
+        } else if (Meter.class.isInstance(metric)) {
+            exporter.exportMeter((Meter) metric, name, description, tags);
+        } else if (Timer.class.isInstance(metric)) {
+            exporter.exportTimer((Timer) metric, name, description, tags, unit);
+        } else {
+            LOGGER.log(Level.WARNING, "Metric type {0} for {1} is invalid", new Object[]{metric.getClass(), metricId});
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        int length = buffer.length();
+        if (length == 0) {
+            return;
+        }
+        if (chars.length < length) {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        buffer.getChars(0, length, chars, 0);
+        writer.write(chars, 0, length);
+        buffer.setLength(0);
+    }
+
+    private void serialize(List<RegistryMetrics> metrics) throws IOException {
         try {
-            writer.write(builder.toString());
+            for (RegistryMetrics registryMetrics : metrics) {
+                writeMetricMap(registryMetrics);
+            }
+            if (openMetrics) {
+                writer.write(EOF);
+            }
         } finally {
             writer.close();
         }
     }
+
+    /**
+     * The metrics of a registry to write.
+     */
+    private static final class RegistryMetrics {
+
+        final String registryName;
+        final Map<MetricID, Metric> metricMap;
+        final Map<String, Metadata> metricMetadataMap;
+        /**
+         * true, if these are all metrics of the registry, false if the metrics were filtered
+         */
+        final boolean complete;
+
+        RegistryMetrics(String registryName, Map<MetricID, Metric> metricMap, Map<String, Metadata> metricMetadataMap, boolean complete) {
+            this.registryName = registryName;
+            this.metricMap = metricMap;
+            this.metricMetadataMap = metricMetadataMap;
+            this.complete = complete;
+        }
+    }
+
+    /**
+     * The static information of a single metric needed to write it. Only valid for the {@link Metadata} instance it
+     * was created for.
+     */
+    private static final class Family {
+
+        final Metadata metadata;
+        final String name;
+        final String description;
+        final String unit;
+        final String tags;
+        final List<String> fragments;
+
+        Family(String scope, MetricID metricId, Metadata metadata) {
+            this(metadata, scope + "_" + metricId.getName(), metadata.getDescription().orElse(EMPTY_STRING),
+                    metadata.getUnit().orElse(EMPTY_STRING), metricId.getTagsAsString(), emptyList());
+        }
+
+        private Family(Metadata metadata, String name, String description, String unit, String tags,
+                List<String> fragments) {
+            this.metadata = metadata;
+            this.name = name;
+            this.description = description;
+            this.unit = unit;
+            this.tags = tags;
+            this.fragments = fragments;
+        }
+
+        Family withFragments(List<String> fragments) {
+            return new Family(metadata, name, description, unit, tags, unmodifiableList(fragments));
+        }
+    }
 }
@@ -0,0 +1,194 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.microprofile.metrics.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.microprofile.metrics.Snapshot;
+import org.junit.Test;
+
+/**
+ * Tests the {@link LogLinearHistogramReservoir} and its {@link HistogramSnapshot}.
+ */
+public class LogLinearHistogramReservoirTest {
+
+    private final AtomicLong tick = new AtomicLong();
+    private final Clock clock = new Clock() {
+
+        @Override
+        public long getTick() {
+            return tick.get();
+        }
+    };
+
+    @Test
+    public void bucketBoundariesAreContiguous() {
+        assertEquals(0, LogLinearHistogramReservoir.lowestValue(0));
+        for (int i = 0; i < LogLinearHistogramReservoir.BUCKETS - 1; i++) {
+            long highest = LogLinearHistogramReservoir.highestValue(i);
+            assertEquals(highest + 1, LogLinearHistogramReservoir.lowestValue(i + 1));
+            assertEquals(i, LogLinearHistogramReservoir.bucketIndex(LogLinearHistogramReservoir.lowestValue(i)));
+            assertEquals(i, LogLinearHistogramReservoir.bucketIndex(highest));
+        }
+        assertEquals(LogLinearHistogramReservoir.BUCKETS - 1, LogLinearHistogramReservoir.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void relativeErrorIsBounded() {
+        for (long value = 1; value > 0 && value < Long.MAX_VALUE / 3; value = value * 3 + 1) {
+            int index = LogLinearHistogramReservoir.bucketIndex(value);
+            long lowest = LogLinearHistogramReservoir.lowestValue(index);
+            long highest = LogLinearHistogramReservoir.highestValue(index);
+            assertTrue(lowest <= value && value <= highest);
+            assertTrue((double) (highest - lowest) / value <= 1d / LogLinearHistogramReservoir.SUB_BUCKETS);
+        }
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LogLinearHistogramReservoir reservoir = new LogLinearHistogramReservoir(1, 0, clock);
+        for (int i = 1; i <= 10; i++) {
+            reservoir.update(i);
+        }
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(10, reservoir.size());
+        assertEquals(10, snapshot.size());
+        assertEquals(1, snapshot.getMin());
+        assertEquals(10, snapshot.getMax());
+        assertEquals(5.5d, snapshot.getMean(), 0.0001d);
+        assertEquals(5d, snapshot.getValue(0.5d), 0.0001d);
+        assertEquals(10d, snapshot.getValue(1d), 0.0001d);
+        assertEquals(10, snapshot.getValues().length);
+    }
+
+    @Test
+    public void valuesAreDistinctWithTheirCounts() {
+        LogLinearHistogramReservoir reservoir = new LogLinearHistogramReservoir(1, 0, clock);
+        for (int i = 0; i < 100_000; i++) {
+            reservoir.update(5);
+        }
+        reservoir.update(7);
+        HistogramSnapshot snapshot = (HistogramSnapshot) reservoir.getSnapshot();
+        assertEquals(100_001, snapshot.size());
+        assertArrayEquals(new long[] { 5, 7 }, snapshot.getValues());
+        assertArrayEquals(new long[] { 100_000, 1 }, snapshot.getCounts());
+        ByteArrayOutputStream dump = new ByteArrayOutputStream();
+        snapshot.dump(dump);
+        assertEquals(String.format("5\t100000%n7\t1%n"), new String(dump.toByteArray(), UTF_8));
+    }
+
+    @Test
+    public void percentilesOfLargeValues() {
+        LogLinearHistogramReservoir reservoir = new LogLinearHistogramReservoir(4, 0, clock);
+        for (long i = 1; i <= 1000; i++) {
+            reservoir.update(i * 1000L);
+        }
+        Snapshot snapshot = reservoir.getSnapshot();
+        assertEquals(500_000d, snapshot.getValue(0.5d), 500_000d / 16);
+        assertEquals(990_000d, snapshot.getValue(0.99d), 990_000d / 16);
+        assertEquals(500_500d, snapshot.getMean(), 0.0001d);
+    }
+
+    @Test
+    public void negativeValuesAreCountedAsZero() {
+        LogLinearHistogramReservoir reservoir = new LogLinearHistogramReservoir(1, 0, clock);
+        reservoir.update(-5);
+        assertEquals(0, reservoir.getSnapshot().getMin());
+        assertEquals(0, reservoir.getSnapshot().getMax());
+    }
+
+    @Test
+    public void countsAreHalvedAfterDecayInterval() {
+        LogLinearHistogramReservoir reservoir = new LogLinearHistogramReservoir(1, 100, clock);
+        for (int i = 0; i < 10; i++) {
+            reservoir.update(3);
+        }
+        tick.set(100);
+        reservoir.update(7);
+        assertEquals(6, reservoir.size());
+        assertEquals(7, reservoir.getSnapshot().getMax());
+    }
+
+    @Test
+    public void snapshotsCanBeMerged() {
+        LogLinearHistogramReservoir a = new LogLinearHistogramReservoir(1, 0, clock);
+        LogLinearHistogramReservoir b = new LogLinearHistogramReservoir(1, 0, clock);
+        a.update(1);
+        a.update(2);
+        b.update(9);
+        HistogramSnapshot merged = ((HistogramSnapshot) a.getSnapshot()).merge((HistogramSnapshot) b.getSnapshot());
+        assertEquals(3, merged.size());
+        assertEquals(1, merged.getMin());
+        assertEquals(9, merged.getMax());
+        assertEquals(4d, merged.getMean(), 0.0001d);
+    }
+
+    @Test
+    public void concurrentUpdatesAreNotLost() throws InterruptedException {
+        LogLinearHistogramReservoir reservoir = new LogLinearHistogramReservoir(4, 0, clock);
+        int threads = 8;
+        int updates = 10_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < updates; i++) {
+                    reservoir.update(i);
+                }
+                done.countDown();
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(threads * updates, reservoir.size());
+        assertEquals((updates - 1) / 2d, reservoir.getSnapshot().getMean(), 0.0001d);
+    }
+}
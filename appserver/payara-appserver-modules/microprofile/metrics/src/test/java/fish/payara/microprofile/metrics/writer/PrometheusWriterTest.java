@@ -0,0 +1,102 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.microprofile.metrics.writer;
+
+import fish.payara.microprofile.metrics.MetricsService;
+import java.io.IOException;
+import java.io.StringWriter;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PrometheusWriterTest {
+
+    private final MetricsService service = new MetricsService();
+
+    @Before
+    public void registerMetrics() {
+        MetricRegistry registry = service.getOrAddRegistry(MetricRegistry.Type.VENDOR.getName());
+        registry.counter(Metadata.builder().withName("requests").withDescription("Requests served")
+                .withType(MetricType.COUNTER).build()).inc();
+        registry.concurrentGauge("active").inc();
+    }
+
+    @Test
+    public void formatsDoNotShareCachedOutput() throws IOException {
+        for (int i = 0; i < 2; i++) {
+            assertPrometheus(scrape(false));
+            assertOpenMetrics(scrape(true));
+        }
+    }
+
+    @Test
+    public void openMetricsScrapedFirstDoesNotAffectPrometheus() throws IOException {
+        for (int i = 0; i < 2; i++) {
+            assertOpenMetrics(scrape(true));
+            assertPrometheus(scrape(false));
+        }
+    }
+
+    private String scrape(boolean openMetrics) throws IOException {
+        StringWriter out = new StringWriter();
+        new PrometheusWriter(out, service, openMetrics).write(MetricRegistry.Type.VENDOR.getName());
+        return out.toString();
+    }
+
+    private static void assertPrometheus(String output) {
+        assertTrue(output, output.contains("# TYPE vendor_requests_total counter\n"));
+        assertTrue(output, output.contains("# HELP vendor_requests_total Requests served\n"));
+        assertTrue(output, output.contains("# TYPE vendor_active_current concurrent gauge\n"));
+        assertFalse(output, output.contains("# EOF"));
+    }
+
+    private static void assertOpenMetrics(String output) {
+        assertTrue(output, output.contains("# TYPE vendor_requests counter\n"));
+        assertTrue(output, output.contains("# HELP vendor_requests Requests served\n"));
+        assertTrue(output, output.contains("vendor_requests_total 1\n"));
+        assertTrue(output, output.contains("# TYPE vendor_active_current gauge\n"));
+        assertTrue(output, output.endsWith("# EOF\n"));
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.web.loader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Index from the directories of the entries in the jars of a web application to the jars containing them. The
+ * {@link WebappClassLoader} uses it to only search the jars that may contain a class or resource instead of all of
+ * them.
+ * <p>
+ * The index is stored in the work directory of the web application. It is reused on redeploy and restart as long as
+ * the jars have the same path, length and last modified time, so the entries of the jars are only scanned once.
+ */
+final class JarIndex {
+
+    private static final int VERSION = 2;
+
+    private static final int[] NONE = new int[0];
+
+    private final File[] jars;
+    private final long[] lengths;
+    private final long[] lastModifiedDates;
+    private final Map<String, int[]> jarsByDirectory;
+
+    private JarIndex(File[] jars, long[] lengths, long[] lastModifiedDates, Map<String, int[]> jarsByDirectory) {
+        this.jars = jars;
+        this.lengths = lengths;
+        this.lastModifiedDates = lastModifiedDates;
+        this.jarsByDirectory = jarsByDirectory;
+    }
+
+    /**
+     * @param path path of a class or resource, like {@code org/example/Foo.class}
+     * @return the positions of the jars that have entries in the directory of the path or below it, in jar order
+     */
+    int[] getJars(String path) {
+        int[] result = jarsByDirectory.get(directoryOf(path));
+        return result == null ? NONE : result;
+    }
+
+    /**
+     * Scans the entries of the given jars.
+     *
+     * @param jarFiles the opened jars
+     * @param jars the files of the jars, in the same order
+     */
+    static JarIndex build(JarFile[] jarFiles, File[] jars) {
+        Map<String, List<Integer>> directories = new HashMap<>();
+        for (int i = 0; i < jarFiles.length; i++) {
+            Enumeration<JarEntry> entries = jarFiles[i].entries();
+            Integer jar = i;
+            while (entries.hasMoreElements()) {
+                // Jars do not always have entries for the parent directories, so add the jar to all of them. A
+                // lookup of a directory without trailing slash, like "org/example", is indexed under its parent.
+                String directory = entries.nextElement().getName();
+                do {
+                    directory = directoryOf(directory);
+                    List<Integer> jarsOfDirectory = directories.computeIfAbsent(directory, key -> new ArrayList<>(1));
+                    if (!jarsOfDirectory.isEmpty() && jarsOfDirectory.get(jarsOfDirectory.size() - 1).equals(jar)) {
+                        // Its parents have this jar already
+                        break;
+                    }
+                    jarsOfDirectory.add(jar);
+                } while (!directory.isEmpty());
+            }
+        }
+        Map<String, int[]> jarsByDirectory = new HashMap<>(directories.size() * 4 / 3 + 1);
+        for (Map.Entry<String, List<Integer>> directory : directories.entrySet()) {
+            List<Integer> jarsOfDirectory = directory.getValue();
+            int[] positions = new int[jarsOfDirectory.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = jarsOfDirectory.get(i);
+            }
+            jarsByDirectory.put(directory.getKey(), positions);
+        }
+        return new JarIndex(jars.clone(), lengthsOf(jars), lastModifiedDatesOf(jars), jarsByDirectory);
+    }
+
+    /**
+     * Reads a stored index.
+     *
+     * @return the stored index, or null if there is none or it was built for other or modified jars
+     */
+    static JarIndex load(File indexFile, File[] jars) throws IOException {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile.toPath())))) {
+            if (in.readInt() != VERSION || in.readInt() != jars.length) {
+                return null;
+            }
+            long[] lengths = lengthsOf(jars);
+            long[] lastModifiedDates = lastModifiedDatesOf(jars);
+            for (int i = 0; i < jars.length; i++) {
+                if (!in.readUTF().equals(jars[i].getPath()) || in.readLong() != lengths[i]
+                        || in.readLong() != lastModifiedDates[i]) {
+                    return null;
+                }
+            }
+            int size = in.readInt();
+            // Reject sizes a corrupt file may hold before allocating for them
+            if (size < 0 || size > indexFile.length()) {
+                return null;
+            }
+            Map<String, int[]> jarsByDirectory = new HashMap<>(size * 4 / 3 + 1);
+            for (int i = 0; i < size; i++) {
+                String directory = in.readUTF();
+                int count = in.readInt();
+                if (count < 0 || count > jars.length) {
+                    return null;
+                }
+                int[] positions = new int[count];
+                for (int j = 0; j < positions.length; j++) {
+                    positions[j] = in.readInt();
+                    if (positions[j] < 0 || positions[j] >= jars.length) {
+                        return null;
+                    }
+                }
+                jarsByDirectory.put(directory, positions);
+            }
+            return new JarIndex(jars.clone(), lengths, lastModifiedDates, jarsByDirectory);
+        }
+    }
+
+    /**
+     * Writes the index. The index is written to a temporary file first so concurrent readers never see a partial
+     * index.
+     */
+    void store(File indexFile) throws IOException {
+        File dir = indexFile.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File temp = File.createTempFile(indexFile.getName(), ".tmp", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+                out.writeInt(VERSION);
+                out.writeInt(jars.length);
+                for (int i = 0; i < jars.length; i++) {
+                    out.writeUTF(jars[i].getPath());
+                    out.writeLong(lengths[i]);
+                    out.writeLong(lastModifiedDates[i]);
+                }
+                out.writeInt(jarsByDirectory.size());
+                for (Map.Entry<String, int[]> directory : jarsByDirectory.entrySet()) {
+                    out.writeUTF(directory.getKey());
+                    out.writeInt(directory.getValue().length);
+                    for (int position : directory.getValue()) {
+                        out.writeInt(position);
+                    }
+                }
+            }
+            Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    private static String directoryOf(String path) {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? "" : path.substring(0, slash);
+    }
+
+    private static long[] lengthsOf(File[] jars) {
+        long[] lengths = new long[jars.length];
+        for (int i = 0; i < jars.length; i++) {
+            lengths[i] = jars[i].length();
+        }
+        return lengths;
+    }
+
+    private static long[] lastModifiedDatesOf(File[] jars) {
+        long[] lastModifiedDates = new long[jars.length];
+        for (int i = 0; i < jars.length; i++) {
+            lastModifiedDates[i] = jars[i].lastModified();
+        }
+        return lastModifiedDates;
+    }
+}
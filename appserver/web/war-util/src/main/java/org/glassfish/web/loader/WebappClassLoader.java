@@ -55,7 +55,7 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-// Portions Copyright [2016-2019] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2016-2020] [Payara Foundation and/or its affiliates]
 
 package org.glassfish.web.loader;
 
@@ -182,6 +182,16 @@ public class WebappClassLoader
 
     private static final String META_INF_SERVICES = "META-INF/services/";
 
+    /**
+     * Name of the file in the work directory the {@link JarIndex} is stored in.
+     */
+    private static final String JAR_INDEX_FILE = "jar-index.bin";
+
+    static {
+        // classes are loaded concurrently, locking per class name
+        registerAsParallelCapable();
+    }
+
 
     // ----------------------------------------------------- Instance Variables
 
@@ -267,6 +277,18 @@ public class WebappClassLoader
      */
     protected File[] jarRealFiles = new File[0];
 
+    /**
+     * Index of the directories in the JARs, built when first searching the
+     * JARs and reset when a JAR is added. Guarded by {@link #jarFilesLock}.
+     */
+    private JarIndex jarIndex = null;
+
+    /**
+     * File the index of the directories in the JARs is stored in, or null
+     * if it is not stored.
+     */
+    private File jarIndexFile = null;
+
     /**
      * The path which will be monitored for added Jar files.
      */
@@ -704,6 +726,7 @@ public class WebappClassLoader
      */
     public void setWorkDir(File workDir) {
         this.loaderDir = new File(workDir, "loader_" + this.hashCode());
+        this.jarIndexFile = new File(workDir, JAR_INDEX_FILE);
         try {
             canonicalLoaderDir = this.loaderDir.getCanonicalPath();
             if (!canonicalLoaderDir.endsWith(File.separator)) {
@@ -889,6 +912,8 @@ public class WebappClassLoader
             }
             result4[jarRealFiles.length] = file;
             jarRealFiles = result4;
+
+            jarIndex = null;
         }
     }
 
@@ -1063,7 +1088,7 @@ public class WebappClassLoader
                 // Create the code source object
                 CodeSource codeSource =
                     new CodeSource(entry.codeBase, entry.certificates);
-                synchronized (this) {
+                synchronized (getClassLoadingLock(name)) {
                     if (entry.loadedClass == null) {
                         /* START GlassFish [680]
                         clazz = defineClass(name, entry.binaryContent, 0,
@@ -1570,80 +1595,101 @@ public class WebappClassLoader
      * @exception ClassNotFoundException if the class was not found
      */
     @Override
-    protected synchronized Class<?> loadClass(String name, boolean resolve)
+    protected Class<?> loadClass(String name, boolean resolve)
         throws ClassNotFoundException {
+        synchronized (getClassLoadingLock(name)) {
+            if (logger.isLoggable(Level.FINER)) {
+                logger.log(Level.FINER, "loadClass({0})", name);
+            }
 
-        if (logger.isLoggable(Level.FINER)) {
-            logger.log(Level.FINER, "loadClass({0})", name);
-        }
-
-        Class<?> clazz = null;
+            Class<?> clazz = null;
 
-        // Don't load classes if class loader is stopped
-        if (!started) {
-            throw new IllegalStateException(
-                getString(LogFacade.NOT_STARTED, name));
-        }
+            // Don't load classes if class loader is stopped
+            if (!started) {
+                throw new IllegalStateException(
+                    getString(LogFacade.NOT_STARTED, name));
+            }
 
-        // (0) Check our previously loaded local class cache
-        clazz = findLoadedClass0(name);
-        if (clazz != null) {
-            if (logger.isLoggable(Level.FINER)) {
-                logger.log(Level.FINER, "  Returning class from cache");
+            // (0) Check our previously loaded local class cache
+            clazz = findLoadedClass0(name);
+            if (clazz != null) {
+                if (logger.isLoggable(Level.FINER)) {
+                    logger.log(Level.FINER, "  Returning class from cache");
+                }
+                if (resolve) {
+                    resolveClass(clazz);
+                }
+                return clazz;
             }
-            if (resolve) {
-                resolveClass(clazz);
+
+            // (0.1) Check our previously loaded class cache
+            clazz = findLoadedClass(name);
+            if (clazz != null) {
+                if (logger.isLoggable(Level.FINER)) {
+                    logger.log(Level.FINER, "  Returning class from cache");
+                }
+                if (resolve) {
+                    resolveClass(clazz);
+                }
+                return clazz;
             }
-            return clazz;
-        }
 
-        // (0.1) Check our previously loaded class cache
-        clazz = findLoadedClass(name);
-        if (clazz != null) {
-            if (logger.isLoggable(Level.FINER)) {
-                logger.log(Level.FINER, "  Returning class from cache");
+            // (0.5) Permission to access this class when using a SecurityManager
+            if ( securityManager != null && packageDefinitionEnabled) {
+                int i = name.lastIndexOf('.');
+                if (i >= 0) {
+                    try {
+                        securityManager.checkPackageAccess(name.substring(0,i));
+                    } catch (SecurityException se) {
+                        String error = getString(LogFacade.SECURITY_EXCEPTION, name);
+                        if (logger.isLoggable(Level.INFO)) {
+                            logger.log(Level.INFO, error, se);
+                        }
+                        throw new ClassNotFoundException(error, se);
+                    }
+                }
             }
-            if (resolve) {
-                resolveClass(clazz);
+
+            ClassLoader delegateLoader = parent;
+            if (delegateLoader == null) {
+                delegateLoader = system;
             }
-            return clazz;
-        }
 
-        // (0.5) Permission to access this class when using a SecurityManager
-        if ( securityManager != null && packageDefinitionEnabled) {
-            int i = name.lastIndexOf('.');
-            if (i >= 0) {
+            boolean isWhitelisted = application.isWhitelistEnabled() && DOLUtils.isWhiteListed(application, name);
+            boolean delegateLoad = (delegate && (application.isWhitelistEnabled() ? isWhitelisted : true)) || filter(name);
+
+            // (1) Delegate to our parent if requested
+            if (delegateLoad) {
+                // Check delegate first
+                if (logger.isLoggable(Level.FINER)) {
+                    logger.log(Level.FINER, "  Delegating to classloader1 {0}", delegateLoader);
+                }
                 try {
-                    securityManager.checkPackageAccess(name.substring(0,i));
-                } catch (SecurityException se) {
-                    String error = getString(LogFacade.SECURITY_EXCEPTION, name);
-                    if (logger.isLoggable(Level.INFO)) {
-                        logger.log(Level.INFO, error, se);
+                    clazz = delegateLoader.loadClass(name);
+                    if (clazz != null) {
+                        if (logger.isLoggable(Level.FINER)) {
+                            logger.log(Level.FINER, "  Loading class from delegate");
+                        }
+                        if (resolve) {
+                            resolveClass(clazz);
+                        }
+                        return clazz;
                     }
-                    throw new ClassNotFoundException(error, se);
+                } catch (ClassNotFoundException e) {
+                    // Ignore
                 }
             }
-        }
 
-        ClassLoader delegateLoader = parent;
-        if (delegateLoader == null) {
-            delegateLoader = system;
-        }
-
-        boolean isWhitelisted = application.isWhitelistEnabled() && DOLUtils.isWhiteListed(application, name);
-        boolean delegateLoad = (delegate && (application.isWhitelistEnabled() ? isWhitelisted : true)) || filter(name);
 
-        // (1) Delegate to our parent if requested
-        if (delegateLoad) {
-            // Check delegate first
+            // (2) Search local repositories
             if (logger.isLoggable(Level.FINER)) {
-                logger.log(Level.FINER, "  Delegating to classloader1 {0}", delegateLoader);
+                logger.log(Level.FINER, "  Searching local repositories");
             }
             try {
-                clazz = delegateLoader.loadClass(name);
+                clazz = findClass(name);
                 if (clazz != null) {
                     if (logger.isLoggable(Level.FINER)) {
-                        logger.log(Level.FINER, "  Loading class from delegate");
+                        logger.log(Level.FINER, "  Loading class from local repository");
                     }
                     if (resolve) {
                         resolveClass(clazz);
@@ -1653,52 +1699,32 @@ public class WebappClassLoader
             } catch (ClassNotFoundException e) {
                 // Ignore
             }
-        }
-
 
-        // (2) Search local repositories
-        if (logger.isLoggable(Level.FINER)) {
-            logger.log(Level.FINER, "  Searching local repositories");
-        }
-        try {
-            clazz = findClass(name);
-            if (clazz != null) {
+            // (3) Delegate if class was not found locally
+            if ((application.isWhitelistEnabled()? isWhitelisted : true) && !delegateLoad) {
                 if (logger.isLoggable(Level.FINER)) {
-                    logger.log(Level.FINER, "  Loading class from local repository");
+                    logger.log(Level.FINER, "  Delegating to classloader {0}", delegateLoader);
                 }
-                if (resolve) {
-                    resolveClass(clazz);
-                }
-                return clazz;
-            }
-        } catch (ClassNotFoundException e) {
-            // Ignore
-        }
-
-        // (3) Delegate if class was not found locally
-        if ((application.isWhitelistEnabled()? isWhitelisted : true) && !delegateLoad) {
-            if (logger.isLoggable(Level.FINER)) {
-                logger.log(Level.FINER, "  Delegating to classloader {0}", delegateLoader);
-            }
-            try {
-                clazz = delegateLoader.loadClass(name);
-                if (clazz != null) {
-                    if (logger.isLoggable(Level.FINER)) {
-                        logger.log(Level.FINER, "  Loading class from delegate");
-                    }
-                    if (resolve) {
-                        resolveClass(clazz);
+                try {
+                    clazz = delegateLoader.loadClass(name);
+                    if (clazz != null) {
+                        if (logger.isLoggable(Level.FINER)) {
+                            logger.log(Level.FINER, "  Loading class from delegate");
+                        }
+                        if (resolve) {
+                            resolveClass(clazz);
+                        }
+                        return clazz;
                     }
-                    return clazz;
+                } catch (ClassNotFoundException e) {
+                    // Ignore
                 }
-            } catch (ClassNotFoundException e) {
-                // Ignore
             }
+            else if(application.isWhitelistEnabled() && !isWhitelisted) {
+                throw new ClassNotFoundException(String.format("Whitelist enabled, but class [%s] is not whitelisted", name));
+            }
+            throw new ClassNotFoundException(name);
         }
-        else if(application.isWhitelistEnabled() && !isWhitelisted) {
-            throw new ClassNotFoundException(String.format("Whitelist enabled, but class [%s] is not whitelisted", name));
-        }
-        throw new ClassNotFoundException(name);
     }
 
 
@@ -1918,6 +1944,7 @@ public class WebappClassLoader
             files = null;
             jarFiles = null;
             jarRealFiles = null;
+            jarIndex = null;
             jarPath = null;
             jarNames.clear();
             lastModifiedDates = null;
@@ -2623,7 +2650,7 @@ public class WebappClassLoader
             throw new ClassNotFoundException(name);
         }
 
-        synchronized (this) {
+        synchronized (getClassLoadingLock(name)) {
             Class<?> clazz = entry.loadedClass;
             if (clazz != null) {
                 return entry;
@@ -2859,9 +2886,11 @@ public class WebappClassLoader
             return null;
         }
 
-        int jarFilesLength = jarFiles.length;
+        // Only search the JARs having entries in the directory of the path
+        int[] candidates = getJarIndex().getJars(path);
 
-        for (int i=0; (entry == null) && (i < jarFilesLength); i++) {
+        for (int c = 0; (entry == null) && (c < candidates.length); c++) {
+            int i = candidates[c];
             jarEntry = jarFiles[i].getJarEntry(path);
 
             if (jarEntry != null) {
@@ -2903,6 +2932,39 @@ public class WebappClassLoader
         return entry;
     }
 
+    /**
+     * Get the index of the directories in the JARs, loading it from the work
+     * directory or building it when necessary. Must be called holding
+     * {@link #jarFilesLock} with the JARs open.
+     */
+    private JarIndex getJarIndex() {
+        if (jarIndex == null) {
+            if (jarIndexFile != null) {
+                try {
+                    jarIndex = JarIndex.load(jarIndexFile, jarRealFiles);
+                } catch (IOException e) {
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.log(Level.FINE, "Failed to read JAR index " + jarIndexFile, e);
+                    }
+                }
+            }
+            if (jarIndex == null) {
+                jarIndex = JarIndex.build(jarFiles, jarRealFiles);
+                if (jarIndexFile != null) {
+                    try {
+                        jarIndex.store(jarIndexFile);
+                    } catch (IOException e) {
+                        if (logger.isLoggable(Level.FINE)) {
+                            logger.log(Level.FINE, "Failed to write JAR index " + jarIndexFile, e);
+                        }
+                    }
+                }
+            }
+        }
+        return jarIndex;
+    }
+
+
     private synchronized void extractResources() {
         if (!antiJARLocking || resourcesExtracted) {
             return;
@@ -3087,9 +3149,7 @@ public class WebappClassLoader
 
         ResourceEntry entry = resourceEntries.get(name);
         if (entry != null) {
-            synchronized(this) {
-                return entry.loadedClass;
-            }
+            return entry.loadedClass;
         }
         return null;  // FIXME - findLoadedResource()
 
@@ -0,0 +1,238 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.web.loader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JarIndexTest {
+
+    private File dir;
+    private File indexFile;
+
+    @Before
+    public void createDirectory() throws IOException {
+        dir = Files.createTempDirectory("jar-index").toFile();
+        indexFile = new File(dir, "work/jar-index.bin");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        delete(dir);
+    }
+
+    @Test
+    public void lookupOnlyFindsJarsWithEntriesInTheDirectory() throws IOException {
+        File[] jars = {
+            jar("a.jar", "org/example/a/A.class", "Root.class"),
+            jar("b.jar", "org/example/b/B.class"),
+            jar("c.jar", "org/example/a/C.class", "META-INF/services/org.example.Service")
+        };
+        JarIndex index = build(jars);
+
+        assertArrayEquals(new int[] { 0, 2 }, index.getJars("org/example/a/Missing.class"));
+        assertArrayEquals(new int[] { 1 }, index.getJars("org/example/b/B.class"));
+        assertArrayEquals(new int[] { 2 }, index.getJars("META-INF/services/org.example.Service"));
+        assertArrayEquals(new int[0], index.getJars("org/example/c/C.class"));
+        assertArrayEquals(new int[] { 0, 1, 2 }, index.getJars("Missing.class"));
+    }
+
+    @Test
+    public void directoryLookupWithoutTrailingSlashFindsJarsWithoutDirectoryEntries() throws IOException {
+        File[] jars = {
+            jar("a.jar", "org/example/a/A.class"),
+            jar("b.jar", "com/example/B.class")
+        };
+        JarIndex index = build(jars);
+
+        assertArrayEquals(new int[] { 0 }, index.getJars("org/example/a/"));
+        assertArrayEquals(new int[] { 0 }, index.getJars("org/example/a"));
+        assertArrayEquals(new int[] { 0 }, index.getJars("org/example"));
+        assertArrayEquals(new int[] { 0, 1 }, index.getJars("org"));
+    }
+
+    @Test
+    public void storedIndexIsLoaded() throws IOException {
+        File[] jars = {
+            jar("a.jar", "org/example/a/A.class"),
+            jar("b.jar", "org/example/b/B.class", "org/example/a/")
+        };
+        build(jars).store(indexFile);
+
+        JarIndex index = JarIndex.load(indexFile, jars);
+
+        assertNotNull(index);
+        assertArrayEquals(new int[] { 0, 1 }, index.getJars("org/example/a/A.class"));
+        assertArrayEquals(new int[] { 1 }, index.getJars("org/example/b/B.class"));
+        assertArrayEquals(new int[] { 0, 1 }, index.getJars("org/example"));
+        assertArrayEquals(new int[0], index.getJars("com/example/C.class"));
+    }
+
+    @Test
+    public void missingIndexIsNotLoaded() throws IOException {
+        File[] jars = { jar("a.jar", "org/example/a/A.class") };
+        assertNull(JarIndex.load(indexFile, jars));
+    }
+
+    @Test
+    public void indexOfModifiedJarsIsNotLoaded() throws IOException {
+        File[] jars = { jar("a.jar", "org/example/a/A.class") };
+        build(jars).store(indexFile);
+
+        File jar = jar("a.jar", "org/example/a/A.class", "org/example/b/B.class");
+        jar.setLastModified(jar.lastModified() + 10_000);
+
+        assertNull(JarIndex.load(indexFile, jars));
+    }
+
+    @Test
+    public void indexOfOtherJarsIsNotLoaded() throws IOException {
+        File[] jars = { jar("a.jar", "org/example/a/A.class") };
+        build(jars).store(indexFile);
+
+        assertNull(JarIndex.load(indexFile, new File[] { jar("b.jar", "org/example/a/A.class") }));
+        assertNull(JarIndex.load(indexFile, new File[] { jars[0], jar("b.jar", "org/example/b/B.class") }));
+    }
+
+    @Test
+    public void indexOfAnotherVersionIsNotLoaded() throws IOException {
+        File[] jars = { jar("a.jar", "org/example/a/A.class") };
+        build(jars).store(indexFile);
+        try (RandomAccessFile file = new RandomAccessFile(indexFile, "rw")) {
+            file.writeInt(0);
+        }
+
+        assertNull(JarIndex.load(indexFile, jars));
+    }
+
+    @Test
+    public void indexWithCorruptSizesIsNotLoaded() throws IOException {
+        File[] jars = { jar("a.jar", "org/example/a/A.class") };
+        build(jars).store(indexFile);
+        try (RandomAccessFile file = new RandomAccessFile(indexFile, "rw")) {
+            // The directory count follows the version, the jar count and the path, length and date of the jar
+            file.seek(4 + 4 + 2 + jars[0].getPath().length() + 8 + 8);
+            file.writeInt(Integer.MAX_VALUE);
+        }
+
+        assertNull(JarIndex.load(indexFile, jars));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedIndexFailsToLoad() throws IOException {
+        File[] jars = { jar("a.jar", "org/example/a/A.class") };
+        build(jars).store(indexFile);
+        try (RandomAccessFile file = new RandomAccessFile(indexFile, "rw")) {
+            file.setLength(file.length() - 2);
+        }
+
+        JarIndex.load(indexFile, jars);
+    }
+
+    @Test
+    public void storeReplacesTheIndex() throws IOException {
+        File[] jars = { jar("a.jar", "org/example/a/A.class") };
+        build(jars).store(indexFile);
+        File jar = jar("a.jar", "org/example/b/B.class", "org/example/c/C.class");
+        jar.setLastModified(jar.lastModified() + 10_000);
+        build(jars).store(indexFile);
+
+        JarIndex index = JarIndex.load(indexFile, jars);
+
+        assertNotNull(index);
+        assertArrayEquals(new int[0], index.getJars("org/example/a/A.class"));
+        assertArrayEquals(new int[] { 0 }, index.getJars("org/example/c/C.class"));
+        assertEquals("Only the index is left in the work directory", 1, indexFile.getParentFile().list().length);
+    }
+
+    private File jar(String name, String... entries) throws IOException {
+        File jar = new File(dir, name);
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar.toPath()))) {
+            for (String entry : entries) {
+                out.putNextEntry(new JarEntry(entry));
+                if (!entry.endsWith("/")) {
+                    out.write(entry.getBytes("UTF-8"));
+                }
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static JarIndex build(File[] jars) throws IOException {
+        JarFile[] jarFiles = new JarFile[jars.length];
+        try {
+            for (int i = 0; i < jars.length; i++) {
+                jarFiles[i] = new JarFile(jars[i]);
+            }
+            return JarIndex.build(jarFiles, jars);
+        } finally {
+            for (JarFile jarFile : jarFiles) {
+                if (jarFile != null) {
+                    jarFile.close();
+                }
+            }
+        }
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -56,6 +56,7 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+// Portions Copyright [2020] [Payara Foundation and/or its affiliates]
 
 package org.apache.catalina.servlets;
 
@@ -68,15 +69,19 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.RandomAccessFile;
 import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.security.AccessController;
 import java.text.MessageFormat;
 import java.util.*;
+import java.util.zip.GZIPOutputStream;
 import javax.naming.InitialContext;
 import javax.naming.NameClassPair;
 import javax.naming.NamingException;
@@ -107,9 +112,11 @@ import org.apache.catalina.core.ContextsAdapterUtility;
 import org.apache.catalina.util.ServerInfo;
 import org.apache.catalina.util.URLEncoder;
 import org.apache.naming.resources.CacheEntry;
+import org.apache.naming.resources.FileDirContext;
 import org.apache.naming.resources.ProxyDirContext;
 import org.apache.naming.resources.Resource;
 import org.apache.naming.resources.ResourceAttributes;
+import org.apache.naming.resources.ResourceCache;
 import org.apache.tomcat.util.security.PrivilegedGetTccl;
 import org.apache.tomcat.util.security.PrivilegedSetTccl;
 import org.glassfish.grizzly.http.server.util.AlternateDocBase;
@@ -284,6 +291,56 @@ public class DefaultServlet
     protected int maxHeaderRangeItems = 10;
 
 
+    /**
+     * Should the pre-compressed .br or .gz sibling of a static resource be
+     * served to clients accepting that encoding?
+     */
+    protected boolean precompressed = false;
+
+
+    /**
+     * Should gzip variants of compressable static resources be created on
+     * first access and served to clients accepting gzip?
+     */
+    protected boolean compressOnTheFly = false;
+
+
+    /**
+     * Minimum size for on the fly compression in bytes.
+     */
+    protected int compressionMinSize = 2048;
+
+
+    /**
+     * Mime types compressed on the fly. Entries ending with / match all
+     * subtypes.
+     */
+    protected String[] compressableMimeTypes = { "text/",
+        "application/javascript", "application/json", "application/xml",
+        "image/svg+xml" };
+
+
+    /**
+     * Directory the variants compressed on the fly are stored in, null when
+     * not compressing on the fly.
+     */
+    protected transient File compressedDir = null;
+
+
+    /**
+     * Maximum size in KB of the cache for the variants compressed on the fly.
+     */
+    protected int compressedCacheMaxSize = 10240;
+
+
+    /**
+     * Directory context for the variants compressed on the fly. Variants are
+     * held in the resource cache of the context, which is bounded by
+     * compressedCacheMaxSize.
+     */
+    protected transient ProxyDirContext compressedResources = null;
+
+
     // ----------------------------------------------------- Static Initializer
 
 
@@ -328,6 +385,14 @@ public class DefaultServlet
     protected static final int BUFFER_SIZE = 4096;
 
 
+    /**
+     * Content encodings of pre-compressed resources and the extension of
+     * their file, in order of preference.
+     */
+    protected static final String[][] PRECOMPRESSED_ENCODINGS = {
+        { "br", ".br" }, { "gzip", ".gz" } };
+
+
     // --------------------------------------------------------- Public Methods
 
 
@@ -382,6 +447,18 @@ public class DefaultServlet
         if (sc.getInitParameter("useAcceptRanges") != null)
             useAcceptRanges = Boolean.parseBoolean(sc.getInitParameter("useAcceptRanges"));
 
+        precompressed = Boolean.parseBoolean(sc.getInitParameter("precompressed"));
+        compressOnTheFly = Boolean.parseBoolean(sc.getInitParameter("compressOnTheFly"));
+
+        if (sc.getInitParameter("compressionMinSize") != null)
+            compressionMinSize = Integer.parseInt(sc.getInitParameter("compressionMinSize"));
+
+        if (sc.getInitParameter("compressableMimeType") != null)
+            compressableMimeTypes = sc.getInitParameter("compressableMimeType").trim().split("\\s*,\\s*");
+
+        if (sc.getInitParameter("compressedCacheMaxSize") != null)
+            compressedCacheMaxSize = Integer.parseInt(sc.getInitParameter("compressedCacheMaxSize"));
+
         // Sanity check on the specified buffer sizes
         if (input < 256)
             input = 256;
@@ -418,6 +495,38 @@ public class DefaultServlet
             // Failed : Not the right type
         }
 
+        if (compressOnTheFly) {
+            initCompressedDir();
+        }
+
+    }
+
+
+    /**
+     * Prepare the directory for the variants compressed on the fly within the
+     * work directory of the web application.
+     */
+    private void initCompressedDir() {
+        File tempDir = (File) getServletContext().getAttribute(ServletContext.TEMPDIR);
+        if (tempDir == null) {
+            log("DefaultServlet.init:  No work directory, not compressing on the fly");
+            return;
+        }
+        File dir = new File(tempDir, "compressed-" + getServletName());
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            log("DefaultServlet.init:  Cannot create " + dir + ", not compressing on the fly");
+            return;
+        }
+        FileDirContext dirContext = new FileDirContext();
+        dirContext.setDocBase(dir.getPath());
+        dirContext.setCacheMaxSize(compressedCacheMaxSize);
+        try {
+            compressedResources = new ProxyDirContext(new Hashtable<String, String>(), dirContext);
+        } catch (Exception e) {
+            log("DefaultServlet.init:  Cannot cache " + dir + ", not compressing on the fly", e);
+            return;
+        }
+        compressedDir = dir;
     }
 
 
@@ -821,6 +930,7 @@ public class DefaultServlet
 
         CacheEntry cacheEntry = null;
         ProxyDirContext proxyDirContext = resources;
+        ProxyDirContext lookupContext = proxyDirContext;
         if (alternateDocBases == null
                 || alternateDocBases.size() == 0) {
             cacheEntry = proxyDirContext.lookupCache(path);
@@ -828,7 +938,8 @@ public class DefaultServlet
             AlternateDocBase match = AlternateDocBase.findMatch(
                                             path, alternateDocBases);
             if (match != null) {
-                cacheEntry = ((ProxyDirContext) ContextsAdapterUtility.unwrap(match.getResources())).lookupCache(path);
+                lookupContext = (ProxyDirContext) ContextsAdapterUtility.unwrap(match.getResources());
+                cacheEntry = lookupContext.lookupCache(path);
             } else {
                 // None of the url patterns for alternate docbases matched
                 cacheEntry = proxyDirContext.lookupCache(path);
@@ -889,13 +1000,33 @@ public class DefaultServlet
             }
         }
 
+        // Find content type.
+        String contentType = cacheEntry.attributes.getMimeType();
+        if (contentType == null && !cacheEntry.attributes.isMimeTypeInitialized()) {
+            contentType = getServletContext().getMimeType(cacheEntry.name);
+            cacheEntry.attributes.setMimeType(contentType);
+        }
+
+        boolean included =
+            (request.getAttribute(RequestDispatcher.INCLUDE_CONTEXT_PATH) != null);
+
+        // Serve a compressed variant of the resource when the client
+        // accepts it, the variant has its own ETag and length
+        if ((cacheEntry.context == null) && !included
+                && (precompressed || (compressedDir != null))) {
+            response.addHeader("Vary", "Accept-Encoding");
+            CacheEntry variant = findCompressedVariant(request, response,
+                    lookupContext, cacheEntry, path, contentType);
+            if (variant != null) {
+                cacheEntry = variant;
+            }
+        }
+
         // Check if the conditions specified in the optional If headers are
         // satisfied.
         if (cacheEntry.context == null) {
 
             // Checking If headers
-            boolean included =
-                (request.getAttribute(RequestDispatcher.INCLUDE_CONTEXT_PATH) != null);
             if (!included
                 && !checkIfHeaders(request, response, cacheEntry.attributes)) {
                 return;
@@ -903,13 +1034,6 @@ public class DefaultServlet
 
         }
 
-        // Find content type.
-        String contentType = cacheEntry.attributes.getMimeType();
-        if (contentType == null && !cacheEntry.attributes.isMimeTypeInitialized()) {
-            contentType = getServletContext().getMimeType(cacheEntry.name);
-            cacheEntry.attributes.setMimeType(contentType);
-        }
-
         ArrayList<Range> ranges = null;
         long contentLength = -1L;
 
@@ -1105,6 +1229,214 @@ public class DefaultServlet
     }
 
 
+    /**
+     * Find the compressed variant of a static resource to serve. Pre-compressed
+     * siblings are preferred over variants compressed on the fly.
+     *
+     * @param request The servlet request we are processing
+     * @param response The servlet response we are creating, the
+     *  Content-Encoding header is set when a variant is found
+     * @param lookupContext The context the resource was found in
+     * @param cacheEntry The resource
+     * @param path The path of the resource
+     * @param contentType The content type of the resource
+     * @return the compressed variant, or null if there is none to serve
+     */
+    protected CacheEntry findCompressedVariant(HttpServletRequest request,
+                                               HttpServletResponse response,
+                                               ProxyDirContext lookupContext,
+                                               CacheEntry cacheEntry,
+                                               String path,
+                                               String contentType) {
+        if (precompressed) {
+            for (String[] encoding : PRECOMPRESSED_ENCODINGS) {
+                if (acceptsEncoding(request, encoding[0])) {
+                    CacheEntry variant = lookupContext.lookupCache(path + encoding[1]);
+                    if (variant.exists && (variant.context == null)) {
+                        response.setHeader("Content-Encoding", encoding[0]);
+                        return variant;
+                    }
+                }
+            }
+        }
+        if ((compressedDir != null)
+                && (cacheEntry.attributes.getContentLength() >= compressionMinSize)
+                && isCompressable(contentType)
+                && acceptsEncoding(request, "gzip")) {
+            CacheEntry variant = getCompressedVariant(cacheEntry, path, contentType);
+            if (variant != null) {
+                response.setHeader("Content-Encoding", "gzip");
+                return variant;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Check if the client accepts the given content encoding, an encoding
+     * with a quality value of 0 is not accepted.
+     */
+    protected boolean acceptsEncoding(HttpServletRequest request, String encoding) {
+        Enumeration<String> headers = request.getHeaders("Accept-Encoding");
+        while (headers != null && headers.hasMoreElements()) {
+            for (String coding : headers.nextElement().split(",")) {
+                int semicolon = coding.indexOf(';');
+                String name = (semicolon < 0 ? coding : coding.substring(0, semicolon)).trim();
+                if (name.equalsIgnoreCase(encoding) || name.equals("*")) {
+                    if (semicolon < 0) {
+                        return true;
+                    }
+                    String param = coding.substring(semicolon + 1).trim();
+                    if (!param.startsWith("q=")) {
+                        return true;
+                    }
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0d;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Check if resources of the given content type are compressed on the fly.
+     */
+    protected boolean isCompressable(String contentType) {
+        if (contentType == null) {
+            return false;
+        }
+        for (String mimeType : compressableMimeTypes) {
+            if (!contentType.startsWith(mimeType)) {
+                continue;
+            }
+            // Match "type/subtype" and "type/subtype;charset=..."
+            if (mimeType.endsWith("/")
+                    || (contentType.length() == mimeType.length())
+                    || (contentType.charAt(mimeType.length()) == ';')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Get the gzip variant of the resource compressed on the fly. The variant
+     * is created once for each ETag of the resource and kept in the work
+     * directory so it can be served with sendfile as well. The variants of
+     * earlier ETags of the resource are removed when a new one is created.
+     *
+     * @return the variant, or null if it could not be created
+     */
+    private CacheEntry getCompressedVariant(CacheEntry cacheEntry, String path,
+                                            String contentType) {
+        String eTag = cacheEntry.attributes.getETag();
+        if ((eTag == null) || (path.indexOf("..") >= 0)) {
+            return null;
+        }
+        String name = path + "." + eTag.replaceAll("[^A-Za-z0-9_-]", "") + ".gz";
+        CacheEntry variant = compressedResources.lookupCache(name);
+        if (!variant.exists) {
+            File file = new File(compressedDir, name);
+            try {
+                if (!file.isFile()) {
+                    compress(cacheEntry, file);
+                    removeCompressedVariants(name);
+                }
+            } catch (IOException e) {
+                log("DefaultServlet.serveResource:  Cannot compress '" + path + "'", e);
+                return null;
+            }
+            // Drop the cached miss before looking the new variant up
+            evictCompressedVariant(name);
+            variant = compressedResources.lookupCache(name);
+            if (!variant.exists) {
+                return null;
+            }
+        }
+        if (variant.context != null) {
+            return null;
+        }
+        variant.attributes.setMimeType(contentType);
+        return variant;
+    }
+
+
+    /**
+     * Remove the variants compressed for earlier ETags of the resource the
+     * named variant belongs to, from the work directory and from the cache.
+     */
+    private void removeCompressedVariants(String name) {
+        String dirName = name.substring(0, name.lastIndexOf('/') + 1);
+        String fileName = name.substring(dirName.length());
+        // Variant names are <resource>.<ETag>.gz, the ETag part has no dot
+        String prefix = fileName.substring(0,
+                fileName.lastIndexOf('.', fileName.length() - ".gz".length() - 1) + 1);
+        File[] files = new File(compressedDir, dirName).listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String other = file.getName();
+            if (other.equals(fileName) || !other.startsWith(prefix) || !other.endsWith(".gz")
+                    || other.lastIndexOf('.', other.length() - ".gz".length() - 1) != prefix.length() - 1) {
+                continue;
+            }
+            if (file.delete()) {
+                evictCompressedVariant(dirName + other);
+            }
+        }
+    }
+
+
+    /**
+     * Remove the entry of a compressed variant from the cache.
+     */
+    private void evictCompressedVariant(String name) {
+        ResourceCache cache = compressedResources.getCache();
+        if (cache != null) {
+            cache.remove(name);
+        }
+    }
+
+
+    /**
+     * Write the gzip compressed content of the resource to the given file.
+     * The content is written to a temporary file first so concurrent requests
+     * never see a partial variant.
+     */
+    private void compress(CacheEntry cacheEntry, File file) throws IOException {
+        File dir = file.getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File temp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            try (InputStream in = cacheEntry.resource.streamContent();
+                 OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp.toPath()), BUFFER_SIZE)) {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int len;
+                while ((len = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, len);
+                }
+            }
+            long lastModified = cacheEntry.attributes.getLastModified();
+            if (lastModified > 0) {
+                temp.setLastModified(lastModified);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+
     /**
      * Parse the content-range header.
      *
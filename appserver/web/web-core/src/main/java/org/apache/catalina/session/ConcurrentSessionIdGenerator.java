@@ -0,0 +1,142 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.apache.catalina.session;
+
+import com.sun.enterprise.util.uuid.UuidGenerator;
+
+import java.security.SecureRandom;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Session identifier generator that does not serialise the threads creating sessions.
+ * <p>
+ * Every thread draws the random bytes of its identifiers from its own {@link SecureRandom}, which is replaced by
+ * a freshly seeded instance after {@value #RESEED_INTERVAL} identifiers. The identifiers are the hexadecimal
+ * representation of the random bytes and do not depend on the object they are generated for.
+ * <p>
+ * The per thread state only refers to its {@link SecureRandom}, so the entries of threads that outlive the
+ * generator, e.g. request threads after an undeployment, do not keep the generator or its owner reachable.
+ * {@link #reset()} additionally drops all per thread generators at once.
+ */
+public class ConcurrentSessionIdGenerator implements UuidGenerator {
+
+    /**
+     * Number of identifiers a thread generates before its random number generator is replaced.
+     */
+    static final int RESEED_INTERVAL = 100_000;
+
+    private static final int DEFAULT_ID_LENGTH = 16;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private final Supplier<SecureRandom> randomFactory;
+    private final IntSupplier idLength;
+    private volatile ThreadLocal<ThreadRandom> threadRandom;
+
+    /**
+     * Creates a generator of 16 byte identifiers using the default {@link SecureRandom} algorithm.
+     */
+    public ConcurrentSessionIdGenerator() {
+        this(SecureRandom::new, () -> DEFAULT_ID_LENGTH);
+    }
+
+    /**
+     * @param randomFactory creates and seeds the random number generators of the threads
+     * @param idLength supplies the number of random bytes of an identifier
+     */
+    public ConcurrentSessionIdGenerator(Supplier<SecureRandom> randomFactory, IntSupplier idLength) {
+        this.randomFactory = randomFactory;
+        this.idLength = idLength;
+        this.threadRandom = new ThreadLocal<>();
+    }
+
+    /**
+     * Discards the random number generators of all threads. The calling thread's entry is removed immediately,
+     * the entries of other threads become stale and are expunged by their threads.
+     */
+    public void reset() {
+        ThreadLocal<ThreadRandom> previous = threadRandom;
+        threadRandom = new ThreadLocal<>();
+        previous.remove();
+    }
+
+    @Override
+    public String generateUuid() {
+        int length = idLength.getAsInt();
+        byte[] bytes = new byte[length > 0 ? length : DEFAULT_ID_LENGTH];
+        ThreadLocal<ThreadRandom> current = threadRandom;
+        ThreadRandom random = current.get();
+        if (random == null || random.remaining == 0) {
+            random = new ThreadRandom(randomFactory.get());
+            current.set(random);
+        }
+        random.nextBytes(bytes);
+        char[] id = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            id[2 * i] = HEX_DIGITS[(bytes[i] & 0xF0) >> 4];
+            id[2 * i + 1] = HEX_DIGITS[bytes[i] & 0x0F];
+        }
+        return new String(id);
+    }
+
+    @Override
+    public String generateUuid(Object obj) {
+        return generateUuid();
+    }
+
+    /**
+     * Random number generator of a thread and the number of identifiers it may still generate. Static so that it
+     * does not refer to the generator.
+     */
+    private static final class ThreadRandom {
+
+        private final SecureRandom random;
+        private int remaining = RESEED_INTERVAL;
+
+        ThreadRandom(SecureRandom random) {
+            this.random = random;
+        }
+
+        void nextBytes(byte[] bytes) {
+            remaining--;
+            random.nextBytes(bytes);
+        }
+    }
+}
@@ -37,7 +37,7 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-// Portions Copyright [2018] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2018-2020] [Payara Foundation and/or its affiliates]
 package org.apache.catalina.session;
 
 import org.apache.catalina.LogFacade;
@@ -117,6 +117,11 @@ public class CookiePersistentManager extends StandardManager {
         return null;
     }
 
+    @Override
+    protected void scheduleExpiry(Session session) {
+        // Sessions are kept in cookies and not expired in the background
+    }
+
     @Override
     public void remove(Session session) {
         synchronized (sessionIds) {
@@ -55,12 +55,11 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-// Portions Copyright [2016-2017] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2016-2020] [Payara Foundation and/or its affiliates]
 
 package org.apache.catalina.session;
 
 import com.sun.enterprise.util.uuid.UuidGenerator;
-import com.sun.enterprise.util.uuid.UuidGeneratorImpl;
 import org.apache.catalina.*;
 import org.apache.catalina.core.StandardContext;
 import org.apache.catalina.core.StandardHost;
@@ -81,6 +80,7 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.SecureRandom;
@@ -186,7 +186,8 @@ public abstract class ManagerBase implements Manager {
      * when generating universally unique session identifiers.
      * HERCULES: add
      */
-    protected UuidGenerator uuidGenerator = new UuidGeneratorImpl();     
+    protected UuidGenerator uuidGenerator =
+            new ConcurrentSessionIdGenerator(this::createRandom, this::getSessionIdLength);
 
 
     /**
@@ -219,6 +220,11 @@ public abstract class ManagerBase implements Manager {
      * session identifier.
      */
     protected Map<String, Session> sessions = new ConcurrentHashMap<String, Session>();
+
+    /**
+     * The active Sessions of this Manager indexed by the time they expire at.
+     */
+    final SessionExpiryIndex expiryIndex = new SessionExpiryIndex();
     
     // Number of sessions created by this manager
     protected int sessionCounter=0;
@@ -552,44 +558,56 @@ public abstract class ManagerBase implements Manager {
      */
     public synchronized SecureRandom getRandom() {
         if (this.random == null) {
-            // Calculate the new random number generator seed
-            long seed = System.currentTimeMillis();
-            long t1 = seed;
-            char entropy[] = getEntropy().toCharArray();
-            for (int i = 0; i < entropy.length; i++) {
-                 long update = ((byte) entropy[i]) << ((i % 8) * 8);
-                 seed ^= update;
-            }
-            try {
-                 // Construct and seed a new random number generator
-                 Class<?> clazz = Class.forName(randomClass);
-                 this.random = (SecureRandom) clazz.newInstance();
-                 this.random.setSeed(seed);
-            } catch (Exception e) {
-                 // Fall back to the simple case
-                String msg = MessageFormat.format(rb.getString(LogFacade.INIT_RANDOM_NUMBER_GENERATOR_EXCEPTION),
-                                                  randomClass);
-                 log.log(Level.SEVERE, msg, e);
-                 this.random = new SecureRandom();
-                 this.random.setSeed(seed);
-            }
-            long t2=System.currentTimeMillis();
-            if( (t2-t1) > 100 )
-                 if (log.isLoggable(Level.FINE)) {
-                     String msg = MessageFormat.format(rb.getString(LogFacade.SEEDING_RANDOM_NUMBER_GENERATOR_CLASS),
-                                                       randomClass);
-                     log.log(Level.FINE, msg + " " + (t2-t1));
-                 }
+            this.random = createRandom();
         }
 
         return (this.random);
     }
 
+    /**
+     * Construct a new random number generator of the configured class.
+     * The generator seeds itself before the current time and the entropy
+     * of this Manager are mixed into it, so that they only supplement the
+     * seed: an explicit seed given to a generator before its first use,
+     * e.g. a SHA1PRNG, would make its output predictable.
+     */
+    protected SecureRandom createRandom() {
+        SecureRandom newRandom;
+        long t1 = System.currentTimeMillis();
+        try {
+             // Construct a new random number generator
+             Class<?> clazz = Class.forName(randomClass);
+             newRandom = (SecureRandom) clazz.newInstance();
+        } catch (Exception e) {
+             // Fall back to the simple case
+            String msg = MessageFormat.format(rb.getString(LogFacade.INIT_RANDOM_NUMBER_GENERATOR_EXCEPTION),
+                                              randomClass);
+             log.log(Level.SEVERE, msg, e);
+             newRandom = new SecureRandom();
+        }
+        // Let it seed itself, then add the time and entropy to the seed
+        newRandom.nextBytes(new byte[1]);
+        newRandom.setSeed(t1);
+        newRandom.setSeed(getEntropy().getBytes(StandardCharsets.UTF_8));
+        long t2=System.currentTimeMillis();
+        if( (t2-t1) > 100 )
+             if (log.isLoggable(Level.FINE)) {
+                 String msg = MessageFormat.format(rb.getString(LogFacade.SEEDING_RANDOM_NUMBER_GENERATOR_CLASS),
+                                                   randomClass);
+                 log.log(Level.FINE, msg + " " + (t2-t1));
+             }
+        return newRandom;
+    }
+
     /**
      * Reset the random number generator instance to null.
      */
     protected synchronized void resetRandom() {
         this.random = null;
+        if (uuidGenerator instanceof ConcurrentSessionIdGenerator) {
+            // Drop the per thread generators, a restart creates new ones
+            ((ConcurrentSessionIdGenerator) uuidGenerator).reset();
+        }
     }
 
 
@@ -692,6 +710,7 @@ public abstract class ManagerBase implements Manager {
      */
     public void add(Session session) {
         sessions.put(session.getIdInternal(), session);
+        scheduleExpiry(session);
         int size = sessions.size();
         if (size > maxActive) {
             synchronized(maxActiveUpdateLock) {
@@ -872,6 +891,7 @@ public abstract class ManagerBase implements Manager {
      */
     public void clearSessions() {
         sessions.clear();
+        expiryIndex.clear();
     }    
 
 
@@ -897,6 +917,37 @@ public abstract class ManagerBase implements Manager {
      */
     public void remove(Session session) {
         sessions.remove(session.getIdInternal());
+        if (session instanceof StandardSession) {
+            expiryIndex.remove((StandardSession) session);
+        }
+    }
+
+
+    /**
+     * Schedule the background expiration of an active Session for the time
+     * it expires at, unless it is accessed again.
+     *
+     * @param session Session to be scheduled
+     */
+    protected void scheduleExpiry(Session session) {
+        if (session instanceof StandardSession
+                && sessions.get(session.getIdInternal()) == session) {
+            expiryIndex.schedule((StandardSession) session);
+        }
+    }
+
+
+    /**
+     * Return the active Sessions that are due for an expiration check, as
+     * scheduled by {@link #scheduleExpiry(Session)}. The caller expires them
+     * or schedules them again.
+     *
+     * @param timeNow the current time in milliseconds
+     */
+    protected List<StandardSession> pollSessionsDueForExpiry(long timeNow) {
+        List<StandardSession> due = expiryIndex.pollDue(timeNow);
+        due.removeIf(session -> sessions.get(session.getIdInternal()) != session);
+        return due;
     }
 
     @Override
@@ -962,17 +1013,25 @@ public abstract class ManagerBase implements Manager {
     
     /**
      * Generate and return a new session identifier.
+     * The default generator is thread safe and called concurrently,
+     * other generators are called while holding the lock of this Manager.
      * Hercules:added
      */
-    protected synchronized String generateSessionId(Object obj) {
-        return uuidGenerator.generateUuid(obj);
+    protected String generateSessionId(Object obj) {
+        UuidGenerator generator = uuidGenerator;
+        if (generator instanceof ConcurrentSessionIdGenerator) {
+            return generator.generateUuid(obj);
+        }
+        synchronized (this) {
+            return generator.generateUuid(obj);
+        }
     }   
     
     /**
      * Generate and return a new session identifier.
      * Hercules:modified
      */
-    protected synchronized String generateSessionId() {
+    protected String generateSessionId() {
         return generateSessionId(new Object());
     }    
 
@@ -55,7 +55,7 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-// Portions Copyright [2016-2018] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2016-2020] [Payara Foundation and/or its affiliates]
 
 package org.apache.catalina.session;
 
@@ -587,6 +587,8 @@ public abstract class PersistentManagerBase
     
     /**
      * Invalidate all sessions that have expired.
+     * Only the sessions due according to the expiry index are checked,
+     * sessions that have been accessed since are scheduled again.
      * Hercules: modified method
      */
     protected void processExpires() {
@@ -594,10 +596,7 @@ public abstract class PersistentManagerBase
         if (!started)
             return;
 
-        Session sessions[] = findSessions();
-
-        for (int i = 0; i < sessions.length; i++) {
-            StandardSession session = (StandardSession) sessions[i];
+        for (StandardSession session : pollSessionsDueForExpiry(System.currentTimeMillis())) {
             /* START CR 6363689
             if (!session.isValid()) {
             */
@@ -612,6 +611,8 @@ public abstract class PersistentManagerBase
                     }
                 }                                
 	    }            
+            // Accessed in the meantime or in use by a request
+            scheduleExpiry(session);
         }
     }        
 
@@ -811,6 +812,7 @@ public abstract class PersistentManagerBase
 
         // Initialize our internal data structures
         sessions.clear();
+        expiryIndex.clear();
 
         if (store == null)
             return;
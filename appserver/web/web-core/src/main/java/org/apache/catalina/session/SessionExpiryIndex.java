@@ -0,0 +1,168 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.apache.catalina.session;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Index of the sessions of a manager by the time they expire, so that the background expiration only looks at
+ * the sessions that are due instead of all sessions of the manager.
+ * <p>
+ * Sessions are kept in buckets of {@value #BUCKET_MILLIS} ms by the time they would expire if they were not
+ * accessed again. Accessing a session does not touch the index: once its bucket is due the manager checks the
+ * session and schedules it again if it was accessed in the meantime, so a session that is in use is looked at
+ * about once per inactive interval.
+ * <p>
+ * A session is only in the bucket recorded in {@link StandardSession#expiryBucket}, entries left in other buckets
+ * by concurrent rescheduling are dropped when their bucket is due.
+ */
+final class SessionExpiryIndex {
+
+    static final long BUCKET_MILLIS = 1000L;
+    static final long NOT_SCHEDULED = Long.MIN_VALUE;
+
+    private final ConcurrentSkipListMap<Long, Bucket> buckets = new ConcurrentSkipListMap<>();
+
+    /**
+     * Schedules the session for the time it expires at unless it is accessed again, or for the next run of the
+     * background expiration if it has already been invalidated. Sessions that never time out are not scheduled.
+     */
+    void schedule(StandardSession session) {
+        long bucket;
+        if (!session.getIsValid()) {
+            bucket = System.currentTimeMillis() / BUCKET_MILLIS;
+        } else if (session.getMaxInactiveInterval() >= 0) {
+            long dueTime = session.thisAccessedTime + session.getMaxInactiveInterval() * 1000L;
+            // Round up so that a session is never checked before it has expired
+            bucket = (dueTime + BUCKET_MILLIS - 1) / BUCKET_MILLIS;
+        } else {
+            remove(session);
+            return;
+        }
+        long previous = session.expiryBucket;
+        if (previous == bucket) {
+            return;
+        }
+        session.expiryBucket = bucket;
+        removeFrom(previous, session);
+        Bucket target;
+        do {
+            // A bucket taken by a concurrent poll is closed, a new one is polled with the next run
+            target = buckets.computeIfAbsent(bucket, key -> new Bucket());
+        } while (!target.add(session));
+    }
+
+    /**
+     * Removes the session from the index.
+     */
+    void remove(StandardSession session) {
+        long previous = session.expiryBucket;
+        session.expiryBucket = NOT_SCHEDULED;
+        removeFrom(previous, session);
+    }
+
+    /**
+     * Takes the sessions that are due at the given time out of the index. The caller expires them or schedules them
+     * again if they have been accessed since they were scheduled.
+     */
+    List<StandardSession> pollDue(long timeMillis) {
+        long dueBucket = timeMillis / BUCKET_MILLIS;
+        List<StandardSession> due = new ArrayList<>();
+        Map.Entry<Long, Bucket> entry;
+        while ((entry = buckets.firstEntry()) != null && entry.getKey() <= dueBucket) {
+            if (!buckets.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            for (StandardSession session : entry.getValue().close()) {
+                if (session.expiryBucket == entry.getKey()) {
+                    session.expiryBucket = NOT_SCHEDULED;
+                    due.add(session);
+                }
+            }
+        }
+        return due;
+    }
+
+    void clear() {
+        buckets.clear();
+    }
+
+    private void removeFrom(long bucket, StandardSession session) {
+        if (bucket != NOT_SCHEDULED) {
+            Bucket current = buckets.get(bucket);
+            if (current != null) {
+                current.remove(session);
+            }
+        }
+    }
+
+    /**
+     * Sessions due in the same interval. A polled bucket is closed so that no session gets lost in it.
+     */
+    private static final class Bucket {
+
+        private final Set<StandardSession> sessions = new HashSet<>();
+        private boolean closed;
+
+        synchronized boolean add(StandardSession session) {
+            if (closed) {
+                return false;
+            }
+            sessions.add(session);
+            return true;
+        }
+
+        synchronized void remove(StandardSession session) {
+            if (!closed) {
+                sessions.remove(session);
+            }
+        }
+
+        synchronized Set<StandardSession> close() {
+            closed = true;
+            return sessions;
+        }
+    }
+}
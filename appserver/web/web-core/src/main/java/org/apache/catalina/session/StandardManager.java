@@ -56,7 +56,7 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-// Portions Copyright [2016-2017] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2016-2020] [Payara Foundation and/or its affiliates]
 
 package org.apache.catalina.session;
 
@@ -463,6 +463,7 @@ public class StandardManager
 
         // Initialize our internal data structures
         sessions.clear();
+        expiryIndex.clear();
 
         ObjectInputStream ois = null;
         try {
@@ -495,6 +496,7 @@ public class StandardManager
                         StandardSession.deserialize(ois, this);
                     session.setManager(this);
                     sessions.put(session.getIdInternal(), session);
+                    scheduleExpiry(session);
                     session.activate();
                 }
             } catch (ClassNotFoundException e) {
@@ -979,18 +981,17 @@ public class StandardManager
 
         long timeNow = System.currentTimeMillis();
 
-        Session[] sessions = findSessions();
-        if (sessions != null) {
-            for (Session session : sessions) {
-                StandardSession sess = (StandardSession) session;
-                if (sess.lockBackground()) {
-                    try {
-                        sess.isValid();
-                    } finally {
-                        sess.unlockBackground();
-                    }
+        // Only the sessions due according to the expiry index are checked
+        for (StandardSession sess : pollSessionsDueForExpiry(timeNow)) {
+            if (sess.lockBackground()) {
+                try {
+                    sess.isValid();
+                } finally {
+                    sess.unlockBackground();
                 }
             }
+            // Accessed in the meantime or in use by a request
+            scheduleExpiry(sess);
         }
 
         long timeEnd = System.currentTimeMillis();
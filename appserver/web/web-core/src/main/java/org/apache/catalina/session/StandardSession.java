@@ -56,7 +56,7 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-// Portions Copyright [2016-2019] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2016-2020] [Payara Foundation and/or its affiliates]
 
 package org.apache.catalina.session;
 
@@ -322,6 +322,12 @@ public class StandardSession
      */
     protected long thisAccessedTime = creationTime;
 
+    /**
+     * The bucket of the expiry index of the manager this session is
+     * scheduled in.
+     */
+    transient volatile long expiryBucket = SessionExpiryIndex.NOT_SCHEDULED;
+
     /**
      * The session version, incremented and used by in-memory-replicating
      * session managers
@@ -636,6 +642,8 @@ public class StandardSession
         this.maxInactiveInterval = interval;
         if (isValid && interval == 0) {
             expire();
+        } else {
+            scheduleExpiry();
         }
 
     }
@@ -759,6 +767,19 @@ public class StandardSession
             ((PersistentManagerBase) getManager()).addToInvalidatedSessions(this.id);
         }
         //SJSAS 6406580 END
+        if (!isValid) {
+            scheduleExpiry();
+        }
+    }
+
+    /**
+     * Schedule the expiration of this session with its manager again after
+     * its expiration time or its validity has changed.
+     */
+    private void scheduleExpiry() {
+        if (id != null && manager instanceof ManagerBase) {
+            ((ManagerBase) manager).scheduleExpiry(this);
+        }
     }
 
 
@@ -0,0 +1,321 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.apache.catalina.servlets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.catalina.Globals;
+import org.apache.naming.resources.CacheEntry;
+import org.apache.naming.resources.FileDirContext;
+import org.apache.naming.resources.ProxyDirContext;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DefaultServletCompressionTest {
+
+    private File root;
+    private File docBase;
+    private File workDir;
+    private ProxyDirContext resources;
+    private Map<String, String> initParameters;
+    private Map<String, String> responseHeaders;
+    private DefaultServlet servlet;
+
+    @Before
+    public void createResources() throws Exception {
+        root = Files.createTempDirectory("default-servlet").toFile();
+        docBase = new File(root, "docroot");
+        workDir = new File(root, "work");
+        assertTrue(docBase.mkdirs() && workDir.mkdirs());
+        FileDirContext dirContext = new FileDirContext();
+        dirContext.setDocBase(docBase.getPath());
+        resources = new ProxyDirContext(new Hashtable<String, String>(), dirContext);
+        initParameters = new HashMap<>();
+        responseHeaders = new HashMap<>();
+    }
+
+    @After
+    public void deleteResources() throws IOException {
+        if (servlet != null) {
+            servlet.destroy();
+        }
+        delete(root);
+    }
+
+    @Test
+    public void precompressedBrotliIsPreferredOverGzip() throws Exception {
+        initParameters.put("precompressed", "true");
+        write("app.js", "var app;");
+        write("app.js.gz", "gzip");
+        write("app.js.br", "brotli");
+        init();
+
+        CacheEntry variant = findVariant("/app.js", "gzip, deflate, br");
+        assertEquals("/app.js.br", variant.name);
+        assertEquals("br", responseHeaders.get("Content-Encoding"));
+    }
+
+    @Test
+    public void precompressedEncodingRefusedByTheClientIsSkipped() throws Exception {
+        initParameters.put("precompressed", "true");
+        write("app.js", "var app;");
+        write("app.js.gz", "gzip");
+        write("app.js.br", "brotli");
+        init();
+
+        CacheEntry variant = findVariant("/app.js", "gzip;q=0.5, br;q=0");
+        assertEquals("/app.js.gz", variant.name);
+        assertEquals("gzip", responseHeaders.get("Content-Encoding"));
+    }
+
+    @Test
+    public void noVariantIsServedWithoutAcceptedEncoding() throws Exception {
+        initParameters.put("precompressed", "true");
+        initParameters.put("compressOnTheFly", "true");
+        write("app.js", largeText("var app;"));
+        write("app.js.gz", "gzip");
+        init();
+
+        assertNull(findVariant("/app.js", null));
+        assertNull(findVariant("/app.js", "identity"));
+        assertNull(responseHeaders.get("Content-Encoding"));
+    }
+
+    @Test
+    public void missingPrecompressedSiblingIsNotServed() throws Exception {
+        initParameters.put("precompressed", "true");
+        write("app.js", "var app;");
+        init();
+
+        assertNull(findVariant("/app.js", "gzip, br"));
+    }
+
+    @Test
+    public void compressedOnTheFlyOnceAndCached() throws Exception {
+        initParameters.put("compressOnTheFly", "true");
+        String content = largeText("body { color: red; }");
+        write("style.css", content);
+        init();
+
+        CacheEntry variant = findVariant("/style.css", "gzip");
+        assertNotNull(variant);
+        assertEquals("gzip", responseHeaders.get("Content-Encoding"));
+        assertEquals("text/css", variant.attributes.getMimeType());
+        assertTrue(variant.attributes.getContentLength() < content.length());
+        assertEquals(content, gunzip(variant));
+        assertSame("The variant is served from the cache", variant, findVariant("/style.css", "gzip"));
+        assertEquals(1, compressedFiles().length);
+    }
+
+    @Test
+    public void smallOrUncompressableResourcesAreNotCompressedOnTheFly() throws Exception {
+        initParameters.put("compressOnTheFly", "true");
+        write("small.css", "body { }");
+        write("image.png", largeText("png"));
+        init();
+
+        assertNull(findVariant("/small.css", "gzip"));
+        assertNull(findVariant("/image.png", "gzip"));
+        assertEquals(0, compressedFiles().length);
+    }
+
+    @Test
+    public void variantIsReplacedWhenTheResourceChanges() throws Exception {
+        initParameters.put("compressOnTheFly", "true");
+        write("style.css", largeText("body { color: red; }"));
+        init();
+        CacheEntry first = findVariant("/style.css", "gzip");
+        assertNotNull(first);
+
+        String changed = largeText("body { color: blue; }");
+        File file = write("style.css", changed);
+        assertTrue(file.setLastModified(file.lastModified() + 10_000));
+        resources.getCache().remove("/style.css");
+
+        CacheEntry second = findVariant("/style.css", "gzip");
+        assertNotEquals(first.name, second.name);
+        assertEquals(changed, gunzip(second));
+        File[] files = compressedFiles();
+        assertEquals("The variant of the old ETag is removed", 1, files.length);
+        assertEquals(second.name.substring(1), files[0].getName());
+    }
+
+    @Test
+    public void compressedVariantsShareABoundedCache() throws Exception {
+        initParameters.put("compressOnTheFly", "true");
+        initParameters.put("compressedCacheMaxSize", "64");
+        init();
+
+        assertEquals(64, servlet.compressedResources.getCache().getCacheMaxSize());
+    }
+
+    private void init() throws Exception {
+        servlet = new DefaultServlet();
+        servlet.init(proxy(ServletConfig.class, (method, args) -> {
+            switch (method) {
+                case "getInitParameter":
+                    return initParameters.get((String) args[0]);
+                case "getInitParameterNames":
+                    return Collections.enumeration(initParameters.keySet());
+                case "getServletName":
+                    return "default";
+                case "getServletContext":
+                    return servletContext();
+                default:
+                    return null;
+            }
+        }));
+    }
+
+    private ServletContext servletContext() {
+        return proxy(ServletContext.class, (method, args) -> {
+            switch (method) {
+                case "getAttribute":
+                    if (Globals.RESOURCES_ATTR.equals(args[0])) {
+                        return resources;
+                    }
+                    return ServletContext.TEMPDIR.equals(args[0]) ? workDir : null;
+                case "getMimeType":
+                    String name = (String) args[0];
+                    if (name.endsWith(".css")) {
+                        return "text/css";
+                    }
+                    return name.endsWith(".js") ? "application/javascript" : "image/png";
+                default:
+                    return null;
+            }
+        });
+    }
+
+    private CacheEntry findVariant(String path, String acceptEncoding) {
+        responseHeaders.clear();
+        HttpServletRequest request = proxy(HttpServletRequest.class, (method, args) -> {
+            if ("getHeaders".equals(method) && "Accept-Encoding".equals(args[0])) {
+                return acceptEncoding == null ? Collections.emptyEnumeration()
+                        : Collections.enumeration(Collections.singleton(acceptEncoding));
+            }
+            return null;
+        });
+        HttpServletResponse response = proxy(HttpServletResponse.class, (method, args) -> {
+            if ("setHeader".equals(method)) {
+                responseHeaders.put((String) args[0], (String) args[1]);
+            }
+            return null;
+        });
+        CacheEntry cacheEntry = resources.lookupCache(path);
+        assertTrue(cacheEntry.exists);
+        return servlet.findCompressedVariant(request, response, resources, cacheEntry, path,
+                servletContext().getMimeType(path));
+    }
+
+    private File write(String name, String content) throws IOException {
+        File file = new File(docBase, name);
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private File[] compressedFiles() {
+        File[] files = new File(workDir, "compressed-default").listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    private static String largeText(String line) {
+        StringBuilder text = new StringBuilder();
+        while (text.length() < 4096) {
+            text.append(line).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String gunzip(CacheEntry variant) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(variant.resource.streamContent())) {
+            byte[] buffer = new byte[1024];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+
+    private interface Answer {
+        Object answer(String method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Answer answer) {
+        return type.cast(Proxy.newProxyInstance(DefaultServletCompressionTest.class.getClassLoader(),
+                new Class<?>[] { type }, (proxy, method, args) -> {
+                    Object result = answer.answer(method.getName(), args);
+                    if (result == null && method.getReturnType() == boolean.class) {
+                        return false;
+                    }
+                    return result;
+                }));
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.apache.catalina.session;
+
+import java.lang.ref.WeakReference;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentSessionIdGeneratorTest {
+
+    @Test
+    public void identifiersAreHexEncodedRandomBytes() {
+        ConcurrentSessionIdGenerator generator = new ConcurrentSessionIdGenerator(SecureRandom::new, () -> 20);
+        String id = generator.generateUuid();
+        assertEquals(40, id.length());
+        assertTrue(id.matches("[0-9A-F]+"));
+        assertEquals(32, new ConcurrentSessionIdGenerator().generateUuid(new Object()).length());
+    }
+
+    @Test
+    public void identifiersAreUniqueAcrossThreads() throws Exception {
+        ConcurrentSessionIdGenerator generator = new ConcurrentSessionIdGenerator();
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        ids.add(generator.generateUuid());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(40_000, ids.size());
+    }
+
+    @Test
+    public void randomIsReplacedAfterTheReseedInterval() {
+        AtomicInteger created = new AtomicInteger();
+        ConcurrentSessionIdGenerator generator = new ConcurrentSessionIdGenerator(() -> {
+            created.incrementAndGet();
+            return new SecureRandom();
+        }, () -> 4);
+        for (int i = 0; i < ConcurrentSessionIdGenerator.RESEED_INTERVAL; i++) {
+            generator.generateUuid();
+        }
+        assertEquals(1, created.get());
+        generator.generateUuid();
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    public void managerRandomIsNotDeterminedByTimeAndEntropy() {
+        StandardManager first = new StandardManager();
+        StandardManager second = new StandardManager();
+        for (StandardManager manager : Arrays.asList(first, second)) {
+            manager.setRandomClass(Sha1PrngRandom.class.getName());
+            manager.setEntropy("predictable");
+        }
+        // Both generators get the same time and entropy, which would make SHA1PRNG output identical if they were
+        // used as its initial seed
+        SecureRandom[] randoms = { first.createRandom(), second.createRandom(), first.createRandom() };
+        assertTrue(randoms[0] instanceof Sha1PrngRandom);
+        byte[][] output = new byte[randoms.length][32];
+        for (int i = 0; i < randoms.length; i++) {
+            randoms[i].nextBytes(output[i]);
+        }
+        assertFalse(Arrays.equals(output[0], output[1]));
+        assertFalse(Arrays.equals(output[0], output[2]));
+    }
+
+    @Test
+    public void managerGeneratorsProduceDistinctIdentifiers() throws Exception {
+        StandardManager manager = new StandardManager();
+        manager.setRandomClass(Sha1PrngRandom.class.getName());
+        manager.setEntropy("predictable");
+        ConcurrentSessionIdGenerator generator =
+                new ConcurrentSessionIdGenerator(manager::createRandom, manager::getSessionIdLength);
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        ids.add(generator.generateUuid());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(800, ids.size());
+    }
+
+    @Test
+    public void resetDiscardsTheThreadRandom() {
+        AtomicInteger created = new AtomicInteger();
+        ConcurrentSessionIdGenerator generator = new ConcurrentSessionIdGenerator(() -> {
+            created.incrementAndGet();
+            return new SecureRandom();
+        }, () -> 4);
+        generator.generateUuid();
+        generator.generateUuid();
+        assertEquals(1, created.get());
+        generator.reset();
+        generator.generateUuid();
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    public void stoppingTheManagerResetsTheGenerator() {
+        AtomicInteger created = new AtomicInteger();
+        StandardManager manager = new StandardManager();
+        manager.setUuidGenerator(new ConcurrentSessionIdGenerator(() -> {
+            created.incrementAndGet();
+            return new SecureRandom();
+        }, manager::getSessionIdLength));
+        manager.generateSessionId();
+        manager.resetRandom();
+        manager.generateSessionId();
+        assertEquals(2, created.get());
+    }
+
+    @Test
+    public void threadEntriesDoNotKeepTheGeneratorReachable() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            WeakReference<ConcurrentSessionIdGenerator> generator = generateOnThread(executor);
+            for (int i = 0; i < 50 && generator.get() != null; i++) {
+                System.gc();
+                Thread.sleep(10);
+            }
+            // the executor thread is still alive and holds its ThreadLocal entry
+            assertNull(generator.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static WeakReference<ConcurrentSessionIdGenerator> generateOnThread(ExecutorService executor)
+            throws Exception {
+        ConcurrentSessionIdGenerator generator = new ConcurrentSessionIdGenerator(SecureRandom::new, () -> 16);
+        executor.submit(() -> generator.generateUuid()).get();
+        return new WeakReference<>(generator);
+    }
+
+    /**
+     * A SHA1PRNG that can be configured as the random class of a manager.
+     */
+    public static class Sha1PrngRandom extends SecureRandom {
+
+        private static final long serialVersionUID = 1L;
+
+        private final SecureRandom delegate;
+
+        public Sha1PrngRandom() throws NoSuchAlgorithmException {
+            delegate = SecureRandom.getInstance("SHA1PRNG");
+        }
+
+        @Override
+        public void setSeed(long seed) {
+            // also called by the super constructor
+            if (delegate != null) {
+                delegate.setSeed(seed);
+            }
+        }
+
+        @Override
+        public void setSeed(byte[] seed) {
+            delegate.setSeed(seed);
+        }
+
+        @Override
+        public void nextBytes(byte[] bytes) {
+            delegate.nextBytes(bytes);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.apache.catalina.session;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.*;
+
+public class SessionExpiryIndexTest {
+
+    private static final long START_MILLIS = 1577872800000L;
+
+    private StandardManager manager;
+    private SessionExpiryIndex index;
+
+    @Before
+    public void createIndex() {
+        manager = new StandardManager();
+        index = new SessionExpiryIndex();
+    }
+
+    @Test
+    public void sessionsAreDueWhenTheyExpire() {
+        StandardSession session = newSession("a", START_MILLIS, 60);
+        index.schedule(session);
+        assertTrue(index.pollDue(START_MILLIS + 59_999).isEmpty());
+        assertEquals(singletonList(session), index.pollDue(START_MILLIS + 60_000));
+        assertTrue("A polled session is no longer scheduled", index.pollDue(START_MILLIS + 120_000).isEmpty());
+    }
+
+    @Test
+    public void rescheduledSessionsAreOnlyDueOnce() {
+        StandardSession session = newSession("a", START_MILLIS, 60);
+        index.schedule(session);
+        session.thisAccessedTime = START_MILLIS + 30_000;
+        index.schedule(session);
+        assertTrue(index.pollDue(START_MILLIS + 60_000).isEmpty());
+        assertEquals(singletonList(session), index.pollDue(START_MILLIS + 90_000));
+    }
+
+    @Test
+    public void removedAndEternalSessionsAreNotDue() {
+        StandardSession removed = newSession("a", START_MILLIS, 60);
+        StandardSession eternal = newSession("b", START_MILLIS, -1);
+        index.schedule(removed);
+        index.schedule(eternal);
+        index.remove(removed);
+        assertTrue(index.pollDue(START_MILLIS + 3_600_000).isEmpty());
+    }
+
+    @Test
+    public void managerOnlyReturnsItsActiveSessions() {
+        StandardSession active = newSession("a", START_MILLIS, 60);
+        StandardSession removed = newSession("b", START_MILLIS, 60);
+        manager.add(active);
+        manager.add(removed);
+        manager.sessions.remove(removed.getIdInternal());
+        List<StandardSession> due = manager.pollSessionsDueForExpiry(START_MILLIS + 60_000);
+        assertEquals(singletonList(active), due);
+    }
+
+    private StandardSession newSession(String id, long accessedTime, int maxInactiveInterval) {
+        StandardSession session = new StandardSession(manager);
+        session.id = id;
+        session.isValid = true;
+        session.thisAccessedTime = accessedTime;
+        session.maxInactiveInterval = maxInactiveInterval;
+        return session;
+    }
+}
@@ -37,7 +37,7 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-// Portions Copyright [2016-2018] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2016-2020] [Payara Foundation and/or its affiliates]
 
 package com.sun.enterprise.web;
 
@@ -92,6 +92,10 @@ public abstract class BasePersistenceStrategyBuilder
     protected int sessionMaxInactiveInterval = DEFAULT_SESSION_TIMEOUT;
     protected String persistentCookieName = "GLASSFISHCOOKIE";
     protected boolean relaxCacheVersionSemantics = true;
+    protected boolean attributeDeltaReplication = false;
+    protected static final int DEFAULT_ATTRIBUTE_COMPRESSION_THRESHOLD = 2048;   // bytes
+    protected int attributeCompressionThreshold = DEFAULT_ATTRIBUTE_COMPRESSION_THRESHOLD;
+    protected String attributeSerializers = null;
 
     // Special constant for Java Server Faces
     protected static final String JSF_HA_ENABLED = "com.sun.appserver.enableHighAvailability";
@@ -336,6 +340,16 @@ public abstract class BasePersistenceStrategyBuilder
                         }
                     } else if (name.equalsIgnoreCase("relaxCacheVersionSemantics")) {
                         relaxCacheVersionSemantics = Boolean.parseBoolean(value);
+                    } else if (name.equalsIgnoreCase("attributeDeltaReplication")) {
+                        attributeDeltaReplication = Boolean.parseBoolean(value);
+                    } else if (name.equalsIgnoreCase("attributeCompressionThreshold")) {
+                        try {
+                            attributeCompressionThreshold = Integer.parseInt(value);
+                        } catch (NumberFormatException e) {
+                            // XXX need error message
+                        }
+                    } else if (name.equalsIgnoreCase("attributeSerializers")) {
+                        attributeSerializers = value;
                     } else if (name.equalsIgnoreCase("sessionFilename")) {
                         sessionFilename = value;                        
                     } else if (name.equalsIgnoreCase("persistenceFrequency")) {
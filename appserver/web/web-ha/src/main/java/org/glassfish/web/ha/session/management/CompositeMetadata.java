@@ -37,6 +37,7 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
+// Portions Copyright [2020] [Payara Foundation and/or its affiliates]
 
 package org.glassfish.web.ha.session.management;
 
@@ -71,6 +72,8 @@ public final class CompositeMetadata implements Storeable {
 
     private Map<String, SessionAttributeMetadata> attributesMap = new HashMap<String, SessionAttributeMetadata>();
 
+    private boolean delta;
+
     private transient Collection<SessionAttributeMetadata> entries;
 
     private transient Set<String> _dirtyAttributeNames = new HashSet<String>();
@@ -126,6 +129,57 @@ public final class CompositeMetadata implements Storeable {
         setStringExtraParam(stringExtraParam);
     }
 
+    /**
+     * Construct a CompositeMetadata that only carries the changes made since the
+     * previous save and is merged into the stored value by
+     * {@link #applyDelta(CompositeMetadata)}. Unlike the entries of a full
+     * CompositeMetadata, its entries, including deletions, are kept when it is
+     * serialized.
+     *
+     * @param state the session state without attribute changes, or
+     *              <code>null</code> to keep the stored state
+     */
+    public static CompositeMetadata createDelta(long version, long lastAccessTime,
+                             long maxInactiveInterval, Collection<SessionAttributeMetadata> entries, byte[] state, String stringExtraParam) {
+        CompositeMetadata result = new CompositeMetadata(version, lastAccessTime,
+                maxInactiveInterval, entries, state, stringExtraParam);
+        result.delta = true;
+        for (SessionAttributeMetadata entry : entries) {
+            result.attributesMap.put(entry.getAttributeName(), entry);
+        }
+        return result;
+    }
+
+    /**
+     * @return <code>true</code> if this only carries the changes made since the
+     * previous save
+     */
+    public boolean isDelta() {
+        return delta;
+    }
+
+    /**
+     * Merge a delta into this stored value. A delta with a state replaces the
+     * state and all attribute entries, otherwise its entries are added on top
+     * of the current ones. Deleted attributes are kept as DELETE entries so
+     * that they can be removed from the state when the session is loaded.
+     *
+     * @param delta the changes created by {@link #createDelta}
+     */
+    public void applyDelta(CompositeMetadata delta) {
+        version = delta.version;
+        lastAccessTime = delta.lastAccessTime;
+        maxInactiveInterval = delta.maxInactiveInterval;
+        if (delta.state != null) {
+            state = delta.state;
+            attributesMap.clear();
+        }
+        if (delta.stringExtraParam != null) {
+            stringExtraParam = delta.stringExtraParam;
+        }
+        attributesMap.putAll(delta.attributesMap);
+    }
+
     public byte[] getState() {
         return this.state;
     }
@@ -349,6 +403,7 @@ public final class CompositeMetadata implements Storeable {
                 ", maxInactiveInterval=" + maxInactiveInterval +
                 ", lastAccessTime=" + lastAccessTime +
                 ", state=" + (state ==null ? 0 : state.length) +
+                ", delta=" + delta +
                 ", _dirtyAttributeNames=" + _dirtyAttributeNames +
                 '}';
     }
@@ -37,7 +37,7 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-// Portions Copyright [2016-2017] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2016-2020] [Payara Foundation and/or its affiliates]
 
 /*
  * ModifiedAttributeHASession.java
@@ -50,6 +50,7 @@ package org.glassfish.web.ha.session.management;
 import org.apache.catalina.Manager;
 import org.apache.catalina.util.Enumerator;
 
+import java.security.Principal;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
@@ -67,6 +68,7 @@ public class ModifiedAttributeHASession extends BaseHASession {
 
     private transient Map<String, SessionAttributeState> _attributeStates = new ConcurrentHashMap<>();
     private transient boolean _dirtyFlag = false;
+    private transient boolean _stateReplicated = false;
     
     
     /** Creates a new instance of ModifiedAttributeHASession */
@@ -306,6 +308,35 @@ public class ModifiedAttributeHASession extends BaseHASession {
         _dirtyFlag = isDirty;
     }
     
+    /**
+     * return true if the session state has been replicated since
+     * the principal or the max inactive interval last changed;
+     * only used with attribute delta replication
+     */
+    boolean isStateReplicated() {
+        return _stateReplicated;
+    }
+
+    /**
+     * set whether the session state has been replicated
+     * @param stateReplicated
+     */
+    void setStateReplicated(boolean stateReplicated) {
+        _stateReplicated = stateReplicated;
+    }
+
+    @Override
+    public void setPrincipal(Principal principal) {
+        super.setPrincipal(principal);
+        _stateReplicated = false;
+    }
+
+    @Override
+    public void setMaxInactiveInterval(int interval) {
+        super.setMaxInactiveInterval(interval);
+        _stateReplicated = false;
+    }
+
     /* Private Helper method to be used in HAAttributeStore only */ 
     Enumeration<String> privateGetAttributeList() {
 
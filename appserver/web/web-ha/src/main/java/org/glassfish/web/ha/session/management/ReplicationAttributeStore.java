@@ -37,7 +37,7 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-// Portions Copyright [2016-2017] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2016-2020] [Payara Foundation and/or its affiliates]
 
 package org.glassfish.web.ha.session.management;
 
@@ -60,13 +60,103 @@ import java.util.logging.Level;
  * @author Rajiv Mordani
  */
 public class ReplicationAttributeStore extends ReplicationStore {
-    
+
+    /**
+     * If true only attribute changes are replicated after the session state
+     * has been sent once, and attribute values are written with the
+     * attributeCodec; requires a backing store that merges deltas
+     */
+    private volatile boolean attributeDeltaReplication = false;
+
+    private final SessionAttributeCodec attributeCodec =
+            new SessionAttributeCodec(SessionAttributeCodec.DEFAULT_COMPRESSION_THRESHOLD);
+
+    /**
+     * Names of the attribute serializers to register on the attributeCodec,
+     * they are loaded with the web application's class loader on first use
+     */
+    private volatile String attributeSerializers;
+
+    private volatile boolean attributeSerializersRegistered = false;
+
+    private final SessionAttributeCodec.JavaSerialization javaSerialization =
+            new SessionAttributeCodec.JavaSerialization() {
+        @Override
+        public byte[] serialize(Object value) throws IOException {
+            return getByteArray(value);
+        }
+
+        @Override
+        public Object deserialize(byte[] data) throws IOException, ClassNotFoundException {
+            return getAttributeValue(data);
+        }
+    };
 
     /** Creates a new instance of ReplicationAttributeStore */
     public ReplicationAttributeStore(JavaEEIOUtils ioUtils) {
         super(ioUtils);
         setLogLevel();
     }
+
+    /**
+     * return true if attribute delta replication is enabled
+     */
+    public boolean isAttributeDeltaReplication() {
+        return attributeDeltaReplication;
+    }
+
+    /**
+     * set whether only attribute changes are replicated
+     * @param value
+     */
+    public void setAttributeDeltaReplication(boolean value) {
+        attributeDeltaReplication = value;
+    }
+
+    /**
+     * return the codec used for attribute values with attribute delta
+     * replication
+     */
+    public SessionAttributeCodec getAttributeCodec() {
+        return attributeCodec;
+    }
+
+    /**
+     * set the comma separated class names of the
+     * SessionAttributeCodec.AttributeSerializer implementations used for
+     * application classes
+     * @param classNames
+     */
+    public void setAttributeSerializers(String classNames) {
+        attributeSerializers = classNames;
+        attributeSerializersRegistered = false;
+    }
+
+    private void registerAttributeSerializers() {
+        if (attributeSerializersRegistered) {
+            return;
+        }
+        synchronized (attributeCodec) {
+            String classNames = attributeSerializers;
+            if (attributeSerializersRegistered || classNames == null) {
+                return;
+            }
+            ClassLoader classLoader = null;
+            Container container = manager == null ? null : manager.getContainer();
+            if (container != null && container.getLoader() != null) {
+                classLoader = container.getLoader().getClassLoader();
+            }
+            if (classLoader == null) {
+                classLoader = Thread.currentThread().getContextClassLoader();
+            }
+            try {
+                attributeCodec.registerSerializers(classNames, classLoader);
+            } catch (IllegalArgumentException e) {
+                _logger.log(Level.WARNING, "Attribute values are written with Java serialization: " + e.getMessage(), e);
+            }
+            attributeSerializersRegistered = true;
+        }
+    }
     
     // HAStorePoolElement methods begin
     
@@ -166,7 +256,7 @@ public class ReplicationAttributeStore extends ReplicationStore {
             replicator.save(session.getIdInternal(), //id
                     compositeMetadata, !((HASession) session).isPersistent());
             modAttrSession.resetAttributeState();
-            postSaveUpdate(modAttrSession);
+            postSaveUpdate(modAttrSession, compositeMetadata);
         } catch (BackingStoreException ex) {
             //FIXME
         }
@@ -211,7 +301,7 @@ public class ReplicationAttributeStore extends ReplicationStore {
             replicator.save(session.getIdInternal(), //id
                     compositeMetadata, !((HASession) session).isPersistent());
             modAttrSession.resetAttributeState();
-            postSaveUpdate(modAttrSession);
+            postSaveUpdate(modAttrSession, compositeMetadata);
         } catch (BackingStoreException ex) {
             //FIXME
         }
@@ -365,6 +455,11 @@ public class ReplicationAttributeStore extends ReplicationStore {
 */
         ((HASession)_session).setVersion(version);
         ((HASession)_session).setDirty(false);
+        if (metadata.isDelta()) {
+            //the state is only replicated again when the principal or
+            //max inactive interval change
+            ((StandardSession)_session).setLastAccessedTime(metadata._storeable_getLastAccessTime());
+        }
         
         //now load entries from deserialized entries collection
         ((ModifiedAttributeHASession)_session).clearAttributeStates();
@@ -381,10 +476,13 @@ public class ReplicationAttributeStore extends ReplicationStore {
 
     //metadata related
     
-    private void postSaveUpdate(ModifiedAttributeHASession modAttrSession) {
+    private void postSaveUpdate(ModifiedAttributeHASession modAttrSession, CompositeMetadata compositeMetadata) {
         if(_logger.isLoggable(Level.FINE)) {
             _logger.fine("ReplicationAttributeStore>>postSaveUpdate");                       
         }
+        if (compositeMetadata.isDelta() && compositeMetadata.getState() != null) {
+            modAttrSession.setStateReplicated(true);
+        }
         List<String> addedAttrs = modAttrSession.getAddedAttributes();
         List<String> modifiedAttrs = modAttrSession.getModifiedAttributes();
         List<String> deletedAttrs = modAttrSession.getDeletedAttributes();
@@ -406,6 +504,9 @@ public class ReplicationAttributeStore extends ReplicationStore {
     }
     
     private CompositeMetadata createCompositeMetadata(ModifiedAttributeHASession modAttrSession) throws IOException {
+        if (attributeDeltaReplication) {
+            return createDeltaMetadata(modAttrSession);
+        }
         
         byte[] trunkState = null;
         if (!modAttrSession.isNew()) {
@@ -443,6 +544,50 @@ public class ReplicationAttributeStore extends ReplicationStore {
                 entries, trunkState, null);
         return result;
     }
+
+    /**
+     * Create a CompositeMetadata holding only what changed since the previous
+     * save. The session state, which includes every attribute, is sent once and
+     * again after the principal or max inactive interval changes; otherwise only
+     * the added, modified and deleted attributes are sent.
+     */
+    private CompositeMetadata createDeltaMetadata(ModifiedAttributeHASession modAttrSession) throws IOException {
+        byte[] trunkState = null;
+        if (!modAttrSession.isNew() && !modAttrSession.isStateReplicated()) {
+            try {
+                trunkState = this.getByteArray(modAttrSession);
+            } catch(IOException ex) {
+                if(ex instanceof NotSerializableException) {
+                    throw ex;
+                }
+            }
+        }
+        if(_logger.isLoggable(Level.FINE)) {
+            _logger.fine("ReplicationAttributeStore>>createDeltaMetadata:trunkState=" + trunkState);
+        }
+
+        List<SessionAttributeMetadata> entries = new ArrayList<SessionAttributeMetadata>();
+        if (trunkState == null) {
+            List<String> addedAttrs = modAttrSession.getAddedAttributes();
+            List<String> modifiedAttrs = modAttrSession.getModifiedAttributes();
+            List<String> deletedAttrs = modAttrSession.getDeletedAttributes();
+            printAttrList("ADDED", addedAttrs);
+            printAttrList("MODIFIED", modifiedAttrs);
+            printAttrList("DELETED", deletedAttrs);
+
+            addToEntries(modAttrSession, entries,
+                    SessionAttributeMetadata.Operation.ADD, addedAttrs);
+            addToEntries(modAttrSession, entries,
+                    SessionAttributeMetadata.Operation.UPDATE, modifiedAttrs);
+            addToEntries(modAttrSession, entries,
+                    SessionAttributeMetadata.Operation.DELETE, deletedAttrs);
+        }
+
+        return CompositeMetadata.createDelta(modAttrSession.getVersion(),
+                modAttrSession.getLastAccessedTimeInternal(),
+                modAttrSession.getMaxInactiveInterval()*1000L,
+                entries, trunkState, null);
+    }
     
     private void printAttrList(String attrListType, List<String> attrList) {
         if (_logger.isLoggable(Level.FINE)) {
@@ -465,9 +610,11 @@ public class ReplicationAttributeStore extends ReplicationStore {
             nextAttrName = attrList.get(i);
             nextAttrValue = ((StandardSession) modAttrSession).getAttribute(nextAttrName);
             nextValue = null;
-            try {
-                nextValue = getByteArray(nextAttrValue);
-            } catch (IOException ex) {}
+            if (op != SessionAttributeMetadata.Operation.DELETE || !attributeDeltaReplication) {
+                try {
+                    nextValue = encodeAttributeValue(nextAttrValue);
+                } catch (IOException ex) {}
+            }
             SessionAttributeMetadata nextAttrMetadata
                 = new SessionAttributeMetadata(nextAttrName, op, nextValue);
             entries.add(nextAttrMetadata);
@@ -516,6 +663,39 @@ public class ReplicationAttributeStore extends ReplicationStore {
         return obs;
     }
     
+    /**
+    * Create the byte[] for an attribute value; uses the attributeCodec
+    * if attribute delta replication is enabled
+    *
+    * @param attributeValue
+    *   The attribute value we are encoding
+    *
+    */
+    protected byte[] encodeAttributeValue(Object attributeValue)
+      throws IOException {
+        if (!attributeDeltaReplication || attributeValue == null) {
+            return getByteArray(attributeValue);
+        }
+        registerAttributeSerializers();
+        return attributeCodec.encode(attributeValue, javaSerialization);
+    }
+
+    /**
+    * Given a byte[] created by encodeAttributeValue, return the
+    * attribute value
+    *
+    * @param state
+    *   The byte[] with the session attribute data
+    *
+    * @return
+    *   A newly created object for the given session attribute data
+    */
+    protected Object decodeAttributeValue(byte[] state)
+        throws IOException, ClassNotFoundException {
+        registerAttributeSerializers();
+        return attributeCodec.decode(state, javaSerialization);
+    }
+
     /**
     * Given a byte[] containing session data, return a session
     * object
@@ -754,10 +934,18 @@ public class ReplicationAttributeStore extends ReplicationStore {
             SessionAttributeMetadata nextAttrMetadata = (SessionAttributeMetadata)it.next();
             thisAttrName = nextAttrMetadata.getAttributeName();
             //thisAttrOp = nextAttrMetadata.getOperation();
+            if (nextAttrMetadata.getOperation() == SessionAttributeMetadata.Operation.DELETE) {
+                //only kept by delta replication, for attributes in the session state
+                ((StandardSession) modifiedAttributeSession).removeAttribute(thisAttrName, false, false);
+                continue;
+            }
             byte[] nextAttrState = nextAttrMetadata.getState();
+            if (nextAttrState == null) {
+                continue;
+            }
             thisAttrVal = null;
             try { 
-                thisAttrVal = getAttributeValue(nextAttrState);
+                thisAttrVal = decodeAttributeValue(nextAttrState);
             } catch (ClassNotFoundException ex1) {
                 //FIXME log?
             } catch (IOException ex2) {}
@@ -0,0 +1,380 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.web.ha.session.management;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary encoding for individual session attribute values, used when
+ * attribute delta replication is enabled.
+ * <p>
+ * Every encoded value starts with a single header byte holding a type tag in
+ * the low seven bits and a compression flag in the high bit. Common immutable
+ * JDK types are written directly; classes with a registered
+ * {@link AttributeSerializer} are written as their class name followed by the
+ * serializer's output; everything else falls back to Java serialization.
+ * Serializers are registered with the {@code attributeSerializers} property
+ * of the session manager, see {@link #registerSerializers(String, ClassLoader)}.
+ * Encodings of at least {@code compressionThreshold} bytes are deflated when
+ * that makes them smaller.
+ * <p>
+ * Plain Java serialization streams, as written when delta replication is
+ * disabled, are still recognised by {@link #decode}.
+ */
+public final class SessionAttributeCodec {
+
+    /**
+     * Default size in bytes from which encoded values are compressed.
+     */
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 2048;
+
+    private static final int COMPRESSED = 0x80;
+
+    private static final int STRING = 1;
+    private static final int INTEGER = 2;
+    private static final int LONG = 3;
+    private static final int BOOLEAN = 4;
+    private static final int DOUBLE = 5;
+    private static final int FLOAT = 6;
+    private static final int SHORT = 7;
+    private static final int BYTE = 8;
+    private static final int CHARACTER = 9;
+    private static final int BYTE_ARRAY = 10;
+    private static final int REGISTERED = 11;
+    private static final int SERIALIZED = 12;
+
+    private static final byte STREAM_MAGIC_0 = (byte) 0xAC;
+    private static final byte STREAM_MAGIC_1 = (byte) 0xED;
+
+    /**
+     * Java serialization used for values without a compact encoding. It is
+     * supplied by the store so that attribute classes are resolved against
+     * the web application's class loader.
+     */
+    public interface JavaSerialization {
+
+        byte[] serialize(Object value) throws IOException;
+
+        Object deserialize(byte[] data) throws IOException, ClassNotFoundException;
+    }
+
+    /**
+     * Compact serializer for a specific attribute class. The same serializer
+     * must be registered on every instance sharing the session store.
+     * Implementations need a public no argument constructor.
+     *
+     * @param <T> the attribute class
+     */
+    public interface AttributeSerializer<T> {
+
+        /**
+         * @return the attribute class written by this serializer, subclasses
+         * are not matched
+         */
+        Class<T> getType();
+
+        void write(T value, DataOutput out) throws IOException;
+
+        T read(DataInput in) throws IOException;
+    }
+
+    private volatile int compressionThreshold;
+
+    private final Map<Class<?>, AttributeSerializer<?>> serializersByClass = new ConcurrentHashMap<>();
+
+    private final Map<String, AttributeSerializer<?>> serializersByName = new ConcurrentHashMap<>();
+
+    /**
+     * @param compressionThreshold size in bytes from which encoded values are
+     * compressed, zero or less to never compress
+     */
+    public SessionAttributeCodec(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * @param compressionThreshold size in bytes from which encoded values are
+     * compressed, zero or less to never compress
+     */
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    /**
+     * Registers a compact serializer for attributes of exactly its
+     * {@link AttributeSerializer#getType() type}. Subclasses are not matched.
+     */
+    public void registerSerializer(AttributeSerializer<?> serializer) {
+        Class<?> type = serializer.getType();
+        serializersByClass.put(type, serializer);
+        serializersByName.put(type.getName(), serializer);
+    }
+
+    /**
+     * Creates and registers the serializers named by the given list.
+     *
+     * @param classNames comma or whitespace separated names of
+     * {@link AttributeSerializer} implementations
+     * @param classLoader the class loader the implementations are loaded with
+     * @throws IllegalArgumentException if a name does not denote an
+     * {@link AttributeSerializer} that can be created
+     */
+    public void registerSerializers(String classNames, ClassLoader classLoader) {
+        for (String className : classNames.trim().split("[,\\s]+")) {
+            if (className.isEmpty()) {
+                continue;
+            }
+            try {
+                Class<?> serializerClass = Class.forName(className, true, classLoader);
+                if (!AttributeSerializer.class.isAssignableFrom(serializerClass)) {
+                    throw new IllegalArgumentException(className + " is not a "
+                            + AttributeSerializer.class.getName());
+                }
+                registerSerializer((AttributeSerializer<?>) serializerClass.getConstructor().newInstance());
+            } catch (ReflectiveOperationException | LinkageError e) {
+                throw new IllegalArgumentException("Cannot create attribute serializer " + className, e);
+            }
+        }
+    }
+
+    /**
+     * Encodes a non null attribute value.
+     */
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Object value, JavaSerialization javaSerialization) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeByte(0);
+        Class<?> type = value.getClass();
+        AttributeSerializer<Object> serializer = (AttributeSerializer<Object>) serializersByClass.get(type);
+        int tag;
+        if (serializer != null) {
+            tag = REGISTERED;
+            out.writeUTF(type.getName());
+            serializer.write(value, out);
+        } else if (type == String.class) {
+            tag = STRING;
+            writeBytes(out, ((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (type == Integer.class) {
+            tag = INTEGER;
+            out.writeInt((Integer) value);
+        } else if (type == Long.class) {
+            tag = LONG;
+            out.writeLong((Long) value);
+        } else if (type == Boolean.class) {
+            tag = BOOLEAN;
+            out.writeBoolean((Boolean) value);
+        } else if (type == Double.class) {
+            tag = DOUBLE;
+            out.writeDouble((Double) value);
+        } else if (type == Float.class) {
+            tag = FLOAT;
+            out.writeFloat((Float) value);
+        } else if (type == Short.class) {
+            tag = SHORT;
+            out.writeShort((Short) value);
+        } else if (type == Byte.class) {
+            tag = BYTE;
+            out.writeByte((Byte) value);
+        } else if (type == Character.class) {
+            tag = CHARACTER;
+            out.writeChar((Character) value);
+        } else if (type == byte[].class) {
+            tag = BYTE_ARRAY;
+            writeBytes(out, (byte[]) value);
+        } else {
+            tag = SERIALIZED;
+            out.write(javaSerialization.serialize(value));
+        }
+        out.flush();
+        byte[] encoded = bos.toByteArray();
+        encoded[0] = (byte) tag;
+        int threshold = compressionThreshold;
+        if (threshold > 0 && encoded.length >= threshold) {
+            byte[] compressed = compress(encoded);
+            if (compressed != null) {
+                return compressed;
+            }
+        }
+        return encoded;
+    }
+
+    /**
+     * Decodes a value written by {@link #encode}, or a plain Java
+     * serialization stream.
+     */
+    public Object decode(byte[] data, JavaSerialization javaSerialization)
+            throws IOException, ClassNotFoundException {
+        if (data.length >= 2 && data[0] == STREAM_MAGIC_0 && data[1] == STREAM_MAGIC_1) {
+            return javaSerialization.deserialize(data);
+        }
+        if (data.length == 0) {
+            throw new IOException("Empty attribute state");
+        }
+        int header = data[0] & 0xFF;
+        byte[] body = (header & COMPRESSED) != 0 ? decompress(data) : data;
+        int tag = header & ~COMPRESSED;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body, 1, body.length - 1));
+        switch (tag) {
+            case STRING:
+                return new String(readBytes(in), StandardCharsets.UTF_8);
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case BOOLEAN:
+                return in.readBoolean();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case SHORT:
+                return in.readShort();
+            case BYTE:
+                return in.readByte();
+            case CHARACTER:
+                return in.readChar();
+            case BYTE_ARRAY:
+                return readBytes(in);
+            case REGISTERED: {
+                String className = in.readUTF();
+                AttributeSerializer<?> serializer = serializersByName.get(className);
+                if (serializer == null) {
+                    throw new IOException("No attribute serializer registered for " + className);
+                }
+                return serializer.read(in);
+            }
+            case SERIALIZED:
+                return javaSerialization.deserialize(Arrays.copyOfRange(body, 1, body.length));
+            default:
+                throw new IOException("Unknown attribute encoding " + tag);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Returns the header byte with the compression flag set, the uncompressed
+     * length and the deflated encoding, or {@code null} if deflating does not
+     * save any space.
+     */
+    private static byte[] compress(byte[] encoded) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(encoded, 1, encoded.length - 1);
+            deflater.finish();
+            byte[] buffer = new byte[encoded.length];
+            int length = 5;
+            while (!deflater.finished() && length < buffer.length) {
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            if (!deflater.finished()) {
+                return null;
+            }
+            buffer[0] = (byte) (encoded[0] | COMPRESSED);
+            int size = encoded.length;
+            buffer[1] = (byte) (size >>> 24);
+            buffer[2] = (byte) (size >>> 16);
+            buffer[3] = (byte) (size >>> 8);
+            buffer[4] = (byte) size;
+            return Arrays.copyOf(buffer, length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Returns the uncompressed encoding, including its header byte.
+     */
+    private static byte[] decompress(byte[] data) throws IOException {
+        if (data.length < 5) {
+            throw new IOException("Truncated compressed attribute state");
+        }
+        int size = ((data[1] & 0xFF) << 24) | ((data[2] & 0xFF) << 16) | ((data[3] & 0xFF) << 8) | (data[4] & 0xFF);
+        byte[] body = new byte[size];
+        body[0] = data[0];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, 5, data.length - 5);
+            int length = 1;
+            while (length < size && !inflater.finished()) {
+                int read = inflater.inflate(body, length, size - length);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated compressed attribute state");
+                }
+                length += read;
+            }
+            if (length != size) {
+                throw new IOException("Compressed attribute state has the wrong length");
+            }
+            return body;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed attribute state", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -37,7 +37,7 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-// Portions Copyright [2018] Payara Foundation and/or affiliates
+// Portions Copyright [2018-2020] Payara Foundation and/or affiliates
 
 package org.glassfish.web.ha.strategy.builder;
 
@@ -96,9 +96,14 @@ public class ReplicatedWebMethodSessionStrategyBuilder extends BasePersistenceSt
                     new ReplicationStore(ioUtils),
                     ctx, serverConfigLookup);
         } else if (this.getPersistenceScope().equals("modified-attribute")) {
+            ReplicationAttributeStore attributeStore = new ReplicationAttributeStore(ioUtils);
+            attributeStore.setAttributeDeltaReplication(
+                    attributeDeltaReplication && isAttributeDeltaReplicationSupported());
+            attributeStore.getAttributeCodec().setCompressionThreshold(attributeCompressionThreshold);
+            attributeStore.setAttributeSerializers(attributeSerializers);
             setupReplicationWebEventPersistentManager(CompositeMetadata.class,
                     new ModifiedAttributeSessionFactory(),
-                    new ReplicationAttributeStore(ioUtils),
+                    attributeStore,
                     ctx, serverConfigLookup);
         } else {
             throw new IllegalArgumentException(this.getPersistenceScope());
@@ -110,6 +115,16 @@ public class ReplicatedWebMethodSessionStrategyBuilder extends BasePersistenceSt
 
     }
 
+    /**
+     * Attribute delta replication needs a backing store that merges
+     * a delta CompositeMetadata into the stored value instead of replacing it.
+     *
+     * @return true if the backing store of this persistence type merges deltas
+     */
+    protected boolean isAttributeDeltaReplicationSupported() {
+        return false;
+    }
+
     private <T extends Storeable> void setupReplicationWebEventPersistentManager(
             Class<T> metadataClass, SessionFactory sessionFactory, ReplicationStore store,
             Context ctx, ServerConfigLookup serverConfigLookup) {
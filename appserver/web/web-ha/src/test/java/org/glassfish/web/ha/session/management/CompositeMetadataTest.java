@@ -0,0 +1,151 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.web.ha.session.management;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.glassfish.web.ha.session.management.SessionAttributeMetadata.Operation;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompositeMetadataTest {
+
+    private static final byte[] STATE = { 1, 2, 3 };
+
+    @Test
+    public void deltaEntriesAreAddedToStoredEntries() {
+        CompositeMetadata stored = CompositeMetadata.createDelta(1, 100, 1800, Arrays.asList(
+                attribute("a", Operation.ADD, 1), attribute("b", Operation.ADD, 2)), STATE, "sso");
+        CompositeMetadata delta = CompositeMetadata.createDelta(2, 200, 3600, Arrays.asList(
+                attribute("b", Operation.UPDATE, 3), attribute("c", Operation.ADD, 4)), null, null);
+        stored.applyDelta(delta);
+
+        assertEquals(2, stored.getVersion());
+        assertEquals(200, stored._storeable_getLastAccessTime());
+        assertEquals(3600, stored._storeable_getMaxIdleTime());
+        assertArrayEquals(STATE, stored.getState());
+        assertEquals("sso", stored.getStringExtraParam());
+        Map<String, SessionAttributeMetadata> entries = entriesOf(stored);
+        assertEquals(3, entries.size());
+        assertArrayEquals(new byte[] { 1 }, entries.get("a").getState());
+        assertArrayEquals(new byte[] { 3 }, entries.get("b").getState());
+        assertEquals(Operation.UPDATE, entries.get("b").getOperation());
+        assertArrayEquals(new byte[] { 4 }, entries.get("c").getState());
+    }
+
+    @Test
+    public void deletionsAreKept() {
+        CompositeMetadata stored = CompositeMetadata.createDelta(1, 100, 1800,
+                Collections.singletonList(attribute("a", Operation.ADD, 1)), STATE, null);
+        stored.applyDelta(CompositeMetadata.createDelta(2, 200, 1800, Arrays.asList(
+                new SessionAttributeMetadata("a", Operation.DELETE, null),
+                new SessionAttributeMetadata("b", Operation.DELETE, null)), null, null));
+
+        Map<String, SessionAttributeMetadata> entries = entriesOf(stored);
+        assertEquals(2, entries.size());
+        assertEquals(Operation.DELETE, entries.get("a").getOperation());
+        assertEquals(Operation.DELETE, entries.get("b").getOperation());
+    }
+
+    @Test
+    public void deltaWithStateReplacesStateAndEntries() {
+        CompositeMetadata stored = CompositeMetadata.createDelta(1, 100, 1800,
+                Collections.singletonList(attribute("a", Operation.ADD, 1)), STATE, "sso");
+        byte[] newState = { 9 };
+        stored.applyDelta(CompositeMetadata.createDelta(2, 200, 1800,
+                Collections.singletonList(attribute("b", Operation.ADD, 2)), newState, "sso2"));
+
+        assertArrayEquals(newState, stored.getState());
+        assertEquals("sso2", stored.getStringExtraParam());
+        assertEquals(Collections.singleton("b"), entriesOf(stored).keySet());
+    }
+
+    @Test
+    public void deltaKeepsEntriesWhenSerialized() throws Exception {
+        CompositeMetadata delta = CompositeMetadata.createDelta(3, 300, 1800, Arrays.asList(
+                attribute("a", Operation.UPDATE, 1), new SessionAttributeMetadata("b", Operation.DELETE, null)),
+                null, null);
+        assertTrue(delta.isDelta());
+        assertFalse(new CompositeMetadata().isDelta());
+
+        CompositeMetadata copy = serializeAndDeserialize(delta);
+        assertTrue(copy.isDelta());
+        assertEquals(3, copy.getVersion());
+        Map<String, SessionAttributeMetadata> entries = entriesOf(copy);
+        assertEquals(2, entries.size());
+        assertEquals(Operation.DELETE, entries.get("b").getOperation());
+        assertArrayEquals(new byte[] { 1 }, entries.get("a").getState());
+    }
+
+    static SessionAttributeMetadata attribute(String name, Operation operation, int value) {
+        return new SessionAttributeMetadata(name, operation, new byte[] { (byte) value });
+    }
+
+    static Map<String, SessionAttributeMetadata> entriesOf(CompositeMetadata metadata) {
+        Map<String, SessionAttributeMetadata> entries = new HashMap<>();
+        for (SessionAttributeMetadata entry : metadata.getEntries()) {
+            entries.put(entry.getAttributeName(), entry);
+        }
+        return entries;
+    }
+
+    private static CompositeMetadata serializeAndDeserialize(CompositeMetadata metadata)
+            throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(metadata);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (CompositeMetadata) in.readObject();
+        }
+    }
+}
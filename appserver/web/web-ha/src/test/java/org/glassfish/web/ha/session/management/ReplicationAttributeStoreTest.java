@@ -0,0 +1,114 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.web.ha.session.management;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.session.StandardManager;
+import org.glassfish.web.ha.session.management.SessionAttributeMetadata.Operation;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests loading the attribute entries of a session stored with attribute delta replication.
+ */
+public class ReplicationAttributeStoreTest {
+
+    private ReplicationAttributeStore store;
+    private ModifiedAttributeHASession session;
+
+    @Before
+    public void setUp() {
+        StandardManager manager = new StandardManager();
+        manager.setContainer(new StandardContext());
+        store = new ReplicationAttributeStore(null);
+        store.setManager(manager);
+        store.setAttributeDeltaReplication(true);
+        session = new ModifiedAttributeHASession(manager);
+        session.setValid(true);
+        session.setAttribute("deleted", "a");
+        session.setAttribute("updated", "b");
+        session.setAttribute("kept", "c");
+    }
+
+    @Test
+    public void deletedAttributesAreRemovedOnLoad() throws Exception {
+        store.loadAttributes(session, Arrays.asList(
+                new SessionAttributeMetadata("deleted", Operation.DELETE, null),
+                new SessionAttributeMetadata("updated", Operation.UPDATE, store.encodeAttributeValue("B")),
+                new SessionAttributeMetadata("added", Operation.ADD, store.encodeAttributeValue(4))));
+
+        assertNull(session.getAttribute("deleted"));
+        assertEquals("B", session.getAttribute("updated"));
+        assertEquals("c", session.getAttribute("kept"));
+        assertEquals(4, session.getAttribute("added"));
+    }
+
+    @Test
+    public void deletionMergedIntoStoredValueIsApplied() throws Exception {
+        CompositeMetadata stored = CompositeMetadata.createDelta(1, 100, 1800, Collections.singletonList(
+                new SessionAttributeMetadata("deleted", Operation.ADD, store.encodeAttributeValue("a"))),
+                new byte[] { 1 }, null);
+        stored.applyDelta(CompositeMetadata.createDelta(2, 200, 1800, Collections.singletonList(
+                new SessionAttributeMetadata("deleted", Operation.DELETE, null)), null, null));
+
+        store.loadAttributes(session, stored.getEntries());
+
+        assertNull(session.getAttribute("deleted"));
+        assertEquals("b", session.getAttribute("updated"));
+    }
+
+    @Test
+    public void configuredSerializersAreUsed() throws Exception {
+        store.setAttributeSerializers(SessionAttributeCodecTest.PointSerializer.class.getName());
+        SessionAttributeCodecTest.Point point = new SessionAttributeCodecTest.Point(1, 2);
+        byte[] encoded = store.encodeAttributeValue(point);
+
+        SessionAttributeCodec codec = new SessionAttributeCodec(0);
+        codec.registerSerializer(new SessionAttributeCodecTest.PointSerializer());
+        assertEquals(point, codec.decode(encoded, null));
+        assertEquals(point, store.decodeAttributeValue(encoded));
+    }
+}
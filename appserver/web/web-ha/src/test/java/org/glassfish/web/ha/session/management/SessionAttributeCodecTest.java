@@ -0,0 +1,272 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.web.ha.session.management;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.glassfish.web.ha.session.management.SessionAttributeCodec.AttributeSerializer;
+import org.glassfish.web.ha.session.management.SessionAttributeCodec.JavaSerialization;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SessionAttributeCodecTest {
+
+    private static final JavaSerialization JAVA_SERIALIZATION = new JavaSerialization() {
+        @Override
+        public byte[] serialize(Object value) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(value);
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        public Object deserialize(byte[] data) throws IOException, ClassNotFoundException {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+                return in.readObject();
+            }
+        }
+    };
+
+    private final SessionAttributeCodec codec = new SessionAttributeCodec(SessionAttributeCodec.DEFAULT_COMPRESSION_THRESHOLD);
+
+    @Test
+    public void jdkTypesRoundTrip() throws Exception {
+        for (Object value : new Object[] { "value", "ä€", "", 42, -1L, true, 1.5d, 2.5f, (short) 7,
+                (byte) -3, 'c' }) {
+            assertEquals(value, roundTrip(value));
+        }
+        assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) roundTrip(new byte[] { 1, 2, 3 }));
+    }
+
+    @Test
+    public void jdkTypesAreWrittenCompactly() throws Exception {
+        assertEquals(5, codec.encode(42, JAVA_SERIALIZATION).length);
+        assertEquals(1 + 4 + 5, codec.encode("value", JAVA_SERIALIZATION).length);
+    }
+
+    @Test
+    public void otherTypesUseJavaSerialization() throws Exception {
+        Point point = new Point(1, 2);
+        assertEquals(point, roundTrip(point));
+    }
+
+    @Test
+    public void plainJavaSerializationStreamIsDecoded() throws Exception {
+        Point point = new Point(3, 4);
+        assertEquals(point, codec.decode(JAVA_SERIALIZATION.serialize(point), JAVA_SERIALIZATION));
+    }
+
+    @Test
+    public void registeredSerializerIsUsed() throws Exception {
+        codec.registerSerializer(new PointSerializer());
+        Point point = new Point(5, 6);
+        byte[] encoded = codec.encode(point, JAVA_SERIALIZATION);
+        assertTrue(encoded.length < JAVA_SERIALIZATION.serialize(point).length);
+        assertEquals(point, codec.decode(encoded, JAVA_SERIALIZATION));
+    }
+
+    @Test
+    public void serializersAreRegisteredByClassName() throws Exception {
+        codec.registerSerializers(" " + PointSerializer.class.getName() + " ,", getClass().getClassLoader());
+        SessionAttributeCodec other = new SessionAttributeCodec(0);
+        other.registerSerializers(PointSerializer.class.getName(), getClass().getClassLoader());
+        Point point = new Point(7, 8);
+        assertEquals(point, other.decode(codec.encode(point, JAVA_SERIALIZATION), JAVA_SERIALIZATION));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownSerializerClassIsRejected() {
+        codec.registerSerializers("com.example.Missing", getClass().getClassLoader());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void classThatIsNoSerializerIsRejected() {
+        codec.registerSerializers(Point.class.getName(), getClass().getClassLoader());
+    }
+
+    @Test
+    public void valueOfUnregisteredSerializerCannotBeDecoded() throws Exception {
+        codec.registerSerializer(new PointSerializer());
+        byte[] encoded = codec.encode(new Point(1, 1), JAVA_SERIALIZATION);
+        try {
+            new SessionAttributeCodec(0).decode(encoded, JAVA_SERIALIZATION);
+            fail("Decoded without serializer");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains(Point.class.getName()));
+        }
+    }
+
+    @Test
+    public void largeValuesAreCompressed() throws Exception {
+        String value = repeat('x', 10_000);
+        byte[] encoded = codec.encode(value, JAVA_SERIALIZATION);
+        assertTrue(isCompressed(encoded));
+        assertTrue(encoded.length < 1000);
+        assertEquals(value, codec.decode(encoded, JAVA_SERIALIZATION));
+    }
+
+    @Test
+    public void valuesBelowThresholdAreNotCompressed() throws Exception {
+        codec.setCompressionThreshold(100);
+        // the encoding of a 94 character string has 99 bytes, one byte more reaches the threshold
+        assertFalse(isCompressed(codec.encode(repeat('x', 94), JAVA_SERIALIZATION)));
+        byte[] encoded = codec.encode(repeat('x', 95), JAVA_SERIALIZATION);
+        assertTrue(isCompressed(encoded));
+        assertEquals(repeat('x', 95), codec.decode(encoded, JAVA_SERIALIZATION));
+    }
+
+    @Test
+    public void incompressibleValuesAreNotCompressed() throws Exception {
+        byte[] value = new byte[10_000];
+        new Random(1).nextBytes(value);
+        byte[] encoded = codec.encode(value, JAVA_SERIALIZATION);
+        assertFalse(isCompressed(encoded));
+        assertEquals(1 + 4 + value.length, encoded.length);
+        assertArrayEquals(value, (byte[]) codec.decode(encoded, JAVA_SERIALIZATION));
+    }
+
+    @Test
+    public void compressionCanBeDisabled() throws Exception {
+        codec.setCompressionThreshold(0);
+        assertFalse(isCompressed(codec.encode(repeat('x', 10_000), JAVA_SERIALIZATION)));
+    }
+
+    @Test
+    public void serializedValuesAreCompressed() throws Exception {
+        codec.setCompressionThreshold(1);
+        Point point = new Point(9, 9);
+        byte[] encoded = codec.encode(point, JAVA_SERIALIZATION);
+        assertTrue(isCompressed(encoded));
+        assertEquals(point, codec.decode(encoded, JAVA_SERIALIZATION));
+    }
+
+    @Test
+    public void corruptStatesAreRejected() throws Exception {
+        byte[] compressed = codec.encode(repeat('x', 10_000), JAVA_SERIALIZATION);
+        assertRejected(new byte[0]);
+        assertRejected(new byte[] { 127 });
+        assertRejected(Arrays.copyOf(compressed, 4));
+        assertRejected(Arrays.copyOf(compressed, compressed.length / 2));
+        byte[] wrongLength = compressed.clone();
+        wrongLength[4]++;
+        assertRejected(wrongLength);
+    }
+
+    private Object roundTrip(Object value) throws Exception {
+        return codec.decode(codec.encode(value, JAVA_SERIALIZATION), JAVA_SERIALIZATION);
+    }
+
+    private void assertRejected(byte[] state) throws ClassNotFoundException {
+        try {
+            codec.decode(state, JAVA_SERIALIZATION);
+            fail("Decoded corrupt state " + Arrays.toString(state));
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    private static boolean isCompressed(byte[] encoded) {
+        return (encoded[0] & 0x80) != 0;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    static final class Point implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final int x;
+        final int y;
+
+        Point(int x, int y) {
+            this.x = x;
+            this.y = y;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Point && ((Point) obj).x == x && ((Point) obj).y == y;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * x + y;
+        }
+    }
+
+    public static final class PointSerializer implements AttributeSerializer<Point> {
+
+        @Override
+        public Class<Point> getType() {
+            return Point.class;
+        }
+
+        @Override
+        public void write(Point value, DataOutput out) throws IOException {
+            out.writeInt(value.x);
+            out.writeInt(value.y);
+        }
+
+        @Override
+        public Point read(DataInput in) throws IOException {
+            return new Point(in.readInt(), in.readInt());
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.apache.naming.resources;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link ResourceCache} for many concurrent users and many resources.
+ * <p>
+ * Entries are indexed by name in a {@link ConcurrentHashMap} so lookups, loads and unloads do not copy or lock the
+ * cache. The cache is bounded by the size of the cached entries in KB ({@link #getCacheMaxSize()}). When space is
+ * needed entries are evicted in CLOCK order: entries are visited in the order they were loaded, an entry that was
+ * accessed since the last visit gets a second chance, others are evicted. Only evictions take a lock.
+ * <p>
+ * Entries are revalidated lazily by the {@link ProxyDirContext} when they are looked up after their TTL expired.
+ */
+public class ConcurrentResourceCache extends ResourceCache {
+
+    private final Map<String, CacheEntry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CacheEntry> notFoundEntries = new ConcurrentHashMap<>();
+
+    /**
+     * Loaded entries in CLOCK order. Unloaded entries are skipped when visited or removed once they are many.
+     */
+    private final Queue<Slot> clock = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger unloadedSlots = new AtomicInteger();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder accesses = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+
+    @Override
+    public long getAccessCount() {
+        return accesses.sum();
+    }
+
+    @Override
+    public long getHitsCount() {
+        return hits.sum();
+    }
+
+    @Override
+    public int getCacheSize() {
+        return size.get();
+    }
+
+    /**
+     * Return the number of cached entries, not counting the entries for resources that do not exist.
+     */
+    public int getEntryCount() {
+        return entries.size();
+    }
+
+    @Override
+    public boolean allocate(int space) {
+        if (space - (cacheMaxSize - size.get()) <= 0) {
+            return true;
+        }
+        evictionLock.lock();
+        try {
+            int toFree = space - (cacheMaxSize - size.get());
+            if (toFree <= 0) {
+                return true;
+            }
+            // Increase the amount to free so that allocate won't have to run right away again
+            toFree += (cacheMaxSize / 20);
+            int notFound = notFoundEntries.size();
+            if (notFound > spareNotFoundEntries) {
+                for (String name : notFoundEntries.keySet()) {
+                    if (notFoundEntries.remove(name) != null) {
+                        size.decrementAndGet();
+                        toFree--;
+                    }
+                }
+            }
+            // every entry is visited at most twice
+            int visits = 2 * (entries.size() + unloadedSlots.get()) + 1;
+            while (toFree > 0 && visits-- > 0) {
+                Slot slot = clock.poll();
+                if (slot == null) {
+                    break;
+                }
+                CacheEntry entry = slot.entry;
+                if (entries.get(entry.name) != entry) {
+                    unloadedSlots.decrementAndGet();
+                } else if (entry.accessCount != slot.accessCount) {
+                    slot.accessCount = entry.accessCount;
+                    clock.offer(slot);
+                } else if (entries.remove(entry.name, entry)) {
+                    size.addAndGet(-entry.size);
+                    toFree -= entry.size;
+                }
+            }
+            return toFree <= 0;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public CacheEntry lookup(String name) {
+        accesses.increment();
+        CacheEntry cacheEntry = entries.get(name);
+        if (cacheEntry == null) {
+            cacheEntry = notFoundEntries.get(name);
+        }
+        if (cacheEntry != null) {
+            hits.increment();
+        }
+        return cacheEntry;
+    }
+
+    @Override
+    public void load(CacheEntry entry) {
+        if (entry.exists) {
+            if (entries.putIfAbsent(entry.name, entry) == null) {
+                size.addAndGet(entry.size);
+                clock.offer(new Slot(entry));
+            }
+        } else if (notFoundEntries.put(entry.name, entry) == null) {
+            size.incrementAndGet();
+        }
+    }
+
+    /**
+     * Does not lock, concurrent loads of the same name only cache one of the entries.
+     */
+    @Override
+    public boolean loadIfAbsent(CacheEntry entry) {
+        if (entries.containsKey(entry.name) || notFoundEntries.containsKey(entry.name)
+                || !allocate(entry.size)) {
+            return false;
+        }
+        load(entry);
+        return true;
+    }
+
+    @Override
+    public boolean unload(String name) {
+        CacheEntry removedEntry = entries.remove(name);
+        if (removedEntry != null) {
+            size.addAndGet(-removedEntry.size);
+            if (unloadedSlots.incrementAndGet() > entries.size() + spareNotFoundEntries) {
+                removeUnloadedSlots();
+            }
+            return true;
+        }
+        if (notFoundEntries.remove(name) != null) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Does not lock, same as {@link #unload(String)}.
+     */
+    @Override
+    public boolean remove(String name) {
+        return unload(name);
+    }
+
+    private void removeUnloadedSlots() {
+        if (evictionLock.tryLock()) {
+            try {
+                clock.removeIf(slot -> entries.get(slot.entry.name) != slot.entry);
+                unloadedSlots.set(0);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Position of an entry in the CLOCK order.
+     */
+    private static final class Slot {
+
+        final CacheEntry entry;
+        /**
+         * {@link CacheEntry#accessCount} when the entry was last visited
+         */
+        long accessCount;
+
+        Slot(CacheEntry entry) {
+            this.entry = entry;
+            this.accessCount = entry.accessCount;
+        }
+    }
+}
@@ -55,6 +55,7 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
+// Portions Copyright [2020] [Payara Foundation and/or its affiliates]
 
 package org.apache.naming.resources;
 
@@ -147,7 +148,7 @@ public class ProxyDirContext implements DirContext {
      * Cache class.
      */
     protected String cacheClassName = 
-        "org.apache.naming.resources.ResourceCache";
+        "org.apache.naming.resources.ConcurrentResourceCache";
 
 
     /**
@@ -1601,13 +1602,8 @@ public class ProxyDirContext implements DirContext {
         // Set timestamp
         entry.timestamp = System.currentTimeMillis() + cacheTTL;
 
-        // Add new entry to cache
-        synchronized (cache) {
-            // Check cache size, and remove elements if too big
-            if ((cache.lookup(name) == null) && cache.allocate(entry.size)) {
-                cache.load(entry);
-            }
-        }
+        // Add new entry to cache, removing elements if too big
+        cache.loadIfAbsent(entry);
 
     }
 
@@ -1618,9 +1614,7 @@ public class ProxyDirContext implements DirContext {
     protected boolean cacheUnload(String name) {
         if (cache == null)
             return false;
-        synchronized (cache) {
-            return cache.unload(name);
-        }
+        return cache.remove(name);
     }
 
 
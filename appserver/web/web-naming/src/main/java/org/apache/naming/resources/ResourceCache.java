@@ -55,7 +55,7 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-// Portions Copyright [2017] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2017-2020] [Payara Foundation and/or its affiliates]
 package org.apache.naming.resources;
 
 import java.util.HashMap;
@@ -379,6 +379,31 @@ public class ResourceCache {
     }
 
 
+    /**
+     * Load the entry unless an entry with the same name is cached or there
+     * is no space left for it. Safe for concurrent use.
+     *
+     * @return true if the entry was loaded
+     */
+    public synchronized boolean loadIfAbsent(CacheEntry entry) {
+        if ((lookup(entry.name) == null) && allocate(entry.size)) {
+            load(entry);
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Unload the entry with the given name. Safe for concurrent use.
+     *
+     * @return true if an entry was unloaded
+     */
+    public synchronized boolean remove(String name) {
+        return unload(name);
+    }
+
+
     /**
      * Find a map elemnt given its name in a sorted array of map elements.
      * This will return the index for the closest inferior or equal item in the
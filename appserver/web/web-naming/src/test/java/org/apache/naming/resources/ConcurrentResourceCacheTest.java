@@ -0,0 +1,252 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.apache.naming.resources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentResourceCacheTest {
+
+    private ConcurrentResourceCache cache;
+
+    @Before
+    public void createCache() {
+        cache = new ConcurrentResourceCache();
+        cache.setCacheMaxSize(40);
+    }
+
+    @Test
+    public void loadedEntriesAreFound() {
+        CacheEntry entry = entry("/a", 10);
+        assertTrue(cache.loadIfAbsent(entry));
+        assertSame(entry, cache.lookup("/a"));
+        assertNull(cache.lookup("/b"));
+        assertEquals(10, cache.getCacheSize());
+        assertEquals(1, cache.getEntryCount());
+        assertEquals(2, cache.getAccessCount());
+        assertEquals(1, cache.getHitsCount());
+    }
+
+    @Test
+    public void onlyTheFirstOfTwoLoadsIsCached() {
+        CacheEntry first = entry("/a", 10);
+        assertTrue(cache.loadIfAbsent(first));
+        assertFalse(cache.loadIfAbsent(entry("/a", 10)));
+        assertSame(first, cache.lookup("/a"));
+        assertEquals(10, cache.getCacheSize());
+    }
+
+    @Test
+    public void notFoundEntriesAreCached() {
+        CacheEntry entry = entry("/missing", 1);
+        entry.exists = false;
+        assertTrue(cache.loadIfAbsent(entry));
+        assertSame(entry, cache.lookup("/missing"));
+        assertEquals(1, cache.getCacheSize());
+        assertEquals(0, cache.getEntryCount());
+        assertTrue(cache.unload("/missing"));
+        assertNull(cache.lookup("/missing"));
+        assertEquals(0, cache.getCacheSize());
+    }
+
+    @Test
+    public void unloadFreesTheEntry() {
+        cache.loadIfAbsent(entry("/a", 10));
+        assertTrue(cache.unload("/a"));
+        assertFalse(cache.unload("/a"));
+        assertNull(cache.lookup("/a"));
+        assertEquals(0, cache.getCacheSize());
+        CacheEntry reloaded = entry("/a", 10);
+        assertTrue(cache.loadIfAbsent(reloaded));
+        assertSame(reloaded, cache.lookup("/a"));
+    }
+
+    @Test
+    public void entriesAreEvictedInClockOrderWithASecondChance() {
+        CacheEntry a = entry("/a", 10);
+        for (CacheEntry entry : new CacheEntry[] { a, entry("/b", 10), entry("/c", 10), entry("/d", 10) }) {
+            assertTrue(cache.loadIfAbsent(entry));
+        }
+        assertEquals(40, cache.getCacheSize());
+        // ProxyDirContext counts the accesses of a cached entry
+        cache.lookup("/a").accessCount++;
+
+        assertTrue(cache.loadIfAbsent(entry("/e", 10)));
+
+        assertSame("Accessed entries get a second chance", a, cache.lookup("/a"));
+        assertNull(cache.lookup("/b"));
+        assertNull(cache.lookup("/c"));
+        assertNotNull(cache.lookup("/d"));
+        assertNotNull(cache.lookup("/e"));
+        assertEquals(30, cache.getCacheSize());
+    }
+
+    @Test
+    public void unloadedEntriesAreSkippedWhenEvicting() {
+        cache.loadIfAbsent(entry("/a", 10));
+        cache.loadIfAbsent(entry("/b", 10));
+        cache.unload("/a");
+        CacheEntry a = entry("/a", 10);
+        cache.loadIfAbsent(a);
+        cache.loadIfAbsent(entry("/c", 10));
+
+        assertTrue(cache.loadIfAbsent(entry("/d", 20)));
+
+        assertNull(cache.lookup("/b"));
+        assertNull("The reloaded entry is evicted in its new position", cache.lookup("/a"));
+        assertNotNull(cache.lookup("/c"));
+        assertNotNull(cache.lookup("/d"));
+        assertEquals(30, cache.getCacheSize());
+    }
+
+    @Test
+    public void entriesLargerThanTheCacheAreNotLoaded() {
+        cache.loadIfAbsent(entry("/a", 10));
+        assertFalse(cache.loadIfAbsent(entry("/large", 100)));
+        assertNull(cache.lookup("/large"));
+        assertTrue(cache.getCacheSize() <= 40);
+    }
+
+    @Test
+    public void sizeStaysBoundedUnderConcurrentUse() throws Exception {
+        cache.setCacheMaxSize(200);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20_000; i++) {
+                        String name = "/" + random.nextInt(500);
+                        CacheEntry entry = cache.lookup(name);
+                        if (entry == null) {
+                            cache.loadIfAbsent(entry(name, 2));
+                        } else if (random.nextInt(10) == 0) {
+                            cache.unload(name);
+                        } else {
+                            entry.accessCount++;
+                        }
+                        assertTrue(cache.getCacheSize() <= 200 + 4 * 2);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // Concurrent loads may each fill the last free space once
+        assertTrue(cache.getCacheSize() <= 200 + 4 * 2);
+        assertEquals(2 * cache.getEntryCount(), cache.getCacheSize());
+    }
+
+    @Test
+    public void proxyDirContextFindsResourcesAfterEviction() throws Exception {
+        File docBase = Files.createTempDirectory("resource-cache").toFile();
+        try {
+            FileDirContext dirContext = new FileDirContext();
+            dirContext.setDocBase(docBase.getPath());
+            // Room for 4 resources
+            dirContext.setCacheMaxSize(4);
+            for (int i = 0; i < 20; i++) {
+                write(new File(docBase, i + ".txt"), "resource " + i);
+            }
+            ProxyDirContext context = new ProxyDirContext(new Hashtable<String, String>(), dirContext);
+            ResourceCache resourceCache = context.getCache();
+            assertTrue(resourceCache instanceof ConcurrentResourceCache);
+
+            for (int round = 0; round < 3; round++) {
+                for (int i = 0; i < 20; i++) {
+                    CacheEntry entry = context.lookupCache("/" + i + ".txt");
+                    assertTrue(entry.exists);
+                    assertEquals("resource " + i, read(entry));
+                    assertTrue(resourceCache.getCacheSize() <= 4);
+                }
+            }
+            assertFalse(context.lookupCache("/missing.txt").exists);
+        } finally {
+            for (File file : docBase.listFiles()) {
+                Files.delete(file.toPath());
+            }
+            Files.delete(docBase.toPath());
+        }
+    }
+
+    private static CacheEntry entry(String name, int size) {
+        CacheEntry entry = new CacheEntry();
+        entry.name = name;
+        entry.size = size;
+        return entry;
+    }
+
+    private static String read(CacheEntry entry) throws IOException {
+        try (InputStream in = entry.resource.streamContent()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[256];
+            int len;
+            while ((len = in.read(buffer)) != -1) {
+                out.write(buffer, 0, len);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.apache.naming.resources;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the {@link ResourceCache} implementations under concurrent lookups of a large number of static resources.
+ * The cache is only large enough for part of the resources so lookups that miss load the resource, which evicts
+ * others, the same way {@link ProxyDirContext} uses the cache.
+ *
+ * Not run as part of the build. Run the {@link #main(String[])} method from the IDE or with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class ResourceCacheBenchmark {
+
+    @Param({ "org.apache.naming.resources.ResourceCache", "org.apache.naming.resources.ConcurrentResourceCache" })
+    private String cacheClassName;
+
+    @Param({ "50000" })
+    private int resources;
+
+    /**
+     * Size of the cache in KB, each resource takes 1KB
+     */
+    @Param({ "40000" })
+    private int cacheMaxSize;
+
+    private ResourceCache cache;
+    private String[] names;
+
+    @Setup
+    public void setup() throws ReflectiveOperationException {
+        cache = (ResourceCache) Class.forName(cacheClassName).newInstance();
+        cache.setCacheMaxSize(cacheMaxSize);
+        names = new String[resources];
+        for (int i = 0; i < resources; i++) {
+            names[i] = "/static/resource-" + i + ".css";
+            cache.loadIfAbsent(newEntry(names[i]));
+        }
+    }
+
+    @Benchmark
+    public CacheEntry lookup() {
+        String name = names[ThreadLocalRandom.current().nextInt(resources)];
+        CacheEntry entry = cache.lookup(name);
+        if (entry == null) {
+            entry = newEntry(name);
+            cache.loadIfAbsent(entry);
+        } else {
+            entry.accessCount++;
+        }
+        return entry;
+    }
+
+    private static CacheEntry newEntry(String name) {
+        CacheEntry entry = new CacheEntry();
+        entry.name = name;
+        entry.exists = true;
+        entry.size = 1;
+        return entry;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ResourceCacheBenchmark.class.getSimpleName()).build()).run();
+    }
+}
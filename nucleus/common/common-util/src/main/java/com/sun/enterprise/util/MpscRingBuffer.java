@@ -0,0 +1,224 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.enterprise.util;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded lock-free queue for many producer threads and a single consumer thread.
+ * <p>
+ * Each slot of the ring has a sequence number that tells producers and the consumer whose turn it is. Producers claim a
+ * position with a CAS on the tail and publish the element by advancing the sequence of the slot. The consumer is the
+ * only one moving the head. {@link #offer(Object)} never waits, it fails when the buffer is full.
+ * <p>
+ * {@link #poll()}, {@link #drainTo(Collection, int)} and {@link #awaitElements(long, TimeUnit)} must only be called by
+ * one consumer thread at a time.
+ *
+ * @param <E> type of the elements
+ */
+public final class MpscRingBuffer<E> {
+
+    private static final long BLOCKING_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> elements;
+    /**
+     * For each slot the position it can be claimed at by a producer, or that position + 1 once the element has been
+     * published and can be consumed.
+     */
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    /**
+     * Next position to consume, only written by the consumer
+     */
+    private volatile long head;
+    private volatile Thread waitingConsumer;
+
+    /**
+     * @param capacity the minimum capacity, rounded up to the next power of two
+     */
+    public MpscRingBuffer(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30 but was: " + capacity);
+        }
+        this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.elements = new AtomicReferenceArray<>(this.capacity);
+        this.sequences = new AtomicLongArray(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element if the buffer is not full. Can be called by any thread.
+     *
+     * @param element the element to add, not null
+     * @return true if the element was added, false if the buffer was full
+     */
+    public boolean offer(E element) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) pos & mask;
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.set(index, pos + 1);
+                    Thread consumer = waitingConsumer;
+                    if (consumer != null) {
+                        LockSupport.unpark(consumer);
+                    }
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false;
+            }
+            pos = tail.get();
+        }
+    }
+
+    /**
+     * Adds an element, waiting for a free slot while the buffer is full. Can be called by any thread.
+     *
+     * @param element the element to add, not null
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public void put(E element) throws InterruptedException {
+        while (!offer(element)) {
+            LockSupport.parkNanos(this, BLOCKING_PARK_NANOS);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    /**
+     * Removes the oldest element. Must only be called by the consumer thread.
+     *
+     * @return the oldest element or null if the buffer is empty
+     */
+    public E poll() {
+        long pos = head;
+        int index = (int) pos & mask;
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+        E element = elements.get(index);
+        elements.lazySet(index, null);
+        sequences.set(index, pos + capacity);
+        head = pos + 1;
+        return element;
+    }
+
+    /**
+     * Moves up to the given number of elements, oldest first, to the target collection. Must only be called by the
+     * consumer thread.
+     *
+     * @return the number of elements moved
+     */
+    public int drainTo(Collection<? super E> target, int maxElements) {
+        long pos = head;
+        int drained = 0;
+        while (drained < maxElements) {
+            int index = (int) pos & mask;
+            if (sequences.get(index) != pos + 1) {
+                // empty, or the producer of that slot has not published its element yet
+                break;
+            }
+            target.add(elements.get(index));
+            elements.lazySet(index, null);
+            sequences.set(index, pos + capacity);
+            pos++;
+            drained++;
+        }
+        head = pos;
+        return drained;
+    }
+
+    /**
+     * Waits until elements are available, at most for the given time. Must only be called by the consumer thread.
+     *
+     * @return true if there are elements to take
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public boolean awaitElements(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!isEmpty()) {
+            return true;
+        }
+        waitingConsumer = Thread.currentThread();
+        try {
+            if (isEmpty()) {
+                LockSupport.parkNanos(this, unit.toNanos(timeout));
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return !isEmpty();
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * @return the approximate number of elements in the buffer
+     */
+    public int size() {
+        long size = tail.get() - head;
+        return (int) Math.max(0L, Math.min(capacity, size));
+    }
+
+    /**
+     * @return the number of elements the buffer can hold, the requested capacity rounded up to a power of two
+     */
+    public int capacity() {
+        return capacity;
+    }
+}
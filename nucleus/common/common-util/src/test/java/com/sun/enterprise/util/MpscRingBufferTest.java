@@ -0,0 +1,209 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.enterprise.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class MpscRingBufferTest {
+
+    @Test
+    public void capacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(1, new MpscRingBuffer<>(1).capacity());
+        assertEquals(8, new MpscRingBuffer<>(5).capacity());
+        assertEquals(16, new MpscRingBuffer<>(16).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePositive() {
+        new MpscRingBuffer<>(0);
+    }
+
+    @Test
+    public void offerFailsWhenFull() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+        assertEquals(Integer.valueOf(0), buffer.poll());
+        assertTrue(buffer.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), buffer.poll());
+        }
+        assertNull(buffer.poll());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void drainsInPublicationOrder() {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+        List<Integer> drained = new ArrayList<>();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 3; i++) {
+                assertTrue(buffer.offer(round * 3 + i));
+            }
+            assertEquals(2, buffer.drainTo(drained, 2));
+            assertEquals(1, buffer.drainTo(drained, 10));
+        }
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8), drained);
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.drainTo(drained, 10));
+    }
+
+    @Test
+    public void awaitReturnsOnceAnElementIsAdded() throws InterruptedException {
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(4);
+        assertFalse(buffer.awaitElements(1, TimeUnit.MILLISECONDS));
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            buffer.offer(1);
+        });
+        producer.start();
+        assertTrue(buffer.awaitElements(10, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(1), buffer.poll());
+        producer.join();
+    }
+
+    @Test
+    public void concurrentProducersLoseNoElements() throws InterruptedException {
+        int producers = 4;
+        int perProducer = 100000;
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(64);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int p = 0; p < producers; p++) {
+            int offset = p * perProducer;
+            Thread producer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(offset + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            producer.setDaemon(true);
+            producer.start();
+        }
+        start.countDown();
+        BitSet received = new BitSet(producers * perProducer);
+        int[] lastOfProducer = new int[producers];
+        Arrays.fill(lastOfProducer, -1);
+        for (int n = 0; n < producers * perProducer; n++) {
+            Integer e = buffer.poll();
+            while (e == null) {
+                Thread.yield();
+                e = buffer.poll();
+            }
+            assertFalse(received.get(e));
+            received.set(e);
+            int producer = e / perProducer;
+            assertTrue("elements of a producer are in order", e > lastOfProducer[producer]);
+            lastOfProducer[producer] = e;
+        }
+        assertEquals(producers * perProducer, received.cardinality());
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void blockedProducersLoseNoElements() throws Exception {
+        int producers = 4;
+        int perProducer = 20000;
+        MpscRingBuffer<Integer> buffer = new MpscRingBuffer<>(256);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            int offset = p * perProducer;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < perProducer; i++) {
+                        buffer.put(offset + i);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+
+        int[] lastOfProducer = new int[producers];
+        Arrays.fill(lastOfProducer, -1);
+        List<Integer> batch = new ArrayList<>();
+        int total = 0;
+        while (total < producers * perProducer) {
+            batch.clear();
+            if (buffer.drainTo(batch, 100) == 0) {
+                buffer.awaitElements(10, TimeUnit.MILLISECONDS);
+            }
+            for (int e : batch) {
+                int producer = e / perProducer;
+                assertTrue("elements of a producer are in order", e > lastOfProducer[producer]);
+                lastOfProducer[producer] = e;
+                total++;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(buffer.isEmpty());
+    }
+}
@@ -0,0 +1,669 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.enterprise.server.logging;
+
+import com.sun.enterprise.server.logging.parser.LogParser;
+import com.sun.enterprise.server.logging.parser.LogParserException;
+import com.sun.enterprise.server.logging.parser.LogParserFactory;
+import com.sun.enterprise.server.logging.parser.LogParserListener;
+import com.sun.enterprise.server.logging.parser.ParsedLogRecord;
+import com.sun.enterprise.server.logging.parser.RawLogParser;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Block compressed, columnar archive of a rotated log file.
+ * <p>
+ * The records are stored in blocks of {@value #RECORDS_PER_BLOCK}. Every block keeps the length, timestamp, level
+ * and logger of its records as deflated columns, and their text as a separately deflated column. The directory at
+ * the end of the archive holds the time range and the levels of every block, so a reader can pick the blocks it is
+ * interested in from the directory and the small metadata columns and only inflate the text of those blocks.
+ * <p>
+ * The text column keeps the records as the log parsers read them from the original file, so the log viewer reads
+ * an archive through {@link #openReader(long)} just like the plain file, with positions counted in characters.
+ */
+public final class ColumnarLogArchive {
+
+    public static final String ARCHIVE_EXTENSION = ".clog";
+
+    static final int RECORDS_PER_BLOCK = 1000;
+
+    private static final int MAGIC = 0x50434C41;
+    private static final int FORMAT_VERSION = 1;
+    private static final int TRAILER_LENGTH = 12;
+
+    private static final String NEWLINE = System.getProperty("line.separator");
+
+    // The JSON formatter writes one record per line, the keys may carry an underscore prefix
+    private static final Pattern JSON_TIME_MILLIS = Pattern.compile("\"_?TimeMillis\"\\s*:\\s*\"?(\\d+)");
+    private static final Pattern JSON_LEVEL = Pattern.compile("\"_?Level\"\\s*:\\s*\"([^\"]*)\"");
+    private static final Pattern JSON_LOGGER = Pattern.compile("\"_?LoggerName\"\\s*:\\s*\"([^\"]*)\"");
+
+    private final File file;
+    private final List<Block> blocks;
+    private final long recordCount;
+    private final long textLength;
+
+    private ColumnarLogArchive(File file, List<Block> blocks) {
+        this.file = file;
+        this.blocks = Collections.unmodifiableList(blocks);
+        Block last = blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+        this.recordCount = last == null ? 0 : last.firstRecord + last.recordCount;
+        this.textLength = last == null ? 0 : last.textPosition + last.textLength;
+    }
+
+    /**
+     * Converts a log file into an archive named after it with the {@value #ARCHIVE_EXTENSION} extension.
+     * The log file itself is left in place.
+     *
+     * @return the archive file
+     * @throws IOException if the file could not be read or contains text the log parsers do not recognise as
+     * part of a record, which would be lost by the conversion
+     */
+    public static File archive(File logFile) throws IOException {
+        File archiveFile = new File(logFile.getPath() + ARCHIVE_EXTENSION);
+        File tempFile = new File(archiveFile.getPath() + ".tmp");
+        LogParser parser;
+        try {
+            parser = LogParserFactory.getInstance().createLogParser(logFile);
+        } catch (LogParserException e) {
+            throw new IOException("Could not detect the format of log file " + logFile, e);
+        }
+        // The raw parser hands out every line as a record, without its line separator
+        boolean lineRecords = parser instanceof RawLogParser;
+        try (ArchiveWriter writer = new ArchiveWriter(tempFile, lineRecords);
+                CountingReader reader = new CountingReader(
+                        new InputStreamReader(new FileInputStream(logFile), Charset.defaultCharset()))) {
+            parser.parseLog(reader, new LogParserListener() {
+
+                @Override
+                public void outputSummary(BufferedWriter writer, Object... objects) throws IOException {
+                }
+
+                @Override
+                public void foundLogRecord(long position, ParsedLogRecord record) {
+                    writer.add(record);
+                }
+
+                @Override
+                public void close() throws IOException {
+                }
+            });
+            writer.rethrowFailure();
+            if (writer.textPosition != reader.charactersRead) {
+                throw new IOException("Log file " + logFile + " contains text outside of log records");
+            }
+        } catch (LogParserException | IOException e) {
+            tempFile.delete();
+            throw e instanceof IOException ? (IOException) e : new IOException("Could not parse log file " + logFile, e);
+        }
+        if (!tempFile.renameTo(archiveFile)) {
+            tempFile.delete();
+            throw new IOException("Could not create log archive " + archiveFile);
+        }
+        return archiveFile;
+    }
+
+    /**
+     * Opens an archive and reads its block directory.
+     */
+    public static ColumnarLogArchive open(File archiveFile) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(archiveFile, "r")) {
+            long length = in.length();
+            if (length < 8 + TRAILER_LENGTH || in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a log archive: " + archiveFile);
+            }
+            in.seek(length - TRAILER_LENGTH);
+            long directoryOffset = in.readLong();
+            if (in.readInt() != MAGIC || directoryOffset < 8 || directoryOffset > length - TRAILER_LENGTH) {
+                throw new IOException("Log archive is incomplete: " + archiveFile);
+            }
+            byte[] directory = new byte[(int) (length - TRAILER_LENGTH - directoryOffset)];
+            in.seek(directoryOffset);
+            in.readFully(directory);
+            DataInputStream din = new DataInputStream(new ByteArrayInputStream(directory));
+            int blockCount = din.readInt();
+            List<Block> blocks = new ArrayList<>(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                blocks.add(Block.read(din));
+            }
+            return new ColumnarLogArchive(archiveFile, blocks);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public List<Block> getBlocks() {
+        return blocks;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return the number of characters of the archived log text
+     */
+    public long getTextLength() {
+        return textLength;
+    }
+
+    /**
+     * Reads the metadata columns of a block without inflating its text.
+     */
+    public BlockRecords readRecords(Block block) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            byte[] columns = readFully(in, block.metadataOffset, block.metadataSize);
+            try (DataInputStream din = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(columns)))) {
+                return BlockRecords.read(din, block);
+            }
+        }
+    }
+
+    /**
+     * Opens a reader on the archived log text, starting at the given character position. Only the text of the
+     * block containing that position and of the following blocks, as they are read, is inflated.
+     */
+    public Reader openReader(long fromPosition) throws IOException {
+        int block = 0;
+        while (block < blocks.size() && blocks.get(block).textPosition + blocks.get(block).textLength <= fromPosition) {
+            block++;
+        }
+        TextReader reader = new TextReader(new RandomAccessFile(file, "r"), block);
+        try {
+            long toSkip = block < blocks.size() ? fromPosition - blocks.get(block).textPosition : 0;
+            while (toSkip > 0) {
+                long skipped = reader.skip(toSkip);
+                if (skipped <= 0) {
+                    break;
+                }
+                toSkip -= skipped;
+            }
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    private static byte[] readFully(RandomAccessFile in, long offset, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        in.seek(offset);
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Directory entry of a block of records.
+     */
+    public static final class Block {
+
+        private final long firstRecord;
+        private final int recordCount;
+        private final long textPosition;
+        private final long textLength;
+        private final long minTimeMillis;
+        private final long maxTimeMillis;
+        private final Set<String> levels;
+        private final long metadataOffset;
+        private final int metadataSize;
+        private final long textOffset;
+        private final int textSize;
+
+        Block(long firstRecord, int recordCount, long textPosition, long textLength, long minTimeMillis,
+                long maxTimeMillis, Set<String> levels, long metadataOffset, int metadataSize, long textOffset,
+                int textSize) {
+            this.firstRecord = firstRecord;
+            this.recordCount = recordCount;
+            this.textPosition = textPosition;
+            this.textLength = textLength;
+            this.minTimeMillis = minTimeMillis;
+            this.maxTimeMillis = maxTimeMillis;
+            this.levels = Collections.unmodifiableSet(levels);
+            this.metadataOffset = metadataOffset;
+            this.metadataSize = metadataSize;
+            this.textOffset = textOffset;
+            this.textSize = textSize;
+        }
+
+        public long getFirstRecord() {
+            return firstRecord;
+        }
+
+        public int getRecordCount() {
+            return recordCount;
+        }
+
+        /**
+         * @return the character position of the first record of the block in the archived log text
+         */
+        public long getTextPosition() {
+            return textPosition;
+        }
+
+        public long getTextLength() {
+            return textLength;
+        }
+
+        public long getMinTimeMillis() {
+            return minTimeMillis;
+        }
+
+        public long getMaxTimeMillis() {
+            return maxTimeMillis;
+        }
+
+        /**
+         * @return the levels logged in the block, not including records without a level
+         */
+        public Set<String> getLevels() {
+            return levels;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(firstRecord);
+            out.writeInt(recordCount);
+            out.writeLong(textPosition);
+            out.writeLong(textLength);
+            out.writeLong(minTimeMillis);
+            out.writeLong(maxTimeMillis);
+            out.writeInt(levels.size());
+            for (String level : levels) {
+                out.writeUTF(level);
+            }
+            out.writeLong(metadataOffset);
+            out.writeInt(metadataSize);
+            out.writeLong(textOffset);
+            out.writeInt(textSize);
+        }
+
+        static Block read(DataInputStream in) throws IOException {
+            long firstRecord = in.readLong();
+            int recordCount = in.readInt();
+            long textPosition = in.readLong();
+            long textLength = in.readLong();
+            long minTimeMillis = in.readLong();
+            long maxTimeMillis = in.readLong();
+            int levelCount = in.readInt();
+            Set<String> levels = new LinkedHashSet<>();
+            for (int i = 0; i < levelCount; i++) {
+                levels.add(in.readUTF());
+            }
+            return new Block(firstRecord, recordCount, textPosition, textLength, minTimeMillis, maxTimeMillis,
+                    levels, in.readLong(), in.readInt(), in.readLong(), in.readInt());
+        }
+    }
+
+    /**
+     * Metadata columns of the records of a block.
+     */
+    public static final class BlockRecords {
+
+        private final int[] lengths;
+        private final long[] timeMillis;
+        private final String[] levels;
+        private final String[] loggers;
+
+        private BlockRecords(int recordCount) {
+            lengths = new int[recordCount];
+            timeMillis = new long[recordCount];
+            levels = new String[recordCount];
+            loggers = new String[recordCount];
+        }
+
+        public int size() {
+            return lengths.length;
+        }
+
+        /**
+         * @return the number of characters of the record text
+         */
+        public int getLength(int record) {
+            return lengths[record];
+        }
+
+        public long getTimeMillis(int record) {
+            return timeMillis[record];
+        }
+
+        public String getLevel(int record) {
+            return levels[record];
+        }
+
+        public String getLogger(int record) {
+            return loggers[record];
+        }
+
+        static BlockRecords read(DataInputStream in, Block block) throws IOException {
+            BlockRecords records = new BlockRecords(block.recordCount);
+            String[] levelDictionary = readDictionary(in);
+            String[] loggerDictionary = readDictionary(in);
+            for (int i = 0; i < block.recordCount; i++) {
+                records.lengths[i] = (int) readVarLong(in);
+            }
+            for (int i = 0; i < block.recordCount; i++) {
+                records.timeMillis[i] = block.minTimeMillis + readVarLong(in);
+            }
+            for (int i = 0; i < block.recordCount; i++) {
+                records.levels[i] = levelDictionary[(int) readVarLong(in)];
+            }
+            for (int i = 0; i < block.recordCount; i++) {
+                records.loggers[i] = loggerDictionary[(int) readVarLong(in)];
+            }
+            return records;
+        }
+
+        /**
+         * Index 0 of a dictionary stands for a missing value.
+         */
+        private static String[] readDictionary(DataInputStream in) throws IOException {
+            String[] dictionary = new String[(int) readVarLong(in) + 1];
+            for (int i = 1; i < dictionary.length; i++) {
+                dictionary[i] = in.readUTF();
+            }
+            return dictionary;
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed log archive column");
+    }
+
+    /**
+     * Collects the records of the current block and appends the completed blocks to the archive.
+     */
+    private static final class ArchiveWriter implements Closeable {
+
+        private final DataOutputStream out;
+        private final boolean lineRecords;
+        private final List<Block> blocks = new ArrayList<>();
+        private final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+        private final int[] lengths = new int[RECORDS_PER_BLOCK];
+        private final long[] timeMillis = new long[RECORDS_PER_BLOCK];
+        private final String[] levels = new String[RECORDS_PER_BLOCK];
+        private final String[] loggers = new String[RECORDS_PER_BLOCK];
+        private final StringBuilder text = new StringBuilder();
+        private int count;
+        private long recordCount;
+        private long textPosition;
+        private long offset;
+        private IOException failure;
+
+        ArchiveWriter(File archiveFile, boolean lineRecords) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(archiveFile)));
+            this.lineRecords = lineRecords;
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            offset = out.size();
+        }
+
+        void add(ParsedLogRecord record) {
+            if (failure != null) {
+                return;
+            }
+            String recordText = record.getFormattedLogRecord();
+            if (lineRecords) {
+                recordText += NEWLINE;
+                timeMillis[count] = parseJsonTimeMillis(recordText);
+                levels[count] = findJsonValue(JSON_LEVEL, recordText);
+                loggers[count] = findJsonValue(JSON_LOGGER, recordText);
+            } else {
+                timeMillis[count] = record.getTimeMillis();
+                levels[count] = record.getLevel();
+                loggers[count] = record.getLogger();
+            }
+            lengths[count] = recordText.length();
+            text.append(recordText);
+            textPosition += recordText.length();
+            if (++count == RECORDS_PER_BLOCK) {
+                try {
+                    writeBlock();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+
+        void rethrowFailure() throws IOException {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        private void writeBlock() throws IOException {
+            long minTime = Long.MAX_VALUE;
+            long maxTime = Long.MIN_VALUE;
+            for (int i = 0; i < count; i++) {
+                minTime = Math.min(minTime, timeMillis[i]);
+                maxTime = Math.max(maxTime, timeMillis[i]);
+            }
+            Map<String, Integer> levelDictionary = dictionary(levels);
+            Map<String, Integer> loggerDictionary = dictionary(loggers);
+
+            ByteArrayOutputStream metadata = new ByteArrayOutputStream(8 * count);
+            try (DataOutputStream columns = new DataOutputStream(new DeflaterOutputStream(metadata, deflater))) {
+                writeDictionary(columns, levelDictionary);
+                writeDictionary(columns, loggerDictionary);
+                for (int i = 0; i < count; i++) {
+                    writeVarLong(columns, lengths[i]);
+                }
+                for (int i = 0; i < count; i++) {
+                    writeVarLong(columns, timeMillis[i] - minTime);
+                }
+                for (int i = 0; i < count; i++) {
+                    writeVarLong(columns, levels[i] == null ? 0 : levelDictionary.get(levels[i]));
+                }
+                for (int i = 0; i < count; i++) {
+                    writeVarLong(columns, loggers[i] == null ? 0 : loggerDictionary.get(loggers[i]));
+                }
+            }
+            deflater.reset();
+            ByteArrayOutputStream textColumn = new ByteArrayOutputStream(text.length() / 4);
+            try (DeflaterOutputStream deflated = new DeflaterOutputStream(textColumn, deflater)) {
+                deflated.write(text.toString().getBytes(UTF_8));
+            }
+            deflater.reset();
+
+            long metadataOffset = offset;
+            metadata.writeTo(out);
+            long textOffset = metadataOffset + metadata.size();
+            textColumn.writeTo(out);
+            offset = textOffset + textColumn.size();
+
+            blocks.add(new Block(recordCount, count, textPosition - text.length(), text.length(), minTime, maxTime,
+                    new LinkedHashSet<>(levelDictionary.keySet()), metadataOffset, metadata.size(), textOffset,
+                    textColumn.size()));
+            recordCount += count;
+            Arrays.fill(levels, null);
+            Arrays.fill(loggers, null);
+            count = 0;
+            text.setLength(0);
+        }
+
+        private Map<String, Integer> dictionary(String[] values) {
+            Map<String, Integer> dictionary = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                if (values[i] != null && !dictionary.containsKey(values[i])) {
+                    dictionary.put(values[i], dictionary.size() + 1);
+                }
+            }
+            return dictionary;
+        }
+
+        private static void writeDictionary(DataOutputStream out, Map<String, Integer> dictionary) throws IOException {
+            writeVarLong(out, dictionary.size());
+            for (String value : dictionary.keySet()) {
+                out.writeUTF(value);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (failure == null) {
+                    if (count > 0) {
+                        writeBlock();
+                    }
+                    ByteArrayOutputStream directory = new ByteArrayOutputStream();
+                    DataOutputStream dout = new DataOutputStream(directory);
+                    dout.writeInt(blocks.size());
+                    for (Block block : blocks) {
+                        block.write(dout);
+                    }
+                    directory.writeTo(out);
+                    out.writeLong(offset);
+                    out.writeInt(MAGIC);
+                }
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+
+        private static long parseJsonTimeMillis(String line) {
+            String value = findJsonValue(JSON_TIME_MILLIS, line);
+            try {
+                return value == null ? 0L : Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return 0L;
+            }
+        }
+
+        private static String findJsonValue(Pattern pattern, String line) {
+            Matcher matcher = pattern.matcher(line);
+            return matcher.find() ? matcher.group(1) : null;
+        }
+    }
+
+    /**
+     * Reader that counts the characters of the lines handed to the log parser, the way the parsers
+     * count the positions of the records.
+     */
+    private static final class CountingReader extends BufferedReader {
+
+        private long charactersRead;
+
+        CountingReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public String readLine() throws IOException {
+            String line = super.readLine();
+            if (line != null) {
+                charactersRead += line.length() + NEWLINE.length();
+            }
+            return line;
+        }
+    }
+
+    /**
+     * Reader over the text columns of consecutive blocks, inflating one block at a time.
+     */
+    private final class TextReader extends Reader {
+
+        private final RandomAccessFile in;
+        private int block;
+        private Reader current;
+
+        TextReader(RandomAccessFile in, int block) {
+            this.in = in;
+            this.block = block;
+        }
+
+        @Override
+        public int read(char[] buffer, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            while (block < blocks.size()) {
+                if (current == null) {
+                    Block entry = blocks.get(block);
+                    current = new InputStreamReader(new InflaterInputStream(
+                            new ByteArrayInputStream(readFully(in, entry.textOffset, entry.textSize))), UTF_8);
+                }
+                int read = current.read(buffer, off, len);
+                if (read >= 0) {
+                    return read;
+                }
+                current.close();
+                current = null;
+                block++;
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+            }
+            in.close();
+        }
+    }
+}
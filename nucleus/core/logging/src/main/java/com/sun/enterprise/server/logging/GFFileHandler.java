@@ -37,7 +37,7 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-// Portions Copyright [2016-2019] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2016-2020] [Payara Foundation and/or its affiliates]
 
 package com.sun.enterprise.server.logging;
 
@@ -48,11 +48,20 @@ import com.sun.common.util.logging.LoggingOutputStream;
 import com.sun.enterprise.admin.monitor.callflow.Agent;
 import com.sun.enterprise.module.bootstrap.EarlyLogHandler;
 import com.sun.enterprise.util.LocalStringManagerImpl;
+import com.sun.enterprise.util.MpscRingBuffer;
+import com.sun.enterprise.server.logging.logviewer.backend.LogFileIndexer;
 import com.sun.enterprise.util.io.FileUtils;
 import com.sun.enterprise.v3.logging.AgentFormatterDelegate;
 import fish.payara.enterprise.server.logging.JSONLogFormatter;
 import fish.payara.enterprise.server.logging.PayaraNotificationLogRotationTimer;;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
 import java.security.PrivilegedAction;
 import java.text.FieldPosition;
 import java.text.ParseException;
@@ -61,7 +70,10 @@ import java.util.*;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.ErrorManager;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
@@ -137,6 +149,7 @@ public class GFFileHandler extends StreamHandler implements
     private Integer rotationLimitAttrValue;
     private Long rotationTimeLimitValue;
     private boolean compressionOnRotation;
+    private boolean columnarArchiveOnRotation;
     private boolean multiLineMode;
     private String fileHandlerFormatter = "";
     private String currentFileHandlerFormatter = "";
@@ -152,6 +165,40 @@ public class GFFileHandler extends StreamHandler implements
 
     private BlockingQueue<LogRecord> pendingRecords = new ArrayBlockingQueue<>(10000);
 
+    /**
+     * What to do with a record published while the ring buffer of the asynchronous write mode is full.
+     */
+    public enum OverflowPolicy {
+        /** Wait for the log pump to free a slot, the default. */
+        BLOCK,
+        /** Drop the record, the number of dropped records is reported in the log. */
+        DROP,
+        /**
+         * Keep the record in an overflow buffer, as large as the ring buffer, that is written once the pump
+         * catches up. Records are dropped like with {@link #DROP} while the overflow buffer is full too.
+         */
+        SPILL
+    }
+
+    private static final int DEFAULT_RING_BUFFER_CAPACITY = 16384;
+    private static final int MAX_BATCH_SIZE = 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_WRITE_BUFFERS = 16;
+    private static final long PUMP_IDLE_WAIT_MILLIS = 100;
+    private static final long PUMP_STOP_TIMEOUT_MILLIS = 5000;
+
+    /** Replaces {@link #pendingRecords} when the asynchronous write mode is enabled with {@code asyncRingBuffer}. */
+    private MpscRingBuffer<LogRecord> ringBuffer;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+    /** Overflow buffer of the {@link OverflowPolicy#SPILL} policy. */
+    private MpscRingBuffer<LogRecord> spilledRecords;
+    private final LongAdder droppedRecords = new LongAdder();
+    private long reportedDroppedRecords;
+
+    /** Direct buffers the batches are encoded into, only used while holding the handler monitor. */
+    private final Deque<ByteBuffer> writeBufferPool = new ArrayDeque<>();
+    private FileChannel fileChannel;
+
     /**Rotation can be done in 3 ways: <ol>
      * <li> Based on the Size: Rotate when some Threshold number of bytes are
      *    written to server.log </li>
@@ -238,6 +285,10 @@ public class GFFileHandler extends StreamHandler implements
             currentFileHandlerFormatter = "com.sun.enterprise.server.logging.UniformLogFormatter";
         }
 
+        if (Boolean.parseBoolean(manager.getProperty(className + ".asyncRingBuffer"))) {
+            configureRingBuffer();
+        }
+
         String propertyValue = manager.getProperty(className + ".logtoFile");
         boolean logToFile = true;
         if (propertyValue != null) {
@@ -298,6 +349,12 @@ public class GFFileHandler extends StreamHandler implements
         if (propertyValue != null) {
             compressionOnRotation = Boolean.parseBoolean(propertyValue);
         }
+
+        propertyValue = manager.getProperty(className + ".columnarArchiveOnRotation");
+        columnarArchiveOnRotation = false;
+        if (propertyValue != null) {
+            columnarArchiveOnRotation = Boolean.parseBoolean(propertyValue);
+        }
    
         propertyValue = manager.getProperty(className + ".logStandardStreams");
         if (propertyValue != null) {
@@ -325,6 +382,43 @@ public class GFFileHandler extends StreamHandler implements
 
     }
 
+    private void configureRingBuffer() {
+        int capacity = DEFAULT_RING_BUFFER_CAPACITY;
+        String propertyValue = manager.getProperty(className + ".ringBufferCapacity");
+        if (propertyValue != null) {
+            try {
+                capacity = Integer.parseInt(propertyValue);
+            } catch (NumberFormatException e) {
+                logInvalidAttributeValue(propertyValue, "ringBufferCapacity");
+            }
+        }
+        if (capacity <= 0) {
+            capacity = DEFAULT_RING_BUFFER_CAPACITY;
+        }
+
+        propertyValue = manager.getProperty(className + ".overflowPolicy");
+        if (propertyValue != null) {
+            try {
+                overflowPolicy = OverflowPolicy.valueOf(propertyValue.trim().toUpperCase(Locale.ENGLISH));
+            } catch (IllegalArgumentException e) {
+                logInvalidAttributeValue(propertyValue, "overflowPolicy");
+            }
+        }
+        ringBuffer = new MpscRingBuffer<>(capacity);
+        if (overflowPolicy == OverflowPolicy.SPILL) {
+            spilledRecords = new MpscRingBuffer<>(capacity);
+        }
+    }
+
+    private void logInvalidAttributeValue(String propertyValue, String attribute) {
+        logRecord = new LogRecord(Level.WARNING, LogFacade.INVALID_ATTRIBUTE_VALUE);
+        logRecord.setParameters(new Object[]{propertyValue, attribute});
+        logRecord.setResourceBundle(ResourceBundle.getBundle(LogFacade.LOGGING_RB_NAME));
+        logRecord.setThreadID((int) Thread.currentThread().getId());
+        logRecord.setLoggerName(LogFacade.LOGGING_LOGGER_NAME);
+        EarlyLogHandler.earlyMessages.add(logRecord);
+    }
+
     private void configureLogFormatter(String formatterName, String excludeFields, boolean multiLineMode) {
         if (UniformLogFormatter.class.getName().equals(formatterName)) {
             configureUniformLogFormatter(excludeFields, multiLineMode);
@@ -614,7 +708,17 @@ public class GFFileHandler extends StreamHandler implements
         }
 
         done.tryReleaseShared(1);
-        if (pump != null) {
+        if (pump != null && ringBuffer != null) {
+            // An interrupt would close the file channel of the asynchronous write mode. The pump stops by itself
+            // once it has written the current batch, the records left are drained once it has stopped so that
+            // batches are never written out of order by two consumers.
+            if (!stopPump()) {
+                new ErrorManager().error("GFFileHandler: The log pump did not stop in time. Pending log records lost.",
+                        null, ErrorManager.GENERIC_FAILURE);
+                flush();
+                return;
+            }
+        } else if (pump != null) {
             pump.interrupt();
         }
 
@@ -623,6 +727,21 @@ public class GFFileHandler extends StreamHandler implements
         flush();
     }
 
+    /**
+     * Wakes the pump of the asynchronous write mode up and waits until it has stopped.
+     *
+     * @return true if the pump stopped
+     */
+    private boolean stopPump() {
+        LockSupport.unpark(pump);
+        try {
+            pump.join(PUMP_STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return !pump.isAlive();
+    }
+
     private void drainAllPendingRecords() {
         drainPendingRecords(0);
     }
@@ -633,6 +752,14 @@ public class GFFileHandler extends StreamHandler implements
      * @param flushAmount number of records to drain from the queue of pending records.
      */
     private void drainPendingRecords(int flushAmount) {
+        if (ringBuffer != null) {
+            List<LogRecord> batch = new ArrayList<>();
+            while (drainBatch(batch) > 0) {
+                writeBatch(batch);
+                batch.clear();
+            }
+            return;
+        }
         if (!pendingRecords.isEmpty()) {
             Collection<LogRecord> records;
             if (flushAmount > 0) {
@@ -781,6 +908,7 @@ public class GFFileHandler extends StreamHandler implements
         BufferedOutputStream bout = new BufferedOutputStream(fout);
         meter = new MeteredStream(bout, file.length());
         setOutputStream(meter);
+        fileChannel = fout.getChannel();
     }
 
     /**
@@ -888,7 +1016,14 @@ public class GFFileHandler extends StreamHandler implements
                                 // will be restarted if there is a value set
                                 // for time based log rotation
                                 restartTimeBasedLogRotation();
-                                if (compressionOnRotation) {
+                                File archivedFile = columnarArchiveOnRotation ? archiveFile(rotatedFile) : null;
+                                if (archivedFile != null) {
+                                    boolean deleted = rotatedFile.delete();
+                                    if (!deleted) {
+                                        throw new IOException("Could not delete archived log file: "
+                                                + rotatedFile.getAbsolutePath());
+                                    }
+                                } else if (compressionOnRotation) {
                                     boolean compressed = gzipFile(rotatedFile);
                                     if (compressed) {
                                         boolean deleted = rotatedFile.delete();
@@ -903,6 +1038,12 @@ public class GFFileHandler extends StreamHandler implements
                                 }
 
                                 cleanUpHistoryLogFiles();
+                                if (archivedFile != null) {
+                                    LogFileIndexer.getInstance().index(archivedFile);
+                                } else {
+                                    LogFileIndexer.getInstance().index(compressionOnRotation
+                                            ? new File(rotatedFile.getCanonicalPath() + GZIP_EXTENSION) : rotatedFile);
+                                }
                             }
                         } catch (IOException ix) {
                             new ErrorManager().error("Error, could not rotate log file", ix, ErrorManager.GENERIC_FAILURE);
@@ -940,7 +1081,9 @@ public class GFFileHandler extends StreamHandler implements
      */
     public void log() {
 
-        if (logToFile) {
+        if (logToFile && ringBuffer != null) {
+            logBatch();
+        } else if (logToFile) {
             LogRecord record;
 
             // take is blocking so we take one record off the queue
@@ -957,20 +1100,185 @@ public class GFFileHandler extends StreamHandler implements
             }
 
             flush();
-            if ((rotationRequested.get())
-                    || ((limitForFileRotation > 0)
-                    && (meter.written >= limitForFileRotation))) {
-                // If we have written more than the limit set for the
-                // file, or rotation requested from the Timer Task or LogMBean
-                // start fresh with a new file after renaming the old file.
-                synchronized (rotationLock) {
-                    rotate();
-                    rotationRequested.set(false);
+            rotateIfRequired();
+        }
+    }
+
+    private void rotateIfRequired() {
+        if ((rotationRequested.get())
+                || ((limitForFileRotation > 0)
+                && (meter.written >= limitForFileRotation))) {
+            // If we have written more than the limit set for the
+            // file, or rotation requested from the Timer Task or LogMBean
+            // start fresh with a new file after renaming the old file.
+            synchronized (rotationLock) {
+                rotate();
+                rotationRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Asynchronous write mode: takes a batch of records off the ring buffer, or waits for some,
+     * and writes the batch with a single gather write.
+     */
+    private void logBatch() {
+        List<LogRecord> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        if (drainBatch(batch) == 0) {
+            try {
+                ringBuffer.awaitElements(PUMP_IDLE_WAIT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (drainBatch(batch) == 0) {
+                return;
+            }
+        }
+        writeBatch(batch);
+        reportDroppedRecords();
+        rotateIfRequired();
+    }
+
+    private int drainBatch(List<LogRecord> batch) {
+        int drained = ringBuffer.drainTo(batch, MAX_BATCH_SIZE);
+        if (spilledRecords != null && drained < MAX_BATCH_SIZE) {
+            drained += spilledRecords.drainTo(batch, MAX_BATCH_SIZE - drained);
+        }
+        return drained;
+    }
+
+    /**
+     * Formats the records into pooled direct buffers and appends them to the log file with one gather write.
+     * Falls back to the stream of the handler while no file channel is open.
+     */
+    private synchronized void writeBatch(List<LogRecord> batch) {
+        FileChannel channel = fileChannel;
+        if (channel == null || !channel.isOpen()) {
+            for (LogRecord record : batch) {
+                super.publish(record);
+            }
+            return;
+        }
+
+        // anything still buffered by the stream handler has to be in the file first
+        super.flush();
+
+        String encoding = getEncoding();
+        CharsetEncoder encoder = (encoding == null ? Charset.defaultCharset() : Charset.forName(encoding)).newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        List<ByteBuffer> buffers = new ArrayList<>();
+        buffers.add(takeWriteBuffer());
+        try {
+            for (LogRecord record : batch) {
+                if (!isLoggable(record)) {
+                    continue;
+                }
+                String message;
+                try {
+                    message = getFormatter().format(record);
+                } catch (Exception e) {
+                    reportError(null, e, ErrorManager.FORMAT_FAILURE);
+                    continue;
+                }
+                encode(encoder, message, buffers);
+            }
+
+            ByteBuffer[] buffersToWrite = new ByteBuffer[buffers.size()];
+            long length = 0;
+            for (int i = 0; i < buffersToWrite.length; i++) {
+                buffersToWrite[i] = (ByteBuffer) buffers.get(i).flip();
+                length += buffersToWrite[i].remaining();
+            }
+            long written = 0;
+            while (written < length) {
+                written += channel.write(buffersToWrite);
+            }
+            meter.written += written;
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        } finally {
+            for (ByteBuffer buffer : buffers) {
+                if (writeBufferPool.size() < MAX_POOLED_WRITE_BUFFERS) {
+                    buffer.clear();
+                    writeBufferPool.push(buffer);
                 }
             }
         }
     }
 
+    private void encode(CharsetEncoder encoder, String message, List<ByteBuffer> buffers) {
+        CharBuffer chars = CharBuffer.wrap(message);
+        encoder.reset();
+        ByteBuffer buffer = buffers.get(buffers.size() - 1);
+        while (encoder.encode(chars, buffer, true) == CoderResult.OVERFLOW) {
+            buffer = takeWriteBuffer();
+            buffers.add(buffer);
+        }
+        while (encoder.flush(buffer) == CoderResult.OVERFLOW) {
+            buffer = takeWriteBuffer();
+            buffers.add(buffer);
+        }
+    }
+
+    private ByteBuffer takeWriteBuffer() {
+        ByteBuffer buffer = writeBufferPool.poll();
+        return buffer == null ? ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE) : buffer;
+    }
+
+    private void reportDroppedRecords() {
+        long dropped = droppedRecords.sum();
+        if (dropped > reportedDroppedRecords) {
+            new ErrorManager().error("GFFileHandler: Queue full. " + (dropped - reportedDroppedRecords)
+                    + " log records were dropped.", null, ErrorManager.GENERIC_FAILURE);
+            reportedDroppedRecords = dropped;
+        }
+    }
+
+    /**
+     * Returns the number of records dropped because the ring buffer was full and the overflow policy is
+     * {@link OverflowPolicy#DROP}, or {@link OverflowPolicy#SPILL} with a full overflow buffer too.
+     */
+    public long getDroppedRecordCount() {
+        return droppedRecords.sum();
+    }
+
+    /**
+     * Queues the record in the ring buffer of the asynchronous write mode, applying the overflow policy
+     * if it is full.
+     */
+    private void enqueue(LogRecord record) {
+        if (spilledRecords != null && !spilledRecords.isEmpty()) {
+            // stay behind the records already spilled until the pump has caught up
+            spill(record);
+            return;
+        }
+        if (ringBuffer.offer(record)) {
+            return;
+        }
+        switch (overflowPolicy) {
+            case DROP:
+                droppedRecords.increment();
+                break;
+            case SPILL:
+                spill(record);
+                break;
+            default:
+                try {
+                    ringBuffer.put(record);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    new ErrorManager().error("GFFileHandler: Waiting was interrupted. Log record lost.", e, ErrorManager.GENERIC_FAILURE);
+                }
+        }
+    }
+
+    private void spill(LogRecord record) {
+        if (!spilledRecords.offer(record)) {
+            droppedRecords.increment();
+        }
+    }
+
     /**
      * Publishes the logrecord storing it in our queue
      */
@@ -1004,7 +1312,9 @@ public class GFFileHandler extends StreamHandler implements
             recordWrapper.setThreadName(Thread.currentThread().getName());
         }
 
-        if (logToFile) {
+        if (logToFile && ringBuffer != null) {
+            enqueue(recordWrapper);
+        } else if (logToFile) {
             try {
                 pendingRecords.add(recordWrapper);
             } catch (IllegalStateException e) {
@@ -1076,6 +1386,20 @@ public class GFFileHandler extends StreamHandler implements
         return status;
     }
     
+    /**
+     * Converts a rotated log file into a columnar log archive.
+     *
+     * @return the archive, or null if the file could not be archived and has to be kept as it is
+     */
+    private File archiveFile(File rotatedFile) {
+        try {
+            return ColumnarLogArchive.archive(rotatedFile);
+        } catch (IOException ix) {
+            new ErrorManager().error("Error archiving log file", ix, ErrorManager.GENERIC_FAILURE);
+            return null;
+        }
+    }
+
     private void logStandardStreams() {
         // redirect stderr and stdout, a better way to do this
         //http://blogs.sun.com/nickstephen/entry/java_redirecting_system_out_and
@@ -1161,6 +1485,10 @@ public class GFFileHandler extends StreamHandler implements
         this.compressionOnRotation = compressionOnRotation;
     }
 
+    public synchronized void setColumnarArchiveOnRotation(boolean columnarArchiveOnRotation) {
+        this.columnarArchiveOnRotation = columnarArchiveOnRotation;
+    }
+
     public synchronized void setLogStandardStreams(boolean logStandardStreams) {
         this.logStandardStreams = logStandardStreams;
 
@@ -37,7 +37,7 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-// Portions Copyright [2016] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2016-2020] [Payara Foundation and/or its affiliates]
 
 package com.sun.enterprise.server.logging;
 
@@ -107,5 +107,14 @@ public class LogFormatHelper {
     public static boolean isCompressedFile(String filename) {
         return filename.endsWith(GZIP_EXTENSION);
     }
+
+    /**
+     * Determines whether the given file is a columnar log archive (name ends with .clog).
+     * @param filename
+     * @return
+     */
+    public static boolean isColumnarArchive(String filename) {
+        return filename.endsWith(ColumnarLogArchive.ARCHIVE_EXTENSION);
+    }
     
 }
@@ -37,7 +37,7 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-// Portions Copyright [2016-2019] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2016-2020] [Payara Foundation and/or its affiliates]
 
 package com.sun.enterprise.server.logging;
 
@@ -162,6 +162,7 @@ public class LogManagerService implements PostConstruct, PreDestroy, org.glassfi
     String fileHandlerFormatterDetail = "";
     String logFormatDateFormatDetail = "";
     String compressOnRotationDetail = "";
+    String columnarArchiveOnRotationDetail = "";
     String logStandardStreamsDetail = "";
     
     //Payara Notification Logging   
@@ -197,6 +198,7 @@ public class LogManagerService implements PostConstruct, PreDestroy, org.glassfi
     private static final String FILEHANDLER_FORMATTER_PROPERTY = "java.util.logging.FileHandler.formatter";
     private static final String LOGFORMAT_DATEFORMAT_PROPERTY = "com.sun.enterprise.server.logging.GFFileHandler.logFormatDateFormat";
     private static final String COMPRESS_ON_ROTATION_PROPERTY = "com.sun.enterprise.server.logging.GFFileHandler.compressOnRotation";
+    private static final String COLUMNAR_ARCHIVE_ON_ROTATION_PROPERTY = "com.sun.enterprise.server.logging.GFFileHandler.columnarArchiveOnRotation";
     private static final String LOG_STANDARD_STREAMS_PROPERTY = "com.sun.enterprise.server.logging.GFFileHandler.logStandardStreams";
     
     //Payara Notification Logging
@@ -750,6 +752,18 @@ public class LogManagerService implements PostConstruct, PreDestroy, org.glassfi
                                             }
                                         }
                                     }
+                                } else if (a.equals(COLUMNAR_ARCHIVE_ON_ROTATION_PROPERTY)) {
+                                    if (!val.equals(columnarArchiveOnRotationDetail)) {
+                                        columnarArchiveOnRotationDetail = val;
+                                        for (Handler handler : logMgr.getLogger("").getHandlers()) {
+                                            // only get the GFFileHandler
+                                            if (handler.getClass().equals(GFFileHandler.class)) {
+                                                gfFileHandler = (GFFileHandler) handler;
+                                                gfFileHandler.setColumnarArchiveOnRotation(Boolean.parseBoolean(columnarArchiveOnRotationDetail));
+                                                break;
+                                            }
+                                        }
+                                    }
                                 } else if (a.equals(LOG_STANDARD_STREAMS_PROPERTY)) {
                                     if (!val.equals(logStandardStreamsDetail)) {
                                         logStandardStreamsDetail = val;
@@ -998,6 +1012,7 @@ public class LogManagerService implements PostConstruct, PreDestroy, org.glassfi
         fileHandlerFormatterDetail = props.get(FILEHANDLER_FORMATTER_PROPERTY);
         logFormatDateFormatDetail = props.get(LOGFORMAT_DATEFORMAT_PROPERTY);
         compressOnRotationDetail = props.get(COMPRESS_ON_ROTATION_PROPERTY);
+        columnarArchiveOnRotationDetail = props.get(COLUMNAR_ARCHIVE_ON_ROTATION_PROPERTY);
         logStandardStreamsDetail = props.get(LOG_STANDARD_STREAMS_PROPERTY);
 
         //Payara Notification Logging
@@ -0,0 +1,142 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.enterprise.server.logging.commands;
+
+import com.sun.enterprise.config.serverbeans.Domain;
+import com.sun.enterprise.server.logging.logviewer.backend.LogFilter;
+import org.glassfish.api.ActionReport;
+import org.glassfish.api.I18n;
+import org.glassfish.api.Param;
+import org.glassfish.api.admin.*;
+import org.glassfish.hk2.api.PerLookup;
+import org.jvnet.hk2.annotations.Service;
+
+import javax.inject.Inject;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Runs a log viewer query against the log files of the instance it is executed on, so that the DAS
+ * does not have to download the whole log file of a remote instance to answer it. Each matching record
+ * is returned as a child of the top message part with the fields of the record as properties.
+ */
+@ExecuteOn({RuntimeType.INSTANCE})
+@Service(name = "_query-log-records")
+@PerLookup
+@CommandLock(CommandLock.LockType.NONE)
+@I18n("query.log.records")
+@RestEndpoints({
+    @RestEndpoint(configBean=Domain.class,
+        opType=RestEndpoint.OpType.GET,
+        path="_query-log-records",
+        description="_query-log-records")
+})
+public class InstanceQueryLogRecordsCommand implements AdminCommand {
+
+    /** Names of the record properties, in the order of the fields of a query result record. */
+    public static final String[] RECORD_PROPERTIES = {
+        "recordNumber", "loggedDateTime", "level", "product", "logger", "nameValuePairs", "messageId", "message"
+    };
+
+    @Param(optional = true)
+    private String logFileName;
+
+    @Param(optional = true, defaultValue = "-1")
+    private Long fromRecord;
+
+    @Param(optional = true, defaultValue = "true")
+    private Boolean next;
+
+    @Param(optional = true, defaultValue = "true")
+    private Boolean forward;
+
+    @Param(optional = true)
+    private Integer requestedCount;
+
+    @Param(optional = true, defaultValue = "-1")
+    private Long fromTime;
+
+    @Param(optional = true, defaultValue = "-1")
+    private Long toTime;
+
+    @Param(optional = true)
+    private String logLevel;
+
+    @Param(optional = true, defaultValue = "false")
+    private Boolean onlyLevel;
+
+    @Param(optional = true, separator = ',')
+    private List<String> modules;
+
+    @Param(optional = true)
+    private String anySearch;
+
+    @Inject
+    private LogFilter logFilter;
+
+    @Override
+    public void execute(AdminCommandContext context) {
+        ActionReport report = context.getActionReport();
+        AttributeList result = logFilter.getLogRecordsUsingQuery(logFileName, fromRecord, next, forward,
+                requestedCount, fromTime == -1 ? null : new Date(fromTime), toTime == -1 ? null : new Date(toTime),
+                logLevel, onlyLevel, modules, null, anySearch);
+
+        ActionReport.MessagePart topPart = report.getTopMessagePart();
+        if (result != null && result.size() > 1) {
+            List<?> records = (List<?>) ((Attribute) result.get(1)).getValue();
+            for (Object record : records) {
+                List<?> fields = (List<?>) record;
+                ActionReport.MessagePart recordPart = topPart.addChild();
+                for (int i = 0; i < RECORD_PROPERTIES.length && i < fields.size(); i++) {
+                    Object value = fields.get(i);
+                    if (value instanceof Date) {
+                        value = ((Date) value).getTime();
+                    }
+                    if (value != null) {
+                        recordPart.addProperty(RECORD_PROPERTIES[i], value.toString());
+                    }
+                }
+            }
+        }
+        report.setActionExitCode(ActionReport.ExitCode.SUCCESS);
+    }
+}
@@ -37,10 +37,11 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-// Portions Copyright [2016-2018] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2016-2020] [Payara Foundation and/or its affiliates]
 
 package com.sun.enterprise.server.logging.logviewer.backend;
 
+import com.sun.enterprise.server.logging.ColumnarLogArchive;
 import com.sun.enterprise.server.logging.LogFacade;
 import com.sun.enterprise.server.logging.LogFormatHelper;
 import com.sun.enterprise.server.logging.parser.LogParser;
@@ -50,6 +51,7 @@ import com.sun.enterprise.server.logging.parser.ParsedLogRecord;
 
 import java.io.*;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.zip.GZIPInputStream;
 
@@ -72,14 +74,13 @@ public class LogFile implements java.io.Serializable {
 
     private final long _indexSize = 10;
     private final String _logFileName;
-    private final List<Long> _recordIdx = new ArrayList<>();
+    private LogFileIndex _index;
 
     /**
      * Constructor
      */
     public LogFile(String name) {
         _logFileName = name;
-        _recordIdx.add(0L);
     }
 
     /**
@@ -104,6 +105,11 @@ public class LogFile implements java.io.Serializable {
             return null;
         }
 
+        if (startingRecord / getIndexSize() >= getIndex().getBlockCount()) {
+            // records may have been appended since the index was last built
+            buildLogFileIndex();
+        }
+
         // Open the file at the desired starting Record
         final long recordsToIgnore = (startingRecord % getIndexSize());
         return getFilePosition(startingRecord - recordsToIgnore).map(
@@ -158,21 +164,46 @@ public class LogFile implements java.io.Serializable {
     /**
      * This method builds the file index in the beginning.  The index is for
      * the beginning of every record after the size specified by '_indexSize'
-     * variable.
+     * variable. A stored index is used for rotated files, for the current
+     * log file only the records appended since the last call are parsed.
      */
     private synchronized void buildLogFileIndex() {
-        // Open the file and skip to the where we left off
-        final long startPos = _recordIdx.get(_recordIdx.size() - 1);
+        final File logFile = new File(getLogFileName());
+        if (_index == null) {
+            _index = LogFileIndex.load(logFile, (int) getIndexSize());
+            if (_index == null) {
+                _index = new LogFileIndex((int) getIndexSize());
+            }
+        }
+        if (_index.isUpToDate(logFile)) {
+            return;
+        }
+        if (logFile.length() < _index.getFileLength()) {
+            // The file has been rotated or truncated since it was indexed
+            _index = new LogFileIndex((int) getIndexSize());
+        }
+        if (LogFormatHelper.isColumnarArchive(logFile.getName())) {
+            buildArchiveIndex(logFile);
+            return;
+        }
+        final long fileLength = logFile.length();
+        final long fileLastModified = logFile.lastModified();
+
+        // Index the last block again, records may have been appended to it
+        final int startBlock = Math.max(_index.getBlockCount() - 1, 0);
+        final long startPos = _index.getBlockCount() == 0 ? 0 : _index.getBlock(startBlock).getPosition();
+        _index.truncate(startBlock);
+        // The reader starts one character before the requested position
+        final long readerPos = Math.max(startPos - 1, 0);
         final long localIndexSize = getIndexSize();
         getLogFileReader(startPos).ifPresent(
             rdr -> {
                 try (BufferedReader reader  = rdr) {
-                    File logFile = new File(getLogFileName());
                     LogParser logParser = LogParserFactory.getInstance().createLogParser(logFile);
                     if (logParser != null) {
                         logParser.parseLog(reader, new LogParserListener() {
 
-                            long recordNumber = (_recordIdx.size() - 1) * localIndexSize;
+                            long recordNumber = startBlock * localIndexSize;
 
                             @Override
                             public void outputSummary(BufferedWriter writer, Object... objects)
@@ -181,10 +212,7 @@ public class LogFile implements java.io.Serializable {
 
                             @Override
                             public void foundLogRecord(long position, ParsedLogRecord object) {
-                                long modIndex = recordNumber % localIndexSize;
-                                if (modIndex == 0) {
-                                    _recordIdx.add((startPos+position));
-                                }
+                                _index.add(recordNumber, readerPos + position, object);
                                 recordNumber++;
                             }
 
@@ -198,6 +226,66 @@ public class LogFile implements java.io.Serializable {
                 }
             }
         );
+        _index.setFileState(fileLength, fileLastModified);
+    }
+
+    /**
+     * Archives do not change and carry the timestamps, levels and loggers of their records in separate
+     * columns, so their index is built from these columns without reading the log text.
+     */
+    private void buildArchiveIndex(File archiveFile) {
+        final long fileLength = archiveFile.length();
+        final long fileLastModified = archiveFile.lastModified();
+        _index = new LogFileIndex((int) getIndexSize());
+        try {
+            ColumnarLogArchive archive = ColumnarLogArchive.open(archiveFile);
+            for (ColumnarLogArchive.Block block : archive.getBlocks()) {
+                ColumnarLogArchive.BlockRecords records = archive.readRecords(block);
+                long recordNumber = block.getFirstRecord();
+                long position = block.getTextPosition();
+                for (int i = 0; i < records.size(); i++) {
+                    _index.add(recordNumber++, position, records.getTimeMillis(i), records.getLevel(i),
+                            records.getLogger(i));
+                    position += records.getLength(i);
+                }
+            }
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+        _index.setFileState(fileLength, fileLastModified);
+    }
+
+    private synchronized LogFileIndex getIndex() {
+        if (_index == null) {
+            buildLogFileIndex();
+        }
+        return _index;
+    }
+
+    /**
+     * Builds the index if necessary and stores it next to the log file,
+     * used once the file has been rotated and will not change any more.
+     */
+    synchronized void storeIndex() throws IOException {
+        buildLogFileIndex();
+        _index.store(new File(getLogFileName()));
+    }
+
+    /**
+     * Returns the first record number at or after the given one that lies in
+     * an index block accepted by the filter.
+     */
+    synchronized long nextCandidateRecord(long fromRecord, Predicate<LogFileIndex.Block> filter) {
+        return getIndex().nextCandidateRecord(fromRecord, filter);
+    }
+
+    /**
+     * Returns the exclusive end of the last range of records before the given
+     * record number that lies in an index block accepted by the filter, 0 if
+     * there is none.
+     */
+    synchronized long previousCandidateEnd(long endRecord, Predicate<LogFileIndex.Block> filter) {
+        return getIndex().previousCandidateEnd(endRecord, filter);
     }
 
     /**
@@ -206,17 +294,12 @@ public class LogFile implements java.io.Serializable {
      * @return The file position.
      * @param    recordNumber    The Record Number
      */
-    private Optional<BufferedReader> getFilePosition(long recordNumber) {
-        // The index is stored from the second slot. i.e., if there
-        // are 100 records and the index will be on 20, 40, 60, 80, 100
-        // if the _indexSize is 20. We don't store '0' hence we subtract
-        // from 1 to get the right index
+    private synchronized Optional<BufferedReader> getFilePosition(long recordNumber) {
         int index = (int) (recordNumber / getIndexSize());
-        if (index > _recordIdx.size()-1) {
-            return Optional.empty();
+        if (index > getIndex().getBlockCount() - 1) {
+            return recordNumber == 0 ? getLogFileReader(0) : Optional.empty();
         }
-        Long filePosition = _recordIdx.get(index);
-        return getLogFileReader(filePosition);
+        return getLogFileReader(getIndex().getBlock(index).getPosition());
     }
 
     /**
@@ -226,6 +309,11 @@ public class LogFile implements java.io.Serializable {
     private Optional<BufferedReader> getLogFileReader(long fromFilePosition) {
         InputStream file = null;
         try {
+            if (LogFormatHelper.isColumnarArchive(getLogFileName())) {
+                // Archive positions are exact, the reader starts at the first character of the record
+                return Optional.of(new BufferedReader(
+                        ColumnarLogArchive.open(new File(getLogFileName())).openReader(fromFilePosition)));
+            }
             if (LogFormatHelper.isCompressedFile(getLogFileName())) {
                 file = new GZIPInputStream(new FileInputStream(getLogFileName()));
             } else {
@@ -267,7 +355,7 @@ public class LogFile implements java.io.Serializable {
      */
     public long getLastIndexNumber() {
         buildLogFileIndex();
-        return _recordIdx.size() - 1;
+        return _index.getBlockCount() - 1;
     }
 
     /**
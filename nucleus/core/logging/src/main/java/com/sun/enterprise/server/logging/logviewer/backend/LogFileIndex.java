@@ -0,0 +1,366 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.enterprise.server.logging.logviewer.backend;
+
+import com.sun.enterprise.server.logging.parser.ParsedLogRecord;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Sparse index of a log file. It keeps the position of every block of records and, per block, a summary of
+ * the timestamps, levels and loggers of its records, so that a query can skip the blocks that cannot match
+ * without parsing them.
+ * <p>
+ * Rotated log files do not change any more, their index is stored in the {@value #INDEX_DIRECTORY} directory
+ * next to them and reused for as long as the file length and modification time are unchanged.
+ */
+final class LogFileIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final String INDEX_DIRECTORY = ".logindex";
+    private static final String INDEX_EXTENSION = ".idx";
+    private static final int MAGIC = 0x4C474958;
+    private static final int FORMAT_VERSION = 1;
+
+    private final int blockSize;
+    private final List<Block> blocks = new ArrayList<>();
+    private long fileLength = -1;
+    private long fileLastModified = -1;
+
+    LogFileIndex(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    int getBlockCount() {
+        return blocks.size();
+    }
+
+    Block getBlock(int block) {
+        return blocks.get(block);
+    }
+
+    long getFileLength() {
+        return fileLength;
+    }
+
+    /**
+     * @return true if the index was built from the current content of the file
+     */
+    boolean isUpToDate(File logFile) {
+        return logFile.length() == fileLength && logFile.lastModified() == fileLastModified;
+    }
+
+    void setFileState(long length, long lastModified) {
+        fileLength = length;
+        fileLastModified = lastModified;
+    }
+
+    /**
+     * Drops the given block and all following ones so that they can be indexed again.
+     */
+    void truncate(int blockCount) {
+        while (blocks.size() > blockCount) {
+            blocks.remove(blocks.size() - 1);
+        }
+    }
+
+    /**
+     * Adds a record to the index, starting a new block every {@link #getBlockSize()} records.
+     */
+    void add(long recordNumber, long position, ParsedLogRecord record) {
+        add(recordNumber, position, record.getTimeMillis(), record.getLevel(), record.getLogger());
+    }
+
+    /**
+     * Adds a record of which only the summarised fields are known, as read from a log archive.
+     */
+    void add(long recordNumber, long position, long timeMillis, String level, String logger) {
+        if (recordNumber % blockSize == 0) {
+            blocks.add(new Block(position));
+        }
+        blocks.get(blocks.size() - 1).add(timeMillis, level, logger);
+    }
+
+    /**
+     * Returns the first record number at or after the given one in a block the filter accepts.
+     * Records past the indexed blocks are always candidates, so if no block can match this is the first
+     * record that has not been indexed.
+     */
+    long nextCandidateRecord(long fromRecord, Predicate<Block> filter) {
+        long candidate = Math.max(fromRecord, 0);
+        for (int block = (int) (candidate / blockSize); block < blocks.size(); block++) {
+            if (filter.test(blocks.get(block))) {
+                return Math.max(candidate, (long) block * blockSize);
+            }
+        }
+        return Math.max(candidate, (long) blocks.size() * blockSize);
+    }
+
+    /**
+     * Returns the exclusive end of the last candidate range before the given record number in a block the filter
+     * accepts, or 0 if none of the preceding blocks can match.
+     */
+    long previousCandidateEnd(long endRecord, Predicate<Block> filter) {
+        if (endRecord <= 0) {
+            return 0;
+        }
+        int block = (int) ((endRecord - 1) / blockSize);
+        if (block >= blocks.size()) {
+            return endRecord;
+        }
+        for (; block >= 0; block--) {
+            if (filter.test(blocks.get(block))) {
+                return Math.min(endRecord, (long) (block + 1) * blockSize);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Loads the stored index of the given log file.
+     *
+     * @return null if there is no index for the current content of the file
+     */
+    static LogFileIndex load(File logFile, int blockSize) {
+        File indexFile = getIndexFile(logFile);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readInt() != blockSize) {
+                return null;
+            }
+            LogFileIndex index = new LogFileIndex(blockSize);
+            index.setFileState(in.readLong(), in.readLong());
+            if (!index.isUpToDate(logFile)) {
+                return null;
+            }
+            int blockCount = in.readInt();
+            for (int i = 0; i < blockCount; i++) {
+                index.blocks.add(Block.read(in));
+            }
+            return index;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Stores the index next to the log file, replacing a previous one atomically.
+     */
+    void store(File logFile) throws IOException {
+        File indexFile = getIndexFile(logFile);
+        File directory = indexFile.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create log index directory " + directory);
+        }
+        File tempFile = new File(directory, indexFile.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(blockSize);
+            out.writeLong(fileLength);
+            out.writeLong(fileLastModified);
+            out.writeInt(blocks.size());
+            for (Block block : blocks) {
+                block.write(out);
+            }
+        }
+        if (!tempFile.renameTo(indexFile)) {
+            indexFile.delete();
+            if (!tempFile.renameTo(indexFile)) {
+                tempFile.delete();
+                throw new IOException("Could not store log index " + indexFile);
+            }
+        }
+    }
+
+    static File getIndexFile(File logFile) {
+        return new File(new File(logFile.getAbsoluteFile().getParentFile(), INDEX_DIRECTORY), logFile.getName() + INDEX_EXTENSION);
+    }
+
+    /**
+     * Deletes the stored indexes of log files that no longer exist in the given directory.
+     */
+    static void purgeStaleIndexes(File logDirectory) {
+        File[] indexFiles = new File(logDirectory, INDEX_DIRECTORY).listFiles();
+        if (indexFiles == null) {
+            return;
+        }
+        for (File indexFile : indexFiles) {
+            String name = indexFile.getName();
+            if (name.endsWith(INDEX_EXTENSION)
+                    && !new File(logDirectory, name.substring(0, name.length() - INDEX_EXTENSION.length())).exists()) {
+                indexFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Summary of a block of consecutive records.
+     */
+    static final class Block implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+        private static final int BLOOM_BITS = 256;
+
+        private final long position;
+        private long minTimeMillis = Long.MAX_VALUE;
+        private long maxTimeMillis = Long.MIN_VALUE;
+        private final Set<String> levels = new HashSet<>();
+        private boolean unknownLevel;
+        private final BitSet loggers = new BitSet(BLOOM_BITS);
+
+        Block(long position) {
+            this.position = position;
+        }
+
+        /**
+         * @return the position of the first record of the block, as used by {@link LogFile}
+         */
+        long getPosition() {
+            return position;
+        }
+
+        void add(long timeMillis, String level, String logger) {
+            minTimeMillis = Math.min(minTimeMillis, timeMillis);
+            maxTimeMillis = Math.max(maxTimeMillis, timeMillis);
+            if (level == null) {
+                unknownLevel = true;
+            } else {
+                levels.add(level);
+            }
+            if (logger != null) {
+                addToBloom(loggers, logger.trim());
+            }
+        }
+
+        /**
+         * @return false if no record of the block was logged between the given dates
+         */
+        boolean mayOverlap(Date fromDate, Date toDate) {
+            if (fromDate == null || toDate == null || minTimeMillis > maxTimeMillis) {
+                return true;
+            }
+            return maxTimeMillis >= fromDate.getTime() && minTimeMillis <= toDate.getTime();
+        }
+
+        /**
+         * @return false if no level logged in the block is accepted
+         */
+        boolean mayContainLevel(Predicate<String> levelFilter) {
+            if (unknownLevel) {
+                return true;
+            }
+            for (String level : levels) {
+                if (levelFilter.test(level)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return false if none of the given loggers logged in the block
+         */
+        boolean mayContainLogger(Collection<?> loggerNames) {
+            if (loggerNames == null || loggerNames.isEmpty()) {
+                return true;
+            }
+            for (Object loggerName : loggerNames) {
+                if (bloomContains(loggers, loggerName.toString().trim())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static void addToBloom(BitSet bloom, String value) {
+            int hash = value.hashCode();
+            bloom.set(hash & (BLOOM_BITS - 1));
+            bloom.set((hash >>> 16 ^ hash >>> 8) & (BLOOM_BITS - 1));
+        }
+
+        private static boolean bloomContains(BitSet bloom, String value) {
+            int hash = value.hashCode();
+            return bloom.get(hash & (BLOOM_BITS - 1)) && bloom.get((hash >>> 16 ^ hash >>> 8) & (BLOOM_BITS - 1));
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(position);
+            out.writeLong(minTimeMillis);
+            out.writeLong(maxTimeMillis);
+            out.writeBoolean(unknownLevel);
+            out.writeInt(levels.size());
+            for (String level : levels) {
+                out.writeUTF(level);
+            }
+            long[] words = loggers.toLongArray();
+            out.writeInt(words.length);
+            for (long word : words) {
+                out.writeLong(word);
+            }
+        }
+
+        static Block read(DataInputStream in) throws IOException {
+            Block block = new Block(in.readLong());
+            block.minTimeMillis = in.readLong();
+            block.maxTimeMillis = in.readLong();
+            block.unknownLevel = in.readBoolean();
+            int levelCount = in.readInt();
+            for (int i = 0; i < levelCount; i++) {
+                block.levels.add(in.readUTF());
+            }
+            long[] words = new long[in.readInt()];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = in.readLong();
+            }
+            block.loggers.or(BitSet.valueOf(words));
+            return block;
+        }
+    }
+}
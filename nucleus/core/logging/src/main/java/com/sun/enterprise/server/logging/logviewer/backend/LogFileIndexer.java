@@ -0,0 +1,88 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.enterprise.server.logging.logviewer.backend;
+
+import com.sun.enterprise.server.logging.LogFacade;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+/**
+ * Builds and stores the index of rotated log files in the background, so that log viewer queries on them
+ * can skip to the matching records straight away.
+ */
+public class LogFileIndexer {
+
+    private static final LogFileIndexer instance = new LogFileIndexer();
+
+    private final ExecutorService executor;
+
+    private LogFileIndexer() {
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "log-file-indexer");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    public static LogFileIndexer getInstance() {
+        return instance;
+    }
+
+    /**
+     * Schedules indexing of a log file that will not change any more, and removes the indexes
+     * of log files that have been deleted from the same directory.
+     */
+    public void index(final File logFile) {
+        executor.execute(() -> {
+            try {
+                new LogFile(logFile.getAbsolutePath()).storeIndex();
+                LogFileIndex.purgeStaleIndexes(logFile.getAbsoluteFile().getParentFile());
+            } catch (Exception e) {
+                if (LogFacade.LOGGING_LOGGER.isLoggable(Level.FINE)) {
+                    LogFacade.LOGGING_LOGGER.log(Level.FINE, "Could not index log file " + logFile, e);
+                }
+            }
+        });
+    }
+}
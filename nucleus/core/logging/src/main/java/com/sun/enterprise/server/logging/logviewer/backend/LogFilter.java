@@ -37,19 +37,25 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-// Portions Copyright [2017-2019] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2017-2020] [Payara Foundation and/or its affiliates]
 
 package com.sun.enterprise.server.logging.logviewer.backend;
 
 import com.sun.common.util.logging.LoggingConfigFactory;
+import com.sun.enterprise.admin.remote.RemoteRestAdminCommand;
+import com.sun.enterprise.admin.remote.ServerRemoteRestAdminCommand;
 import com.sun.enterprise.config.serverbeans.Cluster;
 import com.sun.enterprise.config.serverbeans.Domain;
 import com.sun.enterprise.config.serverbeans.Node;
 import com.sun.enterprise.config.serverbeans.Server;
 import com.sun.enterprise.server.logging.LogFacade;
+import com.sun.enterprise.server.logging.commands.InstanceQueryLogRecordsCommand;
 import com.sun.enterprise.util.StringUtils;
 import com.sun.enterprise.util.SystemPropertyConstants;
+import org.glassfish.api.ActionReport;
+import org.glassfish.api.admin.CommandException;
 import org.glassfish.api.admin.CommandRunner;
+import org.glassfish.api.admin.ParameterMap;
 import org.glassfish.api.admin.ServerEnvironment;
 import org.glassfish.api.logging.LogLevel;
 import org.glassfish.config.support.TranslatedConfigView;
@@ -62,6 +68,7 @@ import javax.management.AttributeList;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -201,10 +208,6 @@ public class LogFilter {
             }
         }
 
-        // TO DO: If the fromRecord count is zero and the fromDate entry is
-        // non-null, then the system should take advantage of file Indexing.
-        // It should move the file position to the marker where the DateTime
-        // query matches.
         try {
             return fetchRecordsUsingQuery(logFile, startingRecord, nxt, forwd,
                     reqCount, fromDate, toDate, logLevel,
@@ -409,6 +412,17 @@ public class LogFilter {
 
             } else {
 
+                if (nameValueMap == null || nameValueMap.isEmpty()) {
+                    try {
+                        // Answer the query on the instance itself rather than downloading its log file
+                        return queryInstanceLogRecords(targetServer, logFileName, fromRecord, next, forward,
+                                requestedCount, fromDate, toDate, logLevel, onlyLevel, listOfModules, anySearch);
+                    } catch (CommandException e) {
+                        LOGGER.log(Level.FINE, "Could not query log records on " + instanceName
+                                + ", downloading its log file instead", e);
+                    }
+                }
+
                 try {
                     // this code is used when the node is not local.
                     instanceLogFile = new LogFilterForInstance().downloadGivenInstanceLogFile(habitat, targetServer,
@@ -452,10 +466,6 @@ public class LogFilter {
             }
         }
 
-        // TO DO: If the fromRecord count is zero and the fromDate entry is
-        // non-null, then the system should take advantage of file Indexing.
-        // It should move the file position to the marker where the DateTime
-        // query matches.
         try {
             return fetchRecordsUsingQuery(logFile, startingRecord, nxt, forwd,
                     reqCount, fromDate, toDate, logLevel,
@@ -467,6 +477,68 @@ public class LogFilter {
     }
 
 
+    /**
+     * Runs the query on a remote instance with the {@code _query-log-records} command.
+     */
+    private AttributeList queryInstanceLogRecords(Server targetServer, String logFileName, Long fromRecord,
+            Boolean next, Boolean forward, Integer requestedCount, Date fromDate, Date toDate, String logLevel,
+            Boolean onlyLevel, List listOfModules, String anySearch) throws CommandException {
+        RemoteRestAdminCommand command = new ServerRemoteRestAdminCommand(habitat, "_query-log-records",
+                targetServer.getAdminHost(), targetServer.getAdminPort(), false, "admin", null, LOGGER);
+        ParameterMap parameters = new ParameterMap();
+        if (logFileName != null) {
+            parameters.add("logFileName", logFileName);
+        }
+        parameters.add("fromRecord", String.valueOf(fromRecord));
+        parameters.add("next", String.valueOf(next == null || next));
+        parameters.add("forward", String.valueOf(forward == null || forward));
+        if (requestedCount != null) {
+            parameters.add("requestedCount", String.valueOf(requestedCount));
+        }
+        parameters.add("fromTime", String.valueOf(fromDate == null ? -1 : fromDate.getTime()));
+        parameters.add("toTime", String.valueOf(toDate == null ? -1 : toDate.getTime()));
+        if (logLevel != null) {
+            parameters.add("logLevel", logLevel);
+        }
+        parameters.add("onlyLevel", String.valueOf(onlyLevel != null && onlyLevel));
+        if (listOfModules != null && !listOfModules.isEmpty()) {
+            StringBuilder modules = new StringBuilder();
+            for (Object module : listOfModules) {
+                if (modules.length() > 0) {
+                    modules.append(',');
+                }
+                modules.append(module);
+            }
+            parameters.add("modules", modules.toString());
+        }
+        if (anySearch != null) {
+            parameters.add("anySearch", anySearch);
+        }
+        command.executeCommand(parameters);
+
+        String[] names = InstanceQueryLogRecordsCommand.RECORD_PROPERTIES;
+        List<LogFile.LogEntry> results = new ArrayList<>();
+        ActionReport report = command.getActionReport();
+        if (report != null && report.getTopMessagePart().getChildren() != null) {
+            for (ActionReport.MessagePart recordPart : report.getTopMessagePart().getChildren()) {
+                Properties fields = recordPart.getProps();
+                LogFile.LogEntry entry = new LogFile.LogEntry(null, Long.parseLong(fields.getProperty(names[0], "-1")));
+                String loggedDateTime = fields.getProperty(names[1]);
+                if (loggedDateTime != null) {
+                    entry.setLoggedDateTime(new Date(Long.parseLong(loggedDateTime)));
+                }
+                entry.setLoggedLevel(fields.getProperty(names[2]));
+                entry.setLoggedProduct(fields.getProperty(names[3]));
+                entry.setLoggedLoggerName(fields.getProperty(names[4]));
+                entry.setLoggedNameValuePairs(fields.getProperty(names[5]));
+                entry.setMessageId(fields.getProperty(names[6], ""));
+                entry.setLoggedMessage(fields.getProperty(names[7]));
+                results.add(entry);
+            }
+        }
+        return convertResultsToTheStructure(results);
+    }
+
     /**
      * Internal method that will be called from getLogRecordsUsingQuery()
      */
@@ -505,11 +577,32 @@ public class LogFilter {
         // Make sure the module names are correct
         //updateModuleList(listOfModules);
 
+        // Blocks of records the index shows cannot match are skipped without parsing them
+        Predicate<LogFileIndex.Block> blockFilter = block -> block.mayOverlap(fromDate, toDate)
+                && block.mayContainLevel(level -> levelCheck(level, logLevel, onlyLevel))
+                && block.mayContainLogger(listOfModules);
+
         // Keep pulling records to search through until we get enough matches
         List results = new ArrayList();
         List records = null;
         LogFile.LogEntry entry = null;
         while (results.size() < requestedCount) {
+            if (forward) {
+                startingRecord = logFile.nextCandidateRecord(startingRecord, blockFilter);
+            } else {
+                long candidateEnd = logFile.previousCandidateEnd(startingRecord + searchChunkIncrement, blockFilter);
+                if (candidateEnd <= 0) {
+                    break;
+                }
+                if (candidateEnd < startingRecord + searchChunkIncrement) {
+                    startingRecord = candidateEnd - searchChunkIncrement;
+                    if (startingRecord < 0) {
+                        searchChunkIncrement += startingRecord;
+                        startingRecord = 0;
+                    }
+                }
+            }
+
             // The following will always return unfiltered forward records
             records = logFile.getLogEntries(
                     startingRecord, searchChunkIncrement);
@@ -37,7 +37,7 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-// Portions Copyright [2016] [Payara Foundation and/or its affiliates]
+// Portions Copyright [2016-2020] [Payara Foundation and/or its affiliates]
 
 package com.sun.enterprise.server.logging.parser;
 
@@ -48,6 +48,7 @@ import java.io.IOException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.sun.enterprise.server.logging.ColumnarLogArchive;
 import com.sun.enterprise.server.logging.LogFormatHelper;
 import com.sun.enterprise.util.LocalStringManagerImpl;
 import java.io.FileInputStream;
@@ -91,6 +92,8 @@ public class LogParserFactory {
         try {
             if (LogFormatHelper.isCompressedFile(logFile.getName())) {
                 reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(logFile))));
+            } else if (LogFormatHelper.isColumnarArchive(logFile.getName())) {
+                reader = new BufferedReader(ColumnarLogArchive.open(logFile).openReader(0));
             } else {
                 reader = new BufferedReader(new FileReader(logFile));
             }
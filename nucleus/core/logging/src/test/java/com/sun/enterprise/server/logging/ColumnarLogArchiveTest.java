@@ -0,0 +1,171 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.enterprise.server.logging;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.*;
+
+public class ColumnarLogArchiveTest {
+
+    private static final long START_MILLIS = 1577872800000L;
+    private static final int RECORDS = 2500;
+
+    private File logDirectory;
+    private File logFile;
+
+    @Before
+    public void createLogDirectory() throws IOException {
+        logDirectory = File.createTempFile("logarchive", "");
+        logDirectory.delete();
+        logDirectory.mkdirs();
+        logFile = new File(logDirectory, "server.log_2020-01-01T10-00-00");
+    }
+
+    @After
+    public void deleteLogDirectory() {
+        File[] files = logDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        logDirectory.delete();
+    }
+
+    @Test
+    public void archiveKeepsTheLogTextInBlocks() throws IOException {
+        String text = writeOdlRecords();
+        File archiveFile = ColumnarLogArchive.archive(logFile);
+        assertTrue(LogFormatHelper.isColumnarArchive(archiveFile.getName()));
+        assertTrue("Archive should be much smaller than the log file", archiveFile.length() * 4 < logFile.length());
+
+        ColumnarLogArchive archive = ColumnarLogArchive.open(archiveFile);
+        assertEquals(RECORDS, archive.getRecordCount());
+        assertEquals(text.length(), archive.getTextLength());
+        assertEquals(text, read(archive, 0));
+
+        List<ColumnarLogArchive.Block> blocks = archive.getBlocks();
+        assertEquals(3, blocks.size());
+        ColumnarLogArchive.Block second = blocks.get(1);
+        assertEquals(1000, second.getFirstRecord());
+        assertEquals(START_MILLIS + 1000 * 1000L, second.getMinTimeMillis());
+        assertEquals(START_MILLIS + 1999 * 1000L, second.getMaxTimeMillis());
+        assertTrue(second.getLevels().contains("SEVERE"));
+        assertFalse(blocks.get(0).getLevels().contains("SEVERE"));
+
+        ColumnarLogArchive.BlockRecords records = archive.readRecords(second);
+        assertEquals(1000, records.size());
+        assertEquals("logger.10", records.getLogger(0));
+        assertEquals(START_MILLIS + 1500 * 1000L, records.getTimeMillis(500));
+        assertEquals("SEVERE", records.getLevel(500));
+
+        long position = second.getTextPosition() + records.getLength(0);
+        assertEquals(text.substring((int) position), read(archive, position));
+    }
+
+    @Test
+    public void jsonRecordsAreArchivedPerLine() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1200; i++) {
+            text.append("{\"_Timestamp\":\"2020-01-01T10:00:00.000+0000\",\"_Level\":\"")
+                    .append(i == 1100 ? "WARNING" : "INFO").append("\",\"_LoggerName\":\"logger.").append(i % 3)
+                    .append("\",\"_TimeMillis\":\"").append(START_MILLIS + i).append("\",\"_LogMessage\":\"message ")
+                    .append(i).append("\"}").append(System.getProperty("line.separator"));
+        }
+        Files.write(logFile.toPath(), text.toString().getBytes(UTF_8));
+
+        ColumnarLogArchive archive = ColumnarLogArchive.open(ColumnarLogArchive.archive(logFile));
+        assertEquals(1200, archive.getRecordCount());
+        assertEquals(text.toString(), read(archive, 0));
+        ColumnarLogArchive.Block last = archive.getBlocks().get(1);
+        assertEquals(START_MILLIS + 1000, last.getMinTimeMillis());
+        assertTrue(last.getLevels().contains("WARNING"));
+        assertEquals("logger.1", archive.readRecords(last).getLogger(0));
+    }
+
+    @Test(expected = IOException.class)
+    public void textOutsideOfRecordsIsNotArchived() throws IOException {
+        String malformed = "[2020-01-01T10:00:00.000+0000] [truncated" + System.getProperty("line.separator");
+        Files.write(logFile.toPath(), (record(0) + malformed + record(1)).getBytes(UTF_8));
+        try {
+            ColumnarLogArchive.archive(logFile);
+        } finally {
+            assertFalse(new File(logFile.getPath() + ColumnarLogArchive.ARCHIVE_EXTENSION).exists());
+        }
+    }
+
+    private String writeOdlRecords() throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < RECORDS; i++) {
+            text.append(record(i));
+        }
+        Files.write(logFile.toPath(), text.toString().getBytes(UTF_8));
+        return text.toString();
+    }
+
+    private static String record(int i) {
+        String newline = System.getProperty("line.separator");
+        long millis = START_MILLIS + i * 1000L;
+        String level = i == 1500 ? "SEVERE" : "INFO";
+        return "[2020-01-01T10:00:00.000+0000] [Payara 5.201] [" + level + "] [] [logger." + (i / 100)
+                + "] [tid: _ThreadID=1 _ThreadName=main] [timeMillis: " + millis + "] [levelValue: 800] [[" + newline
+                + "  message " + i + "]]" + newline + newline;
+    }
+
+    private static String read(ColumnarLogArchive archive, long fromPosition) throws IOException {
+        StringBuilder text = new StringBuilder();
+        try (Reader reader = archive.openReader(fromPosition)) {
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, read);
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package com.sun.enterprise.server.logging.logviewer.backend;
+
+import com.sun.enterprise.server.logging.ColumnarLogArchive;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LogFileIndexTest {
+
+    private static final long START_MILLIS = 1577872800000L;
+
+    private File logDirectory;
+    private File logFile;
+
+    @Before
+    public void createLogFile() throws IOException {
+        logDirectory = File.createTempFile("logindex", "");
+        logDirectory.delete();
+        logDirectory.mkdirs();
+        logFile = new File(logDirectory, "server.log");
+        appendRecords(0, 35);
+    }
+
+    @After
+    public void deleteLogFile() {
+        new File(logDirectory, LogFileIndex.INDEX_DIRECTORY + File.separator + "server.log.idx").delete();
+        new File(logDirectory, LogFileIndex.INDEX_DIRECTORY + File.separator + "server.log.clog.idx").delete();
+        new File(logDirectory, LogFileIndex.INDEX_DIRECTORY).delete();
+        new File(logFile.getPath() + ColumnarLogArchive.ARCHIVE_EXTENSION).delete();
+        logFile.delete();
+        logDirectory.delete();
+    }
+
+    @Test
+    public void indexPointsToTheStartOfEachBlock() {
+        LogFile file = new LogFile(logFile.getAbsolutePath());
+        assertEquals(3, file.getLastIndexNumber());
+        for (long block = 0; block < 4; block++) {
+            List<?> entries = file.getLogEntries(block * 10, 1);
+            assertEquals(1, entries.size());
+            assertEquals("message " + block * 10, ((LogFile.LogEntry) entries.get(0)).getLoggedMessage());
+        }
+    }
+
+    @Test
+    public void blocksWithoutMatchingRecordsAreSkipped() {
+        LogFile file = new LogFile(logFile.getAbsolutePath());
+        Predicate<LogFileIndex.Block> severe = block -> block.mayContainLevel("SEVERE"::equals);
+        assertEquals(20, file.nextCandidateRecord(0, severe));
+        assertEquals(25, file.nextCandidateRecord(25, severe));
+        assertEquals(40, file.nextCandidateRecord(26, block -> false));
+        assertEquals(30, file.previousCandidateEnd(40, severe));
+        assertEquals(0, file.previousCandidateEnd(20, severe));
+
+        Predicate<LogFileIndex.Block> logger = block -> block.mayContainLogger(Collections.singletonList(" logger.3 "));
+        assertEquals(30, file.nextCandidateRecord(0, logger));
+
+        Predicate<LogFileIndex.Block> time = block -> block.mayOverlap(
+                new Date(START_MILLIS + 12 * 1000), new Date(START_MILLIS + 14 * 1000));
+        assertEquals(10, file.nextCandidateRecord(0, time));
+        assertEquals(40, file.nextCandidateRecord(20, time));
+    }
+
+    @Test
+    public void appendedRecordsAreIndexed() throws IOException {
+        LogFile file = new LogFile(logFile.getAbsolutePath());
+        assertEquals(3, file.getLastIndexNumber());
+        appendRecords(35, 50);
+        logFile.setLastModified(logFile.lastModified() + 2000);
+        assertEquals(4, file.getLastIndexNumber());
+        List<?> entries = file.getLogEntries(30, 20);
+        assertEquals(20, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals("message " + (30 + i), ((LogFile.LogEntry) entries.get(i)).getLoggedMessage());
+        }
+    }
+
+    @Test
+    public void storedIndexIsReused() throws IOException {
+        new LogFile(logFile.getAbsolutePath()).storeIndex();
+        LogFileIndex stored = LogFileIndex.load(logFile, 10);
+        assertNotNull(stored);
+        assertEquals(4, stored.getBlockCount());
+        assertEquals(20, stored.nextCandidateRecord(0, block -> block.mayContainLevel("SEVERE"::equals)));
+
+        appendRecords(35, 36);
+        logFile.setLastModified(logFile.lastModified() + 2000);
+        assertNull("Index of a modified file must not be used", LogFileIndex.load(logFile, 10));
+
+        logFile.delete();
+        LogFileIndex.purgeStaleIndexes(logDirectory);
+        assertFalse(LogFileIndex.getIndexFile(logFile).exists());
+    }
+
+    @Test
+    public void archiveIsIndexedFromItsColumns() throws IOException {
+        File archiveFile = ColumnarLogArchive.archive(logFile);
+        LogFile file = new LogFile(archiveFile.getAbsolutePath());
+        assertEquals(3, file.getLastIndexNumber());
+        List<?> entries = file.getLogEntries(8, 30);
+        assertEquals(27, entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            LogFile.LogEntry entry = (LogFile.LogEntry) entries.get(i);
+            assertEquals("message " + (8 + i), entry.getLoggedMessage());
+            assertEquals(new Date(START_MILLIS + (8 + i) * 1000L), entry.getLoggedDateTime());
+        }
+        assertEquals(20, file.nextCandidateRecord(0, block -> block.mayContainLevel("SEVERE"::equals)));
+        assertEquals(30, file.nextCandidateRecord(0,
+                block -> block.mayContainLogger(Collections.singletonList("logger.3"))));
+    }
+
+    private void appendRecords(int from, int to) throws IOException {
+        try (Writer writer = new FileWriter(logFile, true)) {
+            for (int i = from; i < to; i++) {
+                long millis = START_MILLIS + i * 1000L;
+                String level = i == 25 ? "SEVERE" : "INFO";
+                writer.write("[2020-01-01T10:00:00.000+0000] [Payara 5.201] [" + level + "] [] [logger." + (i / 10)
+                        + "] [tid: _ThreadID=1 _ThreadName=main] [timeMillis: " + millis + "] [levelValue: 800] [[\n"
+                        + "  message " + i + "]]\n\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,642 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.deployment.common;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.logging.Level;
+
+import org.glassfish.api.admin.ServerEnvironment;
+import org.glassfish.api.deployment.archive.ReadableArchive;
+import org.glassfish.internal.api.Globals;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypePath;
+
+import static org.glassfish.deployment.common.DeploymentContextImpl.deplLogger;
+
+/**
+ * The annotations used by the classes of a jar or directory: for each class the annotations of the type and all other
+ * annotations it uses, that is the annotations of its fields, methods and method parameters, annotations nested in
+ * annotation values and type annotations. Annotations are given by their descriptor, like
+ * {@code Ljavax/ejb/Stateless;}.
+ * <p>
+ * Scanning the bytecode of all classes of an archive is slow for large applications. The index of an archive deployed
+ * to the instance is therefore stored in the {@code generated/ejb/<application>/annotation-index} directory together
+ * with a digest of the names, checksums and sizes of the class entries. As long as the classes of an archive are
+ * unchanged restarts read the stored index instead of scanning the archive again. Each archive has a single index file
+ * which is replaced when its classes change, the directory is removed with the other generated files of the
+ * application when it is undeployed.
+ */
+public final class AnnotationScanIndex {
+
+    private static final int VERSION = 2;
+
+    private static final String INDEX_DIR = "annotation-index";
+
+    /**
+     * The code is read for the type annotations used in method bodies.
+     */
+    private static final int CLASS_READER_FLAGS = ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES;
+
+    private static final int[] NONE = new int[0];
+
+    /**
+     * Internal names of the annotated classes
+     */
+    private final String[] classNames;
+    /**
+     * Descriptors of all annotations used, the annotations of the classes are positions in this array
+     */
+    private final String[] annotations;
+    private final int[][] typeAnnotations;
+    private final int[][] otherAnnotations;
+
+    private AnnotationScanIndex(String[] classNames, String[] annotations, int[][] typeAnnotations,
+            int[][] otherAnnotations) {
+        this.classNames = classNames;
+        this.annotations = annotations;
+        this.typeAnnotations = typeAnnotations;
+        this.otherAnnotations = otherAnnotations;
+    }
+
+    /**
+     * @return the number of classes using annotations
+     */
+    public int size() {
+        return classNames.length;
+    }
+
+    /**
+     * @param descriptors annotation descriptors
+     * @return true if any class is annotated with one of the given annotations
+     */
+    public boolean hasTypeAnnotation(Collection<String> descriptors) {
+        for (int i = 0; i < annotations.length; i++) {
+            if (descriptors.contains(annotations[i]) && isTypeAnnotation(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param isAnnotation test for the annotation descriptors of interest
+     * @return true if any class uses an annotation of interest, anywhere in the class
+     */
+    public boolean hasAnnotation(Predicate<String> isAnnotation) {
+        for (String annotation : annotations) {
+            if (isAnnotation.test(annotation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param descriptor an annotation descriptor
+     * @return the names of the classes using the annotation, anywhere in the class
+     */
+    public Set<String> getAnnotatedClasses(String descriptor) {
+        int annotation = Arrays.asList(annotations).indexOf(descriptor);
+        if (annotation < 0) {
+            return new LinkedHashSet<>();
+        }
+        Set<String> annotatedClasses = new LinkedHashSet<>();
+        for (int i = 0; i < classNames.length; i++) {
+            if (contains(typeAnnotations[i], annotation) || contains(otherAnnotations[i], annotation)) {
+                annotatedClasses.add(classNames[i].replace('/', '.'));
+            }
+        }
+        return annotatedClasses;
+    }
+
+    private boolean isTypeAnnotation(int annotation) {
+        for (int[] annotationsOfType : typeAnnotations) {
+            if (contains(annotationsOfType, annotation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the index of an archive that is a jar file or a directory deployed to the application repository of the
+     * instance. The index is stored in the generated directory of the application.
+     * <p>
+     * Archives outside of the application repository, like directory deployments or uploaded archives that are not
+     * yet expanded, are not indexed. Building an index that is not stored costs more than a scan stopping at the first
+     * annotation found, so callers scan such archives themselves.
+     *
+     * @return the index, or null if the archive is not deployed to the application repository or is neither a jar
+     *         file nor a directory
+     */
+    public static AnnotationScanIndex of(ReadableArchive archive) {
+        if (archive == null || archive.getURI() == null || !"file".equals(archive.getURI().getScheme())) {
+            return null;
+        }
+        File file = new File(archive.getURI());
+        File indexDir = getIndexDir(file);
+        if (indexDir == null) {
+            return null;
+        }
+        return of(archive, file, indexDir);
+    }
+
+    static AnnotationScanIndex of(ReadableArchive archive, File file, File indexDir) {
+        try {
+            if (file.isDirectory()) {
+                // the entries of the archive leave out stale files of an earlier deployment
+                List<String> classEntries = new ArrayList<>();
+                Enumeration<String> entries = archive.entries();
+                while (entries.hasMoreElements()) {
+                    String entryName = entries.nextElement();
+                    if (entryName.endsWith(".class")) {
+                        classEntries.add(entryName);
+                    }
+                }
+                Collections.sort(classEntries);
+                return of(file, classEntries, indexDir);
+            }
+            return of(file, indexDir);
+        } catch (IOException | RuntimeException e) {
+            deplLogger.log(Level.FINE, "Cannot index annotations of " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Get the index of a jar file or directory, reading it from the index directory if it was stored before. A newly
+     * scanned index is stored in the index directory replacing the earlier index of the archive.
+     *
+     * @param archive a jar file or a directory
+     * @param indexDir the directory indexes are stored in, or null to always scan the archive
+     * @return the index, or null if the archive is neither a jar file nor a directory
+     */
+    public static AnnotationScanIndex of(File archive, File indexDir) throws IOException {
+        if (archive.isDirectory()) {
+            List<String> classEntries = new ArrayList<>();
+            collectClassEntries(archive, "", classEntries);
+            return of(archive, classEntries, indexDir);
+        }
+        if (!archive.isFile()) {
+            return null;
+        }
+        try (JarFile jar = new JarFile(archive)) {
+            List<JarEntry> classEntries = new ArrayList<>();
+            Enumeration<JarEntry> entries = jar.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (entry.getName().endsWith(".class")) {
+                    classEntries.add(entry);
+                }
+            }
+            File indexFile = indexFileOf(archive, indexDir);
+            String digest = digestOf(classEntries);
+            AnnotationScanIndex index = load(indexFile, digest);
+            if (index == null) {
+                Scan scan = new Scan();
+                for (JarEntry entry : classEntries) {
+                    try (InputStream in = jar.getInputStream(entry)) {
+                        scan.add(in, entry.getName());
+                    }
+                }
+                index = scan.toIndex();
+                store(index, digest, indexFile);
+            }
+            return index;
+        }
+    }
+
+    private static AnnotationScanIndex of(File dir, List<String> classEntries, File indexDir) throws IOException {
+        File indexFile = indexFileOf(dir, indexDir);
+        String digest = digestOf(dir, classEntries);
+        AnnotationScanIndex index = load(indexFile, digest);
+        if (index == null) {
+            Scan scan = new Scan();
+            for (String entryName : classEntries) {
+                try (InputStream in = new BufferedInputStream(Files.newInputStream(new File(dir, entryName).toPath()))) {
+                    scan.add(in, entryName);
+                }
+            }
+            index = scan.toIndex();
+            store(index, digest, indexFile);
+        }
+        return index;
+    }
+
+    /**
+     * The index directory of an archive within the application repository of the instance, that is
+     * {@code generated/ejb/<application>/annotation-index}. Other archives are not indexed as there would be nothing
+     * that removes their index files.
+     */
+    private static File getIndexDir(File archive) {
+        if (Globals.getDefaultHabitat() == null) {
+            return null;
+        }
+        ServerEnvironment env = Globals.getDefaultHabitat().getService(ServerEnvironment.class);
+        if (env == null) {
+            return null;
+        }
+        Path repository = env.getApplicationRepositoryPath().toPath().toAbsolutePath().normalize();
+        Path path = archive.toPath().toAbsolutePath().normalize();
+        if (!path.startsWith(repository) || path.getNameCount() <= repository.getNameCount()) {
+            return null;
+        }
+        String appDirName = path.getName(repository.getNameCount()).toString();
+        if (appDirName.startsWith("__")) {
+            return null; // internal directories like __internal are not cleaned with the application
+        }
+        return new File(new File(env.getApplicationEJBStubPath(), appDirName), INDEX_DIR);
+    }
+
+    private static File indexFileOf(File archive, File indexDir) {
+        if (indexDir == null) {
+            return null;
+        }
+        MessageDigest digest = newDigest();
+        update(digest, archive.getAbsolutePath());
+        return new File(indexDir, toHex(digest.digest()) + ".idx");
+    }
+
+    private static void collectClassEntries(File dir, String prefix, List<String> classEntries) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            if (file.isDirectory()) {
+                collectClassEntries(file, prefix + file.getName() + '/', classEntries);
+            } else if (file.getName().endsWith(".class")) {
+                classEntries.add(prefix + file.getName());
+            }
+        }
+    }
+
+    private static String digestOf(File dir, List<String> classEntries) {
+        MessageDigest digest = newDigest();
+        for (String entryName : classEntries) {
+            File classFile = new File(dir, entryName);
+            update(digest, entryName);
+            update(digest, classFile.length());
+            update(digest, classFile.lastModified());
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String digestOf(List<JarEntry> classEntries) {
+        MessageDigest digest = newDigest();
+        for (JarEntry entry : classEntries) {
+            update(digest, entry.getName());
+            update(digest, entry.getCrc());
+            update(digest, entry.getSize());
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static void update(MessageDigest digest, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            digest.update((byte) (value >>> shift));
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return the stored index if it was created for the classes with the given digest, otherwise null
+     */
+    private static AnnotationScanIndex load(File indexFile, String digest) {
+        if (indexFile == null || !indexFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile.toPath())))) {
+            if (in.readInt() != VERSION || !digest.equals(in.readUTF())) {
+                return null;
+            }
+            String[] annotations = new String[in.readInt()];
+            for (int i = 0; i < annotations.length; i++) {
+                annotations[i] = in.readUTF();
+            }
+            int size = in.readInt();
+            String[] classNames = new String[size];
+            int[][] typeAnnotations = new int[size][];
+            int[][] otherAnnotations = new int[size][];
+            for (int i = 0; i < size; i++) {
+                classNames[i] = in.readUTF();
+                typeAnnotations[i] = readPositions(in, annotations.length);
+                otherAnnotations[i] = readPositions(in, annotations.length);
+            }
+            return new AnnotationScanIndex(classNames, annotations, typeAnnotations, otherAnnotations);
+        } catch (IOException | RuntimeException e) {
+            deplLogger.log(Level.FINE, "Ignoring unreadable annotation index " + indexFile, e);
+            return null;
+        }
+    }
+
+    private static int[] readPositions(DataInputStream in, int bound) throws IOException {
+        int[] positions = new int[in.readInt()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = in.readInt();
+            if (positions[i] < 0 || positions[i] >= bound) {
+                throw new IOException("Corrupt annotation index");
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * Stores the index, writing to a temporary file first so concurrent readers never see a partial index.
+     */
+    private static void store(AnnotationScanIndex index, String digest, File indexFile) {
+        if (indexFile == null) {
+            return;
+        }
+        try {
+            File dir = indexFile.getParentFile();
+            if (!dir.isDirectory() && !dir.mkdirs()) {
+                throw new IOException("Cannot create " + dir);
+            }
+            File temp = File.createTempFile(indexFile.getName(), ".tmp", dir);
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp.toPath())))) {
+                    out.writeInt(VERSION);
+                    out.writeUTF(digest);
+                    out.writeInt(index.annotations.length);
+                    for (String annotation : index.annotations) {
+                        out.writeUTF(annotation);
+                    }
+                    out.writeInt(index.classNames.length);
+                    for (int i = 0; i < index.classNames.length; i++) {
+                        out.writeUTF(index.classNames[i]);
+                        writePositions(out, index.typeAnnotations[i]);
+                        writePositions(out, index.otherAnnotations[i]);
+                    }
+                }
+                Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp.toPath());
+            }
+        } catch (IOException e) {
+            deplLogger.log(Level.FINE, "Cannot store annotation index " + indexFile, e);
+        }
+    }
+
+    private static void writePositions(DataOutputStream out, int[] positions) throws IOException {
+        out.writeInt(positions.length);
+        for (int position : positions) {
+            out.writeInt(position);
+        }
+    }
+
+    /**
+     * Collects the annotations of the classes of an archive.
+     */
+    private static final class Scan extends ClassVisitor {
+
+        private final Map<String, Integer> annotations = new HashMap<>();
+        private final List<String> classNames = new ArrayList<>();
+        private final List<int[]> typeAnnotations = new ArrayList<>();
+        private final List<int[]> otherAnnotations = new ArrayList<>();
+
+        private final Set<Integer> typeAnnotationsOfClass = new LinkedHashSet<>();
+        private final Set<Integer> otherAnnotationsOfClass = new LinkedHashSet<>();
+
+        /**
+         * Records annotations nested in annotation values, like the {@code @Resource} in
+         * {@code @Resources({@Resource(...)})}.
+         */
+        private final AnnotationVisitor valueVisitor = new AnnotationVisitor(Opcodes.ASM5) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String name, String desc) {
+                return other(desc);
+            }
+
+            @Override
+            public AnnotationVisitor visitArray(String name) {
+                return this;
+            }
+        };
+
+        private final FieldVisitor fieldVisitor = new FieldVisitor(Opcodes.ASM5) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                return other(desc);
+            }
+
+            @Override
+            public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc,
+                    boolean visible) {
+                return other(desc);
+            }
+        };
+
+        private final MethodVisitor methodVisitor = new MethodVisitor(Opcodes.ASM5) {
+            @Override
+            public AnnotationVisitor visitAnnotationDefault() {
+                return valueVisitor;
+            }
+
+            @Override
+            public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+                return other(desc);
+            }
+
+            @Override
+            public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc,
+                    boolean visible) {
+                return other(desc);
+            }
+
+            @Override
+            public AnnotationVisitor visitParameterAnnotation(int parameter, String desc, boolean visible) {
+                return other(desc);
+            }
+
+            @Override
+            public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String desc,
+                    boolean visible) {
+                return other(desc);
+            }
+
+            @Override
+            public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String desc,
+                    boolean visible) {
+                return other(desc);
+            }
+
+            @Override
+            public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start,
+                    Label[] end, int[] index, String desc, boolean visible) {
+                return other(desc);
+            }
+        };
+
+        Scan() {
+            super(Opcodes.ASM5);
+        }
+
+        void add(InputStream classFile, String entryName) {
+            typeAnnotationsOfClass.clear();
+            otherAnnotationsOfClass.clear();
+            try {
+                ClassReader reader = new ClassReader(classFile);
+                reader.accept(this, CLASS_READER_FLAGS);
+                if (!typeAnnotationsOfClass.isEmpty() || !otherAnnotationsOfClass.isEmpty()) {
+                    classNames.add(reader.getClassName());
+                    typeAnnotations.add(toArray(typeAnnotationsOfClass));
+                    otherAnnotations.add(toArray(otherAnnotationsOfClass));
+                }
+            } catch (IOException | RuntimeException e) {
+                deplLogger.log(Level.FINE, "Exception while scanning " + entryName, e);
+            }
+        }
+
+        @Override
+        public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
+            typeAnnotationsOfClass.add(positionOf(desc));
+            return valueVisitor;
+        }
+
+        @Override
+        public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String desc, boolean visible) {
+            return other(desc);
+        }
+
+        @Override
+        public FieldVisitor visitField(int access, String name, String desc, String signature, Object value) {
+            return fieldVisitor;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature,
+                String[] exceptions) {
+            return methodVisitor;
+        }
+
+        private AnnotationVisitor other(String desc) {
+            otherAnnotationsOfClass.add(positionOf(desc));
+            return valueVisitor;
+        }
+
+        private Integer positionOf(String desc) {
+            return annotations.computeIfAbsent(desc, key -> annotations.size());
+        }
+
+        private static int[] toArray(Set<Integer> positions) {
+            if (positions.isEmpty()) {
+                return NONE;
+            }
+            int[] array = new int[positions.size()];
+            int i = 0;
+            for (Integer position : positions) {
+                array[i++] = position;
+            }
+            return array;
+        }
+
+        AnnotationScanIndex toIndex() {
+            String[] descriptors = new String[annotations.size()];
+            for (Map.Entry<String, Integer> annotation : annotations.entrySet()) {
+                descriptors[annotation.getValue()] = annotation.getKey();
+            }
+            return new AnnotationScanIndex(classNames.toArray(new String[0]), descriptors,
+                    typeAnnotations.toArray(new int[0][]), otherAnnotations.toArray(new int[0][]));
+        }
+    }
+}
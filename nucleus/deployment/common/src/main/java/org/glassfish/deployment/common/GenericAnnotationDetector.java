@@ -37,7 +37,7 @@
  * only if the new code is made subject to such option by the copyright
  * holder.
  */
-//Portions Copyright [2016-2019] [Payara Foundation and/or affiliates]
+//Portions Copyright [2016-2020] [Payara Foundation and/or affiliates]
 package org.glassfish.deployment.common;
 
 
@@ -133,12 +133,21 @@ public class GenericAnnotationDetector extends AnnotationScanner {
     @Override
     public void scanArchive(ReadableArchive archive) {
         try {
+            // use the stored annotation index when the classes did not change
+            AnnotationScanIndex index = AnnotationScanIndex.of(archive);
+            if (index != null && index.hasTypeAnnotation(annotations)) {
+                found = true;
+                return;
+            }
             int crFlags = ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG
                 | ClassReader.SKIP_FRAMES;
             Enumeration<String> entries = archive.entries();
             while (entries.hasMoreElements()) {
                 String entryName = entries.nextElement();
                 if (entryName.endsWith(".class")) {
+                    if (index != null) {
+                        continue;
+                    }
                     // scan class files
                     InputStream is = archive.getEntry(entryName);
                     try {
@@ -156,6 +165,14 @@ public class GenericAnnotationDetector extends AnnotationScanner {
                         ReadableArchive jarSubArchive = null;
                         try {
                             jarSubArchive = archive.getSubArchive(entryName);
+                            AnnotationScanIndex jarIndex = AnnotationScanIndex.of(jarSubArchive);
+                            if (jarIndex != null) {
+                                if (jarIndex.hasTypeAnnotation(annotations)) {
+                                    found = true;
+                                    return;
+                                }
+                                continue;
+                            }
                             Enumeration<String> jarEntries =
                                 jarSubArchive.entries();
                             while (jarEntries.hasMoreElements()) {
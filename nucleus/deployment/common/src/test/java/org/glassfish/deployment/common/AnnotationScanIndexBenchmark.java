@@ -0,0 +1,166 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.deployment.common;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.Opcodes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares scanning the jars of a sample EAR for annotations with reading their stored {@link AnnotationScanIndex},
+ * as on a redeploy or restart of the unchanged application. The sample EAR has {@code jars} library and module jars of
+ * {@code classesPerJar} classes each, a tenth of the classes are annotated.
+ *
+ * Not run as part of the build. Run the {@link #main(String[])} method from the IDE or with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AnnotationScanIndexBenchmark {
+
+    @Param({ "50" })
+    private int jars;
+
+    @Param({ "400" })
+    private int classesPerJar;
+
+    private File ear;
+    private File indexDir;
+    private File[] jarFiles;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ear = Files.createTempDirectory("sample-ear").toFile();
+        indexDir = new File(ear, "annotation-index");
+        jarFiles = new File[jars];
+        for (int i = 0; i < jars; i++) {
+            jarFiles[i] = new File(ear, "lib" + i + ".jar");
+            try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jarFiles[i]))) {
+                for (int j = 0; j < classesPerJar; j++) {
+                    String className = "com/example/module" + i + "/Class" + j;
+                    out.putNextEntry(new JarEntry(className + ".class"));
+                    out.write(classBytes(className, j % 10 == 0));
+                    out.closeEntry();
+                }
+            }
+            AnnotationScanIndex.of(jarFiles[i], indexDir);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file : jarFiles) {
+            file.delete();
+        }
+        File[] indexes = indexDir.listFiles();
+        if (indexes != null) {
+            for (File file : indexes) {
+                file.delete();
+            }
+        }
+        indexDir.delete();
+        ear.delete();
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole) throws IOException {
+        for (File jar : jarFiles) {
+            blackhole.consume(AnnotationScanIndex.of(jar, null));
+        }
+    }
+
+    @Benchmark
+    public void storedIndex(Blackhole blackhole) throws IOException {
+        for (File jar : jarFiles) {
+            blackhole.consume(AnnotationScanIndex.of(jar, indexDir));
+        }
+    }
+
+    private static byte[] classBytes(String className, boolean annotated) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, className, null, "java/lang/Object", null);
+        if (annotated) {
+            writer.visitAnnotation("Ljavax/ejb/Stateless;", true).visitEnd();
+        }
+        for (int i = 0; i < 10; i++) {
+            FieldVisitor field = writer.visitField(Opcodes.ACC_PRIVATE, "field" + i, "Ljava/lang/String;", null, null);
+            if (annotated) {
+                field.visitAnnotation("Ljavax/inject/Inject;", true).visitEnd();
+            }
+            field.visitEnd();
+            writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "method" + i, "()Ljava/lang/String;", null,
+                    null).visitEnd();
+        }
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AnnotationScanIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
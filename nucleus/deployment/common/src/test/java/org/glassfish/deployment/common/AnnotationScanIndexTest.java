@@ -0,0 +1,331 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package org.glassfish.deployment.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.FieldVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypeReference;
+
+import com.sun.enterprise.deploy.shared.FileArchive;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AnnotationScanIndexTest {
+
+    private static final String STATELESS = "Ljavax/ejb/Stateless;";
+    private static final String INJECT = "Ljavax/inject/Inject;";
+    private static final String RESOURCE = "Ljavax/annotation/Resource;";
+    private static final String RESOURCES = "Ljavax/annotation/Resources;";
+    private static final String NOT_NULL = "Ljavax/validation/constraints/NotNull;";
+
+    private File dir;
+    private File indexDir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("annotation-scan-index").toFile();
+        indexDir = new File(dir, "index");
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    @Test
+    public void jarAnnotationsAreIndexed() throws IOException {
+        File jar = writeJar("app.jar", "com/example/Bean", "com/example/Plain");
+        AnnotationScanIndex index = AnnotationScanIndex.of(jar, null);
+
+        assertEquals(1, index.size());
+        assertTrue(index.hasTypeAnnotation(asList(STATELESS)));
+        assertFalse(index.hasTypeAnnotation(asList(INJECT, RESOURCE)));
+        assertTrue(index.hasAnnotation(INJECT::equals));
+        assertTrue(index.hasAnnotation(RESOURCE::equals));
+        assertFalse(index.hasAnnotation("Ljavax/ejb/Singleton;"::equals));
+        assertEquals(Collections.singleton("com.example.Bean"), index.getAnnotatedClasses(INJECT));
+        assertTrue(index.getAnnotatedClasses("Ljavax/ejb/Singleton;").isEmpty());
+    }
+
+    @Test
+    public void directoryAnnotationsAreIndexed() throws IOException {
+        File classes = new File(dir, "classes");
+        writeClass(new File(classes, "com/example/Bean.class"), "com/example/Bean", true);
+        writeClass(new File(classes, "com/example/other/Plain.class"), "com/example/other/Plain", false);
+        AnnotationScanIndex index = AnnotationScanIndex.of(classes, indexDir);
+
+        assertEquals(1, index.size());
+        assertTrue(index.hasTypeAnnotation(asList(STATELESS)));
+        assertEquals(1, indexDir.list().length);
+    }
+
+    @Test
+    public void storedIndexIsReusedForUnchangedJar() throws IOException {
+        File jar = writeJar("app.jar", "com/example/Bean");
+        AnnotationScanIndex.of(jar, indexDir);
+        File[] stored = indexDir.listFiles();
+        assertEquals(1, stored.length);
+
+        // the stored index is read instead of scanning the jar again
+        ByteArrayOutputStream empty = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(empty)) {
+            out.write(headerOf(stored[0]));
+            out.writeInt(0); // annotations
+            out.writeInt(0); // classes
+        }
+        Files.write(stored[0].toPath(), empty.toByteArray());
+        AnnotationScanIndex index = AnnotationScanIndex.of(jar, indexDir);
+        assertEquals(0, index.size());
+        assertFalse(index.hasTypeAnnotation(asList(STATELESS)));
+    }
+
+    @Test
+    public void changedJarIsScannedAgainReplacingItsIndex() throws IOException {
+        File jar = writeJar("app.jar", "com/example/Bean");
+        AnnotationScanIndex.of(jar, indexDir);
+        jar = writeJar("app.jar", "com/example/Bean", "com/example/Bean2");
+        AnnotationScanIndex index = AnnotationScanIndex.of(jar, indexDir);
+
+        assertEquals(2, index.size());
+        assertEquals(1, indexDir.list().length);
+        assertEquals(2, AnnotationScanIndex.of(jar, indexDir).size());
+
+        writeJar("other.jar", "com/example/Bean");
+        AnnotationScanIndex.of(new File(dir, "other.jar"), indexDir);
+        assertEquals(2, indexDir.list().length);
+    }
+
+    @Test
+    public void corruptIndexIsIgnored() throws IOException {
+        File jar = writeJar("app.jar", "com/example/Bean");
+        AnnotationScanIndex.of(jar, indexDir);
+        File[] stored = indexDir.listFiles();
+        ByteArrayOutputStream corrupt = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(corrupt)) {
+            out.write(headerOf(stored[0]));
+            out.writeInt(5); // annotations that are missing
+        }
+        Files.write(stored[0].toPath(), corrupt.toByteArray());
+
+        AnnotationScanIndex index = AnnotationScanIndex.of(jar, indexDir);
+        assertNotNull(index);
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void nestedAnnotationsAreIndexed() throws IOException {
+        File classes = new File(dir, "classes");
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "com/example/Nested", null, "java/lang/Object", null);
+        AnnotationVisitor resources = writer.visitAnnotation(RESOURCES, true);
+        AnnotationVisitor value = resources.visitArray("value");
+        value.visitAnnotation(null, RESOURCE).visitEnd();
+        value.visitEnd();
+        resources.visitEnd();
+        writer.visitEnd();
+        writeClass(new File(classes, "com/example/Nested.class"), writer.toByteArray());
+        AnnotationScanIndex index = AnnotationScanIndex.of(classes, null);
+
+        assertTrue(index.hasTypeAnnotation(asList(RESOURCES)));
+        assertFalse(index.hasTypeAnnotation(asList(RESOURCE)));
+        assertTrue(index.hasAnnotation(RESOURCE::equals));
+        assertEquals(Collections.singleton("com.example.Nested"), index.getAnnotatedClasses(RESOURCE));
+    }
+
+    @Test
+    public void typeAnnotationsAreIndexed() throws IOException {
+        File classes = new File(dir, "classes");
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "com/example/FieldType", null, "java/lang/Object", null);
+        FieldVisitor field = writer.visitField(Opcodes.ACC_PRIVATE, "name", "Ljava/lang/String;", null, null);
+        field.visitTypeAnnotation(TypeReference.newTypeReference(TypeReference.FIELD).getValue(), null, NOT_NULL, true)
+                .visitEnd();
+        field.visitEnd();
+        writer.visitEnd();
+        writeClass(new File(classes, "com/example/FieldType.class"), writer.toByteArray());
+
+        writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, "com/example/CodeType", null, "java/lang/Object", null);
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "create", "()V", null,
+                null);
+        method.visitCode();
+        method.visitTypeInsn(Opcodes.NEW, "java/lang/Object");
+        method.visitInsnAnnotation(TypeReference.newTypeReference(TypeReference.NEW).getValue(), null, RESOURCE, true)
+                .visitEnd();
+        method.visitInsn(Opcodes.DUP);
+        method.visitMethodInsn(Opcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        method.visitInsn(Opcodes.POP);
+        method.visitInsn(Opcodes.RETURN);
+        method.visitMaxs(2, 0);
+        method.visitEnd();
+        writer.visitEnd();
+        writeClass(new File(classes, "com/example/CodeType.class"), writer.toByteArray());
+        AnnotationScanIndex index = AnnotationScanIndex.of(classes, null);
+
+        assertEquals(2, index.size());
+        assertFalse(index.hasTypeAnnotation(asList(NOT_NULL, RESOURCE)));
+        assertEquals(Collections.singleton("com.example.FieldType"), index.getAnnotatedClasses(NOT_NULL));
+        assertEquals(Collections.singleton("com.example.CodeType"), index.getAnnotatedClasses(RESOURCE));
+    }
+
+    @Test
+    public void directoryArchiveIndexLeavesOutStaleEntries() throws IOException {
+        File classes = new File(dir, "classes");
+        writeClass(new File(classes, "com/example/Bean.class"), "com/example/Bean", true);
+        writeClass(new File(classes, "com/example/Stale.class"), "com/example/Stale", true);
+        Files.write(new File(classes, ".glassfishStaleFiles").toPath(),
+                asList("com" + File.separator + "example" + File.separator + "Stale.class"));
+        FileArchive archive = new FileArchive();
+        archive.open(classes.toURI());
+        AnnotationScanIndex index = AnnotationScanIndex.of(archive, classes, indexDir);
+
+        assertEquals(Collections.singleton("com.example.Bean"), index.getAnnotatedClasses(STATELESS));
+        assertEquals(2, AnnotationScanIndex.of(classes, null).size());
+    }
+
+    @Test
+    public void archiveOutsideApplicationRepositoryHasNoIndex() throws IOException {
+        File classes = new File(dir, "classes");
+        writeClass(new File(classes, "com/example/Bean.class"), "com/example/Bean", true);
+        FileArchive archive = new FileArchive();
+        archive.open(classes.toURI());
+
+        assertNull(AnnotationScanIndex.of(archive));
+        assertFalse(indexDir.exists());
+    }
+
+    @Test
+    public void missingArchiveHasNoIndex() throws IOException {
+        assertNull(AnnotationScanIndex.of(new File(dir, "missing.jar"), indexDir));
+    }
+
+    private File writeJar(String name, String... annotatedClasses) throws IOException {
+        File jar = new File(dir, name);
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (String className : annotatedClasses) {
+                out.putNextEntry(new JarEntry(className + ".class"));
+                out.write(classBytes(className, !className.endsWith("Plain")));
+                out.closeEntry();
+            }
+            out.putNextEntry(new JarEntry("META-INF/beans.xml"));
+            out.closeEntry();
+        }
+        return jar;
+    }
+
+    private static void writeClass(File file, String className, boolean annotated) throws IOException {
+        writeClass(file, classBytes(className, annotated));
+    }
+
+    private static void writeClass(File file, byte[] classBytes) throws IOException {
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), classBytes);
+    }
+
+    /**
+     * @return the version and digest of the classes at the start of a stored index
+     */
+    private static byte[] headerOf(File indexFile) throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(indexFile.toPath()));
+                DataOutputStream out = new DataOutputStream(header)) {
+            out.writeInt(in.readInt());
+            out.writeUTF(in.readUTF());
+        }
+        return header.toByteArray();
+    }
+
+    /**
+     * A class annotated with @Stateless, having a field annotated with @Inject and a method with a parameter annotated
+     * with @Resource.
+     */
+    private static byte[] classBytes(String className, boolean annotated) {
+        ClassWriter writer = new ClassWriter(0);
+        writer.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC, className, null, "java/lang/Object", null);
+        if (annotated) {
+            writer.visitAnnotation(STATELESS, true).visitEnd();
+        }
+        FieldVisitor field = writer.visitField(Opcodes.ACC_PRIVATE, "service", "Ljava/lang/Object;", null, null);
+        if (annotated) {
+            field.visitAnnotation(INJECT, true).visitEnd();
+        }
+        field.visitEnd();
+        MethodVisitor method = writer.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_ABSTRACT, "setName",
+                "(Ljava/lang/String;)V", null, null);
+        if (annotated) {
+            method.visitParameterAnnotation(0, RESOURCE, true).visitEnd();
+        }
+        method.visitEnd();
+        writer.visitEnd();
+        return writer.toByteArray();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
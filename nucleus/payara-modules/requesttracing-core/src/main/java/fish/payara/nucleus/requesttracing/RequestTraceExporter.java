@@ -0,0 +1,170 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.nucleus.requesttracing;
+
+import com.sun.enterprise.util.MpscRingBuffer;
+import fish.payara.notification.requesttracing.RequestTrace;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hands finished {@link RequestTrace}s from request threads to a single exporter thread.
+ * <p>
+ * Request threads only add the trace to a bounded {@link MpscRingBuffer}. The exporter thread takes the traces from
+ * the buffer and passes them to the export function in the order they were added. When the exporter cannot keep up and
+ * the buffer is full traces are dropped and counted instead of slowing down the requests.
+ */
+final class RequestTraceExporter implements Runnable {
+
+    private static final Logger logger = Logger.getLogger(RequestTraceExporter.class.getName());
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long STOP_TIMEOUT_MILLIS = 1000L;
+
+    private final MpscRingBuffer<RequestTrace> buffer;
+    private final Consumer<RequestTrace> export;
+    private final LongAdder exported = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile Thread thread;
+    private volatile boolean idle;
+
+    RequestTraceExporter(int capacity, Consumer<RequestTrace> export) {
+        this.buffer = new MpscRingBuffer<>(capacity);
+        this.export = export;
+    }
+
+    /**
+     * Starts the exporter thread unless it is already running.
+     */
+    synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        Thread exporter = new Thread(this, "payara-request-tracing-exporter");
+        exporter.setDaemon(true);
+        thread = exporter;
+        exporter.start();
+    }
+
+    /**
+     * Stops the exporter thread. Traces not yet exported stay in the buffer until the exporter is started again.
+     */
+    synchronized void stop() {
+        Thread exporter = thread;
+        if (exporter == null) {
+            return;
+        }
+        thread = null;
+        LockSupport.unpark(exporter);
+        try {
+            exporter.join(STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Adds a trace to be exported. Does not wait.
+     *
+     * @param trace the finished trace
+     * @return true if the trace will be exported, false if it was dropped because the buffer is full
+     */
+    boolean export(RequestTrace trace) {
+        if (!buffer.offer(trace)) {
+            dropped.increment();
+            return false;
+        }
+        if (idle) {
+            Thread exporter = thread;
+            if (exporter != null) {
+                LockSupport.unpark(exporter);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void run() {
+        Thread self = Thread.currentThread();
+        while (thread == self) {
+            RequestTrace trace = buffer.poll();
+            if (trace == null) {
+                idle = true;
+                if (buffer.isEmpty() && thread == self) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+            } else {
+                try {
+                    export.accept(trace);
+                    exported.increment();
+                } catch (RuntimeException ex) {
+                    logger.log(Level.WARNING, "Failed to export request trace", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of traces exported so far
+     */
+    long getExportedCount() {
+        return exported.sum();
+    }
+
+    /**
+     * @return number of traces dropped because the buffer was full
+     */
+    long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return number of traces waiting to be exported
+     */
+    int getPendingCount() {
+        return buffer.size();
+    }
+}
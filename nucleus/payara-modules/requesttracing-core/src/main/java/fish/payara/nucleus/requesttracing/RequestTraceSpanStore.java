@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2016-2018 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) 2016-2020 Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -65,6 +65,11 @@ public class RequestTraceSpanStore {
 
     private IterableThreadLocal<RequestTrace> spanStore = new IterableThreadLocal<>(RequestTrace::new);
 
+    /**
+     * Spans added to a trace that already has this number of spans are discarded
+     */
+    private volatile int maxSpansPerTrace = Integer.MAX_VALUE;
+
     public Iterable<Entry<Thread, RequestTrace>> getTraces() {
         return spanStore;
     }
@@ -75,12 +80,29 @@ public class RequestTraceSpanStore {
      */
     void storeEvent(RequestTraceSpan payaraSpan) {
         RequestTrace currentTrace = spanStore.get();
-        currentTrace.addEvent(payaraSpan);
+        if (hasCapacity(currentTrace)) {
+            currentTrace.addEvent(payaraSpan);
+        }
     }
 
     void storeEvent(RequestTraceSpan payaraSpan, long timestampMillis) {
         RequestTrace currentTrace = spanStore.get();
-        currentTrace.addEvent(payaraSpan, timestampMillis);
+        if (hasCapacity(currentTrace)) {
+            currentTrace.addEvent(payaraSpan, timestampMillis);
+        }
+    }
+
+    private boolean hasCapacity(RequestTrace trace) {
+        return !trace.isStarted() || trace.getTraceSpans().size() < maxSpansPerTrace;
+    }
+
+    /**
+     * Limits the number of spans recorded per trace. Spans beyond the limit are discarded.
+     * 
+     * @param maxSpansPerTrace maximum number of spans kept per trace
+     */
+    void setMaxSpansPerTrace(int maxSpansPerTrace) {
+        this.maxSpansPerTrace = maxSpansPerTrace;
     }
 
     void endTrace() {
@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2016-2019 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) 2016-2020 Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -68,6 +68,7 @@ import fish.payara.nucleus.requesttracing.domain.execoptions.RequestTracingExecu
 import fish.payara.nucleus.requesttracing.events.RequestTracingEvents;
 import fish.payara.nucleus.requesttracing.sampling.AdaptiveSampleFilter;
 import fish.payara.nucleus.requesttracing.sampling.SampleFilter;
+import fish.payara.nucleus.requesttracing.sampling.TailSampleFilter;
 import org.glassfish.api.StartupRunLevel;
 import org.glassfish.api.admin.ServerEnvironment;
 import org.glassfish.api.event.EventListener;
@@ -110,6 +111,16 @@ public class RequestTracingService implements EventListener, ConfigListener, Mon
     private static final int HOUR = 60 * MINUTE;
     private static final int DAY = 24 * HOUR;
 
+    /**
+     * Maximum number of finished traces waiting to be exported, further traces are dropped
+     */
+    private static final int EXPORT_BUFFER_CAPACITY = 4096;
+
+    /**
+     * Maximum number of spans recorded per trace when tail sampling is enabled and every request is traced
+     */
+    private static final int TAIL_SAMPLING_MAX_SPANS = 256;
+
     @Inject
     @Named(ServerEnvironment.DEFAULT_INSTANCE_NAME)
     @Optional
@@ -165,11 +176,21 @@ public class RequestTracingService implements EventListener, ConfigListener, Mon
      */
     private final ConcurrentLinkedQueue<RequestTrace> uncollectedTraces = new ConcurrentLinkedQueue<>();
 
+    /**
+     * Filters, stores and notifies finished traces on its own thread so request threads do not wait for it.
+     */
+    private final RequestTraceExporter traceExporter = new RequestTraceExporter(EXPORT_BUFFER_CAPACITY, this::exportTrace);
+
     /**
      * The filter which determines whether to sample a given request
      */
     private SampleFilter sampleFilter;
 
+    /**
+     * The filter which determines whether to keep a finished trace when tail sampling is enabled
+     */
+    private volatile TailSampleFilter tailSampleFilter;
+
     @PostConstruct
     void postConstruct() {
         events.register(this);
@@ -210,6 +231,10 @@ public class RequestTracingService implements EventListener, ConfigListener, Mon
             bootstrapRequestTracingService();
         }
 
+        if (event.is(EventTypes.PREPARE_SHUTDOWN)) {
+            traceExporter.stop();
+        }
+
         transactions.addListenerForType(RequestTracingServiceConfiguration.class, this);
     }
 
@@ -231,6 +256,8 @@ public class RequestTracingService implements EventListener, ConfigListener, Mon
             executionOptions.setThresholdUnit(TimeUnit.valueOf(configuration.getThresholdUnit()));
             executionOptions.setThresholdValue(Long.parseLong(configuration.getThresholdValue()));
             executionOptions.setSampleRateFirstEnabled(Boolean.parseBoolean(configuration.getSampleRateFirstEnabled()));
+            executionOptions.setTailSamplingEnabled(Boolean.parseBoolean(configuration.getTailSamplingEnabled()));
+            executionOptions.setTailSamplingBudget(Integer.valueOf(configuration.getTailSamplingBudget()));
             
             executionOptions.setTraceStoreSize(Integer.parseInt(configuration.getTraceStoreSize()));
             executionOptions.setTraceStoreTimeout(TimeUtil.setStoreTimeLimit(configuration.getTraceStoreTimeout()));
@@ -250,6 +277,13 @@ public class RequestTracingService implements EventListener, ConfigListener, Mon
             } else {
                 sampleFilter = new SampleFilter(executionOptions.getSampleRate());
             }
+            if (executionOptions.isTailSamplingEnabled()) {
+                tailSampleFilter = new TailSampleFilter(executionOptions.getTailSamplingBudget());
+                requestEventStore.setMaxSpansPerTrace(TAIL_SAMPLING_MAX_SPANS);
+            } else {
+                tailSampleFilter = null;
+                requestEventStore.setMaxSpansPerTrace(Integer.MAX_VALUE);
+            }
 
             // Set up the historic request trace store if enabled
             if (executionOptions.isHistoricTraceStoreEnabled()) {
@@ -286,6 +320,8 @@ public class RequestTracingService implements EventListener, ConfigListener, Mon
                         0, period, TimeUnit.SECONDS);
             }
             
+            traceExporter.start();
+
             logger.log(Level.INFO, "Payara Request Tracing Service Started with configuration: {0}", executionOptions);
         }
     }
@@ -415,6 +451,11 @@ public class RequestTracingService implements EventListener, ConfigListener, Mon
             return false;
         }
 
+        // With tail sampling every request is traced and the decision is made when it ended
+        if (tailSampleFilter != null) {
+            return true;
+        }
+
         // Determine whether to sample the request, if sampleRateFirstEnabled is true
         if (executionOptions.getSampleRateFirstEnabled() && !sampleFilter.sample()) {
             return false;
@@ -424,62 +465,86 @@ public class RequestTracingService implements EventListener, ConfigListener, Mon
     }
 
     /**
-     * 
+     * Ends the trace in progress on the current thread and hands it to the exporter thread. The trace is dropped if
+     * the exporter cannot keep up.
      */
     public void endTrace() {
         if (!isRequestTracingEnabled() || !isTraceInProgress()) {
             return;
         }
         requestEventStore.endTrace();
+        RequestTrace requestTrace = requestEventStore.getTrace();
+        requestEventStore.flushStore();
+        if (!traceExporter.export(requestTrace)) {
+            logger.log(Level.FINE, "Request trace export buffer full, dropped trace {0}", requestTrace.getTraceId());
+        }
+    }
+
+    /**
+     * Stores and notifies a finished trace if it is kept by the sampling. Called by the exporter thread.
+     */
+    private void exportTrace(RequestTrace requestTrace) {
+        if (!isRequestTracingEnabled()) {
+            return;
+        }
         Long thresholdValueInNanos = getThresholdValueInNanos();
 
-        long elapsedTime = requestEventStore.getElapsedTime();
+        long elapsedTime = requestTrace.getElapsedTime();
         long elapsedTimeInNanos = TimeUnit.NANOSECONDS.convert(elapsedTime, TimeUnit.MILLISECONDS);
+        TailSampleFilter tailFilter = tailSampleFilter;
+        if (tailFilter != null) {
+            boolean error = TailSampleFilter.isError(requestTrace);
+            if (tailFilter.sample(endpointName(requestTrace), elapsedTimeInNanos, thresholdValueInNanos, error)) {
+                storeAndNotify(requestTrace, elapsedTimeInNanos > thresholdValueInNanos
+                        ? "Request execution time: " + elapsedTime + "(ms) exceeded the acceptable threshold"
+                        : "Request failed after execution time: " + elapsedTime + "(ms)");
+            }
+            return;
+        }
         if (elapsedTimeInNanos - thresholdValueInNanos > 0) {
             // Determine whether to sample the request, if sampleRateFirstEnabled is false
             if (!executionOptions.getSampleRateFirstEnabled()) {
                 if (!sampleFilter.sample()) {
-                    requestEventStore.flushStore();
                     return;
                 }
             }
-            // collect any trace exceeding the threshold
-            if (uncollectedTraces.size() > 50) {
-                uncollectedTraces.poll();
+            storeAndNotify(requestTrace, "Request execution time: " + elapsedTime + "(ms) exceeded the acceptable threshold");
+        }
+    }
+
+    /**
+     * Adds a trace that is kept to the stores and notifies the notifiers about it.
+     */
+    private void storeAndNotify(RequestTrace requestTrace, String subject) {
+        // collect any trace that is kept
+        if (uncollectedTraces.size() > 50) {
+            uncollectedTraces.poll();
+        }
+        uncollectedTraces.add(requestTrace);
+
+        RequestTrace removedTrace = requestTraceStore.addTrace(requestTrace);
+
+        // Store the trace in the historic trace store if it's enabled, avoiding recalculation
+        if (executionOptions.isHistoricTraceStoreEnabled()) {
+            historicRequestTraceStore.addTrace(requestTrace, removedTrace);
+        }
+
+        if (removedTrace != null) {
+            if (hazelcast.isEnabled()) {
+                eventBus.publish(EVENT_BUS_LISTENER_NAME, new ClusterMessage(
+                        RequestTracingEvents.STORE_FULL.toString()));
+            } else {
+                events.send(new EventListener.Event(RequestTracingEvents.STORE_FULL));
             }
-            RequestTrace requestTrace = requestEventStore.getTrace();
-            uncollectedTraces.add(requestTrace);
-            
-            Runnable addTask = () -> {
-                RequestTrace removedTrace = requestTraceStore.addTrace(requestTrace);
-                
-                // Store the trace in the historic trace store if it's enabled, avoiding recalculation
-                if (executionOptions.isHistoricTraceStoreEnabled()) {
-                    historicRequestTraceStore.addTrace(requestTrace, removedTrace);
-                }
-                
-                if (removedTrace != null) {
-                    if (hazelcast.isEnabled()) {
-                        eventBus.publish(EVENT_BUS_LISTENER_NAME, new ClusterMessage(
-                                RequestTracingEvents.STORE_FULL.toString()));
-                    } else {
-                        events.send(new EventListener.Event(RequestTracingEvents.STORE_FULL));
-                    }
-                }
-            };
-            
-            payaraExecutorService.submit(addTask);
-
-            for (NotifierExecutionOptions notifierExecutionOptions : executionOptions.getNotifierExecutionOptionsList().values()) {
-                if (notifierExecutionOptions.isEnabled()) {
-                    NotificationEventFactory notificationEventFactory = eventFactoryStore.get(notifierExecutionOptions.getNotifierType());
-                    String subject = "Request execution time: " + elapsedTime + "(ms) exceeded the acceptable threshold";
-                    NotificationEvent notificationEvent = notificationEventFactory.buildNotificationEvent(subject, requestTrace);
-                    notificationService.notify(EventSource.REQUESTTRACING, notificationEvent);
-                }
+        }
+
+        for (NotifierExecutionOptions notifierExecutionOptions : executionOptions.getNotifierExecutionOptionsList().values()) {
+            if (notifierExecutionOptions.isEnabled()) {
+                NotificationEventFactory notificationEventFactory = eventFactoryStore.get(notifierExecutionOptions.getNotifierType());
+                NotificationEvent notificationEvent = notificationEventFactory.buildNotificationEvent(subject, requestTrace);
+                notificationService.notify(EventSource.REQUESTTRACING, notificationEvent);
             }
         }
-        requestEventStore.flushStore();
     }
 
     public void addSpanLog(RequestTraceSpanLog spanLog) {
@@ -565,6 +630,13 @@ public class RequestTracingService implements EventListener, ConfigListener, Mon
     @Override
     public void collect(MonitoringDataCollector rootCollector) {
         MonitoringDataCollector tracingCollector = rootCollector.in("trace");
+        tracingCollector
+            .collect("ExportPending", traceExporter.getPendingCount())
+            .collect("ExportDropped", traceExporter.getDroppedCount());
+        TailSampleFilter tailFilter = tailSampleFilter;
+        if (tailFilter != null) {
+            tracingCollector.collect("TailSamplingOverBudget", tailFilter.getOverBudgetCount());
+        }
         RequestTrace trace = uncollectedTraces.poll();
         while (trace != null) {
             collectTrace(tracingCollector, trace);
@@ -585,6 +657,10 @@ public class RequestTracingService implements EventListener, ConfigListener, Mon
         }
     }
 
+    private static String endpointName(RequestTrace trace) {
+        return trace.getTraceSpans().isEmpty() ? null : metricGroupName(trace);
+    }
+
     public static String metricGroupName(RequestTrace trace) {
         return stripPackageName(trace.getTraceSpans().getLast().getEventName());
     }
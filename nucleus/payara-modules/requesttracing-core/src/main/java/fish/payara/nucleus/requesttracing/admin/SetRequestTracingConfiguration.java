@@ -1,6 +1,6 @@
 /*
  *
- * Copyright (c) 2016-2017 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) 2016-2020 Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -135,6 +135,12 @@ public class SetRequestTracingConfiguration implements AdminCommand {
     @Param(name = "sampleRateFirstEnabled", optional = true)
     private Boolean sampleRateFirstEnabled;
 
+    @Param(name = "tailSamplingEnabled", optional = true)
+    private Boolean tailSamplingEnabled;
+
+    @Param(name = "tailSamplingBudget", optional = true)
+    private Integer tailSamplingBudget;
+
     @Param(name = "traceStoreSize", optional = true)
     private Integer traceStoreSize;
 
@@ -204,6 +210,12 @@ public class SetRequestTracingConfiguration implements AdminCommand {
                         if (sampleRateFirstEnabled != null) {
                             proxy.setSampleRateFirstEnabled(sampleRateFirstEnabled.toString());
                         }
+                        if (tailSamplingEnabled != null) {
+                            proxy.setTailSamplingEnabled(tailSamplingEnabled.toString());
+                        }
+                        if (tailSamplingBudget != null) {
+                            proxy.setTailSamplingBudget(tailSamplingBudget.toString());
+                        }
                         
                         if (traceStoreSize != null) {
                             warn = !traceStoreSize.toString().equals(proxy.getTraceStoreSize());
@@ -301,6 +313,16 @@ public class SetRequestTracingConfiguration implements AdminCommand {
             actionReport.appendMessage(strings.getLocalString("requesttracing.configure.sampleratefirst.success",
                     "Request Tracing Service Sample Rate First Enabled Value is set to {0}.", sampleRateFirstEnabled) + "\n");
         }
+        if (tailSamplingEnabled != null) {
+            service.getExecutionOptions().setTailSamplingEnabled(tailSamplingEnabled);
+            actionReport.appendMessage(strings.getLocalString("requesttracing.configure.tailsampling.enabled.success",
+                    "Request Tracing Service Tail Sampling Enabled Value is set to {0}.", tailSamplingEnabled) + "\n");
+        }
+        if (tailSamplingBudget != null) {
+            service.getExecutionOptions().setTailSamplingBudget(tailSamplingBudget);
+            actionReport.appendMessage(strings.getLocalString("requesttracing.configure.tailsampling.budget.success",
+                    "Request Tracing Service Tail Sampling Budget is set to {0}.", tailSamplingBudget) + "\n");
+        }
         
         if (traceStoreSize != null) {
             service.getExecutionOptions().setTraceStoreSize(traceStoreSize);
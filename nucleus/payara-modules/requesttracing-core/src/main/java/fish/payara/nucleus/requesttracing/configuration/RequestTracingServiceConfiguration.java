@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2016-2017 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) 2016-2020 Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -107,6 +107,16 @@ public interface RequestTracingServiceConfiguration extends ConfigBeanProxy, Con
     String getSampleRateFirstEnabled();
     void setSampleRateFirstEnabled(String value) throws PropertyVetoException;
 
+    @Attribute(defaultValue = "false", dataType = Boolean.class)
+    String getTailSamplingEnabled();
+    void setTailSamplingEnabled(String value) throws PropertyVetoException;
+
+    @Attribute(defaultValue = "60", dataType = Integer.class)
+    @Min(value = 1, message = "Tail sampling budget must be greater than 0")
+    @Max(value = Integer.MAX_VALUE, message = "Tail sampling budget must be less than " + Integer.MAX_VALUE)
+    String getTailSamplingBudget();
+    void setTailSamplingBudget(String value) throws PropertyVetoException;
+
     @Attribute(defaultValue = "20", dataType = Integer.class)
     @Min(value = 0, message = "Trace store size must be greater than or equal to 0")
     String getTraceStoreSize();
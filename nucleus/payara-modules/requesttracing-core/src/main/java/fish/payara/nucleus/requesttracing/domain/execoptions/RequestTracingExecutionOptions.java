@@ -1,7 +1,7 @@
 /*
  * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
  *
- * Copyright (c) 2016-2018 Payara Foundation and/or its affiliates. All rights reserved.
+ * Copyright (c) 2016-2020 Payara Foundation and/or its affiliates. All rights reserved.
  *
  * The contents of this file are subject to the terms of either the GNU
  * General Public License Version 2 only ("GPL") or the Common Development
@@ -66,6 +66,8 @@ public class RequestTracingExecutionOptions {
     private Long thresholdValue;
     private TimeUnit thresholdUnit;
     private Boolean sampleRateFirstEnabled;
+    private Boolean tailSamplingEnabled;
+    private Integer tailSamplingBudget;
     
     private Integer traceStoreSize;
     private Long traceStoreTimeout;
@@ -105,6 +107,34 @@ public class RequestTracingExecutionOptions {
         this.sampleRateFirstEnabled = sampleRateFirstEnabled;
     }
 
+    /**
+     * Whether all requests are traced and the decision to keep a trace is made when the request ended
+     * @return 
+     */
+    public Boolean isTailSamplingEnabled() {
+        if (tailSamplingEnabled == null) {
+            return false;
+        }
+
+        return tailSamplingEnabled;
+    }
+
+    public void setTailSamplingEnabled(Boolean tailSamplingEnabled) {
+        this.tailSamplingEnabled = tailSamplingEnabled;
+    }
+
+    /**
+     * Gets the maximum number of traces kept per endpoint and minute when tail sampling is enabled
+     * @return 
+     */
+    public Integer getTailSamplingBudget() {
+        return tailSamplingBudget;
+    }
+
+    public void setTailSamplingBudget(Integer tailSamplingBudget) {
+        this.tailSamplingBudget = tailSamplingBudget;
+    }
+
     public Boolean getAdaptiveSamplingEnabled() {
         return adaptiveSamplingEnabled;
     }
@@ -274,6 +304,8 @@ public class RequestTracingExecutionOptions {
                 + " ,thresholdValue=" + thresholdValue
                 + ", thresholdUnit=" + thresholdUnit
                 + ", sampleRateFirstEnabled=" + sampleRateFirstEnabled
+                + ", tailSamplingEnabled=" + tailSamplingEnabled
+                + ", tailSamplingBudget=" + tailSamplingBudget
                 + ", traceStoreSize=" + traceStoreSize
                 + ", traceStoreTimeout=" + traceStoreTimeout
                 + ", reservoirSamplingEnabled=" + reservoirSamplingEnabled
@@ -0,0 +1,157 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.nucleus.requesttracing.sampling;
+
+import fish.payara.notification.requesttracing.RequestTrace;
+import fish.payara.notification.requesttracing.RequestTraceSpan;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether to keep a request trace once the request has ended (tail based sampling).
+ * <p>
+ * Traces are kept if they took longer than the threshold or failed. To bound the number of kept traces each endpoint
+ * has a budget of traces per minute. The budget is enforced with a lock-free rate limiter per endpoint (generic cell
+ * rate algorithm) so that a busy endpoint cannot use up the budget of the others. A whole minute's budget can be used
+ * at once, so bursts of outliers are kept until the budget is exhausted.
+ * <p>
+ * The number of endpoints with their own budget is limited, further endpoints share one budget.
+ */
+public class TailSampleFilter {
+
+    /**
+     * Maximum number of endpoints with their own budget
+     */
+    static final int MAX_ENDPOINTS = 1000;
+
+    private static final String OTHER_ENDPOINTS = "";
+    private static final long BUDGET_PERIOD_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final long emissionIntervalNanos;
+    private final LongSupplier clock;
+    private final Map<String, AtomicLong> theoreticalArrivalTimes = new ConcurrentHashMap<>();
+    private final LongAdder overBudget = new LongAdder();
+
+    /**
+     * @param budget maximum number of traces kept per endpoint and minute
+     */
+    public TailSampleFilter(int budget) {
+        this(budget, System::nanoTime);
+    }
+
+    TailSampleFilter(int budget, LongSupplier clock) {
+        if (budget < 1) {
+            throw new IllegalArgumentException("Tail sampling budget must be at least 1 but was: " + budget);
+        }
+        this.emissionIntervalNanos = BUDGET_PERIOD_NANOS / budget;
+        this.clock = clock;
+    }
+
+    /**
+     * Whether to keep a finished trace.
+     *
+     * @param endpoint       name of the endpoint the trace belongs to
+     * @param elapsedNanos   duration of the trace
+     * @param thresholdNanos duration above which a trace is of interest
+     * @param error          true if the traced request failed
+     * @return true if the trace should be kept, else false
+     */
+    public boolean sample(String endpoint, long elapsedNanos, long thresholdNanos, boolean error) {
+        if (!error && elapsedNanos <= thresholdNanos) {
+            return false;
+        }
+        if (tryAcquire(endpoint)) {
+            return true;
+        }
+        overBudget.increment();
+        return false;
+    }
+
+    /**
+     * @return number of slow or failed traces not kept because the budget of their endpoint was used up
+     */
+    public long getOverBudgetCount() {
+        return overBudget.sum();
+    }
+
+    private boolean tryAcquire(String endpoint) {
+        AtomicLong tat = theoreticalArrivalTimes.get(endpoint == null ? OTHER_ENDPOINTS : endpoint);
+        if (tat == null) {
+            String key = endpoint == null || theoreticalArrivalTimes.size() >= MAX_ENDPOINTS ? OTHER_ENDPOINTS : endpoint;
+            tat = theoreticalArrivalTimes.computeIfAbsent(key, k -> new AtomicLong(clock.getAsLong()));
+        }
+        while (true) {
+            long now = clock.getAsLong();
+            long current = tat.get();
+            long next = Math.max(current - now, 0L) + now + emissionIntervalNanos;
+            if (next - now > BUDGET_PERIOD_NANOS) {
+                return false;
+            }
+            if (tat.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * A trace failed if any of its spans is tagged as error (as done by OpenTracing) or has a HTTP response status of
+     * 500 or above.
+     *
+     * @param trace the finished trace
+     * @return true if the traced request failed
+     */
+    public static boolean isError(RequestTrace trace) {
+        for (RequestTraceSpan span : trace.getTraceSpans()) {
+            if ("true".equalsIgnoreCase(span.getSpanTag("error"))) {
+                return true;
+            }
+            String status = span.getSpanTag("ResponseStatus");
+            if (status != null && status.length() == 3 && status.charAt(0) >= '5') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
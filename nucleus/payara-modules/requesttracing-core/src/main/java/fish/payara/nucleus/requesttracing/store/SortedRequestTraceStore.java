@@ -0,0 +1,211 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.nucleus.requesttracing.store;
+
+import fish.payara.notification.requesttracing.RequestTrace;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A local store of {@link RequestTrace} objects that keeps the longest traces.
+ * <p>
+ * The traces are kept in a {@link ConcurrentSkipListSet} in their natural order, longest first. When the store is full
+ * the shortest trace, or the oldest of equally short traces, is the last in the set and removed in O(log n). This is
+ * the same choice the {@link fish.payara.nucleus.requesttracing.store.strategy.LongestTraceStorageStrategy} makes by
+ * scanning all traces.
+ */
+public class SortedRequestTraceStore implements RequestTraceStoreInterface {
+
+    /**
+     * Natural order of traces made unique for distinct traces with same duration and start.
+     */
+    private static final Comparator<RequestTrace> ORDER = Comparator.<RequestTrace>naturalOrder()
+            .thenComparing(RequestTrace::getTraceId, Comparator.nullsLast(Comparator.<UUID>naturalOrder()))
+            .thenComparingInt(System::identityHashCode);
+
+    private final ConcurrentSkipListSet<RequestTrace> store = new ConcurrentSkipListSet<>(ORDER);
+    /**
+     * {@link ConcurrentSkipListSet#size()} is linear so the size is tracked separately.
+     */
+    private final AtomicInteger size = new AtomicInteger();
+    private final Collection<RequestTrace> traces = new Traces();
+    private volatile int maxStoreSize;
+
+    SortedRequestTraceStore() {
+        this.maxStoreSize = 0;
+    }
+
+    @Override
+    public RequestTrace addTrace(RequestTrace trace) {
+        return addTrace(trace, null);
+    }
+
+    @Override
+    public RequestTrace addTrace(RequestTrace trace, RequestTrace traceToRemove) {
+        if (!store.add(trace)) {
+            return null;
+        }
+        if (size.incrementAndGet() <= maxStoreSize) {
+            return null;
+        }
+        if (traceToRemove != null && remove(traceToRemove)) {
+            return traceToRemove;
+        }
+        return removeShortest();
+    }
+
+    /**
+     * @return a live view of all traces, longest first
+     */
+    @Override
+    public Collection<RequestTrace> getTraces() {
+        return traces;
+    }
+
+    /**
+     * @return the longest traces, longest first
+     */
+    @Override
+    public Collection<RequestTrace> getTraces(int limit) {
+        List<RequestTrace> longest = new ArrayList<>(Math.max(0, Math.min(limit, size.get())));
+        Iterator<RequestTrace> iter = store.iterator();
+        while (longest.size() < limit && iter.hasNext()) {
+            longest.add(iter.next());
+        }
+        return longest;
+    }
+
+    @Override
+    public void setSize(int maxSize) {
+        this.maxStoreSize = maxSize;
+        while (size.get() > maxSize && removeShortest() != null) {
+            // removed one
+        }
+    }
+
+    @Override
+    public int getStoreSize() {
+        return maxStoreSize;
+    }
+
+    @Override
+    public Collection<RequestTrace> emptyStore() {
+        Collection<RequestTrace> emptied = new ArrayList<>(size.get());
+        for (RequestTrace trace = store.pollFirst(); trace != null; trace = store.pollFirst()) {
+            size.decrementAndGet();
+            emptied.add(trace);
+        }
+        return emptied;
+    }
+
+    private RequestTrace removeShortest() {
+        RequestTrace shortest = store.pollLast();
+        if (shortest != null) {
+            size.decrementAndGet();
+        }
+        return shortest;
+    }
+
+    private boolean remove(Object trace) {
+        if (trace instanceof RequestTrace && store.remove(trace)) {
+            size.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * View of the stored traces that keeps the {@link #size} when traces are removed through it.
+     */
+    private final class Traces extends AbstractSet<RequestTrace> {
+
+        @Override
+        public Iterator<RequestTrace> iterator() {
+            Iterator<RequestTrace> iter = store.iterator();
+            return new Iterator<RequestTrace>() {
+
+                private RequestTrace current;
+
+                @Override
+                public boolean hasNext() {
+                    return iter.hasNext();
+                }
+
+                @Override
+                public RequestTrace next() {
+                    current = iter.next();
+                    return current;
+                }
+
+                @Override
+                public void remove() {
+                    if (current == null) {
+                        throw new IllegalStateException();
+                    }
+                    SortedRequestTraceStore.this.remove(current);
+                    current = null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size.get();
+        }
+
+        @Override
+        public boolean contains(Object trace) {
+            return trace instanceof RequestTrace && store.contains(trace);
+        }
+
+        @Override
+        public boolean remove(Object trace) {
+            return SortedRequestTraceStore.this.remove(trace);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.nucleus.requesttracing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import fish.payara.notification.requesttracing.RequestTrace;
+
+/**
+ * Tests the {@link RequestTraceExporter} hand over of traces to the exporter thread.
+ */
+public class RequestTraceExporterTest {
+
+    @Test
+    public void tracesAreExportedOnExporterThread() throws InterruptedException {
+        List<RequestTrace> exported = new CopyOnWriteArrayList<>();
+        List<Thread> exportThreads = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        RequestTraceExporter exporter = new RequestTraceExporter(16, trace -> {
+            exported.add(trace);
+            exportThreads.add(Thread.currentThread());
+            done.countDown();
+        });
+        exporter.start();
+        try {
+            RequestTrace[] traces = { new RequestTrace(), new RequestTrace(), new RequestTrace() };
+            for (RequestTrace trace : traces) {
+                assertTrue(exporter.export(trace));
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < traces.length; i++) {
+                assertTrue(traces[i] == exported.get(i));
+                assertFalse(Thread.currentThread() == exportThreads.get(i));
+            }
+            assertEquals(0, exporter.getDroppedCount());
+        } finally {
+            exporter.stop();
+        }
+    }
+
+    @Test
+    public void tracesAreDroppedAndCountedWhenBufferIsFull() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RequestTraceExporter exporter = new RequestTraceExporter(4, trace -> {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        exporter.start();
+        try {
+            assertTrue(exporter.export(new RequestTrace()));
+            assertTrue(blocked.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 4; i++) {
+                assertTrue(exporter.export(new RequestTrace()));
+            }
+            assertFalse(exporter.export(new RequestTrace()));
+            assertFalse(exporter.export(new RequestTrace()));
+            assertEquals(2, exporter.getDroppedCount());
+            assertEquals(4, exporter.getPendingCount());
+        } finally {
+            release.countDown();
+            exporter.stop();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.nucleus.requesttracing.sampling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import fish.payara.notification.requesttracing.EventType;
+import fish.payara.notification.requesttracing.RequestTrace;
+import fish.payara.notification.requesttracing.RequestTraceSpan;
+
+/**
+ * Tests the decisions of the {@link TailSampleFilter}.
+ */
+public class TailSampleFilterTest {
+
+    private static final long THRESHOLD = TimeUnit.SECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(5);
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final AtomicLong clock = new AtomicLong();
+    private final TailSampleFilter filter = new TailSampleFilter(10, clock::get);
+
+    @Test
+    public void fastSuccessfulTracesAreDropped() {
+        assertFalse(filter.sample("a", FAST, THRESHOLD, false));
+        assertEquals(0, filter.getOverBudgetCount());
+    }
+
+    @Test
+    public void slowOrFailedTracesAreKept() {
+        assertTrue(filter.sample("a", SLOW, THRESHOLD, false));
+        assertTrue(filter.sample("a", FAST, THRESHOLD, true));
+    }
+
+    @Test
+    public void budgetIsLimitedPerEndpoint() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(filter.sample("busy", SLOW, THRESHOLD, false));
+        }
+        assertFalse(filter.sample("busy", SLOW, THRESHOLD, false));
+        assertEquals(1, filter.getOverBudgetCount());
+        // other endpoints still have their budget
+        assertTrue(filter.sample("rare", SLOW, THRESHOLD, false));
+    }
+
+    @Test
+    public void budgetIsRestoredOverTime() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(filter.sample("a", SLOW, THRESHOLD, false));
+        }
+        assertFalse(filter.sample("a", SLOW, THRESHOLD, false));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(6));
+        assertTrue(filter.sample("a", SLOW, THRESHOLD, false));
+        assertFalse(filter.sample("a", SLOW, THRESHOLD, false));
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(1));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(filter.sample("a", SLOW, THRESHOLD, false));
+        }
+    }
+
+    @Test
+    public void endpointsBeyondLimitShareBudget() {
+        for (int i = 0; i < TailSampleFilter.MAX_ENDPOINTS; i++) {
+            assertTrue(filter.sample("endpoint" + i, SLOW, THRESHOLD, false));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertTrue(filter.sample("new" + i, SLOW, THRESHOLD, false));
+        }
+        assertFalse(filter.sample("new", SLOW, THRESHOLD, false));
+    }
+
+    @Test
+    public void errorsAreDetectedFromSpanTags() {
+        assertFalse(TailSampleFilter.isError(createTrace("ResponseStatus", "200")));
+        assertTrue(TailSampleFilter.isError(createTrace("ResponseStatus", "503")));
+        assertTrue(TailSampleFilter.isError(createTrace("error", "true")));
+    }
+
+    private static RequestTrace createTrace(String tag, String value) {
+        RequestTrace trace = new RequestTrace();
+        RequestTraceSpan span = new RequestTraceSpan(EventType.TRACE_START, "op1");
+        span.addSpanTag(tag, value);
+        trace.addEvent(span);
+        trace.endTrace();
+        return trace;
+    }
+}
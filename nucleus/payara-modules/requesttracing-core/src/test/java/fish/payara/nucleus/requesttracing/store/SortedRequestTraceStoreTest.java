@@ -0,0 +1,126 @@
+/*
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS HEADER.
+ *
+ * Copyright (c) 2020 Payara Foundation and/or its affiliates. All rights reserved.
+ *
+ * The contents of this file are subject to the terms of either the GNU
+ * General Public License Version 2 only ("GPL") or the Common Development
+ * and Distribution License("CDDL") (collectively, the "License").  You
+ * may not use this file except in compliance with the License.  You can
+ * obtain a copy of the License at
+ * https://github.com/payara/Payara/blob/master/LICENSE.txt
+ * See the License for the specific
+ * language governing permissions and limitations under the License.
+ *
+ * When distributing the software, include this License Header Notice in each
+ * file and include the License file at glassfish/legal/LICENSE.txt.
+ *
+ * GPL Classpath Exception:
+ * The Payara Foundation designates this particular file as subject to the "Classpath"
+ * exception as provided by the Payara Foundation in the GPL Version 2 section of the License
+ * file that accompanied this code.
+ *
+ * Modifications:
+ * If applicable, add the following below the License Header, with the fields
+ * enclosed by brackets [] replaced by your own identifying information:
+ * "Portions Copyright [year] [name of copyright owner]"
+ *
+ * Contributor(s):
+ * If you wish your version of this file to be governed by only the CDDL or
+ * only the GPL Version 2, indicate your decision by adding "[Contributor]
+ * elects to include this software in this distribution under the [CDDL or GPL
+ * Version 2] license."  If you don't indicate a single choice of license, a
+ * recipient has the option to distribute your version of this file under
+ * either the CDDL, the GPL Version 2 or to extend the choice of license to
+ * its licensees as provided above.  However, if you add GPL Version 2 code
+ * and therefore, elected the GPL Version 2 license, then the option applies
+ * only if the new code is made subject to such option by the copyright
+ * holder.
+ */
+package fish.payara.nucleus.requesttracing.store;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import fish.payara.notification.requesttracing.RequestTrace;
+
+/**
+ * Tests correctness of the {@link SortedRequestTraceStore}.
+ */
+public class SortedRequestTraceStoreTest extends AbstractRequestTraceStoreTest {
+
+    public SortedRequestTraceStoreTest() {
+        super(new SortedRequestTraceStore());
+    }
+
+    @Test
+    public void shortestTraceIsRemovedAboveMaxSize() {
+        store.setSize(10);
+        for (int i = 0; i < 10; i++) {
+            store.addTrace(createTrace(1000000000L * (i + 1))); // 1-10sec long traces
+        }
+        List<RequestTrace> added = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            RequestTrace newTrace = createTrace(1000000000L * (i + 1) - 500000000L); // 0.5-9.5sec long traces
+            added.add(newTrace);
+            RequestTrace removed = store.addTrace(newTrace);
+            assertTrue(removed.getElapsedTime() <= newTrace.getElapsedTime());
+            assertEquals(10, store.getTraces().size());
+        }
+        // remaining elements should be half from the original 10 items, half from the later added ones
+        added.retainAll(store.getTraces());
+        assertEquals(5, added.size());
+    }
+
+    @Test
+    public void traceToRemoveIsRemovedWhenPresent() {
+        store.setSize(2);
+        RequestTrace longest = createTrace(3000000000L);
+        store.addTrace(longest);
+        store.addTrace(createTrace(2000000000L));
+        assertSame(longest, store.addTrace(createTrace(1000000000L), longest));
+        assertFalse(store.getTraces().contains(longest));
+        assertEquals(2, store.getTraces().size());
+    }
+
+    @Test
+    public void limitedTracesAreLongestFirst() {
+        store.setSize(10);
+        for (int i = 0; i < 10; i++) {
+            store.addTrace(createTrace(1000000000L * ((i * 7) % 10 + 1)));
+        }
+        Collection<RequestTrace> longest = store.getTraces(3);
+        assertEquals(3, longest.size());
+        long previous = Long.MAX_VALUE;
+        for (RequestTrace trace : longest) {
+            assertTrue(trace.getElapsedTime() <= previous);
+            previous = trace.getElapsedTime();
+        }
+        assertEquals(10000L, longest.iterator().next().getElapsedTime());
+    }
+
+    @Test
+    public void removingTracesFromViewUpdatesStore() {
+        store.setSize(10);
+        for (int i = 0; i < 10; i++) {
+            store.addTrace(createTrace(1000000000L * (i + 1)));
+        }
+        Iterator<RequestTrace> iter = store.getTraces().iterator();
+        iter.next();
+        iter.remove();
+        assertEquals(9, store.getTraces().size());
+        store.addTrace(createTrace());
+        assertEquals(10, store.getTraces().size());
+        store.addTrace(createTrace());
+        assertEquals(10, store.getTraces().size());
+    }
+}